@@ -27,6 +27,7 @@ import java.util.Map;
 import org.opennms.newts.api.Duration;
 import org.opennms.newts.api.Measurement;
 import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Results.ColumnIndex;
 import org.opennms.newts.api.Results.Row;
 import org.opennms.newts.api.Timestamp;
 import org.opennms.newts.api.query.Datasource;
@@ -49,6 +50,7 @@ class Aggregation implements Iterable<Row<Measurement>>, Iterator<Row<Measuremen
     private final Iterator<Timestamp> m_timestamps;
     private final Duration m_resolution;
     private final Iterator<Row<Measurement>> m_input;
+    private final ColumnIndex m_columns = new ColumnIndex();
     private final double m_intervalsPer;
 
     private Row<Measurement> m_working;
@@ -69,7 +71,7 @@ class Aggregation implements Iterable<Row<Measurement>>, Iterator<Row<Measuremen
         m_intervalsPer = (double) resolution.divideBy(interval);
 
         m_working = m_input.hasNext() ? m_input.next() : null;
-        m_nextOut = m_timestamps.hasNext() ? new Row<Measurement>(m_timestamps.next(), m_resource) : null;
+        m_nextOut = m_timestamps.hasNext() ? new Row<Measurement>(m_timestamps.next(), m_resource, m_columns) : null;
 
         // If the input stream contains any Samples earlier than what's relevant, iterate past them.
         if (m_nextOut != null) {
@@ -124,7 +126,7 @@ class Aggregation implements Iterable<Row<Measurement>>, Iterator<Row<Measuremen
             return m_nextOut;
         }
         finally {
-            m_nextOut = m_timestamps.hasNext() ? new Row<Measurement>(m_timestamps.next(), m_resource) : null;
+            m_nextOut = m_timestamps.hasNext() ? new Row<Measurement>(m_timestamps.next(), m_resource, m_columns) : null;
         }
     }
 
@@ -140,10 +142,11 @@ class Aggregation implements Iterable<Row<Measurement>>, Iterator<Row<Measuremen
             return false;
         }
 
-        Timestamp rangeUpper = m_nextOut.getTimestamp();
-        Timestamp rangeLower = m_nextOut.getTimestamp().minus(m_resolution);
+        long rangeUpper = m_nextOut.getTimestamp().asNanos();
+        long rangeLower = rangeUpper - m_resolution.asNanos();
+        long working = m_working.getTimestamp().asNanos();
 
-        return m_working.getTimestamp().lte(rangeUpper) && m_working.getTimestamp().gt(rangeLower);
+        return working <= rangeUpper && working > rangeLower;
     }
 
     private Row<Measurement> nextWorking() {
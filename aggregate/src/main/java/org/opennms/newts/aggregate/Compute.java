@@ -18,30 +18,140 @@ package org.opennms.newts.aggregate;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import org.opennms.newts.api.Measurement;
 import org.opennms.newts.api.Results.Row;
-import org.opennms.newts.api.query.ResultDescriptor;
+import org.opennms.newts.api.query.BlockCalculationFunction;
 import org.opennms.newts.api.query.Calculation;
+import org.opennms.newts.api.query.CalculationFunction;
+import org.opennms.newts.api.query.ResultDescriptor;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 
+/**
+ * Evaluate calculations. Input rows are processed in blocks of (up to) {@link #BLOCK_SIZE}, one
+ * column of values at a time.
+ * <p>
+ * Columns (one for each label read or calculated, and the scratch columns of
+ * {@link BlockCalculationFunction}s) are allocated once, up front, and reused for every block.
+ * </p>
+ */
 class Compute implements Iterator<Row<Measurement>>, Iterable<Row<Measurement>> {
 
-    private final ResultDescriptor m_resultDescriptor;
+    static final int BLOCK_SIZE = 128;
+
+    /**
+     * A {@link Calculation} with its arguments resolved to columns; Numeric constants are parsed
+     * once, up front, into columns of the constant value.
+     */
+    private static class ResolvedCalculation {
+
+        private final String m_label;
+        private final CalculationFunction m_function;
+        private final int[] m_columns;
+        private final int m_resultColumn;
+        private final double[][] m_args;
+        private final double[] m_result;
+        private final double[] m_values;
+
+        private ResolvedCalculation(Calculation calculation, Map<String, Integer> columnIndex, double[][] columns) {
+            String[] args = calculation.getArgs();
+
+            m_label = calculation.getLabel();
+            m_function = calculation.getCalculationFunction();
+            m_columns = new int[args.length];
+            m_args = new double[args.length][];
+            m_values = new double[args.length];
+
+            for (int i = 0; i < args.length; i++) {
+                Optional<Double> d = parseDouble(args[i]);
+
+                if (d.isPresent()) {
+                    m_columns[i] = -1;
+                    m_args[i] = new double[BLOCK_SIZE];
+                    Arrays.fill(m_args[i], d.get());
+                }
+                else {
+                    m_columns[i] = columnIndex.get(args[i]);
+                    m_args[i] = columns[m_columns[i]];
+                }
+            }
+
+            m_resultColumn = columnIndex.get(m_label);
+            m_result = columns[m_resultColumn];
+        }
+
+        private void apply(int length, double[][] scratch) {
+
+            if (m_function instanceof BlockCalculationFunction) {
+                ((BlockCalculationFunction) m_function).apply(m_result, length, m_args, scratch);
+                return;
+            }
+
+            // Function only operates on a row at a time.
+            for (int i = 0; i < length; i++) {
+                for (int j = 0; j < m_args.length; j++) {
+                    m_values[j] = m_args[j][i];
+                }
+                m_result[i] = m_function.apply(m_values);
+            }
+        }
+
+    }
+
     private final Iterator<Row<Measurement>> m_input;
+    private final List<ResolvedCalculation> m_calculations = Lists.newArrayList();
+    private final List<Row<Measurement>> m_block = Lists.newArrayListWithCapacity(BLOCK_SIZE);
+    private final String[] m_names;
+    private final double[][] m_columns;
+    private final boolean[] m_loaded;
+    private final double[][] m_scratch;
+    private int m_position = 0;
 
     Compute(ResultDescriptor resultDescriptor, Iterator<Row<Measurement>> input) {
-        m_resultDescriptor = checkNotNull(resultDescriptor, "result descriptor argument");
+        checkNotNull(resultDescriptor, "result descriptor argument");
         m_input = checkNotNull(input, "input argument");
+
+        Collection<Calculation> calculations = resultDescriptor.getCalculations().values();
+        Map<String, Integer> columnIndex = Maps.newLinkedHashMap();
+        int scratch = 0;
+
+        for (Calculation calc : calculations) {
+            for (String arg : calc.getArgs()) {
+                if (!parseDouble(arg).isPresent() && !columnIndex.containsKey(arg)) {
+                    columnIndex.put(arg, columnIndex.size());
+                }
+            }
+
+            columnIndex.put(calc.getLabel(), columnIndex.size());
+
+            if (calc.getCalculationFunction() instanceof BlockCalculationFunction) {
+                scratch = Math.max(scratch, ((BlockCalculationFunction) calc.getCalculationFunction()).getScratchColumns());
+            }
+        }
+
+        m_names = columnIndex.keySet().toArray(new String[columnIndex.size()]);
+        m_columns = new double[m_names.length][BLOCK_SIZE];
+        m_loaded = new boolean[m_names.length];
+        m_scratch = new double[scratch][BLOCK_SIZE];
+
+        for (Calculation calc : calculations) {
+            m_calculations.add(new ResolvedCalculation(calc, columnIndex, m_columns));
+        }
     }
 
     @Override
     public boolean hasNext() {
-        return m_input.hasNext();
+        return m_position < m_block.size() || m_input.hasNext();
     }
 
     @Override
@@ -49,29 +159,59 @@ class Compute implements Iterator<Row<Measurement>>, Iterable<Row<Measurement>>
 
         if (!hasNext()) throw new NoSuchElementException();
 
-        Row<Measurement> row = m_input.next();
+        if (m_position >= m_block.size()) {
+            nextBlock();
+        }
+
+        return m_block.get(m_position++);
+    }
+
+    // Read the next block of rows from input, and add the calculated measurements to them.
+    private void nextBlock() {
+
+        m_block.clear();
+        m_position = 0;
 
-        for (Calculation calc : m_resultDescriptor.getCalculations().values()) {
-            double v = calc.getCalculationFunction().apply(getValues(row, calc.getArgs()));
-            row.addElement(new Measurement(row.getTimestamp(), row.getResource(), calc.getLabel(), v));
+        while (m_block.size() < BLOCK_SIZE && m_input.hasNext()) {
+            m_block.add(m_input.next());
         }
 
-        return row;
+        int length = m_block.size();
+        Arrays.fill(m_loaded, false);
+
+        for (ResolvedCalculation calc : m_calculations) {
+            for (int column : calc.m_columns) {
+                if (column >= 0) {
+                    load(column, length);
+                }
+            }
+
+            calc.apply(length, m_scratch);
+            m_loaded[calc.m_resultColumn] = true;
+
+            for (int i = 0; i < length; i++) {
+                Row<Measurement> row = m_block.get(i);
+                row.addElement(new Measurement(row.getTimestamp(), row.getResource(), calc.m_label, calc.m_result[i]));
+            }
+        }
     }
 
-    private double[] getValues(Row<Measurement> row, String[] names) {
-        double[] values = new double[names.length];
+    // Read a column of measurements from the block, unless it has been read (or calculated) already.
+    private void load(int index, int length) {
+        if (m_loaded[index]) {
+            return;
+        }
+
+        double[] column = m_columns[index];
 
-        for (int i = 0; i < names.length; i++) {
-            String name = names[i];
-            Optional<Double> d = parseDouble(name);
-            values[i] = d.isPresent() ? d.get() : checkNotNull(row.getElement(name), "Missing measurement; Upstream iterator is bugged").getValue();
+        for (int i = 0; i < length; i++) {
+            column[i] = checkNotNull(m_block.get(i).getElement(m_names[index]), "Missing measurement; Upstream iterator is bugged").getValue();
         }
 
-        return values;
+        m_loaded[index] = true;
     }
-    
-    Optional<Double> parseDouble(String maybeNum) {
+
+    static Optional<Double> parseDouble(String maybeNum) {
         try {
             return Optional.of(Double.parseDouble(maybeNum));
         } catch (NumberFormatException e) {
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.aggregate;
+
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.opennms.newts.api.Measurement;
+import org.opennms.newts.api.Results.Row;
+import org.opennms.newts.api.query.Downsampling;
+
+import com.google.common.collect.Lists;
+
+
+/**
+ * Reduce results to (approximately) a maximum number of rows, preserving the visual shape of the
+ * exported series. Rows are selected, never synthesized, so timestamps and values are passed
+ * through unchanged.
+ * <p>
+ * When there are several exports, {@link Downsampling.Method#LTTB} selects one row per bucket
+ * using the sum of the triangle areas of each series. {@link Downsampling.Method#M4} selects the
+ * first and last rows of each bucket, and the rows holding the minimum and maximum of each series;
+ * The bucket count is chosen so that the total does not exceed the maximum (save for when there
+ * are so many exports that even a single bucket would).
+ * </p>
+ */
+class Downsample implements Iterator<Row<Measurement>>, Iterable<Row<Measurement>> {
+
+    private final Iterator<Row<Measurement>> m_output;
+
+    Downsample(Set<String> exports, Downsampling downsampling, Iterator<Row<Measurement>> input) {
+        checkNotNull(exports, "exports argument");
+        checkNotNull(downsampling, "downsampling argument");
+        checkNotNull(input, "input argument");
+
+        // Bucketing requires knowing the total row count up front.
+        List<Row<Measurement>> rows = Lists.newArrayList(input);
+
+        if (rows.size() <= downsampling.getMaxPoints()) {
+            m_output = rows.iterator();
+            return;
+        }
+
+        String[] names = exports.toArray(new String[exports.size()]);
+        double[][] values = new double[names.length][rows.size()];
+        double[] times = new double[rows.size()];
+
+        for (int i = 0; i < rows.size(); i++) {
+            Row<Measurement> row = rows.get(i);
+            times[i] = row.getTimestamp().asMillis();
+
+            for (int j = 0; j < names.length; j++) {
+                Measurement m = row.getElement(names[j]);
+                values[j][i] = (m != null) ? m.getValue() : Double.NaN;
+            }
+        }
+
+        boolean[] selected;
+
+        switch (downsampling.getMethod()) {
+            case LTTB:
+                selected = lttb(times, values, downsampling.getMaxPoints());
+                break;
+            case M4:
+                selected = m4(values, rows.size(), downsampling.getMaxPoints());
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported downsampling method: " + downsampling.getMethod());
+        }
+
+        List<Row<Measurement>> output = Lists.newArrayListWithCapacity(downsampling.getMaxPoints());
+
+        for (int i = 0; i < rows.size(); i++) {
+            if (selected[i]) output.add(rows.get(i));
+        }
+
+        m_output = output.iterator();
+    }
+
+    // Largest-Triangle-Three-Buckets (Steinarsson, 2013).
+    private static boolean[] lttb(double[] times, double[][] values, int threshold) {
+        int length = times.length;
+        boolean[] selected = new boolean[length];
+        double every = (double) (length - 2) / (threshold - 2);
+        double[] avgValues = new double[values.length];
+        int a = 0;
+
+        selected[0] = true;
+
+        for (int i = 0; i < threshold - 2; i++) {
+
+            // Average point of the next bucket
+            int avgStart = (int) Math.floor((i + 1) * every) + 1;
+            int avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, length);
+
+            if (avgStart >= avgEnd) {
+                avgStart = length - 1;
+                avgEnd = length;
+            }
+
+            double avgTime = 0;
+
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgTime += times[j];
+            }
+
+            avgTime /= (avgEnd - avgStart);
+
+            for (int k = 0; k < values.length; k++) {
+                avgValues[k] = mean(values[k], avgStart, avgEnd);
+            }
+
+            // Row of this bucket forming the largest triangle with the last selected, and the average
+            int rangeStart = (int) Math.floor(i * every) + 1;
+            int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+            double maxArea = -1;
+            int next = rangeStart;
+
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = 0;
+
+                for (int k = 0; k < values.length; k++) {
+                    double t = Math.abs((times[a] - avgTime) * (values[k][j] - values[k][a]) - (times[a] - times[j]) * (avgValues[k] - values[k][a]));
+
+                    // Unknown values contribute nothing
+                    if (!Double.isNaN(t)) area += t;
+                }
+
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+
+            selected[next] = true;
+            a = next;
+        }
+
+        selected[length - 1] = true;
+
+        return selected;
+    }
+
+    // First, last, minimum and maximum of each bucket (Jugel et al., 2014).
+    private static boolean[] m4(double[][] values, int length, int maxPoints) {
+        boolean[] selected = new boolean[length];
+        int buckets = Math.max(1, maxPoints / (2 + (2 * values.length)));
+
+        for (int b = 0; b < buckets; b++) {
+            int start = (int) ((long) b * length / buckets);
+            int end = (int) ((long) (b + 1) * length / buckets);
+
+            if (start >= end) continue;
+
+            selected[start] = true;
+            selected[end - 1] = true;
+
+            for (double[] series : values) {
+                int min = -1, max = -1;
+
+                for (int i = start; i < end; i++) {
+                    if (Double.isNaN(series[i])) continue;
+                    if (min < 0 || series[i] < series[min]) min = i;
+                    if (max < 0 || series[i] > series[max]) max = i;
+                }
+
+                if (min >= 0) selected[min] = true;
+                if (max >= 0) selected[max] = true;
+            }
+        }
+
+        return selected;
+    }
+
+    // Mean of the known values in range, or NaN if there are none.
+    private static double mean(double[] series, int start, int end) {
+        double sum = 0;
+        int count = 0;
+
+        for (int i = start; i < end; i++) {
+            if (Double.isNaN(series[i])) continue;
+            sum += series[i];
+            count++;
+        }
+
+        return (count > 0) ? sum / count : Double.NaN;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return m_output.hasNext();
+    }
+
+    @Override
+    public Row<Measurement> next() {
+
+        if (!hasNext()) throw new NoSuchElementException();
+
+        return m_output.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<Row<Measurement>> iterator() {
+        return this;
+    }
+
+}
@@ -23,6 +23,7 @@ import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.opennms.newts.api.Measurement;
+import org.opennms.newts.api.Results.ColumnIndex;
 import org.opennms.newts.api.Results.Row;
 
 
@@ -36,6 +37,7 @@ class Export implements Iterable<Row<Measurement>>, Iterator<Row<Measurement>> {
 
     private final Set<String> m_exports;
     private final Iterator<Row<Measurement>> m_input;
+    private final ColumnIndex m_columns = new ColumnIndex();
 
     private Row<Measurement> m_current;
 
@@ -57,7 +59,7 @@ class Export implements Iterable<Row<Measurement>>, Iterator<Row<Measurement>> {
 
         if (!hasNext()) throw new NoSuchElementException();
 
-        Row<Measurement> result = new Row<>(m_current.getTimestamp(), m_current.getResource());
+        Row<Measurement> result = new Row<>(m_current.getTimestamp(), m_current.getResource(), m_columns);
 
         for (String export : m_exports) {
             result.addElement(getMeasurement(export));
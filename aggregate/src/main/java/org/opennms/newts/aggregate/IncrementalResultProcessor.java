@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.aggregate;
+
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+import org.opennms.newts.api.Duration;
+import org.opennms.newts.api.Measurement;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Results;
+import org.opennms.newts.api.Results.Row;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.Timestamp;
+import org.opennms.newts.api.query.ResultDescriptor;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+
+
+/**
+ * Stateful results processing for live-tail queries.
+ * <p>
+ * Rather than processing a complete window of samples on every refresh, each call to
+ * {@link #process(Iterator)} consumes only those samples newer than any seen previously, and
+ * returns only the rows that have become complete since the last call. Just enough of the
+ * preceding samples are retained to carry rate, primary data, and aggregation state across calls,
+ * so the cost of a refresh is proportional to the number of new samples, not the size of the
+ * window.
+ * </p>
+ * <p>
+ * Samples that arrive late are merged, provided they fall no earlier than the interval of the last
+ * row emitted (see {@link #getLowerBound()}); The rows they revise are emitted again, (with the
+ * same timestamps). Samples later than that are ignored.
+ * </p>
+ * <p>
+ * Instances are intended to be used by one subscription; Access is synchronized.
+ * </p>
+ */
+public class IncrementalResultProcessor {
+
+    private final Resource m_resource;
+    private final ResultDescriptor m_resultDescriptor;
+    private final Duration m_resolution;
+    private final LinkedList<Row<Sample>> m_retained = Lists.newLinkedList();
+
+    private Timestamp m_lastEmitted;
+    private Timestamp m_lastSample;
+    private long m_revised = 0;
+
+    /**
+     * @param resource
+     *            the resource being queried
+     * @param start
+     *            the earliest row to emit
+     * @param descriptor
+     *            result descriptor
+     * @param resolution
+     *            temporal resolution of results
+     */
+    public IncrementalResultProcessor(Resource resource, Timestamp start, ResultDescriptor descriptor, Duration resolution) {
+        m_resource = checkNotNull(resource, "resource argument");
+        m_resultDescriptor = checkNotNull(descriptor, "result descriptor argument");
+        m_resolution = checkNotNull(resolution, "resolution argument");
+        checkNotNull(start, "start argument");
+
+        m_lastEmitted = start.stepFloor(m_resolution).minus(m_resolution);
+    }
+
+    /**
+     * Returns the timestamp of the most recent sample consumed (if any).
+     *
+     * @return timestamp of the most recent sample
+     */
+    public synchronized Optional<Timestamp> getLastSampleTimestamp() {
+        return Optional.fromNullable(m_lastSample);
+    }
+
+    /**
+     * Returns the earliest timestamp of samples that can still be consumed; Samples at or before
+     * this time are ignored by subsequent calls to {@link #process(Iterator)}, so it is a suitable
+     * lower bound when fetching new (or late) samples.
+     *
+     * @return the earliest timestamp still accepted
+     */
+    public synchronized Timestamp getLowerBound() {
+        return m_lastEmitted.minus(m_resolution);
+    }
+
+    /** @return the number of rows emitted again, having been revised by late samples */
+    public synchronized long getRevisedRowCount() {
+        return m_revised;
+    }
+
+    /**
+     * Returns the timestamp of the last row emitted (or of the row preceding the first, if nothing
+     * has been emitted yet).
+     *
+     * @return timestamp of the last emitted row
+     */
+    public synchronized Timestamp getLastEmittedTimestamp() {
+        return m_lastEmitted;
+    }
+
+    /**
+     * Consume samples, and return any newly completed rows of measurements, (and any rows revised
+     * by late samples).
+     *
+     * @param samples
+     *            sample rows, in timestamp order; Elements already consumed are skipped
+     * @return rows completed or revised since the previous invocation (possibly none)
+     */
+    public synchronized Results<Measurement> process(Iterator<Row<Sample>> samples) {
+        checkNotNull(samples, "samples argument");
+
+        Timestamp floor = getLowerBound();
+        Timestamp revised = null;
+
+        while (samples.hasNext()) {
+            Row<Sample> row = samples.next();
+
+            if (m_lastSample == null || row.getTimestamp().gt(m_lastSample)) {
+                m_retained.add(row);
+                m_lastSample = row.getTimestamp();
+                continue;
+            }
+
+            // Too late to be merged, (or long since consumed).
+            if (row.getTimestamp().lte(floor)) {
+                continue;
+            }
+
+            // Late; Rows from the one it falls in onward are revised, if already emitted.
+            if (merge(row)) {
+                Timestamp affected = row.getTimestamp().stepCeiling(m_resolution);
+
+                if (affected.lte(m_lastEmitted) && (revised == null || affected.lt(revised))) {
+                    revised = affected;
+                }
+            }
+        }
+
+        // Nothing has been retained that would complete (or revise) another row.
+        if (m_lastSample == null || (revised == null && m_lastSample.stepFloor(m_resolution).lte(m_lastEmitted))) {
+            return new Results<Measurement>();
+        }
+
+        Timestamp start = (revised != null) ? revised : m_lastEmitted.plus(m_resolution);
+        Timestamp end = m_lastSample.stepFloor(m_resolution);
+
+        if (revised != null) {
+            m_revised += m_lastEmitted.minus(revised).divideBy(m_resolution) + 1;
+        }
+
+        Results<Measurement> results = new ResultProcessor(m_resource, start, end, m_resultDescriptor, m_resolution)
+                .process(m_retained.iterator());
+
+        m_lastEmitted = end;
+
+        // Late samples may yet revise the row just emitted, so retain what computing it again
+        // would need; Samples from one resolution step before this end onward, (plus one
+        // preceding row for context).
+        Timestamp retain = end.minus(m_resolution);
+
+        while (m_retained.size() > 1 && m_retained.get(1).getTimestamp().lt(retain)) {
+            m_retained.removeFirst();
+        }
+
+        return results;
+    }
+
+    /**
+     * Merges a late row into those retained.
+     *
+     * @return true if the row added anything new
+     */
+    private boolean merge(Row<Sample> late) {
+        ListIterator<Row<Sample>> iterator = m_retained.listIterator(m_retained.size());
+
+        while (iterator.hasPrevious()) {
+            Row<Sample> retained = iterator.previous();
+
+            if (retained.getTimestamp().equals(late.getTimestamp())) {
+                boolean added = false;
+
+                for (Sample sample : late.getElements()) {
+                    if (retained.getElement(sample.getName()) == null) {
+                        retained.addElement(sample);
+                        added = true;
+                    }
+                }
+
+                return added;
+            }
+
+            if (retained.getTimestamp().lt(late.getTimestamp())) {
+                iterator.next();
+                break;
+            }
+        }
+
+        iterator.add(late);
+
+        return true;
+    }
+
+}
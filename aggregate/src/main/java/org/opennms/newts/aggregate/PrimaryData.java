@@ -18,100 +18,102 @@ package org.opennms.newts.aggregate;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.newts.api.Duration;
+import org.opennms.newts.api.GaugeAccumulator;
 import org.opennms.newts.api.Measurement;
 import org.opennms.newts.api.Resource;
 import org.opennms.newts.api.Sample;
-import org.opennms.newts.api.MetricType;
+import org.opennms.newts.api.Results.ColumnIndex;
 import org.opennms.newts.api.Results.Row;
 import org.opennms.newts.api.Timestamp;
 import org.opennms.newts.api.ValueType;
 import org.opennms.newts.api.query.Datasource;
 import org.opennms.newts.api.query.ResultDescriptor;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 
 /**
  * Generate primary data point measurements from a stream of samples.
+ * <p>
+ * Each distinct datasource source is resolved to a dense integer slot once, up front, and
+ * accumulation state is kept in arrays indexed by slot. Slots are independent of one another, so
+ * reports with many sources (at least {@link #PARALLEL_THRESHOLD}) are evaluated in parallel, by
+ * splitting the slots across a shared fork/join pool.
+ * </p>
  *
  * @author eevans
  */
 class PrimaryData implements Iterator<Row<Measurement>>, Iterable<Row<Measurement>> {
 
-    private class Accumulation {
-        private long m_known, m_unknown;
-        private ValueType<?> m_value;
-        private Map<String, String> m_attributes = Maps.newHashMap();
+    static final int PARALLEL_THRESHOLD = 256;
 
-        private Accumulation() {
-            reset();
-        }
+    private static final int SLOTS_PER_TASK = 64;
+    private static final ForkJoinPool s_pool = new ForkJoinPool();
 
-        private Accumulation accumulateValue(Duration elapsed, Duration heartbeat, ValueType<?> value) {
-            if (elapsed.lt(heartbeat)) {
-                m_known += elapsed.asMillis();
-                m_value = m_value.plus(value.times(elapsed.asMillis()));
-            }
-            else {
-                m_unknown += elapsed.asMillis();
-            }
-            return this;
-        }
+    /** Evaluates a range of slots, splitting it among the pool when large. */
+    private class Evaluation extends RecursiveAction {
 
-        private Accumulation accumlateAttrs(Map<String, String> attributes) {
-            if (attributes != null) m_attributes.putAll(attributes);
-            return this;
-        }
-
-        private Double getAverage() {
-            return isValid() ? m_value.divideBy(m_known).doubleValue() : Double.NaN;
-        }
+        private static final long serialVersionUID = 1L;
 
-        private long getKnown() {
-            return m_known;
-        }
+        private final int m_from, m_to;
+        private final Timestamp m_timestamp;
+        private final Measurement[] m_output;
 
-        private long getUnknown() {
-            return m_unknown;
+        private Evaluation(int from, int to, Timestamp timestamp, Measurement[] output) {
+            m_from = from;
+            m_to = to;
+            m_timestamp = timestamp;
+            m_output = output;
         }
 
-        private double getElapsed() {
-            return getKnown() + getUnknown();
-        }
-
-        private boolean isValid() {
-            return getUnknown() < (getElapsed() / 2);
-        }
-
-        private void reset() {
-            m_known = m_unknown = 0;
-            m_value = ValueType.compose(0, MetricType.GAUGE);
-            m_attributes = Maps.newHashMap();
-        }
-
-        private Map<String, String> getAttributes() {
-            return m_attributes;
+        @Override
+        protected void compute() {
+            if ((m_to - m_from) <= SLOTS_PER_TASK) {
+                evaluate(m_from, m_to, m_timestamp, m_output);
+            }
+            else {
+                int middle = (m_from + m_to) >>> 1;
+                invokeAll(new Evaluation(m_from, middle, m_timestamp, m_output), new Evaluation(middle, m_to, m_timestamp, m_output));
+            }
         }
 
     }
 
-    private final ResultDescriptor m_resultDescriptor;
     private final Resource m_resource;
     private final Iterator<Timestamp> m_timestamps;
     private final Duration m_interval;
     private final Iterator<Row<Sample>> m_input;
-    private final Map<String, Sample> m_lastUpdates = Maps.newHashMap();
-    private final Map<String, Accumulation> m_accumulation = Maps.newHashMap();
+    private final boolean m_parallel;
+    private final ColumnIndex m_columns;
+
+    // Per-source state, indexed by slot
+    private final String[] m_sources;
+    private final long[] m_heartbeats;
+    private final Sample[] m_lastUpdates;
+    private final long[] m_known;
+    private final long[] m_unknown;
+    private final GaugeAccumulator[] m_values;
+    private final Map<String, String>[] m_attributes;
+
+    // Input rows that contribute to the current interval
+    private final List<Row<Sample>> m_contributing = Lists.newArrayList();
 
     private Row<Sample> m_current = null;
 
+    @SuppressWarnings("unchecked")
     PrimaryData(Resource resource, Timestamp start, Timestamp end, ResultDescriptor resultDescriptor, Iterator<Row<Sample>> input) {
-        m_resultDescriptor = checkNotNull(resultDescriptor, "result descriptor argument");
+        checkNotNull(resultDescriptor, "result descriptor argument");
         m_resource = checkNotNull(resource, "resource argument");
         checkNotNull(start, "start argument");
         checkNotNull(end, "end argument");
@@ -121,6 +123,35 @@ class PrimaryData implements Iterator<Row<Measurement>>, Iterable<Row<Measuremen
 
         m_timestamps = new IntervalGenerator(start.stepFloor(m_interval), end.stepCeiling(m_interval), m_interval);
 
+        // One slot per source; When sources are shared, the first datasource's heartbeat applies.
+        Map<String, Duration> heartbeats = Maps.newLinkedHashMap();
+
+        for (Datasource ds : resultDescriptor.getDatasources().values()) {
+            if (!heartbeats.containsKey(ds.getSource())) {
+                heartbeats.put(ds.getSource(), ds.getHeartbeat());
+            }
+        }
+
+        int slots = heartbeats.size();
+
+        m_sources = heartbeats.keySet().toArray(new String[slots]);
+        m_columns = new ColumnIndex(heartbeats.keySet());
+        m_heartbeats = new long[slots];
+        m_lastUpdates = new Sample[slots];
+        m_known = new long[slots];
+        m_unknown = new long[slots];
+        m_values = new GaugeAccumulator[slots];
+        m_attributes = new Map[slots];
+
+        int slot = 0;
+
+        for (Duration heartbeat : heartbeats.values()) {
+            m_values[slot] = new GaugeAccumulator();
+            m_heartbeats[slot++] = heartbeat.asNanos();
+        }
+
+        m_parallel = (slots >= PARALLEL_THRESHOLD) && (s_pool.getParallelism() > 1);
+
         if (m_input.hasNext()) m_current = m_input.next();
 
     }
@@ -135,10 +166,12 @@ class PrimaryData implements Iterator<Row<Measurement>>, Iterable<Row<Measuremen
 
         if (!hasNext()) throw new NoSuchElementException();
 
-        Row<Measurement> output = new Row<>(m_timestamps.next(), m_resource);
+        Row<Measurement> output = new Row<>(m_timestamps.next(), m_resource, m_columns);
+
+        m_contributing.clear();
 
         while (m_current != null) {
-            accumulate(m_current, output.getTimestamp());
+            m_contributing.add(m_current);
 
             if (m_current.getTimestamp().gte(output.getTimestamp())) {
                 break;
@@ -151,96 +184,138 @@ class PrimaryData implements Iterator<Row<Measurement>>, Iterable<Row<Measuremen
 
         }
 
-        // Go time; We've accumulated enough to produce the output row
-        for (Datasource ds : m_resultDescriptor.getDatasources().values()) {
+        Measurement[] measurements = new Measurement[m_sources.length];
 
-            Accumulation accumulation = getOrCreateAccumulation(ds.getSource());
+        if (m_parallel) {
+            s_pool.invoke(new Evaluation(0, m_sources.length, output.getTimestamp(), measurements));
+        }
+        else {
+            evaluate(0, m_sources.length, output.getTimestamp(), measurements);
+        }
 
-            // Add sample with accumulated value to output row
-            output.addElement(new Measurement(
-                    output.getTimestamp(),
-                    output.getResource(),
-                    ds.getSource(),
-                    accumulation.getAverage(),
-                    accumulation.getAttributes()));
+        for (Measurement measurement : measurements) {
+            output.addElement(measurement);
+        }
 
-            // If input is greater than row, accumulate remainder for next row
-            if (m_current != null) {
+        return output;
+    }
 
-                accumulation.reset();
+    // Accumulate the contributing rows, and produce output for the slots in [from, to).
+    private void evaluate(int from, int to, Timestamp timestamp, Measurement[] output) {
 
-                Sample sample = m_current.getElement(ds.getSource());
+        long ceiling = timestamp.asNanos();
 
-                if (sample == null) {
-                    continue;
-                }
+        for (Row<Sample> row : m_contributing) {
+            accumulate(row, ceiling, from, to);
+        }
+
+        // Go time; We've accumulated enough to produce the output row
+        for (int slot = from; slot < to; slot++) {
 
-                if (m_current.getTimestamp().gt(output.getTimestamp())) {
-                    Duration elapsed = m_current.getTimestamp().minus(output.getTimestamp());
-                    accumulation.accumulateValue(elapsed, ds.getHeartbeat(), sample.getValue());
-                    accumulation.accumlateAttrs(sample.getAttributes());
-                }
+            // Add sample with accumulated value to output row
+            output[slot] = new Measurement(timestamp, m_resource, m_sources[slot], getAverage(slot), getAttributes(slot));
 
-            } else {
-                accumulation.reset();
+            reset(slot);
+
+            // If input is greater than row, accumulate remainder for next row
+            if (m_current == null) {
+                continue;
             }
-        }
 
-        return output;
+            Sample sample = m_current.getElement(m_sources[slot]);
+
+            if (sample == null) {
+                continue;
+            }
+
+            if (m_current.getTimestamp().asNanos() > ceiling) {
+                accumulateValue(slot, m_current.getTimestamp().asNanos() - ceiling, sample.getValue());
+                accumulateAttrs(slot, sample.getAttributes());
+            }
+        }
     }
 
-    private void accumulate(Row<Sample> row, Timestamp intervalCeiling) {
+    // Timestamps and durations are in (primitive) nanoseconds, to avoid allocating in the inner loop.
+    private void accumulate(Row<Sample> row, long intervalCeiling, int from, int to) {
 
-        for (Datasource ds : m_resultDescriptor.getDatasources().values()) {
+        for (int slot = from; slot < to; slot++) {
             Sample current, last;
 
-            current = row.getElement(ds.getSource());
+            current = row.getElement(m_sources[slot]);
 
             if (current == null) {
                 continue;
             }
 
-            last = m_lastUpdates.get(current.getName());
+            last = m_lastUpdates[slot];
 
             if (last == null) {
-                m_lastUpdates.put(current.getName(), current);
+                m_lastUpdates[slot] = current;
                 continue;
             }
 
             // Accumulate nothing when samples are beyond this interval
-            if (intervalCeiling.lt(last.getTimestamp())) {
+            if (intervalCeiling < last.getTimestamp().asNanos()) {
                 continue;
             }
 
-            Duration elapsed;
+            long elapsed;
 
-            if (current.getTimestamp().gt(intervalCeiling)) {
-                elapsed = intervalCeiling.minus(last.getTimestamp());
+            if (current.getTimestamp().asNanos() > intervalCeiling) {
+                elapsed = intervalCeiling - last.getTimestamp().asNanos();
             }
             else {
-                elapsed = current.getTimestamp().minus(last.getTimestamp());
+                elapsed = current.getTimestamp().asNanos() - last.getTimestamp().asNanos();
             }
 
-            getOrCreateAccumulation(current.getName())
-                    .accumulateValue(elapsed, ds.getHeartbeat(), current.getValue())
-                    .accumlateAttrs(current.getAttributes());
+            accumulateValue(slot, elapsed, current.getValue());
+            accumulateAttrs(slot, current.getAttributes());
 
             // Postpone storing as lastUpdate, we'll need this sample again...
-            if (!current.getTimestamp().gt(intervalCeiling.plus(m_interval))) {
-                m_lastUpdates.put(current.getName(), current);
+            if (current.getTimestamp().asNanos() <= (intervalCeiling + m_interval.asNanos())) {
+                m_lastUpdates[slot] = current;
             }
         }
     }
 
-    private Accumulation getOrCreateAccumulation(String name) {
-        Accumulation result = m_accumulation.get(name);
+    private void accumulateValue(int slot, long elapsed, ValueType<?> value) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+
+        if (elapsed < m_heartbeats[slot]) {
+            m_known[slot] += millis;
+            m_values[slot].plusProduct(value, millis);
+        }
+        else {
+            m_unknown[slot] += millis;
+        }
+    }
+
+    private void accumulateAttrs(int slot, Map<String, String> attributes) {
+        if (attributes == null) return;
 
-        if (result == null) {
-            result = new Accumulation();
-            m_accumulation.put(name, result);
+        if (m_attributes[slot] == null) {
+            m_attributes[slot] = Maps.newHashMap();
         }
 
-        return result;
+        m_attributes[slot].putAll(attributes);
+    }
+
+    private double getAverage(int slot) {
+        return isValid(slot) ? m_values[slot].doubleValue() / m_known[slot] : Double.NaN;
+    }
+
+    private boolean isValid(int slot) {
+        return m_unknown[slot] < ((m_known[slot] + m_unknown[slot]) / 2.0d);
+    }
+
+    private Map<String, String> getAttributes(int slot) {
+        return (m_attributes[slot] != null) ? m_attributes[slot] : Collections.<String, String> emptyMap();
+    }
+
+    private void reset(int slot) {
+        m_known[slot] = m_unknown[slot] = 0;
+        m_values[slot].reset();
+        m_attributes[slot] = null;
     }
 
     @Override
@@ -25,13 +25,17 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import org.opennms.newts.api.Counter;
+import org.opennms.newts.api.CounterAccumulator;
 import org.opennms.newts.api.Gauge;
 import org.opennms.newts.api.MetricType;
+import org.opennms.newts.api.Results.ColumnIndex;
 import org.opennms.newts.api.Results.Row;
 import org.opennms.newts.api.Sample;
 import org.opennms.newts.api.ValueType;
 
 import com.google.common.collect.Maps;
+import com.google.common.primitives.UnsignedLongs;
 
 
 /**
@@ -42,11 +46,14 @@ import com.google.common.collect.Maps;
 class Rate implements Iterator<Row<Sample>>, Iterable<Row<Sample>> {
 
     private static final Gauge NAN = new Gauge(Double.NaN);
+    // Idle counters are common, and their (immutable) rate can be shared.
+    private static final Counter ZERO = new Counter(0);
     private static final EnumSet<MetricType> COUNTERS = EnumSet.of(MetricType.COUNTER, MetricType.ABSOLUTE, MetricType.DERIVE);
 
     private final Iterator<Row<Sample>> m_input;
     private final Set<String> m_metrics;
     private final Map<String, Sample> m_prevSamples = Maps.newHashMap();
+    private final ColumnIndex m_columns = new ColumnIndex();
 
     Rate(Iterator<Row<Sample>> input, Set<String> metrics) {
         m_input = checkNotNull(input, "input argument");
@@ -64,7 +71,7 @@ class Rate implements Iterator<Row<Sample>>, Iterable<Row<Sample>> {
         if (!hasNext()) throw new NoSuchElementException();
 
         Row<Sample> working = m_input.next();
-        Row<Sample> result = new Row<>(working.getTimestamp(), working.getResource());
+        Row<Sample> result = new Row<>(working.getTimestamp(), working.getResource(), m_columns);
 
         for (String metricName : m_metrics) {
             Sample sample = working.getElement(metricName);
@@ -90,12 +97,22 @@ class Rate implements Iterator<Row<Sample>>, Iterable<Row<Sample>> {
 
         if (previous != null) {
             long elapsed = sample.getTimestamp().asSeconds() - previous.getTimestamp().asSeconds();
-            value = sample.getValue().delta(previous.getValue()).divideBy(elapsed);
+            value = getRate(sample.getValue(), previous.getValue(), elapsed);
         }
 
         return new Sample(sample.getTimestamp(), sample.getResource(), sample.getName(), GAUGE, value, sample.getAttributes());
     }
 
+    // Calculate the rate on primitives (unless the value is of some other type than its metric type suggests).
+    private static ValueType<?> getRate(ValueType<?> value, ValueType<?> previous, long elapsed) {
+        if (!(value instanceof Counter)) {
+            return value.delta(previous).divideBy(elapsed);
+        }
+
+        long rate = UnsignedLongs.divide(CounterAccumulator.delta(value.getType(), value.longValue(), previous.longValue()), elapsed);
+        return (rate == 0) ? ZERO : new Counter(rate);
+    }
+
     @Override
     public void remove() {
         throw new UnsupportedOperationException();
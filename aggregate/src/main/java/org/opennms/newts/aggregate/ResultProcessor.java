@@ -20,6 +20,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Iterator;
 
+import org.opennms.newts.api.Deadline;
 import org.opennms.newts.api.Duration;
 import org.opennms.newts.api.Measurement;
 import org.opennms.newts.api.Resource;
@@ -27,6 +28,7 @@ import org.opennms.newts.api.Results;
 import org.opennms.newts.api.Results.Row;
 import org.opennms.newts.api.Sample;
 import org.opennms.newts.api.Timestamp;
+import org.opennms.newts.api.query.Downsampling;
 import org.opennms.newts.api.query.ResultDescriptor;
 
 // Encapsulation of results processing.
@@ -38,29 +40,60 @@ public class ResultProcessor {
     private final Timestamp m_end;
     private final ResultDescriptor m_resultDescriptor;
     private final Duration m_resolution;
+    private final Deadline m_deadline;
 
     public ResultProcessor(Resource resource, Timestamp start, Timestamp end, ResultDescriptor descriptor, Duration resolution) {
+        this(resource, start, end, descriptor, resolution, Deadline.none());
+    }
+
+    /**
+     * Creates a processor that checks the deadline as each sample row enters the pipeline, and as
+     * each result row leaves it.
+     */
+    public ResultProcessor(Resource resource, Timestamp start, Timestamp end, ResultDescriptor descriptor, Duration resolution, Deadline deadline) {
         m_resource = checkNotNull(resource, "resource argument");
         m_start = checkNotNull(start, "start argument");
         m_end = checkNotNull(end, "end argument");
         m_resultDescriptor = checkNotNull(descriptor, "result descriptor argument");
         m_resolution = checkNotNull(resolution, "resolution argument");
+        m_deadline = checkNotNull(deadline, "deadline argument");
     }
 
     public Results<Measurement> process(Iterator<Row<Sample>> samples) {
+        return collect(m_deadline.checked(exports(samples)));
+    }
+
+    /**
+     * Process samples, and reduce the results to (approximately) a maximum number of rows.
+     *
+     * @param samples
+     *            samples to process
+     * @param downsampling
+     *            the downsampling method and maximum row count
+     * @return processed measurements
+     */
+    public Results<Measurement> process(Iterator<Row<Sample>> samples, Downsampling downsampling) {
+        checkNotNull(downsampling, "downsampling argument");
+        return collect(m_deadline.checked(new Downsample(m_resultDescriptor.getExports(), downsampling, exports(samples))));
+    }
+
+    private Iterator<Row<Measurement>> exports(Iterator<Row<Sample>> samples) {
         checkNotNull(samples, "samples argument");
 
         // Build chain of iterators to process results as a stream
-        Rate rate = new Rate(samples, m_resultDescriptor.getSourceNames());
+        Rate rate = new Rate(m_deadline.checked(samples), m_resultDescriptor.getSourceNames());
         PrimaryData primaryData = new PrimaryData(m_resource, m_start.minus(m_resolution), m_end, m_resultDescriptor, rate);
         Aggregation aggregation = new Aggregation(m_resource, m_start, m_end, m_resultDescriptor, m_resolution, primaryData);
         Compute compute = new Compute(m_resultDescriptor, aggregation);
-        Export exports = new Export(m_resultDescriptor.getExports(), compute);
 
+        return new Export(m_resultDescriptor.getExports(), compute);
+    }
+
+    private static Results<Measurement> collect(Iterator<Row<Measurement>> rows) {
         Results<Measurement> measurements = new Results<Measurement>();
 
-        for (Row<Measurement> row : exports) {
-            measurements.addRow(row);
+        while (rows.hasNext()) {
+            measurements.addRow(rows.next());
         }
 
         return measurements;
@@ -27,6 +27,7 @@ import org.opennms.newts.aggregate.Utils.MeasurementRowsBuilder;
 import org.opennms.newts.api.Measurement;
 import org.opennms.newts.api.Resource;
 import org.opennms.newts.api.Results.Row;
+import org.opennms.newts.api.query.CalculationFunction;
 import org.opennms.newts.api.query.ResultDescriptor;
 import org.opennms.newts.api.query.ResultDescriptor.BinaryFunction;
 
@@ -128,4 +129,39 @@ public class ComputeTest {
         assertRowsEqual(expected, compute);
 
     }
+
+    @Test
+    public void testBlocks() {
+        int count = (Compute.BLOCK_SIZE * 2) + 1;
+        MeasurementRowsBuilder testData = new MeasurementRowsBuilder(new Resource("localhost"));
+        MeasurementRowsBuilder expected = new MeasurementRowsBuilder(new Resource("localhost"));
+
+        for (int i = 1; i <= count; i++) {
+            testData.row(i * 300).element("in", i).element("out", 2);
+            expected.row(i * 300).element("in", i).element("out", 2).element("max", Math.max(i, 2)).element("sum", i + 2)
+                    .element("scaled", (Math.max(i, 2) + i + 2) * 8);
+        }
+
+        // Row-at-a-time function, mixed in with column-wise evaluated ones.
+        CalculationFunction max = new CalculationFunction() {
+
+            @Override
+            public double apply(double... ds) {
+                return Math.max(ds[0], ds[1]);
+            }
+        };
+
+        ResultDescriptor rDescriptor = new ResultDescriptor()
+                .datasource("in", AVERAGE)
+                .datasource("out", AVERAGE)
+                .calculate("max", max, "in", "out")
+                .calculate("sum", PLUS, "in", "out")
+                .expression("scaled", "(max + sum) * 8");
+
+        Compute compute = new Compute(rDescriptor, testData.build());
+
+        assertRowsEqual(expected.build(), compute);
+
+    }
+
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.aggregate;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.newts.aggregate.Utils.assertRowsEqual;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.opennms.newts.aggregate.Utils.MeasurementRowsBuilder;
+import org.opennms.newts.api.Measurement;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Results.Row;
+import org.opennms.newts.api.Timestamp;
+import org.opennms.newts.api.query.Downsampling;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+
+public class DownsampleTest {
+
+    private static final Set<String> EXPORTS = Sets.newHashSet("m0", "m1");
+
+    @Test
+    public void testLTTB() {
+        List<Row<Measurement>> rows = downsample(Downsampling.lttb(10));
+
+        assertEquals(10, rows.size());
+
+        // Endpoints are always kept, as are the peaks.
+        assertEquals(Timestamp.fromEpochSeconds(300), rows.get(0).getTimestamp());
+        assertEquals(Timestamp.fromEpochSeconds(300000), rows.get(9).getTimestamp());
+        assertTrue(contains(rows, 250 * 300));
+        assertTrue(contains(rows, 750 * 300));
+    }
+
+    @Test
+    public void testM4() {
+        List<Row<Measurement>> rows = downsample(Downsampling.m4(60));
+
+        assertTrue(rows.size() <= 60);
+
+        // Endpoints, and the minimum and maximum of each series.
+        assertTrue(contains(rows, 300));
+        assertTrue(contains(rows, 300000));
+        assertTrue(contains(rows, 250 * 300));
+        assertTrue(contains(rows, 750 * 300));
+
+        for (int i = 1; i < rows.size(); i++) {
+            assertTrue(rows.get(i).getTimestamp().gt(rows.get(i - 1).getTimestamp()));
+        }
+    }
+
+    @Test
+    public void testPassThrough() {
+        MeasurementRowsBuilder builder = new MeasurementRowsBuilder(new Resource("localhost"));
+        MeasurementRowsBuilder expected = new MeasurementRowsBuilder(new Resource("localhost"));
+
+        for (int i = 1; i <= 10; i++) {
+            builder.row(i * 300).element("m0", i).element("m1", Double.NaN);
+            expected.row(i * 300).element("m0", i).element("m1", Double.NaN);
+        }
+
+        assertRowsEqual(expected.build(), new Downsample(EXPORTS, Downsampling.lttb(10), builder.build()));
+    }
+
+    // 1000 rows; m0 is flat, save for a spike at 250, m1 has a dip at 750, and a gap at 500.
+    private static List<Row<Measurement>> downsample(Downsampling downsampling) {
+        MeasurementRowsBuilder builder = new MeasurementRowsBuilder(new Resource("localhost"));
+
+        for (int i = 1; i <= 1000; i++) {
+            double m0 = (i == 250) ? 100 : (i % 2);
+            double m1 = (i == 750) ? -100 : (i == 500) ? Double.NaN : 50 + (i % 3);
+            builder.row(i * 300).element("m0", m0).element("m1", m1);
+        }
+
+        return Lists.newArrayList(new Downsample(EXPORTS, downsampling, builder.build()).iterator());
+    }
+
+    private static boolean contains(List<Row<Measurement>> rows, int epochSeconds) {
+        for (Row<Measurement> row : rows) {
+            if (row.getTimestamp().equals(Timestamp.fromEpochSeconds(epochSeconds))) return true;
+        }
+        return false;
+    }
+
+}
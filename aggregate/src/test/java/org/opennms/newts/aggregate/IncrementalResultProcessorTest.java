@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.aggregate;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.opennms.newts.aggregate.Utils.assertRowsEqual;
+import static org.opennms.newts.api.query.StandardAggregationFunctions.AVERAGE;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.newts.aggregate.Utils.SampleRowsBuilder;
+import org.opennms.newts.api.Duration;
+import org.opennms.newts.api.Measurement;
+import org.opennms.newts.api.MetricType;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Results;
+import org.opennms.newts.api.Results.Row;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.Timestamp;
+import org.opennms.newts.api.query.ResultDescriptor;
+
+import com.google.common.collect.Lists;
+
+
+public class IncrementalResultProcessorTest {
+
+    private static final Resource RESOURCE = new Resource("localhost");
+
+    @Test
+    public void testMatchesFullWindow() {
+
+        // Irregularly spaced counter samples, with irregular increments.
+        SampleRowsBuilder builder = new SampleRowsBuilder(RESOURCE, MetricType.COUNTER);
+        long value = 0;
+
+        for (int i = 0; i < 100; i++) {
+            value += (i % 7) * 1000;
+            builder.row(900000000 + (i * 290)).element("m0", value);
+        }
+
+        List<Row<Sample>> samples = Lists.newArrayList(builder.build());
+
+        ResultDescriptor rDescriptor = new ResultDescriptor(Duration.seconds(300))
+                .datasource("m0", "m0", Duration.seconds(600), AVERAGE)
+                .expression("bits", "m0 * 8")
+                .export("m0", "bits");
+
+        Timestamp start = Timestamp.fromEpochSeconds(900003600);
+        Duration resolution = Duration.minutes(15);
+
+        IncrementalResultProcessor incremental = new IncrementalResultProcessor(RESOURCE, start, rDescriptor, resolution);
+        Results<Measurement> actual = new Results<>();
+
+        // Feed in overlapping chunks, as successive polls of a live-tail would.
+        for (int i = 0; i < samples.size(); i += 5) {
+            Iterator<Row<Sample>> chunk = samples.subList(Math.max(0, i - 3), Math.min(samples.size(), i + 5)).iterator();
+
+            for (Row<Measurement> row : incremental.process(chunk)) {
+                actual.addRow(row);
+            }
+        }
+
+        Timestamp end = incremental.getLastEmittedTimestamp();
+
+        Results<Measurement> expected = new ResultProcessor(RESOURCE, start, end, rDescriptor, resolution)
+                .process(samples.iterator());
+
+        assertRowsEqual(expected.iterator(), actual.iterator());
+
+    }
+
+    @Test
+    public void testLateSample() {
+
+        SampleRowsBuilder builder = new SampleRowsBuilder(RESOURCE, MetricType.GAUGE);
+
+        for (int i = 0; i < 24; i++) {
+            builder.row(900000000 + (i * 300)).element("m0", i);
+        }
+
+        List<Row<Sample>> samples = Lists.newArrayList(builder.build());
+
+        ResultDescriptor rDescriptor = new ResultDescriptor(Duration.seconds(300))
+                .datasource("m0", "m0", Duration.seconds(600), AVERAGE)
+                .export("m0");
+
+        Timestamp start = Timestamp.fromEpochSeconds(900001800);
+        Duration resolution = Duration.minutes(15);
+
+        IncrementalResultProcessor incremental = new IncrementalResultProcessor(RESOURCE, start, rDescriptor, resolution);
+
+        // Everything but the sample at 900005700, which arrives late.
+        List<Row<Sample>> early = Lists.newArrayList(samples);
+        Row<Sample> late = early.remove(19);
+
+        incremental.process(early.iterator());
+
+        Timestamp end = incremental.getLastEmittedTimestamp();
+
+        // The late sample falls in the last row emitted, which is emitted again.
+        Results<Measurement> actual = incremental.process(Collections.singletonList(late).iterator());
+
+        assertEquals(1, incremental.getRevisedRowCount());
+        assertEquals(end, incremental.getLastEmittedTimestamp());
+
+        Results<Measurement> expected = new ResultProcessor(RESOURCE, end, end, rDescriptor, resolution)
+                .process(samples.iterator());
+
+        assertRowsEqual(expected.iterator(), actual.iterator());
+
+        // Samples behind the lower bound are ignored.
+        assertFalse(incremental.process(samples.subList(0, 10).iterator()).iterator().hasNext());
+
+    }
+
+    @Test
+    public void testNothingNew() {
+
+        Iterator<Row<Sample>> samples = new SampleRowsBuilder(RESOURCE, MetricType.GAUGE)
+                .row(900000000).element("m0", 1)
+                .row(900000300).element("m0", 1)
+                .build();
+
+        ResultDescriptor rDescriptor = new ResultDescriptor(Duration.seconds(300)).datasource("m0", AVERAGE).export("m0");
+
+        IncrementalResultProcessor incremental = new IncrementalResultProcessor(
+                RESOURCE,
+                Timestamp.fromEpochSeconds(900003600),
+                rDescriptor,
+                Duration.minutes(15));
+
+        // No rows are complete yet
+        assertFalse(incremental.process(samples).iterator().hasNext());
+        assertFalse(incremental.process(samples).iterator().hasNext());
+
+    }
+
+}
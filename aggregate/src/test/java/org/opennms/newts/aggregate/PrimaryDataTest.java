@@ -17,8 +17,10 @@ package org.opennms.newts.aggregate;
 
 
 import static org.opennms.newts.aggregate.Utils.assertRowsEqual;
+import static org.opennms.newts.aggregate.Utils.assertSamplesEqual;
 
 import java.util.Iterator;
+import java.util.List;
 
 import org.junit.Test;
 import org.opennms.newts.aggregate.Utils.MeasurementRowsBuilder;
@@ -32,6 +34,8 @@ import org.opennms.newts.api.Sample;
 import org.opennms.newts.api.Timestamp;
 import org.opennms.newts.api.query.ResultDescriptor;
 
+import com.google.common.collect.Lists;
+
 
 public class PrimaryDataTest {
 
@@ -391,6 +395,47 @@ public class PrimaryDataTest {
         assertRowsEqual(expected, primaryData);
 
     }
+    @Test
+    public void testWideReport() {
+
+        // Enough sources to be evaluated in parallel; Every source should get the same results it
+        // would if it were the only one.
+        int width = PrimaryData.PARALLEL_THRESHOLD + 44;
+        SampleRowsBuilder builder = new SampleRowsBuilder(new Resource("localhost"), MetricType.GAUGE);
+        ResultDescriptor rDescriptor = new ResultDescriptor(Duration.seconds(300));
+
+        for (int i = 0; i < 40; i++) {
+            builder.row(900000000 + (i * 170));
+
+            for (int j = 0; j < width; j++) {
+                // Leave some gaps, (some longer than the heartbeat).
+                if ((i + j) % 5 != 0 && (j % 7 != 0 || i < 10 || i > 20)) {
+                    builder.element("m" + j, (i * j) % 13);
+                }
+            }
+        }
+
+        for (int j = 0; j < width; j++) {
+            rDescriptor.datasource("m" + j, "m" + j, Duration.seconds(600), null);
+        }
+
+        List<Row<Sample>> samples = Lists.newArrayList(builder.build());
+        Timestamp start = Timestamp.fromEpochSeconds(900000300), end = Timestamp.fromEpochSeconds(900006600);
+
+        List<Row<Measurement>> actual = Lists.newArrayList(
+                new PrimaryData(new Resource("localhost"), start, end, rDescriptor, samples.iterator()).iterator());
+
+        for (int j = 0; j < width; j++) {
+            ResultDescriptor narrow = new ResultDescriptor(Duration.seconds(300)).datasource("m" + j, "m" + j, Duration.seconds(600), null);
+            Iterator<Row<Measurement>> expected = new PrimaryData(new Resource("localhost"), start, end, narrow, samples.iterator());
+
+            for (Row<Measurement> row : actual) {
+                assertSamplesEqual(expected.next().getElement("m" + j), row.getElement("m" + j));
+            }
+        }
+
+    }
+
     /*
      *
      * 
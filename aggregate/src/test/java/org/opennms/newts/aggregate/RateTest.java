@@ -134,6 +134,26 @@ public class RateTest {
 
     }
 
+    @Test
+    public void testWrap() {
+
+        Results<Sample> input = new Results<>();
+        Timestamp start = Timestamp.fromEpochMillis(1000);
+
+        input.addElement(new Sample(start, m_resource, m_metrics[0], COUNTER, new Counter(0xFFFFFFF0L)));
+        input.addElement(new Sample(start.plus(Duration.seconds(2)), m_resource, m_metrics[0], COUNTER, new Counter(0x10L)));
+        input.addElement(new Sample(start.plus(Duration.seconds(4)), m_resource, m_metrics[0], COUNTER, new Counter(0x10L)));
+
+        Iterator<Results.Row<Sample>> output = new Rate(input.iterator(), getMetrics(1)).iterator();
+
+        output.next();
+
+        // 32-bit wrap; (0xFFFFFFFF - 0xFFFFFFF0) + 0x10 + 1 = 32, over 2 seconds
+        assertEquals(16.0d, output.next().getElement(m_metrics[0]).getValue().doubleValue(), 0.0d);
+        assertEquals(0.0d, output.next().getElement(m_metrics[0]).getValue().doubleValue(), 0.0d);
+
+    }
+
     private Set<String> getMetrics(int number) {
         return Sets.newHashSet(Arrays.copyOf(m_metrics, number));
     }
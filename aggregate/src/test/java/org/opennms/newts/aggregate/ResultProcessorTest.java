@@ -19,10 +19,12 @@ import static org.opennms.newts.aggregate.Utils.assertRowsEqual;
 import static org.opennms.newts.api.query.StandardAggregationFunctions.AVERAGE;
 
 import java.util.Iterator;
+import java.util.concurrent.CancellationException;
 
 import org.junit.Test;
 import org.opennms.newts.aggregate.Utils.MeasurementRowsBuilder;
 import org.opennms.newts.aggregate.Utils.SampleRowsBuilder;
+import org.opennms.newts.api.Deadline;
 import org.opennms.newts.api.Duration;
 import org.opennms.newts.api.Measurement;
 import org.opennms.newts.api.MetricType;
@@ -196,4 +198,30 @@ public class ResultProcessorTest {
 
     }
 
+    @Test(expected = CancellationException.class)
+    public void testCancelled() {
+
+        Iterator<Row<Sample>> testData = new SampleRowsBuilder(new Resource("localhost"), MetricType.GAUGE)
+                .row(900000000).element("m0", 1)
+                .row(900000300).element("m0", 1)
+                .build();
+
+        ResultDescriptor rDescriptor = new ResultDescriptor(Duration.seconds(300))
+                .datasource("m0-avg", "m0", Duration.seconds(600), AVERAGE).export("m0-avg");
+
+        Deadline deadline = Deadline.none();
+        deadline.cancel();
+
+        ResultProcessor processor = new ResultProcessor(
+                new Resource("localhost"),
+                Timestamp.fromEpochSeconds(900000000),
+                Timestamp.fromEpochSeconds(900000300),
+                rDescriptor,
+                Duration.minutes(5),
+                deadline);
+
+        processor.process(testData);
+
+    }
+
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import org.opennms.newts.api.query.Downsampling;
+import org.opennms.newts.api.query.ResultDescriptor;
+
+import com.google.common.base.Optional;
+
+
+/**
+ * Base {@link SampleRepository}, whose narrower <code>select</code> overloads each delegate to the
+ * widest; Implementations need only provide those two (one for measurements, and one for samples),
+ * and {@link #insert(java.util.Collection)}. Omitted contexts are {@link Context#DEFAULT_CONTEXT},
+ * omitted downsampling is none, and omitted deadlines are {@link Deadline#none()}.
+ */
+public abstract class AbstractSampleRepository implements SampleRepository {
+
+    @Override
+    public Results<Measurement> select(Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor, Duration resolution) {
+        return select(Context.DEFAULT_CONTEXT, resource, start, end, descriptor, resolution, Optional.<Downsampling> absent(), Deadline.none());
+    }
+
+    @Override
+    public Results<Measurement> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor, Duration resolution) {
+        return select(context, resource, start, end, descriptor, resolution, Optional.<Downsampling> absent(), Deadline.none());
+    }
+
+    @Override
+    public Results<Measurement> select(Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor, Duration resolution,
+            Downsampling downsampling) {
+        return select(Context.DEFAULT_CONTEXT, resource, start, end, descriptor, resolution, Optional.of(downsampling), Deadline.none());
+    }
+
+    @Override
+    public Results<Measurement> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor,
+            Duration resolution, Downsampling downsampling) {
+        return select(context, resource, start, end, descriptor, resolution, Optional.of(downsampling), Deadline.none());
+    }
+
+    @Override
+    public abstract Results<Measurement> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor,
+            Duration resolution, Optional<Downsampling> downsampling, Deadline deadline);
+
+    @Override
+    public Results<Sample> select(Resource resource, Optional<Timestamp> start, Optional<Timestamp> end) {
+        return select(Context.DEFAULT_CONTEXT, resource, start, end, Deadline.none());
+    }
+
+    @Override
+    public Results<Sample> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end) {
+        return select(context, resource, start, end, Deadline.none());
+    }
+
+    @Override
+    public abstract Results<Sample> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, Deadline deadline);
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+/**
+ * Mutable, primitive-backed counterpart to {@link ValueType} arithmetic.
+ * <p>
+ * {@link ValueType}s are immutable, and each arithmetic operation allocates a new instance (and
+ * for counter types, {@link com.google.common.primitives.UnsignedLong}s too). Accumulators
+ * produce the same results, but operate in place on a primitive, making them suitable for the
+ * inner loops of results processing. Accumulators are not thread-safe.
+ * </p>
+ */
+public abstract class Accumulator {
+
+    /**
+     * Returns a new accumulator, (initialized to zero) for the given type; {@link GaugeAccumulator}
+     * for {@link MetricType#GAUGE}, and {@link CounterAccumulator} otherwise.
+     *
+     * @param type
+     *            the metric type
+     * @return a new accumulator
+     */
+    public static Accumulator forType(MetricType type) {
+        return (type == MetricType.GAUGE) ? new GaugeAccumulator() : new CounterAccumulator(type);
+    }
+
+    public abstract MetricType getType();
+
+    /** Reset the accumulated value to zero. */
+    public abstract Accumulator reset();
+
+    /** Replace the accumulated value. */
+    public abstract Accumulator set(ValueType<?> value);
+
+    /** Equivalent to {@code accumulated.plus(value)}. */
+    public abstract Accumulator plus(ValueType<?> value);
+
+    /** Equivalent to {@code accumulated.plus(value.times(factor))}. */
+    public abstract Accumulator plusProduct(ValueType<?> value, long factor);
+
+    /** Equivalent to {@code accumulated.divideBy(divisor)}. */
+    public abstract Accumulator divideBy(long divisor);
+
+    public abstract long longValue();
+
+    public abstract double doubleValue();
+
+    /**
+     * @return a new {@link ValueType} of the accumulated value
+     */
+    public abstract ValueType<?> getValue();
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s]", getClass().getSimpleName(), getValue());
+    }
+
+}
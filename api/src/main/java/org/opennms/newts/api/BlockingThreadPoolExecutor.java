@@ -26,6 +26,10 @@ import java.util.concurrent.TimeUnit;
 import com.google.common.base.Throwables;
 
 
+/**
+ * @deprecated Use {@link BoundedExecutor}, which blocks without polling, and reports metrics.
+ */
+@Deprecated
 public class BlockingThreadPoolExecutor extends ThreadPoolExecutor {
 
     public static class BlockingExecutionHandler implements RejectedExecutionHandler {
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+
+/**
+ * A {@link ThreadPoolExecutor} with a bounded queue, and a configurable {@link WaitStrategy} for
+ * tasks submitted while the queue is full.
+ * <p>
+ * Queue depth, the rate at which submissions find the queue full, tasks dropped, and the time
+ * submitters spend waiting on a full queue are reported to a {@link MetricRegistry}, (named
+ * <code>&lt;prefix&gt;.queue-depth</code>, <code>&lt;prefix&gt;.queue-full</code>,
+ * <code>&lt;prefix&gt;.dropped</code>, and <code>&lt;prefix&gt;.submit-wait</code>).
+ * </p>
+ */
+public class BoundedExecutor extends ThreadPoolExecutor {
+
+    /** What to do with a task submitted when the queue is full. */
+    public static enum WaitStrategy {
+        /** Block the submitter until there is room in the queue. */
+        BLOCK,
+        /** Run the task on the submitter's thread. */
+        CALLER_RUNS,
+        /** Discard the oldest queued task to make room. */
+        DROP_OLDEST;
+    }
+
+    private final WaitStrategy m_waitStrategy;
+    private final Meter m_queueFull;
+    private final Meter m_dropped;
+    private final Timer m_submitWait;
+
+    /**
+     * @param corePoolSize
+     *            the number of threads to keep in the pool, even when idle
+     * @param maximumPoolSize
+     *            the maximum number of threads
+     * @param keepAliveTime
+     *            time that idle threads in excess of the core size are kept
+     * @param unit
+     *            unit of {@code keepAliveTime}
+     * @param queueCapacity
+     *            capacity of the task queue
+     * @param waitStrategy
+     *            what to do with tasks submitted when the queue is full
+     * @param registry
+     *            registry to report metrics to
+     * @param prefix
+     *            prefix of metric names
+     */
+    public BoundedExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, int queueCapacity, WaitStrategy waitStrategy, MetricRegistry registry, String prefix) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, new ArrayBlockingQueue<Runnable>(queueCapacity));
+
+        m_waitStrategy = checkNotNull(waitStrategy, "wait strategy argument");
+        checkNotNull(registry, "registry argument");
+        checkNotNull(prefix, "prefix argument");
+        checkArgument(queueCapacity > 0, "queue capacity must be greater than zero");
+
+        m_queueFull = registry.meter(name(prefix, "queue-full"));
+        m_dropped = registry.meter(name(prefix, "dropped"));
+        m_submitWait = registry.timer(name(prefix, "submit-wait"));
+
+        final BlockingQueue<Runnable> queue = getQueue();
+
+        // Replace, rather than collide with, the gauge of a previous executor by the same name.
+        registry.remove(name(prefix, "queue-depth"));
+        registry.register(name(prefix, "queue-depth"), new Gauge<Integer>() {
+
+            @Override
+            public Integer getValue() {
+                return queue.size();
+            }
+        });
+
+        setRejectedExecutionHandler(new FullQueueHandler());
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return m_waitStrategy;
+    }
+
+    /**
+     * @return the number of tasks discarded by {@link WaitStrategy#DROP_OLDEST}
+     */
+    public long getDroppedCount() {
+        return m_dropped.getCount();
+    }
+
+    private class FullQueueHandler implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Executor has shut down");
+            }
+
+            m_queueFull.mark();
+
+            switch (m_waitStrategy) {
+                case CALLER_RUNS:
+                    task.run();
+                    break;
+                case DROP_OLDEST:
+                    if (executor.getQueue().poll() != null) {
+                        m_dropped.mark();
+                    }
+                    executor.execute(task);
+                    break;
+                default:
+                    block(task, executor);
+            }
+        }
+
+        private void block(Runnable task, ThreadPoolExecutor executor) {
+            Timer.Context ctx = m_submitWait.time();
+
+            try {
+                executor.getQueue().put(task);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for queue space", e);
+            }
+            finally {
+                ctx.stop();
+            }
+
+            // Shut down while we waited; Withdraw the task, if it hasn't already been picked up.
+            if (executor.isShutdown() && executor.remove(task)) {
+                throw new RejectedExecutionException("Executor has shut down");
+            }
+        }
+
+    }
+
+}
@@ -1,6 +1,9 @@
 package org.opennms.newts.api;
 
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
+
 public class Context {
 
     public static final Context DEFAULT_CONTEXT = new Context("G");
@@ -8,13 +11,25 @@ public class Context {
     private final String m_id;
 
     public Context(String id) {
-        m_id = id;
+        m_id = checkNotNull(id, "id argument");
     }
 
     public String getId() {
         return m_id;
     }
 
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Context)) return false;
+        return m_id.equals(((Context) other).m_id);
+    }
+
+    @Override
+    public int hashCode() {
+        return m_id.hashCode();
+    }
+
     @Override
     public String toString() {
         return "Context[m_id=" + m_id + "]";
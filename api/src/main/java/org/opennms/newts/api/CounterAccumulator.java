@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.primitives.UnsignedLong;
+import com.google.common.primitives.UnsignedLongs;
+
+
+/**
+ * A long-backed {@link Accumulator}, with the (unsigned, wrapping) arithmetic of {@link Counter},
+ * {@link Derive}, or {@link Absolute}.
+ */
+public class CounterAccumulator extends Accumulator {
+
+    private static final long MAX32 = 0xFFFFFFFFL;
+
+    private final MetricType m_type;
+    private long m_value = 0;
+
+    public CounterAccumulator(MetricType type) {
+        m_type = checkNotNull(type, "type argument");
+        checkArgument(type != MetricType.GAUGE, "not a counter type: %s", type);
+    }
+
+    @Override
+    public MetricType getType() {
+        return m_type;
+    }
+
+    @Override
+    public CounterAccumulator reset() {
+        m_value = 0;
+        return this;
+    }
+
+    @Override
+    public CounterAccumulator set(ValueType<?> value) {
+        m_value = value.longValue();
+        return this;
+    }
+
+    public CounterAccumulator set(long value) {
+        m_value = value;
+        return this;
+    }
+
+    @Override
+    public CounterAccumulator plus(ValueType<?> value) {
+        m_value += value.longValue();
+        return this;
+    }
+
+    @Override
+    public CounterAccumulator plusProduct(ValueType<?> value, long factor) {
+        if (value instanceof Counter) {
+            m_value += value.longValue() * factor;
+        }
+        else {
+            m_value += (long) (value.doubleValue() * factor);
+        }
+        return this;
+    }
+
+    /**
+     * Replace the accumulated value with its difference from a previous value, as
+     * {@link ValueType#delta(Number)} does for this accumulator's type.
+     *
+     * @param previous
+     *            the previous value
+     * @return this accumulator
+     * @see #delta(MetricType, long, long)
+     */
+    public CounterAccumulator delta(ValueType<?> previous) {
+        m_value = delta(m_type, m_value, previous.longValue());
+        return this;
+    }
+
+    /** Unsigned division. */
+    @Override
+    public CounterAccumulator divideBy(long divisor) {
+        m_value = UnsignedLongs.divide(m_value, divisor);
+        return this;
+    }
+
+    @Override
+    public long longValue() {
+        return m_value;
+    }
+
+    @Override
+    public double doubleValue() {
+        return toDouble(m_value);
+    }
+
+    @Override
+    public Counter getValue() {
+        UnsignedLong value = UnsignedLong.fromLongBits(m_value);
+
+        switch (m_type) {
+            case DERIVE:
+                return new Derive(value);
+            case ABSOLUTE:
+                return new Absolute(value);
+            default:
+                return new Counter(value);
+        }
+    }
+
+    /**
+     * Difference between two unsigned values, for a given counter type.
+     * <p>
+     * For {@link MetricType#COUNTER}, a current value less than the previous one is treated as a
+     * wrap; A 32-bit wrap if that accounts for the difference, otherwise a 64-bit one.
+     * {@link MetricType#DERIVE} values are simply subtracted, and the delta of an
+     * {@link MetricType#ABSOLUTE} value is the current value.
+     * </p>
+     *
+     * @param type
+     *            counter type
+     * @param current
+     *            current value (unsigned)
+     * @param previous
+     *            previous value (unsigned)
+     * @return the difference (unsigned)
+     */
+    public static long delta(MetricType type, long current, long previous) {
+        switch (type) {
+            case ABSOLUTE:
+                return current;
+            case DERIVE:
+                return current - previous;
+            default:
+                // If previous value is greater-than this one, we've wrapped
+                if (UnsignedLongs.compare(previous, current) > 0) {
+
+                    // Still smaller, this is a 64-bit counter wrap (arithmetic wraps mod 2^64)
+                    if (UnsignedLongs.compare(previous, current + MAX32 + 1) > 0) {
+                        return current - previous;
+                    }
+                    // Process as 32-bit counter wrap
+                    else {
+                        return (MAX32 - previous) + current + 1;
+                    }
+                }
+
+                return current - previous;
+        }
+    }
+
+    /**
+     * @return the double value of an unsigned long, rounded as {@link UnsignedLong#doubleValue()}
+     */
+    static double toDouble(long value) {
+        double d = (double) (value & Long.MAX_VALUE);
+        return (value < 0) ? d + 0x1.0p63 : d;
+    }
+
+}
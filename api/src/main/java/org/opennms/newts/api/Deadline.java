@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.collect.ForwardingIterator;
+
+
+/**
+ * A point in time by which a query must complete, and a token for cancelling it sooner. Query
+ * stages call {@link #check()} as they go, and abandon the query (with a
+ * {@link CancellationException}) once the deadline has passed, or the query was cancelled;
+ * Outstanding work (database requests, for example) is abandoned by way of callbacks registered
+ * with {@link #onCancel(Runnable)}.
+ */
+public class Deadline {
+
+    private final long m_deadlineNanos;
+    private final boolean m_bounded;
+    private final AtomicBoolean m_cancelled = new AtomicBoolean(false);
+    private final List<Runnable> m_callbacks = new CopyOnWriteArrayList<>();
+
+    private Deadline(long deadlineNanos, boolean bounded) {
+        m_deadlineNanos = deadlineNanos;
+        m_bounded = bounded;
+    }
+
+    /** @return a deadline that expires after {@code timeout} */
+    public static Deadline after(Duration timeout) {
+        checkNotNull(timeout, "timeout argument");
+        return after(timeout.asMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** @return a deadline that expires after {@code timeout} */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        checkArgument(timeout >= 0, "negative timeout");
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout), true);
+    }
+
+    /** @return a deadline that never expires (but can still be cancelled) */
+    public static Deadline none() {
+        return new Deadline(0, false);
+    }
+
+    /** Cancels the query, running any registered callbacks. */
+    public void cancel() {
+        if (m_cancelled.compareAndSet(false, true)) {
+            for (Runnable callback : m_callbacks) {
+                callback.run();
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return m_cancelled.get();
+    }
+
+    /** @return true if the query was cancelled, or the deadline has passed */
+    public boolean isExpired() {
+        return isCancelled() || (m_bounded && System.nanoTime() - m_deadlineNanos >= 0);
+    }
+
+    /** @return the time remaining, ({@link Long#MAX_VALUE} if unbounded) */
+    public long remaining(TimeUnit unit) {
+        if (!m_bounded) {
+            return Long.MAX_VALUE;
+        }
+        return unit.convert(Math.max(0, m_deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registers a callback to be run when the query is cancelled, (or immediately, if it already
+     * has been).
+     */
+    public void onCancel(Runnable callback) {
+        m_callbacks.add(checkNotNull(callback, "callback argument"));
+
+        if (isCancelled() && m_callbacks.remove(callback)) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Abandons the query if it has expired.
+     *
+     * @throws CancellationException
+     *             if the query was cancelled, or the deadline has passed
+     */
+    public void check() {
+        if (isExpired()) {
+            boolean timedOut = !isCancelled();
+            cancel();
+            throw new CancellationException(timedOut ? "query deadline exceeded" : "query cancelled");
+        }
+    }
+
+    /**
+     * Waits (no longer than the deadline) for a future to complete. The future is cancelled if
+     * the deadline passes first, (or already has), or if the wait is interrupted.
+     *
+     * @throws CancellationException
+     *             if the query was cancelled, or the deadline passed
+     */
+    public <V> V get(Future<V> future) throws InterruptedException, ExecutionException {
+        checkNotNull(future, "future argument");
+
+        try {
+            check();
+
+            if (!m_bounded) {
+                return future.get();
+            }
+
+            return future.get(remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException e) {
+            future.cancel(true);
+            check();
+            throw new CancellationException("query deadline exceeded");
+        }
+        catch (CancellationException | InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    /** @return an iterator that checks the deadline before each element */
+    public <T> Iterator<T> checked(final Iterator<T> iterator) {
+        checkNotNull(iterator, "iterator argument");
+
+        return new ForwardingIterator<T>() {
+
+            @Override
+            protected Iterator<T> delegate() {
+                return iterator;
+            }
+
+            @Override
+            public T next() {
+                check();
+                return super.next();
+            }
+        };
+    }
+
+}
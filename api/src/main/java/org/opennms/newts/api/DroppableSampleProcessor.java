@@ -0,0 +1,26 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+/**
+ * A {@link SampleProcessor} that tolerates lost samples (a cache, or index that is rebuilt as
+ * samples recur, for example). When unable to keep up, {@link SampleProcessorService} discards
+ * the oldest samples pending for such processors, rather than applying backpressure to ingest.
+ */
+public interface DroppableSampleProcessor extends SampleProcessor {
+
+}
@@ -18,7 +18,6 @@ package org.opennms.newts.api;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -30,10 +29,12 @@ public class Duration implements Comparable<Duration> {
 
     private final long m_duration;
     private final TimeUnit m_unit;
+    private final long m_nanos;
 
     public Duration(long duration, TimeUnit unit) {
         m_duration = duration;
         m_unit = unit;
+        m_nanos = unit.toNanos(duration);
     }
 
     public long convert(TimeUnit unit) {
@@ -48,6 +49,13 @@ public class Duration implements Comparable<Duration> {
         return convert(TimeUnit.SECONDS);
     }
 
+    /**
+     * @return the canonical representation of this duration, in nanoseconds
+     */
+    public long asNanos() {
+        return m_nanos;
+    }
+
     public static Duration days(long days) {
         return new Duration(days, TimeUnit.DAYS);
     }
@@ -142,35 +150,34 @@ public class Duration implements Comparable<Duration> {
 
     @Override
     public int compareTo(Duration o) {
-        TimeUnit unit = Timestamp.finest(getUnit(), o.getUnit());
-        return convert(unit) < o.convert(unit) ? -1 : (convert(unit) > o.convert(unit) ? 1 : 0);
+        return (m_nanos < o.m_nanos) ? -1 : ((m_nanos == o.m_nanos) ? 0 : 1);
     }
 
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof Duration)) return false;
-        return compareTo((Duration) o) == 0;
+        return m_nanos == ((Duration) o).m_nanos;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(Long.valueOf(convert(TimeUnit.NANOSECONDS)));
+        return (int) (m_nanos ^ (m_nanos >>> 32));
     }
 
     public boolean lt(Duration o) {
-        return compareTo(o) == -1;
+        return m_nanos < o.m_nanos;
     }
 
     public boolean gt(Duration o) {
-        return compareTo(o) == 1;
+        return m_nanos > o.m_nanos;
     }
 
     public boolean lte(Duration o) {
-        return compareTo(o) <= 0;
+        return m_nanos <= o.m_nanos;
     }
 
     public boolean gte(Duration o) {
-        return compareTo(o) >= 0;
+        return m_nanos >= o.m_nanos;
     }
 
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+/**
+ * A double-backed {@link Accumulator}, with the arithmetic of {@link Gauge}.
+ */
+public class GaugeAccumulator extends Accumulator {
+
+    private double m_value = 0.0d;
+
+    @Override
+    public MetricType getType() {
+        return MetricType.GAUGE;
+    }
+
+    @Override
+    public GaugeAccumulator reset() {
+        m_value = 0.0d;
+        return this;
+    }
+
+    @Override
+    public GaugeAccumulator set(ValueType<?> value) {
+        m_value = value.doubleValue();
+        return this;
+    }
+
+    @Override
+    public GaugeAccumulator plus(ValueType<?> value) {
+        m_value += value.doubleValue();
+        return this;
+    }
+
+    @Override
+    public GaugeAccumulator plusProduct(ValueType<?> value, long factor) {
+        // The product is in the arithmetic of the value's own type; Unsigned, and wrapping for counters.
+        if (value instanceof Counter) {
+            m_value += CounterAccumulator.toDouble(value.longValue() * factor);
+        }
+        else {
+            m_value += value.doubleValue() * factor;
+        }
+        return this;
+    }
+
+    @Override
+    public GaugeAccumulator divideBy(long divisor) {
+        m_value /= divisor;
+        return this;
+    }
+
+    @Override
+    public long longValue() {
+        return (long) m_value;
+    }
+
+    @Override
+    public double doubleValue() {
+        return m_value;
+    }
+
+    @Override
+    public Gauge getValue() {
+        return new Gauge(m_value);
+    }
+
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.opennms.newts.api.query.Downsampling;
+import org.opennms.newts.api.query.ResultDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.SequenceReportingEventHandler;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+
+
+/**
+ * A {@link SampleRepository} that hands inserted samples off to a pre-allocated ring buffer (an
+ * LMAX Disruptor), rather than writing them directly.
+ * <p>
+ * The ring is consumed by one stage that writes to the underlying repository, and one stage for
+ * each {@link SampleProcessor} (the search indexer, for example); Stages run concurrently, each
+ * on its own thread, and coalesce all of the entries available to them (up to a maximum number of
+ * samples) into a single write. Inserts return as soon as the samples have been published, and
+ * only block when the slowest stage falls a full ring behind. The underlying repository should
+ * not itself submit to the sample processors.
+ * </p>
+ * <p>
+ * A write that fails is retried (after a doubling delay, up to {@code maxRetries} times); The stage
+ * does not advance meanwhile, so a failing store applies backpressure to inserts once the ring
+ * fills. Delivery is nonetheless at-most-once: Inserts are acknowledged before samples are
+ * durable, and samples are lost if they are still failing after the last retry, or if the process
+ * exits with them in the ring.
+ * </p>
+ * <p>
+ * Metrics are reported per stage, prefixed <code>ingest-ring.&lt;stage&gt;</code>; These are
+ * <code>lag</code> (entries published, but not yet consumed), <code>samples</code> (samples
+ * consumed), <code>batch-size</code> (samples per write), <code>retries</code> (writes retried),
+ * and <code>failures</code> (samples abandoned after the last retry). The ring's free space is
+ * reported as <code>ingest-ring.remaining-capacity</code>.
+ * </p>
+ */
+public class IngestRing extends AbstractSampleRepository {
+
+    /** How stages wait for entries to be published. */
+    public static enum WaitStrategy {
+        /** Wait on a lock/condition; Lowest CPU use, highest latency. */
+        BLOCKING,
+        /** Spin, then yield, then sleep briefly. */
+        SLEEPING,
+        /** Spin, then yield; Low latency at the expense of a core per stage. */
+        YIELDING,
+        /** Spin; Lowest latency, highest CPU use. */
+        BUSY_SPIN;
+
+        private com.lmax.disruptor.WaitStrategy create() {
+            switch (this) {
+                case SLEEPING:
+                    return new SleepingWaitStrategy();
+                case YIELDING:
+                    return new YieldingWaitStrategy();
+                case BUSY_SPIN:
+                    return new BusySpinWaitStrategy();
+                default:
+                    return new BlockingWaitStrategy();
+            }
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(IngestRing.class);
+
+    private static final String PREFIX = "ingest-ring";
+
+    /** Default number of times a failed write is retried. */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    /** Delay before the first retry of a failed write; It doubles with each retry after. */
+    static final long RETRY_DELAY_MILLIS = 100;
+
+    private static final EventTranslatorOneArg<Slot, Collection<Sample>> TRANSLATOR = new EventTranslatorOneArg<Slot, Collection<Sample>>() {
+
+        @Override
+        public void translateTo(Slot slot, long sequence, Collection<Sample> samples) {
+            slot.m_samples = samples;
+        }
+    };
+
+    private final SampleRepository m_repository;
+    private final Disruptor<Slot> m_disruptor;
+    private final RingBuffer<Slot> m_ringBuffer;
+    private final ExecutorService m_executor;
+    private volatile boolean m_isShutdown = false;
+
+    public IngestRing(SampleRepository repository, Set<SampleProcessor> processors, int bufferSize, WaitStrategy waitStrategy, int maxBatchSamples, MetricRegistry registry) {
+        this(repository, processors, bufferSize, waitStrategy, maxBatchSamples, DEFAULT_MAX_RETRIES, registry);
+    }
+
+    /**
+     * @param repository
+     *            repository to write samples to
+     * @param processors
+     *            sample processors to submit samples to
+     * @param bufferSize
+     *            number of slots in the ring; Must be a power of 2
+     * @param waitStrategy
+     *            how stages wait for entries to be published
+     * @param maxBatchSamples
+     *            maximum number of samples a stage coalesces into a single write
+     * @param maxRetries
+     *            number of times a failed write is retried before its samples are abandoned
+     * @param registry
+     *            registry to report metrics to
+     */
+    @Inject
+    public IngestRing(@Named("ingestRing.repository") SampleRepository repository, Set<SampleProcessor> processors, @Named("ingestRing.bufferSize") int bufferSize,
+            @Named("ingestRing.waitStrategy") WaitStrategy waitStrategy, @Named("ingestRing.maxBatchSamples") int maxBatchSamples,
+            @Named("ingestRing.maxRetries") int maxRetries, MetricRegistry registry) {
+        m_repository = checkNotNull(repository, "repository argument");
+        checkNotNull(processors, "processors argument");
+        checkArgument(bufferSize > 0 && Integer.bitCount(bufferSize) == 1, "bufferSize must be a power of 2");
+        checkNotNull(waitStrategy, "waitStrategy argument");
+        checkArgument(maxBatchSamples > 0, "maxBatchSamples must be non-zero");
+        checkArgument(maxRetries >= 0, "maxRetries must not be negative");
+        checkNotNull(registry, "registry argument");
+
+        m_executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat(PREFIX + "-%d").build());
+        m_disruptor = new Disruptor<>(Slot.FACTORY, bufferSize, m_executor, ProducerType.MULTI, waitStrategy.create());
+
+        List<Stage> stages = Lists.newArrayList();
+
+        stages.add(new Stage("storage", new SampleProcessor() {
+
+            @Override
+            public void submit(Collection<Sample> samples) {
+                m_repository.insert(samples);
+            }
+        }, maxBatchSamples, maxRetries, registry));
+
+        Map<String, Integer> names = Maps.newHashMap();
+
+        for (SampleProcessor processor : processors) {
+            stages.add(new Stage(SampleProcessorService.uniqueName(names, processor), processor, maxBatchSamples, maxRetries, registry));
+        }
+
+        // Once every stage is done with a slot, release its samples.
+        m_disruptor.handleEventsWith(stages.toArray(new Stage[stages.size()])).then(Slot.CLEARER);
+        m_ringBuffer = m_disruptor.start();
+
+        registry.remove(MetricRegistry.name(PREFIX, "remaining-capacity"));
+        registry.register(MetricRegistry.name(PREFIX, "remaining-capacity"), new Gauge<Long>() {
+
+            @Override
+            public Long getValue() {
+                return m_ringBuffer.remainingCapacity();
+            }
+        });
+
+        LOG.info("Started ingest ring of {} slots with {} stages ({})", bufferSize, stages.size(), waitStrategy);
+    }
+
+    /**
+     * Publishes samples to the ring; Blocks only when the ring is full.
+     */
+    @Override
+    public void insert(Collection<Sample> samples) {
+        checkState(!m_isShutdown, "ingest ring is shut down");
+
+        if (samples.isEmpty()) {
+            return;
+        }
+
+        m_ringBuffer.publishEvent(TRANSLATOR, samples);
+    }
+
+    @Override
+    public Results<Measurement> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor,
+            Duration resolution, Optional<Downsampling> downsampling, Deadline deadline) {
+        return m_repository.select(context, resource, start, end, descriptor, resolution, downsampling, deadline);
+    }
+
+    @Override
+    public Results<Sample> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, Deadline deadline) {
+        return m_repository.select(context, resource, start, end, deadline);
+    }
+
+    /**
+     * Stops accepting samples, and waits for those already published to be consumed by every
+     * stage.
+     */
+    public void shutdown() {
+        LOG.info("Shutting down ingest ring");
+
+        m_isShutdown = true;
+        m_disruptor.shutdown();
+        m_executor.shutdown();
+    }
+
+    /** A (reusable) ring entry. */
+    private static class Slot {
+
+        private static final EventFactory<Slot> FACTORY = new EventFactory<Slot>() {
+
+            @Override
+            public Slot newInstance() {
+                return new Slot();
+            }
+        };
+
+        private static final EventHandler<Slot> CLEARER = new EventHandler<Slot>() {
+
+            @Override
+            public void onEvent(Slot slot, long sequence, boolean endOfBatch) {
+                slot.m_samples = null;
+            }
+        };
+
+        private Collection<Sample> m_samples;
+
+    }
+
+    /**
+     * A consumer of the ring. Entries are coalesced until the end of the batch made available by
+     * the ring (or {@code maxSamples}), and then written at once.
+     */
+    private class Stage implements SequenceReportingEventHandler<Slot> {
+
+        private final String m_name;
+        private final SampleProcessor m_processor;
+        private final int m_maxSamples;
+        private final int m_maxRetries;
+        private final Meter m_samples;
+        private final Meter m_retries;
+        private final Meter m_failures;
+        private final Histogram m_batchSize;
+        private Sequence m_sequence;
+        private Collection<Sample> m_batch;
+        private boolean m_isCopy;
+
+        private Stage(String name, SampleProcessor processor, int maxSamples, int maxRetries, MetricRegistry registry) {
+            String prefix = MetricRegistry.name(PREFIX, name);
+
+            m_name = name;
+            m_processor = processor;
+            m_maxSamples = maxSamples;
+            m_maxRetries = maxRetries;
+            m_samples = registry.meter(MetricRegistry.name(prefix, "samples"));
+            m_retries = registry.meter(MetricRegistry.name(prefix, "retries"));
+            m_failures = registry.meter(MetricRegistry.name(prefix, "failures"));
+            m_batchSize = registry.histogram(MetricRegistry.name(prefix, "batch-size"));
+
+            registry.remove(MetricRegistry.name(prefix, "lag"));
+            registry.register(MetricRegistry.name(prefix, "lag"), new Gauge<Long>() {
+
+                @Override
+                public Long getValue() {
+                    return (m_sequence != null) ? m_ringBuffer.getCursor() - m_sequence.get() : 0;
+                }
+            });
+        }
+
+        @Override
+        public void setSequenceCallback(Sequence sequence) {
+            m_sequence = sequence;
+        }
+
+        @Override
+        public void onEvent(Slot slot, long sequence, boolean endOfBatch) {
+            if (m_batch == null) {
+                m_batch = slot.m_samples;
+            }
+            else {
+                if (!m_isCopy) {
+                    m_batch = Lists.newArrayList(m_batch);
+                    m_isCopy = true;
+                }
+                m_batch.addAll(slot.m_samples);
+            }
+
+            if (endOfBatch || m_batch.size() >= m_maxSamples) {
+                flush();
+
+                // Written; Make the slots consumed so far available to producers.
+                m_sequence.set(sequence);
+            }
+        }
+
+        private void flush() {
+            m_samples.mark(m_batch.size());
+            m_batchSize.update(m_batch.size());
+
+            try {
+                submit();
+            }
+            finally {
+                m_batch = null;
+                m_isCopy = false;
+            }
+        }
+
+        // Retries (holding up the stage) until the batch is written, or the retries run out.
+        private void submit() {
+            for (int attempt = 0;; attempt++) {
+                try {
+                    m_processor.submit(m_batch);
+                    return;
+                }
+                catch (RuntimeException e) {
+                    if (attempt >= m_maxRetries) {
+                        m_failures.mark(m_batch.size());
+                        LOG.error("Ingest ring stage {} failed; Abandoning {} samples", m_name, m_batch.size(), e);
+                        return;
+                    }
+
+                    m_retries.mark();
+                    LOG.warn("Ingest ring stage {} failed; Retrying ({} of {}): {}", m_name, attempt + 1, m_maxRetries, e.toString());
+                }
+
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS << attempt);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    m_failures.mark(m_batch.size());
+                    LOG.error("Ingest ring stage {} interrupted; Abandoning {} samples", m_name, m_batch.size());
+                    return;
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Equivalence;
+import com.google.common.collect.Interner;
+
+
+/**
+ * A bounded, lossy {@link Interner}.
+ * <p>
+ * Instances are held weakly in a fixed-size table, one per slot, indexed by hash; When two
+ * distinct instances map to the same slot, the most recently interned one wins. Interning is
+ * therefore best-effort (equal instances are not guaranteed to be identical), but memory use is
+ * bounded regardless of the number of distinct instances, and entries can be collected once
+ * they are no longer referenced elsewhere. Safe for concurrent use.
+ * </p>
+ *
+ * @param <E>
+ *            the type of interned instances
+ */
+public class LossyInterner<E> implements Interner<E> {
+
+    private final AtomicReferenceArray<WeakReference<E>> m_table;
+    private final Equivalence<? super E> m_equivalence;
+    private final int m_mask;
+
+    /**
+     * Creates a new {@link LossyInterner} that uses {@link Object#equals(Object)} and
+     * {@link Object#hashCode()}.
+     *
+     * @param size
+     *            number of slots (rounded up to a power of two)
+     */
+    public LossyInterner(int size) {
+        this(size, Equivalence.equals());
+    }
+
+    /**
+     * @param size
+     *            number of slots (rounded up to a power of two)
+     * @param equivalence
+     *            equivalence of interned instances
+     */
+    public LossyInterner(int size, Equivalence<? super E> equivalence) {
+        checkArgument(size > 0 && size <= (1 << 30), "size must be between 1 and 2^30");
+        m_equivalence = checkNotNull(equivalence, "equivalence argument");
+
+        int slots = Integer.highestOneBit(size);
+        slots = (slots < size) ? slots << 1 : slots;
+
+        m_table = new AtomicReferenceArray<>(slots);
+        m_mask = slots - 1;
+    }
+
+    @Override
+    public E intern(E sample) {
+        checkNotNull(sample, "sample argument");
+
+        int slot = smear(m_equivalence.hash(sample)) & m_mask;
+        WeakReference<E> ref = m_table.get(slot);
+        E existing = (ref != null) ? ref.get() : null;
+
+        if (existing != null && m_equivalence.equivalent(existing, sample)) {
+            return existing;
+        }
+
+        m_table.set(slot, new WeakReference<>(sample));
+
+        return sample;
+    }
+
+    /**
+     * Returns the instance currently interned in the slot for a hash, without interning anything;
+     * This lets callers look up an instance before building one. The slot may hold any instance
+     * whose hash collides, so callers must check that it is the one they want.
+     *
+     * @param hash
+     *            the hash of the instance sought (as computed by this interner's equivalence)
+     * @return the instance in the slot, or null if there is none
+     */
+    E peek(int hash) {
+        WeakReference<E> ref = m_table.get(smear(hash) & m_mask);
+        return (ref != null) ? ref.get() : null;
+    }
+
+    // Spread the hash bits (as java.util.HashMap does), since only the low bits select a slot.
+    private static int smear(int hash) {
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        return hash ^ (hash >>> 7) ^ (hash >>> 4);
+    }
+
+}
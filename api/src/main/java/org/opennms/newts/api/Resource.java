@@ -5,7 +5,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Map;
 
-import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 
 
@@ -19,6 +18,7 @@ public class Resource {
 
     private final String m_id;
     private final Optional<Map<String, String>> m_attributes;
+    private final int m_hashCode;
 
     /**
      * Creates a new {@link Resource} instance with the supplied resource ID, default application
@@ -42,6 +42,7 @@ public class Resource {
     public Resource(String id, Optional<Map<String, String>> attributes) {
         m_id = checkNotNull(id, "id argument");
         m_attributes = checkNotNull(attributes, "attributes argument");
+        m_hashCode = m_id.hashCode();
     }
 
     /**
@@ -63,9 +64,12 @@ public class Resource {
         return String.format("%s[%s]", getClass().getSimpleName(), getId());
     }
 
+    /**
+     * Resources are equal by ID, so the hash code is that of the ID (computed once).
+     */
     @Override
     public int hashCode() {
-        return Objects.hashCode(getId(), getAttributes());
+        return m_hashCode;
     }
 
     @Override
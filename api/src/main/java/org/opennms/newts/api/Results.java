@@ -16,32 +16,119 @@
 package org.opennms.newts.api;
 
 
+import java.util.AbstractCollection;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 
+/**
+ * Rows of elements, ordered by timestamp.
+ * <p>
+ * Rows are kept in an append-only list for as long as they are added in timestamp order (as
+ * they are when read from storage, or produced by results processing), falling back to a sorted
+ * map on the first out-of-order insert. Rows created here share a {@link ColumnIndex}.
+ * </p>
+ */
 public class Results<T extends Element<?>> implements Iterable<Results.Row<T>> {
 
+    /**
+     * Maps element names to slots, for {@link Row}s that store their elements in arrays. A single
+     * index is typically shared by all of the rows of a result, so that the per-row cost is
+     * that of an array reference per element. Not thread-safe.
+     */
+    public static class ColumnIndex {
+
+        private final Map<String, Integer> m_slots = Maps.newHashMap();
+
+        public ColumnIndex() {
+        }
+
+        public ColumnIndex(Iterable<String> names) {
+            for (String name : names) {
+                slot(name);
+            }
+        }
+
+        /**
+         * @return the slot for {@code name}, assigning the next one if it has none.
+         */
+        public int slot(String name) {
+            Integer slot = m_slots.get(name);
+
+            if (slot == null) {
+                slot = m_slots.size();
+                m_slots.put(name, slot);
+            }
+
+            return slot;
+        }
+
+        int find(String name) {
+            Integer slot = m_slots.get(name);
+            return (slot != null) ? slot : -1;
+        }
+
+        public int size() {
+            return m_slots.size();
+        }
+
+    }
+
     public static class Row<T extends Element<?>> implements Iterable<T> {
 
+        private static final Object[] EMPTY = new Object[0];
+
         private Timestamp m_timestamp;
         private Resource m_resource;
-        private Map<String, T> m_cells = Maps.newHashMap();
+        private ColumnIndex m_columns;
+        private Object[] m_cells = EMPTY;
+        private int m_count = 0;
 
         public Row(Timestamp timestamp, Resource resource) {
+            this(timestamp, resource, null);
+        }
+
+        /**
+         * @param columns
+         *            column index, shared with other rows (or null to create one on demand)
+         */
+        public Row(Timestamp timestamp, Resource resource, ColumnIndex columns) {
             m_timestamp = timestamp;
             m_resource = resource;
+            m_columns = columns;
         }
 
         public void addElement(T sample) {
-            m_cells.put(sample.getName(), sample);
+            if (m_columns == null) {
+                m_columns = new ColumnIndex();
+            }
+
+            int slot = m_columns.slot(sample.getName());
+
+            if (slot >= m_cells.length) {
+                m_cells = Arrays.copyOf(m_cells, Math.max(slot + 1, m_columns.size()));
+            }
+
+            if (m_cells[slot] == null) {
+                m_count += 1;
+            }
+
+            m_cells[slot] = sample;
         }
 
+        @SuppressWarnings("unchecked")
         public T getElement(String name) {
-            return m_cells.get(name);
+            int slot = (m_columns != null) ? m_columns.find(name) : -1;
+            return (slot >= 0 && slot < m_cells.length) ? (T) m_cells[slot] : null;
         }
 
         public Timestamp getTimestamp() {
@@ -53,12 +140,23 @@ public class Results<T extends Element<?>> implements Iterable<Results.Row<T>> {
         }
 
         public Collection<T> getElements() {
-            return m_cells.values();
+            return new AbstractCollection<T>() {
+
+                @Override
+                public Iterator<T> iterator() {
+                    return new Cells();
+                }
+
+                @Override
+                public int size() {
+                    return m_count;
+                }
+            };
         }
 
         @Override
         public Iterator<T> iterator() {
-            return getElements().iterator();
+            return new Cells();
         }
 
         @Override
@@ -71,16 +169,63 @@ public class Results<T extends Element<?>> implements Iterable<Results.Row<T>> {
                     getElements());
         }
 
+        // Iterates the occupied cells, in slot order.
+        private class Cells implements Iterator<T> {
+
+            private int m_next = advance(0);
+
+            private int advance(int from) {
+                while (from < m_cells.length && m_cells[from] == null) {
+                    from += 1;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return m_next < m_cells.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+
+                T element = (T) m_cells[m_next];
+                m_next = advance(m_next + 1);
+
+                return element;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+        }
+
     }
 
-    Map<Timestamp, Row<T>> m_rows = Maps.newTreeMap();
+    private static final Comparator<Row<?>> ROW_ORDER = new Comparator<Row<?>>() {
+
+        @Override
+        public int compare(Row<?> a, Row<?> b) {
+            return a.getTimestamp().compareTo(b.getTimestamp());
+        }
+    };
+
+    private final ColumnIndex m_columns = new ColumnIndex();
+
+    // Rows in timestamp order, while they arrive in order; Null once m_sorted is in use.
+    private List<Row<T>> m_rows = Lists.newArrayList();
+    private Map<Timestamp, Row<T>> m_sorted = null;
 
     public void addElement(T sample) {
 
-        Row<T> row = m_rows.get(sample.getTimestamp());
+        Row<T> row = getRow(sample.getTimestamp());
 
         if (row == null) {
-            row = new Row<T>(sample.getTimestamp(), sample.getResource());
+            row = new Row<T>(sample.getTimestamp(), sample.getResource(), m_columns);
             addRow(row);
         }
 
@@ -88,12 +233,62 @@ public class Results<T extends Element<?>> implements Iterable<Results.Row<T>> {
 
     }
 
+    /**
+     * Adds a row, replacing any existing row with the same timestamp.
+     */
     public void addRow(Row<T> row) {
-        m_rows.put(row.getTimestamp(), row);
+
+        if (m_sorted == null) {
+            Row<T> last = m_rows.isEmpty() ? null : m_rows.get(m_rows.size() - 1);
+
+            if (last == null || row.getTimestamp().gt(last.getTimestamp())) {
+                m_rows.add(row);
+                return;
+            }
+
+            if (row.getTimestamp().equals(last.getTimestamp())) {
+                m_rows.set(m_rows.size() - 1, row);
+                return;
+            }
+
+            // Out of order; Fall back to a sorted map from here on.
+            m_sorted = Maps.newTreeMap();
+
+            for (Row<T> r : m_rows) {
+                m_sorted.put(r.getTimestamp(), r);
+            }
+
+            m_rows = null;
+        }
+
+        m_sorted.put(row.getTimestamp(), row);
+    }
+
+    private Row<T> getRow(Timestamp timestamp) {
+
+        if (m_sorted != null) {
+            return m_sorted.get(timestamp);
+        }
+
+        // In-order appends only ever need to match the last row.
+        if (!m_rows.isEmpty()) {
+            Row<T> last = m_rows.get(m_rows.size() - 1);
+
+            if (last.getTimestamp().equals(timestamp)) {
+                return last;
+            }
+
+            if (timestamp.lt(last.getTimestamp())) {
+                int index = Collections.binarySearch(m_rows, new Row<T>(timestamp, null), ROW_ORDER);
+                return (index >= 0) ? m_rows.get(index) : null;
+            }
+        }
+
+        return null;
     }
 
     public Collection<Row<T>> getRows() {
-        return m_rows.values();
+        return (m_sorted != null) ? m_sorted.values() : Collections.unmodifiableList(m_rows);
     }
 
     @Override
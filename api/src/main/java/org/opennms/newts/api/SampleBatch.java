@@ -0,0 +1,492 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.UnsignedLong;
+
+
+/**
+ * A compact, binary encoding of a batch of {@link Sample}s.
+ * <p>
+ * Strings (context IDs, metric names, attribute keys and values) and resources are written once
+ * per batch, to dictionaries, and referenced by index from each sample. Timestamps are encoded
+ * (at millisecond precision) as the zig-zag varint difference from the preceding sample, and
+ * values as a type byte followed by the raw 8 bytes of the long (or double) value.
+ * </p>
+ *
+ * <pre>
+ * batch    := 'N' 'S' version(=1) strings resources samples
+ * strings  := count:varint (length:varint utf8-bytes)*
+ * resources:= count:varint (id:varint attrs)*
+ * samples  := count:varint (ts-delta:zigzag context:varint resource:varint name:varint type:byte value:int64 attrs)*
+ * attrs    := 0 (absent) | count+1:varint (key:varint value:varint)*
+ * </pre>
+ * <p>
+ * A decoded batch retains its samples as primitive columns, read directly from the supplied
+ * buffer, with dictionary entries (including {@link Resource} instances) shared between samples;
+ * {@link Sample} instances are created on demand.
+ * </p>
+ */
+public class SampleBatch implements Iterable<Sample> {
+
+    /** Media type of encoded batches. */
+    public static final String MEDIA_TYPE = "application/x-newts-samples";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] MAGIC = { 'N', 'S' };
+    private static final byte VERSION = 1;
+
+    private final String[] m_strings;
+    private final Context[] m_contextDict;
+    private final Resource[] m_resourceDict;
+
+    private final long[] m_timestamps;
+    private final int[] m_contexts;
+    private final int[] m_resources;
+    private final int[] m_names;
+    private final MetricType[] m_types;
+    private final long[] m_values;
+    private final Map<String, String>[] m_attributes;
+
+    @SuppressWarnings("unchecked")
+    private SampleBatch(String[] strings, Resource[] resources, int size) {
+        m_strings = strings;
+        m_contextDict = new Context[strings.length];
+        m_resourceDict = resources;
+        m_timestamps = new long[size];
+        m_contexts = new int[size];
+        m_resources = new int[size];
+        m_names = new int[size];
+        m_types = new MetricType[size];
+        m_values = new long[size];
+        m_attributes = new Map[size];
+    }
+
+    /**
+     * @return the number of samples in this batch
+     */
+    public int size() {
+        return m_timestamps.length;
+    }
+
+    public long getTimestampMillis(int index) {
+        return m_timestamps[index];
+    }
+
+    public Context getContext(int index) {
+        int i = m_contexts[index];
+
+        if (m_contextDict[i] == null) {
+            m_contextDict[i] = SampleDictionary.context(m_strings[i]);
+        }
+
+        return m_contextDict[i];
+    }
+
+    public Resource getResource(int index) {
+        return m_resourceDict[m_resources[index]];
+    }
+
+    public String getName(int index) {
+        return m_strings[m_names[index]];
+    }
+
+    public MetricType getType(int index) {
+        return m_types[index];
+    }
+
+    /**
+     * @return the raw value; The bits of a double for {@link MetricType#GAUGE}, an unsigned long
+     *         otherwise
+     */
+    public long getRawValue(int index) {
+        return m_values[index];
+    }
+
+    public ValueType<?> getValue(int index) {
+        long bits = m_values[index];
+
+        switch (m_types[index]) {
+            case ABSOLUTE:
+                return new Absolute(UnsignedLong.fromLongBits(bits));
+            case COUNTER:
+                return new Counter(UnsignedLong.fromLongBits(bits));
+            case DERIVE:
+                return new Derive(UnsignedLong.fromLongBits(bits));
+            default:
+                return new Gauge(Double.longBitsToDouble(bits));
+        }
+    }
+
+    public Map<String, String> getAttributes(int index) {
+        return m_attributes[index];
+    }
+
+    public Sample getSample(int index) {
+        return new Sample(
+                Timestamp.fromEpochMillis(getTimestampMillis(index)),
+                getContext(index),
+                getResource(index),
+                getName(index),
+                getType(index),
+                getValue(index),
+                getAttributes(index));
+    }
+
+    /**
+     * @return the samples of this batch, as a list
+     */
+    public List<Sample> getSamples() {
+        List<Sample> samples = Lists.newArrayListWithCapacity(size());
+
+        for (int i = 0; i < size(); i++) {
+            samples.add(getSample(i));
+        }
+
+        return samples;
+    }
+
+    @Override
+    public Iterator<Sample> iterator() {
+        return new Iterator<Sample>() {
+
+            private int m_index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return m_index < size();
+            }
+
+            @Override
+            public Sample next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return getSample(m_index++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Encode a collection of samples.
+     *
+     * @param samples
+     *            the samples to encode
+     * @return the encoded batch
+     */
+    public static byte[] encode(Collection<Sample> samples) {
+        checkNotNull(samples, "samples argument");
+
+        Map<String, Integer> strings = Maps.newLinkedHashMap();
+        Map<ResourceKey, Integer> resources = Maps.newLinkedHashMap();
+        ByteArrayDataOutput body = ByteStreams.newDataOutput(samples.size() * 16);
+
+        writeVarint(body, samples.size());
+
+        long previous = 0;
+
+        for (Sample sample : samples) {
+            checkNotNull(sample.getValue(), "sample value");
+
+            long timestamp = sample.getTimestamp().asMillis();
+            writeVarint(body, zigzag(timestamp - previous));
+            previous = timestamp;
+
+            writeVarint(body, index(strings, sample.getContext().getId()));
+            writeVarint(body, index(resources, strings, sample.getResource()));
+            writeVarint(body, index(strings, sample.getName()));
+
+            body.writeByte(sample.getType().getCode());
+
+            if (sample.getType() == MetricType.GAUGE) {
+                body.writeLong(Double.doubleToRawLongBits(sample.getValue().doubleValue()));
+            }
+            else {
+                body.writeLong(sample.getValue().longValue());
+            }
+
+            writeAttributes(body, strings, sample.getAttributes());
+        }
+
+        ByteArrayDataOutput output = ByteStreams.newDataOutput();
+        output.write(MAGIC);
+        output.writeByte(VERSION);
+
+        writeVarint(output, strings.size());
+
+        for (String s : strings.keySet()) {
+            byte[] bytes = s.getBytes(UTF_8);
+            writeVarint(output, bytes.length);
+            output.write(bytes);
+        }
+
+        writeVarint(output, resources.size());
+
+        for (ResourceKey resource : resources.keySet()) {
+            writeVarint(output, resource.m_id);
+            output.write(resource.m_attributes);
+        }
+
+        output.write(body.toByteArray());
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Decode a batch. The buffer is read from its current position, which is left unchanged.
+     *
+     * @param buffer
+     *            buffer containing an encoded batch
+     * @return the decoded batch
+     * @throws IllegalArgumentException
+     *             if the buffer does not contain a valid batch
+     */
+    public static SampleBatch decode(ByteBuffer buffer) {
+        checkNotNull(buffer, "buffer argument");
+
+        try {
+            return read(buffer.duplicate());
+        }
+        catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated sample batch", e);
+        }
+        catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed sample batch; Invalid dictionary reference", e);
+        }
+    }
+
+    public static SampleBatch decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(checkNotNull(bytes, "bytes argument")));
+    }
+
+    private static SampleBatch read(ByteBuffer buffer) {
+
+        checkArgument(buffer.get() == MAGIC[0] && buffer.get() == MAGIC[1], "Not a sample batch");
+
+        byte version = buffer.get();
+        checkArgument(version == VERSION, "Unsupported sample batch version: %s", version);
+
+        String[] strings = new String[readCount(buffer)];
+
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buffer, readCount(buffer));
+        }
+
+        Resource[] resources = new Resource[readCount(buffer)];
+
+        for (int i = 0; i < resources.length; i++) {
+            String id = strings[readVarint(buffer)];
+            resources[i] = SampleDictionary.resource(id, readAttributes(buffer, strings));
+        }
+
+        SampleBatch batch = new SampleBatch(strings, resources, readCount(buffer));
+        long timestamp = 0;
+
+        for (int i = 0; i < batch.size(); i++) {
+            timestamp += unzigzag(readVarlong(buffer));
+
+            batch.m_timestamps[i] = timestamp;
+            batch.m_contexts[i] = checkIndex(readVarint(buffer), strings.length);
+            batch.m_resources[i] = checkIndex(readVarint(buffer), resources.length);
+            batch.m_names[i] = checkIndex(readVarint(buffer), strings.length);
+            batch.m_types[i] = MetricType.fromCode(buffer.get());
+            batch.m_values[i] = buffer.getLong();
+            batch.m_attributes[i] = readAttributes(buffer, strings);
+        }
+
+        checkArgument(!buffer.hasRemaining(), "Malformed sample batch; %s trailing bytes", buffer.remaining());
+
+        return batch;
+    }
+
+    private static int checkIndex(int index, int size) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(String.format("%d >= %d", index, size));
+        }
+        return index;
+    }
+
+    private static int index(Map<String, Integer> strings, String value) {
+        Integer index = strings.get(value);
+
+        if (index == null) {
+            index = strings.size();
+            strings.put(value, index);
+        }
+
+        return index;
+    }
+
+    private static int index(Map<ResourceKey, Integer> resources, Map<String, Integer> strings, Resource resource) {
+        ByteArrayDataOutput attrs = ByteStreams.newDataOutput();
+        writeAttributes(attrs, strings, resource.getAttributes().orNull());
+
+        ResourceKey key = new ResourceKey(index(strings, resource.getId()), attrs.toByteArray());
+        Integer index = resources.get(key);
+
+        if (index == null) {
+            index = resources.size();
+            resources.put(key, index);
+        }
+
+        return index;
+    }
+
+    private static void writeAttributes(ByteArrayDataOutput output, Map<String, Integer> strings, Map<String, String> attributes) {
+        if (attributes == null) {
+            writeVarint(output, 0);
+            return;
+        }
+
+        writeVarint(output, attributes.size() + 1);
+
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            writeVarint(output, index(strings, entry.getKey()));
+            writeVarint(output, index(strings, entry.getValue()));
+        }
+    }
+
+    private static Map<String, String> readAttributes(ByteBuffer buffer, String[] strings) {
+        int count = readCount(buffer);
+
+        if (count == 0) {
+            return null;
+        }
+        if (count == 1) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> attributes = Maps.newHashMapWithExpectedSize(count - 1);
+
+        for (int i = 1; i < count; i++) {
+            attributes.put(strings[readVarint(buffer)], strings[readVarint(buffer)]);
+        }
+
+        return attributes;
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        if (length > buffer.remaining()) throw new BufferUnderflowException();
+
+        String value;
+
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+            buffer.position(buffer.position() + length);
+        }
+        else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, UTF_8);
+        }
+
+        return value;
+    }
+
+    // Every counted item occupies at least a byte, which bounds allocations on malformed input.
+    private static int readCount(ByteBuffer buffer) {
+        int count = readVarint(buffer);
+        checkArgument(count <= buffer.remaining() + 1, "Malformed sample batch; Count %s exceeds remaining input", count);
+        return count;
+    }
+
+    private static void writeVarint(ByteArrayDataOutput output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        long value = readVarlong(buffer);
+        checkArgument(value >= 0 && value <= Integer.MAX_VALUE, "Malformed sample batch; Invalid varint");
+        return (int) value;
+    }
+
+    private static long readVarlong(ByteBuffer buffer) {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed sample batch; Varint too long");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Resource dictionary key; Resources are compared by ID, but the attributes must be retained
+     * as well to reproduce them.
+     */
+    private static class ResourceKey {
+
+        private final int m_id;
+        private final byte[] m_attributes;
+
+        private ResourceKey(int id, byte[] attributes) {
+            m_id = id;
+            m_attributes = attributes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ResourceKey)) return false;
+            return m_id == ((ResourceKey) o).m_id && Arrays.equals(m_attributes, ((ResourceKey) o).m_attributes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * m_id + Arrays.hashCode(m_attributes);
+        }
+
+    }
+
+}
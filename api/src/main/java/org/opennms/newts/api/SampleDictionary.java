@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.google.common.base.Equivalence;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Maps;
+
+
+/**
+ * Process-wide dictionaries of the {@link Context}s, {@link Resource}s, metric names, attribute
+ * keys, and attribute maps of samples; Samples built from decoded input (REST requests, storage
+ * result sets, etc) share instances rather than each carrying its own copies.
+ * <p>
+ * Lookups by ID (or map) are made before anything is built, so that input matching an interned
+ * instance allocates nothing. Interned attribute maps are unmodifiable.
+ * </p>
+ *
+ * @see LossyInterner
+ */
+public class SampleDictionary {
+
+    static final int RESOURCES = 1 << 14;
+    static final int STRINGS = 1 << 12;
+
+    // Resources are equal by ID, but only those with equal attributes are interchangeable.
+    private static final Equivalence<Resource> RESOURCE_EQUIVALENCE = new Equivalence<Resource>() {
+
+        @Override
+        protected boolean doEquivalent(Resource a, Resource b) {
+            return a.getId().equals(b.getId()) && Objects.equal(a.getAttributes(), b.getAttributes());
+        }
+
+        @Override
+        protected int doHash(Resource resource) {
+            return resource.hashCode();
+        }
+    };
+
+    private static final LossyInterner<Resource> s_resources = new LossyInterner<>(RESOURCES, RESOURCE_EQUIVALENCE);
+    private static final Interner<String> s_strings = new LossyInterner<>(STRINGS);
+    private static final Interner<Context> s_contexts = new LossyInterner<>(STRINGS);
+    private static final LossyInterner<Map<String, String>> s_attributes = new LossyInterner<>(STRINGS);
+
+    private SampleDictionary() {
+    }
+
+    /**
+     * @return an interned {@link Context} with the given ID ({@link Context#DEFAULT_CONTEXT} for
+     *         the default ID)
+     */
+    public static Context context(String id) {
+        return Context.DEFAULT_CONTEXT.getId().equals(id) ? Context.DEFAULT_CONTEXT : s_contexts.intern(new Context(id));
+    }
+
+    public static Resource resource(Resource resource) {
+        return s_resources.intern(resource);
+    }
+
+    /**
+     * @return an interned {@link Resource} with the given ID, and no attributes
+     */
+    public static Resource resource(String id) {
+        return resource(id, null);
+    }
+
+    /**
+     * @return an interned {@link Resource} with the given ID, and attributes (interned as by
+     *         {@link #attributes(Map)}), or none if {@code attributes} is null
+     */
+    public static Resource resource(String id, Map<String, String> attributes) {
+        Resource existing = s_resources.peek(id.hashCode());
+
+        if (existing != null && existing.getId().equals(id) && Objects.equal(existing.getAttributes().orNull(), attributes)) {
+            return existing;
+        }
+
+        return s_resources.intern(new Resource(id, Optional.fromNullable(attributes(attributes))));
+    }
+
+    public static String metricName(String name) {
+        return s_strings.intern(name);
+    }
+
+    public static String attributeKey(String key) {
+        return s_strings.intern(key);
+    }
+
+    /**
+     * @return an interned, unmodifiable map equal to {@code attributes}, with interned keys, or
+     *         null if {@code attributes} is null
+     */
+    public static Map<String, String> attributes(Map<String, String> attributes) {
+        if (attributes == null) return null;
+
+        Map<String, String> existing = s_attributes.peek(attributes.hashCode());
+
+        if (existing != null && existing.equals(attributes)) {
+            return existing;
+        }
+
+        Map<String, String> result = Maps.newLinkedHashMap();
+
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            result.put(attributeKey(entry.getKey()), entry.getValue());
+        }
+
+        return s_attributes.intern(Collections.unmodifiableMap(result));
+    }
+
+}
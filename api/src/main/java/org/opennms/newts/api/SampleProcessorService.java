@@ -6,20 +6,37 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.opennms.newts.api.BoundedExecutor.WaitStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
 
 /**
- * Distributes incoming sample collections to one or more sample processors. The sample processors
- * are run on a {@link BlockingThreadPoolExecutor}.
+ * Distributes incoming sample collections to one or more sample processors.
+ * <p>
+ * Each processor is run on its own {@link BoundedExecutor}, so that a slow processor cannot
+ * starve the others. Batches that queue up for a processor are coalesced, (up to a maximum
+ * number of samples), and handed to it as one. Metrics are reported per processor, prefixed
+ * <code>sample-processor.&lt;class name&gt;</code>; In addition to those of the executor, these
+ * are <code>lag</code> (time from submission to processing), <code>samples</code> (samples
+ * processed), and <code>batch-size</code> (samples per coalesced batch).
+ * </p>
  *
  * @author eevans
  */
@@ -27,62 +44,212 @@ public class SampleProcessorService {
 
     private static final Logger LOG = LoggerFactory.getLogger(SampleProcessorService.class);
 
-    private final ThreadPoolExecutor m_executor;
-    private final Set<SampleProcessor> m_processors;
+    /** Default upper limit on the number of samples coalesced into a single batch. */
+    public static final int DEFAULT_COALESCE_MAX_SAMPLES = 10000;
+
+    private final List<ProcessorQueue> m_queues = Lists.newArrayList();
 
     public SampleProcessorService(int maxThreads) {
         this(maxThreads, Collections.<SampleProcessor> emptySet());
     }
 
+    public SampleProcessorService(int maxThreads, Set<SampleProcessor> processors) {
+        this(maxThreads, defaultQueueCapacity(maxThreads), WaitStrategy.BLOCK, DEFAULT_COALESCE_MAX_SAMPLES, 0, new MetricRegistry(), processors);
+    }
+
+    /**
+     * @param maxThreads
+     *            maximum number of threads, per processor
+     * @param queueCapacity
+     *            capacity of the queue of pending batches, per processor
+     * @param waitStrategy
+     *            what to do with submissions when a queue is full; Always
+     *            {@link WaitStrategy#DROP_OLDEST} for {@link DroppableSampleProcessor}s
+     * @param coalesceMaxSamples
+     *            maximum number of samples to coalesce into a single batch
+     * @param coalesceWindowMillis
+     *            time to wait for further batches to coalesce, or zero to coalesce only those
+     *            already queued
+     * @param registry
+     *            registry to report metrics to
+     * @param processors
+     *            the sample processors
+     */
     @Inject
-    public SampleProcessorService(@Named("sampleProcessor.maxThreads") int maxThreads, Set<SampleProcessor> processors) {
+    public SampleProcessorService(@Named("sampleProcessor.maxThreads") int maxThreads, @Named("sampleProcessor.queueCapacity") int queueCapacity,
+            @Named("sampleProcessor.waitStrategy") WaitStrategy waitStrategy, @Named("sampleProcessor.coalesceMaxSamples") int coalesceMaxSamples,
+            @Named("sampleProcessor.coalesceWindowMillis") long coalesceWindowMillis, MetricRegistry registry, Set<SampleProcessor> processors) {
         checkArgument(maxThreads > 0, "maxThreads must be non-zero");
+        checkArgument(queueCapacity > 0, "queueCapacity must be non-zero");
+        checkArgument(coalesceMaxSamples > 0, "coalesceMaxSamples must be non-zero");
+        checkArgument(coalesceWindowMillis >= 0, "coalesceWindowMillis must be positive");
+        checkNotNull(waitStrategy, "waitStrategy argument");
+        checkNotNull(registry, "registry argument");
+        checkNotNull(processors, "processors argument");
+
+        Map<String, Integer> names = Maps.newHashMap();
 
-        LOG.info("Starting sample processor service with pool of {} threads", maxThreads);
+        for (SampleProcessor processor : processors) {
+            WaitStrategy strategy = (processor instanceof DroppableSampleProcessor) ? WaitStrategy.DROP_OLDEST : waitStrategy;
+            String prefix = MetricRegistry.name("sample-processor", uniqueName(names, processor));
 
-        m_executor = new BlockingThreadPoolExecutor(1, maxThreads, 61, TimeUnit.SECONDS);
-        m_processors = checkNotNull(processors, "processors argument");
+            LOG.info("Starting {} with pool of {} threads, queue of {} ({})", prefix, maxThreads, queueCapacity, strategy);
 
+            BoundedExecutor executor = new BoundedExecutor(1, maxThreads, 61, TimeUnit.SECONDS, queueCapacity, strategy, registry, prefix);
+            m_queues.add(new ProcessorQueue(processor, executor, coalesceMaxSamples, TimeUnit.MILLISECONDS.toNanos(coalesceWindowMillis), registry, prefix));
+        }
+
+    }
+
+    /**
+     * @return the queue capacity used when none is specified; 1.5 times the number of threads
+     */
+    public static int defaultQueueCapacity(int maxThreads) {
+        return Math.max(1, (int) (maxThreads * 1.5));
     }
 
     /**
      * Submits a collection of samples to each of the underlying {@link SampleProcessor}s. Calls to
-     * {@link SampleProcessorService#submit(Collection)} are non-blocking unless the pool is unable
-     * to keep up and the queue becomes full.
+     * {@link SampleProcessorService#submit(Collection)} are non-blocking unless a processor is
+     * unable to keep up and its queue becomes full (see {@link WaitStrategy}).
      *
      * @param samples
      */
     public void submit(final Collection<Sample> samples) {
-        for (final SampleProcessor processor : m_processors) {
-            m_executor.execute(new Runnable() {
-
-                @Override
-                public void run() {
-                    processor.submit(samples);
-                }
-            });
+        for (ProcessorQueue queue : m_queues) {
+            queue.submit(samples);
         }
     }
 
-    /** Calls <code>shutdown()</code> on the underlying thread pool executor. */
+    /** Calls <code>shutdown()</code> on the underlying thread pool executors. */
     public void shutdown() throws InterruptedException {
-        LOG.info("Shutting down thread pool executor");
-        m_executor.shutdown();
+        LOG.info("Shutting down thread pool executors");
+
+        for (ProcessorQueue queue : m_queues) {
+            queue.m_executor.shutdown();
+        }
     }
 
     /**
-     * Invokes <code>awaitShutdown()</code> on the underlying thread pool executor.
+     * Invokes <code>awaitShutdown()</code> on the underlying thread pool executors.
      *
      * @param timeout
      *            the maximum time to wait
      * @param unit
      *            the time unit of the timeout argument
-     * @return <tt>true</tt> if this executor terminated and <tt>false</tt> if the timeout elapsed
+     * @return <tt>true</tt> if the executors terminated and <tt>false</tt> if the timeout elapsed
      *         before termination
      * @throws InterruptedException
      */
     public boolean awaitShutdown(long timeout, TimeUnit unit) throws InterruptedException {
-        return m_executor.awaitTermination(timeout, unit);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        for (ProcessorQueue queue : m_queues) {
+            if (!queue.m_executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static String uniqueName(Map<String, Integer> names, SampleProcessor processor) {
+        String name = processor.getClass().getSimpleName();
+
+        if (name.isEmpty()) {
+            name = processor.getClass().getName();
+        }
+
+        Integer count = names.get(name);
+        names.put(name, (count == null) ? 1 : count + 1);
+
+        return (count == null) ? name : String.format("%s-%d", name, count + 1);
+    }
+
+    /** The executor and metrics of a single processor. */
+    private static class ProcessorQueue {
+
+        private final SampleProcessor m_processor;
+        private final BoundedExecutor m_executor;
+        private final int m_maxSamples;
+        private final long m_windowNanos;
+        private final Timer m_lag;
+        private final Meter m_samples;
+        private final Histogram m_batchSize;
+
+        private ProcessorQueue(SampleProcessor processor, BoundedExecutor executor, int maxSamples, long windowNanos, MetricRegistry registry, String prefix) {
+            m_processor = processor;
+            m_executor = executor;
+            m_maxSamples = maxSamples;
+            m_windowNanos = windowNanos;
+            m_lag = registry.timer(MetricRegistry.name(prefix, "lag"));
+            m_samples = registry.meter(MetricRegistry.name(prefix, "samples"));
+            m_batchSize = registry.histogram(MetricRegistry.name(prefix, "batch-size"));
+        }
+
+        private void submit(Collection<Sample> samples) {
+            m_executor.execute(new Batch(samples));
+        }
+
+        /**
+         * A submitted batch. When run, subsequent batches are taken from the executor's queue
+         * (where they would otherwise have each been run separately), and coalesced with this one.
+         */
+        private class Batch implements Runnable {
+
+            private final Collection<Sample> m_batch;
+            private final long m_submitted = System.nanoTime();
+
+            private Batch(Collection<Sample> samples) {
+                m_batch = samples;
+            }
+
+            @Override
+            public void run() {
+                Collection<Sample> samples = m_batch;
+                BlockingQueue<Runnable> queue = m_executor.getQueue();
+                long deadline = System.nanoTime() + m_windowNanos;
+
+                m_lag.update(System.nanoTime() - m_submitted, TimeUnit.NANOSECONDS);
+
+                while (samples.size() < m_maxSamples) {
+                    Batch next;
+
+                    try {
+                        long remaining = deadline - System.nanoTime();
+                        next = (Batch) ((remaining > 0) ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll());
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+
+                    if (next == null) {
+                        break;
+                    }
+
+                    m_lag.update(System.nanoTime() - next.m_submitted, TimeUnit.NANOSECONDS);
+
+                    if (samples == m_batch) {
+                        samples = Lists.newArrayList(m_batch);
+                    }
+
+                    samples.addAll(next.m_batch);
+                }
+
+                m_samples.mark(samples.size());
+                m_batchSize.update(samples.size());
+
+                try {
+                    m_processor.submit(samples);
+                }
+                catch (RuntimeException e) {
+                    LOG.error("Sample processor {} failed", m_processor, e);
+                }
+            }
+
+        }
+
     }
 
 }
@@ -18,15 +18,24 @@ package org.opennms.newts.api;
 
 import java.util.Collection;
 
+import org.opennms.newts.api.query.Downsampling;
 import org.opennms.newts.api.query.ResultDescriptor;
 
 import com.google.common.base.Optional;
 
 
+/**
+ * Storage of samples. Samples are stored per {@link Context}; Queries that do not name one are
+ * against {@link Context#DEFAULT_CONTEXT}.
+ * <p>
+ * Implementations should extend {@link AbstractSampleRepository}, which reduces the
+ * <code>select</code> overloads to the widest two.
+ * </p>
+ */
 public interface SampleRepository {
 
     /**
-     * Query measurements.
+     * Query measurements (of the default context).
      * 
      * @param resource
      *            name of the sampled resource
@@ -43,7 +52,92 @@ public interface SampleRepository {
     public Results<Measurement> select(Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor, Duration resolution);
 
     /**
-     * Read stored samples.
+     * Query measurements.
+     * 
+     * @param context
+     *            context of the sampled resource
+     * @param resource
+     *            name of the sampled resource
+     * @param start
+     *            query start time (defaults to 24 hours less than {@code end}, if absent)
+     * @param end
+     *            query end time (defaults to current time if absent)
+     * @param descriptor
+     *            aggregation descriptor
+     * @param resolultion
+     *            temporal resolution of results
+     * @return query results
+     */
+    public Results<Measurement> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor, Duration resolution);
+
+    /**
+     * Query measurements (of the default context), downsampled to (approximately) a maximum number
+     * of rows.
+     * 
+     * @param resource
+     *            name of the sampled resource
+     * @param start
+     *            query start time (defaults to 24 hours less than {@code end}, if absent)
+     * @param end
+     *            query end time (defaults to current time if absent)
+     * @param descriptor
+     *            aggregation descriptor
+     * @param resolultion
+     *            temporal resolution of results
+     * @param downsampling
+     *            downsampling method and maximum row count
+     * @return query results
+     */
+    public Results<Measurement> select(Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor, Duration resolution, Downsampling downsampling);
+
+    /**
+     * Query measurements, downsampled to (approximately) a maximum number of rows.
+     * 
+     * @param context
+     *            context of the sampled resource
+     * @param resource
+     *            name of the sampled resource
+     * @param start
+     *            query start time (defaults to 24 hours less than {@code end}, if absent)
+     * @param end
+     *            query end time (defaults to current time if absent)
+     * @param descriptor
+     *            aggregation descriptor
+     * @param resolultion
+     *            temporal resolution of results
+     * @param downsampling
+     *            downsampling method and maximum row count
+     * @return query results
+     */
+    public Results<Measurement> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor, Duration resolution, Downsampling downsampling);
+
+    /**
+     * Query measurements, (optionally) downsampled, abandoning the query once the deadline passes.
+     * 
+     * @param context
+     *            context of the sampled resource
+     * @param resource
+     *            name of the sampled resource
+     * @param start
+     *            query start time (defaults to 24 hours less than {@code end}, if absent)
+     * @param end
+     *            query end time (defaults to current time if absent)
+     * @param descriptor
+     *            aggregation descriptor
+     * @param resolultion
+     *            temporal resolution of results
+     * @param downsampling
+     *            downsampling method and maximum row count, if any
+     * @param deadline
+     *            query deadline
+     * @return query results
+     * @throws java.util.concurrent.CancellationException
+     *             if the query was cancelled, or the deadline passed
+     */
+    public Results<Measurement> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor, Duration resolution, Optional<Downsampling> downsampling, Deadline deadline);
+
+    /**
+     * Read stored samples (of the default context).
      * 
      * @param resource
      *            name of the sampled resource
@@ -56,7 +150,41 @@ public interface SampleRepository {
     public Results<Sample> select(Resource resource, Optional<Timestamp> start, Optional<Timestamp> end);
 
     /**
-     * Write (store) samples.
+     * Read stored samples.
+     * 
+     * @param context
+     *            context of the sampled resource
+     * @param resource
+     *            name of the sampled resource
+     * @param start
+     *            query start time (defaults to 24 hours less than {@code end}, if absent)
+     * @param end
+     *            query end time (defaults to current time if absent)
+     * @return query results
+     */
+    public Results<Sample> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end);
+
+    /**
+     * Read stored samples, abandoning the query once the deadline passes.
+     * 
+     * @param context
+     *            context of the sampled resource
+     * @param resource
+     *            name of the sampled resource
+     * @param start
+     *            query start time (defaults to 24 hours less than {@code end}, if absent)
+     * @param end
+     *            query end time (defaults to current time if absent)
+     * @param deadline
+     *            query deadline
+     * @return query results
+     * @throws java.util.concurrent.CancellationException
+     *             if the query was cancelled, or the deadline passed
+     */
+    public Results<Sample> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, Deadline deadline);
+
+    /**
+     * Write (store) samples, each to its own context.
      * 
      * @param samples
      */
@@ -17,18 +17,29 @@ package org.opennms.newts.api;
 
 
 import java.util.Date;
-import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 
+/**
+ * A point in time, (measured from the epoch) in arbitrary {@link TimeUnit}s.
+ * <p>
+ * Timestamps also carry a canonical representation in epoch nanoseconds, that comparisons,
+ * equality, and hashing operate on directly. Instances are therefore constrained to the range of
+ * a nanosecond long (roughly years 1678 through 2262). The static helpers operate on the canonical
+ * representation, for use in inner loops where allocating is undesirable.
+ * </p>
+ */
 public class Timestamp implements Comparable<Timestamp> {
 
     public final long m_time;
     public final TimeUnit m_unit;
 
+    private final long m_nanos;
+
     public Timestamp(long time, TimeUnit unit) {
         m_time = time;
         m_unit = unit;
+        m_nanos = unit.toNanos(time);
     }
 
     private long convert(TimeUnit unit) {
@@ -43,6 +54,13 @@ public class Timestamp implements Comparable<Timestamp> {
         return convert(TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * @return the canonical representation of this timestamp, in epoch nanoseconds
+     */
+    public long asNanos() {
+        return m_nanos;
+    }
+
     public Date asDate() {
         return new Date(convert(TimeUnit.MILLISECONDS));
     }
@@ -79,19 +97,19 @@ public class Timestamp implements Comparable<Timestamp> {
     }
 
     public boolean lt(Timestamp other) {
-        return compareTo(other) < 0;
+        return m_nanos < other.m_nanos;
     }
 
     public boolean lte(Timestamp other) {
-        return (lt(other) || equals(other));
+        return m_nanos <= other.m_nanos;
     }
 
     public boolean gt(Timestamp other) {
-        return compareTo(other) > 0;
+        return m_nanos > other.m_nanos;
     }
 
     public boolean gte(Timestamp other) {
-        return (gt(other) || equals(other));
+        return m_nanos >= other.m_nanos;
     }
 
     public Timestamp stepFloor(long stepSize, TimeUnit units) {
@@ -114,18 +132,17 @@ public class Timestamp implements Comparable<Timestamp> {
     @Override
     public boolean equals(Object other) {
         if (!(other instanceof Timestamp)) return false;
-        return compareTo((Timestamp) other) == 0;
+        return m_nanos == ((Timestamp) other).m_nanos;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(Long.valueOf(convert(TimeUnit.NANOSECONDS)));
+        return (int) (m_nanos ^ (m_nanos >>> 32));
     }
 
     @Override
     public int compareTo(Timestamp o) {
-        TimeUnit unit = finest(getUnit(), o.getUnit());
-        return convert(unit) < o.convert(unit) ? -1 : (convert(unit) > o.convert(unit) ? 1 : 0);
+        return (m_nanos < o.m_nanos) ? -1 : ((m_nanos == o.m_nanos) ? 0 : 1);
     }
 
     @Override
@@ -149,9 +166,35 @@ public class Timestamp implements Comparable<Timestamp> {
         return fromEpochMillis(d.getTime());
     }
 
+    /**
+     * Primitive equivalent of {@link #stepFloor(Duration)}, in nanoseconds.
+     *
+     * @param nanos
+     *            epoch nanoseconds
+     * @param stepNanos
+     *            step size in nanoseconds
+     * @return the step floor, in epoch nanoseconds
+     */
+    public static long stepFloor(long nanos, long stepNanos) {
+        return (nanos / stepNanos) * stepNanos;
+    }
+
+    /**
+     * Primitive equivalent of {@link #stepCeiling(Duration)}, in nanoseconds.
+     *
+     * @param nanos
+     *            epoch nanoseconds
+     * @param stepNanos
+     *            step size in nanoseconds
+     * @return the step ceiling, in epoch nanoseconds
+     */
+    public static long stepCeiling(long nanos, long stepNanos) {
+        return ((nanos % stepNanos) == 0) ? nanos : ((nanos / stepNanos) + 1) * stepNanos;
+    }
+
+    // TimeUnit constants are declared from finest (NANOSECONDS) to coarsest (DAYS).
     static boolean isFiner(TimeUnit unit1, TimeUnit unit2) {
-        long c = unit2.convert(1, unit1);
-        return c == 0;
+        return unit1.ordinal() < unit2.ordinal();
     }
 
     static TimeUnit finest(TimeUnit unit1, TimeUnit unit2) {
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+/**
+ * Access to virtual threads, where the runtime supports them (Java 21 and later).
+ * <p>
+ * Newts is built to run on older runtimes, so the virtual thread API is looked up reflectively.
+ * Callers ask for virtual threads, and get platform threads (with a logged warning) when they
+ * aren't available.
+ * </p>
+ */
+public class VirtualThreads {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Method s_ofVirtual;
+    private static final Method s_name;
+    private static final Method s_factory;
+    private static final Method s_newThreadPerTaskExecutor;
+
+    static {
+        Method ofVirtual = null, name = null, factory = null, newThreadPerTaskExecutor = null;
+
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        }
+        catch (ClassNotFoundException | NoSuchMethodException e) {
+            ofVirtual = null;
+        }
+
+        s_ofVirtual = ofVirtual;
+        s_name = name;
+        s_factory = factory;
+        s_newThreadPerTaskExecutor = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the runtime supports virtual threads
+     */
+    public static boolean isAvailable() {
+        return s_ofVirtual != null;
+    }
+
+    /**
+     * Returns a {@link ThreadFactory} for threads named {@code <prefix>-<n>}; Virtual threads if
+     * requested (and available), platform threads otherwise.
+     *
+     * @param prefix
+     *            thread name prefix
+     * @param virtual
+     *            true to request virtual threads
+     * @return a thread factory
+     */
+    public static ThreadFactory factory(String prefix, boolean virtual) {
+        checkNotNull(prefix, "prefix argument");
+
+        if (virtual && isAvailable()) {
+            try {
+                Object builder = s_name.invoke(s_ofVirtual.invoke(null), prefix + "-", 0L);
+                return (ThreadFactory) s_factory.invoke(builder);
+            }
+            catch (IllegalAccessException | InvocationTargetException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+
+        if (virtual) {
+            LOG.warn("Virtual threads are not supported by this runtime ({}); Using platform threads for {}", System.getProperty("java.version"), prefix);
+        }
+
+        return new ThreadFactoryBuilder().setNameFormat(prefix + "-%d").build();
+    }
+
+    /**
+     * Returns an unbounded {@link ExecutorService} that runs each task on a new virtual thread, if
+     * requested (and available), or on a cached pool of platform threads otherwise.
+     *
+     * @param prefix
+     *            thread name prefix
+     * @param virtual
+     *            true to request virtual threads
+     * @return an executor service
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String prefix, boolean virtual) {
+        ThreadFactory factory = factory(prefix, virtual);
+
+        if (virtual && isAvailable()) {
+            try {
+                return (ExecutorService) s_newThreadPerTaskExecutor.invoke(null, factory);
+            }
+            catch (IllegalAccessException | InvocationTargetException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+
+        return Executors.newCachedThreadPool(factory);
+    }
+
+}
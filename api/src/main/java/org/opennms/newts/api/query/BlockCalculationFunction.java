@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api.query;
+
+
+/**
+ * A {@link CalculationFunction} that can also be applied to whole columns of values at once.
+ * Implementations should use simple loops over the columns, that the JIT compiler can unroll (and
+ * vectorize).
+ * <p>
+ * Intermediate results are written to scratch columns supplied by the caller, so that applying a
+ * function allocates nothing; Callers can reuse the same scratch columns for every block (and
+ * every function), but not concurrently.
+ * </p>
+ */
+public interface BlockCalculationFunction extends CalculationFunction {
+
+    /**
+     * @return the number of scratch columns that {@link #apply(double[], int, double[][], double[][])}
+     *         requires
+     */
+    int getScratchColumns();
+
+    /**
+     * Applies this function to the first <code>length</code> rows of the argument columns.
+     *
+     * @param result
+     *            column to write results to
+     * @param length
+     *            the number of rows to calculate
+     * @param args
+     *            one column of values for each function argument
+     * @param scratch
+     *            (at least) {@link #getScratchColumns()} columns of (at least) <code>length</code>
+     *            rows, for intermediate results
+     */
+    void apply(double[] result, int length, double[][] args, double[][] scratch);
+
+}
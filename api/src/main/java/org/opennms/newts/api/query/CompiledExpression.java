@@ -0,0 +1,418 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api.query;
+
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.jexl2.JexlArithmetic;
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.MapContext;
+import org.opennms.newts.api.query.ExpressionParser.Term;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Sets;
+
+
+/**
+ * A {@link CalculationFunction} compiled from an arithmetic expression.
+ * <p>
+ * Expressions are parsed once, and compiled to a tree of evaluators operating on a
+ * <code>double[]</code> of arguments (one slot for each referenced label, see
+ * {@link #getArguments()}), or on whole columns of arguments at a time. Sub-expressions that reference no labels are evaluated at compile time
+ * (by JEXL itself, so that integer arithmetic and literal handling are identical to the
+ * interpreted case).
+ * </p>
+ * <p>
+ * When applied to columns, the left operand of each binary operator is evaluated into the result
+ * column, and the right one into a scratch column; Each level of nesting on the right needs one
+ * more scratch column (see {@link #getScratchColumns()}).
+ * </p>
+ * <p>
+ * Only a subset of JEXL is supported (numeric literals, identifiers, parenthesis, unary minus, and
+ * the <code>+ - * / %</code> operators); {@link #compile(String, Set)} returns
+ * {@link Optional#absent()} for anything else.
+ * </p>
+ */
+public class CompiledExpression implements BlockCalculationFunction {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledExpression.class);
+
+    private static final JexlEngine s_engine = new JexlEngine();
+    private static final JexlArithmetic s_arithmetic = new JexlArithmetic(false);
+
+    static abstract class Node {
+
+        abstract double evaluate(double[] slots);
+
+        /** Evaluates the first <code>length</code> rows of <code>columns</code> into <code>result</code>. */
+        abstract void evaluate(double[][] columns, int length, double[] result, double[][] scratch);
+
+        /**
+         * Returns the results of this node as a column (that callers must not modify), evaluated
+         * into <code>scratch[index]</code> if need be.
+         */
+        double[] column(double[][] columns, int length, double[][] scratch, int index) {
+            evaluate(columns, length, scratch[index], scratch);
+            return scratch[index];
+        }
+
+    }
+
+    static class Constant extends Node {
+
+        private final double m_value;
+
+        Constant(double value) {
+            m_value = value;
+        }
+
+        double getValue() {
+            return m_value;
+        }
+
+        @Override
+        double evaluate(double[] slots) {
+            return m_value;
+        }
+
+        @Override
+        void evaluate(double[][] columns, int length, double[] result, double[][] scratch) {
+            Arrays.fill(result, 0, length, m_value);
+        }
+
+    }
+
+    static class Slot extends Node {
+
+        private final int m_index;
+
+        Slot(int index) {
+            m_index = index;
+        }
+
+        @Override
+        double evaluate(double[] slots) {
+            return slots[m_index];
+        }
+
+        @Override
+        void evaluate(double[][] columns, int length, double[] result, double[][] scratch) {
+            System.arraycopy(columns[m_index], 0, result, 0, length);
+        }
+
+        @Override
+        double[] column(double[][] columns, int length, double[][] scratch, int index) {
+            return columns[m_index];
+        }
+
+    }
+
+    static class Negate extends Node {
+
+        private final Node m_operand;
+
+        Negate(Node operand) {
+            m_operand = operand;
+        }
+
+        @Override
+        double evaluate(double[] slots) {
+            return -m_operand.evaluate(slots);
+        }
+
+        @Override
+        void evaluate(double[][] columns, int length, double[] result, double[][] scratch) {
+            m_operand.evaluate(columns, length, result, scratch);
+            for (int i = 0; i < length; i++) {
+                result[i] = -result[i];
+            }
+        }
+
+    }
+
+    static abstract class Binary extends Node {
+
+        protected final Node m_left;
+        protected final Node m_right;
+        protected final int m_scratch;
+
+        Binary(Node left, Node right, int scratch) {
+            m_left = left;
+            m_right = right;
+            m_scratch = scratch;
+        }
+
+        /** Evaluates the left operand into <code>result</code>, and returns the right as a column. */
+        protected double[] operands(double[][] columns, int length, double[] result, double[][] scratch) {
+            m_left.evaluate(columns, length, result, scratch);
+            return m_right.column(columns, length, scratch, m_scratch);
+        }
+
+    }
+
+    static class Add extends Binary {
+
+        Add(Node left, Node right, int scratch) {
+            super(left, right, scratch);
+        }
+
+        @Override
+        double evaluate(double[] slots) {
+            return m_left.evaluate(slots) + m_right.evaluate(slots);
+        }
+
+        @Override
+        void evaluate(double[][] columns, int length, double[] result, double[][] scratch) {
+            double[] right = operands(columns, length, result, scratch);
+            for (int i = 0; i < length; i++) {
+                result[i] += right[i];
+            }
+        }
+
+    }
+
+    static class Subtract extends Binary {
+
+        Subtract(Node left, Node right, int scratch) {
+            super(left, right, scratch);
+        }
+
+        @Override
+        double evaluate(double[] slots) {
+            return m_left.evaluate(slots) - m_right.evaluate(slots);
+        }
+
+        @Override
+        void evaluate(double[][] columns, int length, double[] result, double[][] scratch) {
+            double[] right = operands(columns, length, result, scratch);
+            for (int i = 0; i < length; i++) {
+                result[i] -= right[i];
+            }
+        }
+
+    }
+
+    static class Multiply extends Binary {
+
+        Multiply(Node left, Node right, int scratch) {
+            super(left, right, scratch);
+        }
+
+        @Override
+        double evaluate(double[] slots) {
+            return m_left.evaluate(slots) * m_right.evaluate(slots);
+        }
+
+        @Override
+        void evaluate(double[][] columns, int length, double[] result, double[][] scratch) {
+            double[] right = operands(columns, length, result, scratch);
+            for (int i = 0; i < length; i++) {
+                result[i] *= right[i];
+            }
+        }
+
+    }
+
+    // JEXL (lenient) evaluates division by zero as zero, and so do we.
+    static class Divide extends Binary {
+
+        Divide(Node left, Node right, int scratch) {
+            super(left, right, scratch);
+        }
+
+        @Override
+        double evaluate(double[] slots) {
+            double l = m_left.evaluate(slots), r = m_right.evaluate(slots);
+            return (r == 0.0d) ? 0.0d : l / r;
+        }
+
+        @Override
+        void evaluate(double[][] columns, int length, double[] result, double[][] scratch) {
+            double[] right = operands(columns, length, result, scratch);
+            for (int i = 0; i < length; i++) {
+                result[i] = (right[i] == 0.0d) ? 0.0d : result[i] / right[i];
+            }
+        }
+
+    }
+
+    static class Modulo extends Binary {
+
+        Modulo(Node left, Node right, int scratch) {
+            super(left, right, scratch);
+        }
+
+        @Override
+        double evaluate(double[] slots) {
+            double l = m_left.evaluate(slots), r = m_right.evaluate(slots);
+            return (r == 0.0d) ? 0.0d : l % r;
+        }
+
+        @Override
+        void evaluate(double[][] columns, int length, double[] result, double[][] scratch) {
+            double[] right = operands(columns, length, result, scratch);
+            for (int i = 0; i < length; i++) {
+                result[i] = (right[i] == 0.0d) ? 0.0d : result[i] % right[i];
+            }
+        }
+
+    }
+
+    private final String m_expression;
+    private final Node m_root;
+    private final String[] m_arguments;
+    private final int m_scratchColumns;
+
+    private CompiledExpression(String expression, Node root, String[] arguments, int scratchColumns) {
+        m_expression = expression;
+        m_root = root;
+        m_arguments = arguments;
+        m_scratchColumns = scratchColumns;
+    }
+
+    /**
+     * Compiles an expression.
+     *
+     * @param expression
+     *            the expression to compile
+     * @param labels
+     *            the set of labels that may be referenced
+     * @return the compiled expression, or {@link Optional#absent()} if <code>expression</code>
+     *         cannot be compiled
+     */
+    public static Optional<CompiledExpression> compile(String expression, Set<String> labels) {
+        checkNotNull(expression, "expression argument");
+        checkNotNull(labels, "labels argument");
+
+        try {
+            Term term = ExpressionParser.parse(expression);
+            List<String> identifiers = ExpressionParser.identifiers(term);
+
+            Set<String> missing = Sets.difference(Sets.newHashSet(identifiers), labels);
+
+            if (!missing.isEmpty()) {
+                throw new IllegalArgumentException(String.format("no such label(s): %s", missing));
+            }
+
+            String[] arguments = identifiers.toArray(new String[identifiers.size()]);
+            int[] scratchColumns = { 0 };
+            Node root = term.isConstant() ? new Constant(toNumber(evaluate(term)).doubleValue()) : build(term, arguments, 0, scratchColumns);
+
+            return Optional.of(new CompiledExpression(expression, root, arguments, scratchColumns[0]));
+        }
+        catch (RuntimeException e) {
+            LOG.debug("Unable to compile \"{}\" ({}); Falling back to interpreter", expression, e.getMessage());
+            return Optional.absent();
+        }
+    }
+
+    /**
+     * Builds the evaluator of a term, whose right operands are evaluated into the scratch column
+     * of their depth; <code>scratchColumns[0]</code> is raised to the number of columns required.
+     */
+    private static Node build(Term term, String[] arguments, int depth, int[] scratchColumns) {
+
+        if (term.isConstant()) {
+            return new Constant(s_arithmetic.toDouble(evaluate(term)));
+        }
+
+        switch (term.getKind()) {
+            case IDENTIFIER:
+                return new Slot(Arrays.asList(arguments).indexOf(term.getText()));
+            case NEGATE:
+                return new Negate(build(term.getLeft(), arguments, depth, scratchColumns));
+            default:
+                break;
+        }
+
+        Node left = build(term.getLeft(), arguments, depth, scratchColumns);
+        Node right = build(term.getRight(), arguments, depth + 1, scratchColumns);
+
+        if (!(right instanceof Slot)) {
+            scratchColumns[0] = Math.max(scratchColumns[0], depth + 1);
+        }
+
+        switch (term.getKind()) {
+            case ADD:
+                return new Add(left, right, depth);
+            case SUBTRACT:
+                return new Subtract(left, right, depth);
+            case MULTIPLY:
+                return new Multiply(left, right, depth);
+            case DIVIDE:
+                return new Divide(left, right, depth);
+            case MODULO:
+                return new Modulo(left, right, depth);
+            default:
+                throw new IllegalArgumentException(String.format("Unknown term: %s", term.getKind()));
+        }
+    }
+
+    /** Evaluates a constant sub-expression. */
+    private static Object evaluate(Term term) {
+        return s_engine.createExpression(term.toString()).evaluate(new MapContext());
+    }
+
+    private static Number toNumber(Object value) {
+        if (value instanceof Number) return (Number) value;
+        throw new IllegalArgumentException(String.format("%s is not a number", value));
+    }
+
+    /**
+     * @return the labels referenced by this expression, in the order they must be passed to
+     *         {@link #apply(double...)}
+     */
+    public String[] getArguments() {
+        return m_arguments;
+    }
+
+    /** @return true if this expression references no labels. */
+    public boolean isConstant() {
+        return m_root instanceof Constant;
+    }
+
+    public String getExpression() {
+        return m_expression;
+    }
+
+    @Override
+    public double apply(double... ds) {
+        return m_root.evaluate(ds);
+    }
+
+    @Override
+    public int getScratchColumns() {
+        return m_scratchColumns;
+    }
+
+    @Override
+    public void apply(double[] result, int length, double[][] args, double[][] scratch) {
+        m_root.evaluate(args, length, result, scratch);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s, args=%s]", getClass().getSimpleName(), getExpression(), Arrays.asList(getArguments()));
+    }
+
+}
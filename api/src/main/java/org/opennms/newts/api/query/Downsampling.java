@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api.query;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+
+
+/**
+ * Reduction of query results to a maximum number of points, using a method that preserves the
+ * visual shape of the series (peaks and troughs remain visible when graphed).
+ */
+public class Downsampling {
+
+    public static enum Method {
+        /** Largest-Triangle-Three-Buckets; One row is selected per bucket. */
+        LTTB,
+        /** First, last, minimum and maximum rows of each bucket. */
+        M4;
+    }
+
+    private final Method m_method;
+    private final int m_maxPoints;
+
+    public Downsampling(Method method, int maxPoints) {
+        m_method = checkNotNull(method, "method argument");
+        checkArgument(maxPoints > 2, "max points must be greater than 2");
+        m_maxPoints = maxPoints;
+    }
+
+    public static Downsampling lttb(int maxPoints) {
+        return new Downsampling(Method.LTTB, maxPoints);
+    }
+
+    public static Downsampling m4(int maxPoints) {
+        return new Downsampling(Method.M4, maxPoints);
+    }
+
+    public Method getMethod() {
+        return m_method;
+    }
+
+    public int getMaxPoints() {
+        return m_maxPoints;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Downsampling)) return false;
+        return getMethod().equals(((Downsampling) o).getMethod()) && getMaxPoints() == ((Downsampling) o).getMaxPoints();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getMethod(), getMaxPoints());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s, maxPoints=%d]", getClass().getSimpleName(), getMethod(), getMaxPoints());
+    }
+
+}
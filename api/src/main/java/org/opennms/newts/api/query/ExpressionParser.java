@@ -0,0 +1,314 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api.query;
+
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+
+/**
+ * Recursive descent parser for the arithmetic subset of JEXL used in calculated datasources;
+ * Numeric literals, identifiers, parenthesis, unary minus, and the binary operators
+ * <code>+ - * / %</code>. Anything else is rejected with an {@link IllegalArgumentException},
+ * (callers are expected to fall back to JEXL proper).
+ */
+class ExpressionParser {
+
+    /** Words that JEXL treats as operators or keywords, and so can never be used as identifiers. */
+    private static final Set<String> s_reserved = ImmutableSet.of(
+            "or", "and", "eq", "ne", "lt", "gt", "le", "ge", "div", "mod", "not", "null", "true",
+            "false", "new", "empty", "size", "if", "else", "for", "foreach", "while", "return", "var");
+
+    static enum Kind {
+        LITERAL, IDENTIFIER, NEGATE, ADD, SUBTRACT, MULTIPLY, DIVIDE, MODULO;
+    }
+
+    /** A node in the parsed syntax tree. */
+    static class Term {
+
+        private final Kind m_kind;
+        private final String m_text;
+        private final Term m_left;
+        private final Term m_right;
+
+        private Term(Kind kind, String text, Term left, Term right) {
+            m_kind = kind;
+            m_text = text;
+            m_left = left;
+            m_right = right;
+        }
+
+        Kind getKind() {
+            return m_kind;
+        }
+
+        /** The literal text, or identifier name (leaf nodes only). */
+        String getText() {
+            return m_text;
+        }
+
+        Term getLeft() {
+            return m_left;
+        }
+
+        Term getRight() {
+            return m_right;
+        }
+
+        /** @return true if no identifiers appear anywhere beneath this term */
+        boolean isConstant() {
+            switch (m_kind) {
+                case LITERAL:
+                    return true;
+                case IDENTIFIER:
+                    return false;
+                case NEGATE:
+                    return m_left.isConstant();
+                default:
+                    return m_left.isConstant() && m_right.isConstant();
+            }
+        }
+
+        /** Appends the names of all referenced identifiers (in order of appearance). */
+        void collectIdentifiers(List<String> identifiers) {
+            switch (m_kind) {
+                case LITERAL:
+                    break;
+                case IDENTIFIER:
+                    if (!identifiers.contains(m_text)) identifiers.add(m_text);
+                    break;
+                case NEGATE:
+                    m_left.collectIdentifiers(identifiers);
+                    break;
+                default:
+                    m_left.collectIdentifiers(identifiers);
+                    m_right.collectIdentifiers(identifiers);
+            }
+        }
+
+        /** @return a fully parenthesized JEXL expression equivalent to this term */
+        @Override
+        public String toString() {
+            switch (m_kind) {
+                case LITERAL:
+                case IDENTIFIER:
+                    return m_text;
+                case NEGATE:
+                    return String.format("-(%s)", m_left);
+                default:
+                    return String.format("(%s %s %s)", m_left, operator(m_kind), m_right);
+            }
+        }
+
+    }
+
+    private final String m_input;
+    private int m_pos = 0;
+
+    private ExpressionParser(String input) {
+        m_input = checkNotNull(input, "input argument");
+    }
+
+    /**
+     * Parses an expression.
+     *
+     * @param expression
+     *            the expression to parse
+     * @return the root of the resulting syntax tree
+     * @throws IllegalArgumentException
+     *             if the expression is not of the supported subset
+     */
+    static Term parse(String expression) {
+        ExpressionParser parser = new ExpressionParser(expression);
+        Term result = parser.expression();
+
+        parser.skipWhitespace();
+
+        if (!parser.atEnd()) {
+            throw parser.error("unexpected input");
+        }
+
+        return result;
+    }
+
+    // expression := term (('+' | '-') term)*
+    private Term expression() {
+        Term left = term();
+
+        while (true) {
+            if (accept('+')) {
+                left = new Term(Kind.ADD, null, left, term());
+            }
+            else if (accept('-')) {
+                left = new Term(Kind.SUBTRACT, null, left, term());
+            }
+            else {
+                return left;
+            }
+        }
+    }
+
+    // term := unary (('*' | '/' | '%') unary)*
+    private Term term() {
+        Term left = unary();
+
+        while (true) {
+            if (accept('*')) {
+                left = new Term(Kind.MULTIPLY, null, left, unary());
+            }
+            else if (accept('/')) {
+                left = new Term(Kind.DIVIDE, null, left, unary());
+            }
+            else if (accept('%')) {
+                left = new Term(Kind.MODULO, null, left, unary());
+            }
+            else {
+                return left;
+            }
+        }
+    }
+
+    // unary := '-' unary | primary
+    private Term unary() {
+        return accept('-') ? new Term(Kind.NEGATE, null, unary(), null) : primary();
+    }
+
+    // primary := NUMBER | IDENTIFIER | '(' expression ')'
+    private Term primary() {
+        skipWhitespace();
+
+        if (atEnd()) {
+            throw error("unexpected end of expression");
+        }
+
+        char c = m_input.charAt(m_pos);
+
+        if (c == '(') {
+            m_pos++;
+            Term inner = expression();
+            if (!accept(')')) {
+                throw error("expected ')'");
+            }
+            return inner;
+        }
+
+        if (isDigit(c)) {
+            return new Term(Kind.LITERAL, number(), null, null);
+        }
+
+        if (isIdentifierStart(c)) {
+            String name = identifier();
+            if (s_reserved.contains(name)) {
+                throw error(String.format("'%s' is reserved", name));
+            }
+            return new Term(Kind.IDENTIFIER, name, null, null);
+        }
+
+        throw error(String.format("unexpected character '%s'", c));
+    }
+
+    // NUMBER := DIGIT+ ('.' DIGIT+)?
+    private String number() {
+        int start = m_pos;
+
+        while (!atEnd() && isDigit(m_input.charAt(m_pos))) m_pos++;
+
+        if (!atEnd() && m_input.charAt(m_pos) == '.') {
+            m_pos++;
+            int fraction = m_pos;
+            while (!atEnd() && isDigit(m_input.charAt(m_pos))) m_pos++;
+            if (m_pos == fraction) throw error("malformed number");
+        }
+
+        // Suffixes, exponents, and hex notation are all outside of what we support.
+        if (!atEnd() && (isIdentifierPart(m_input.charAt(m_pos)) || m_input.charAt(m_pos) == '.')) {
+            throw error("malformed number");
+        }
+
+        return m_input.substring(start, m_pos);
+    }
+
+    // IDENTIFIER := [A-Za-z_$] [A-Za-z0-9_$]*
+    private String identifier() {
+        int start = m_pos;
+        while (!atEnd() && isIdentifierPart(m_input.charAt(m_pos))) m_pos++;
+        return m_input.substring(start, m_pos);
+    }
+
+    private boolean accept(char c) {
+        skipWhitespace();
+        if (!atEnd() && m_input.charAt(m_pos) == c) {
+            m_pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (!atEnd() && Character.isWhitespace(m_input.charAt(m_pos))) m_pos++;
+    }
+
+    private boolean atEnd() {
+        return m_pos >= m_input.length();
+    }
+
+    private IllegalArgumentException error(String msg) {
+        return new IllegalArgumentException(String.format("%s at position %d of \"%s\"", msg, m_pos, m_input));
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c);
+    }
+
+    private static String operator(Kind kind) {
+        switch (kind) {
+            case ADD:
+                return "+";
+            case SUBTRACT:
+                return "-";
+            case MULTIPLY:
+                return "*";
+            case DIVIDE:
+                return "/";
+            case MODULO:
+                return "%";
+            default:
+                throw new IllegalArgumentException(String.format("%s is not a binary operator", kind));
+        }
+    }
+
+    /** Returns a new list of identifiers referenced by <code>term</code>. */
+    static List<String> identifiers(Term term) {
+        List<String> result = Lists.newArrayList();
+        term.collectIdentifiers(result);
+        return result;
+    }
+
+}
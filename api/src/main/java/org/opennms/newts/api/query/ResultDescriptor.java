@@ -18,6 +18,7 @@ package org.opennms.newts.api.query;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 import java.util.Arrays;
 import java.util.Map;
@@ -30,6 +31,9 @@ import org.apache.commons.jexl2.MapContext;
 import org.opennms.newts.api.Duration;
 
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -45,6 +49,70 @@ public class ResultDescriptor {
         double apply(double a, double b);
     }
 
+    private static class UnaryCalculation implements BlockCalculationFunction {
+
+        private final UnaryFunction m_function;
+
+        private UnaryCalculation(UnaryFunction function) {
+            m_function = function;
+        }
+
+        @Override
+        public double apply(double... ds) {
+            checkArgument(ds.length == 1, "unaryFunctions expect to take exactly one argument but we've been passed "
+                    + ds.length);
+            return m_function.apply(ds[0]);
+        }
+
+        @Override
+        public int getScratchColumns() {
+            return 0;
+        }
+
+        @Override
+        public void apply(double[] result, int length, double[][] args, double[][] scratch) {
+            checkArgument(args.length == 1, "unaryFunctions expect to take exactly one argument but we've been passed "
+                    + args.length);
+            double[] a = args[0];
+            for (int i = 0; i < length; i++) {
+                result[i] = m_function.apply(a[i]);
+            }
+        }
+
+    }
+
+    private static class BinaryCalculation implements BlockCalculationFunction {
+
+        private final BinaryFunction m_function;
+
+        private BinaryCalculation(BinaryFunction function) {
+            m_function = function;
+        }
+
+        @Override
+        public double apply(double... ds) {
+            checkArgument(ds.length == 2, "binaryFunctions expect to take exactly two arguments but we've been passed "
+                    + ds.length);
+            return m_function.apply(ds[0], ds[1]);
+        }
+
+        @Override
+        public int getScratchColumns() {
+            return 0;
+        }
+
+        @Override
+        public void apply(double[] result, int length, double[][] args, double[][] scratch) {
+            checkArgument(args.length == 2, "binaryFunctions expect to take exactly two arguments but we've been passed "
+                    + args.length);
+            double[] a = args[0], b = args[1];
+            for (int i = 0; i < length; i++) {
+                result[i] = m_function.apply(a[i], b[i]);
+            }
+        }
+
+    }
+
     /**
      * The default step size in milliseconds.
      */
@@ -60,12 +128,20 @@ public class ResultDescriptor {
      */
     public static final double DEFAULT_XFF = 0.5;
 
+    private static final JexlEngine s_jexlEngine = new JexlEngine();
+
+    // A calculation needs at least one argument; Constant expressions are bound to a number instead of a label.
+    private static final String[] CONSTANT_ARGS = { "0" };
+
     private Duration m_interval;
-    private final Map<String, Datasource> m_datasources = Maps.newHashMap();
+    private final Map<String, Datasource> m_datasources;
     // use linkedHashMap so creation order is preserved. calculations can only depend on earlier not later calculations
-    private final Map<String, Calculation> m_calculations = Maps.newLinkedHashMap();
+    private final Map<String, Calculation> m_calculations;
+
+    private final Set<String> m_exports;
 
-    private final Set<String> m_exports = Sets.newHashSet();
+    // Non-null only for immutable descriptors
+    private final Set<String> m_sourceNames;
 
     /**
      * Constructs a new {@link ResultDescriptor} with the default step size.
@@ -92,6 +168,33 @@ public class ResultDescriptor {
      */
     public ResultDescriptor(Duration step) {
         m_interval = step;
+        m_datasources = Maps.newHashMap();
+        m_calculations = Maps.newLinkedHashMap();
+        m_exports = Sets.newHashSet();
+        m_sourceNames = null;
+    }
+
+    private ResultDescriptor(ResultDescriptor other) {
+        m_interval = other.getInterval();
+        m_datasources = ImmutableMap.copyOf(other.getDatasources());
+        m_calculations = ImmutableMap.copyOf(other.getCalculations());
+        m_exports = ImmutableSet.copyOf(other.getExports());
+        m_sourceNames = ImmutableSet.copyOf(other.getSourceNames());
+    }
+
+    /**
+     * Returns an immutable copy of this descriptor, with its source names resolved up front.
+     * Immutable descriptors can be shared by any number of concurrent queries, (descriptors
+     * are otherwise not thread-safe).
+     * 
+     * @return an immutable copy, (or this descriptor, if already immutable)
+     */
+    public ResultDescriptor immutableCopy() {
+        return isImmutable() ? this : new ResultDescriptor(this);
+    }
+
+    public boolean isImmutable() {
+        return m_sourceNames != null;
     }
 
     public Duration getInterval() {
@@ -113,6 +216,10 @@ public class ResultDescriptor {
      * @return source names
      */
     public Set<String> getSourceNames() {
+        if (m_sourceNames != null) {
+            return m_sourceNames;
+        }
+
         return Sets.newHashSet(Iterables.transform(getDatasources().values(), new Function<Datasource, String>() {
 
             @Override
@@ -142,6 +249,7 @@ public class ResultDescriptor {
     }
 
     public ResultDescriptor step(Duration step) {
+        checkMutable();
         m_interval = step;
         return this;
     }
@@ -164,6 +272,7 @@ public class ResultDescriptor {
 
     ResultDescriptor datasource(Datasource ds) {
         checkNotNull(ds, "data source argument");
+        checkMutable();
         checkArgument(!getLabels().contains(ds.getLabel()), "label \"%s\" already in use", ds.getLabel());
         checkArgument(ds.getHeartbeat().gte(getInterval()), "heartbeat cannot be smaller than sample interval");
 
@@ -173,11 +282,16 @@ public class ResultDescriptor {
     }
 
     public ResultDescriptor export(String... names) {
+        checkMutable();
         checkLabels(names);
         getExports().addAll(Arrays.asList(names));
         return this;
     }
 
+    private void checkMutable() {
+        checkState(!isImmutable(), "descriptor is immutable");
+    }
+
     private void checkLabels(String... names) {
         Set<String> missing = Sets.newHashSet(names);
         missing.removeAll(getLabels());
@@ -205,6 +319,7 @@ public class ResultDescriptor {
     }
 
     public ResultDescriptor calculate(Calculation calculation) {
+        checkMutable();
         checkValues(calculation.getArgs());
         checkArgument(!getLabels().contains(calculation.getLabel()), "label \"%s\" already in use", calculation.getLabel());
         m_calculations.put(calculation.getLabel(), calculation);
@@ -215,38 +330,37 @@ public class ResultDescriptor {
         return calculate(new Calculation(label, calculationFunction, args));
     }
 
-    public ResultDescriptor calculate(String label, final BinaryFunction binaryFunction, String arg1, String arg2) {
-        CalculationFunction calculationFunction = new CalculationFunction() {
-
-            @Override
-            public double apply(double... ds) {
-                checkArgument(ds.length == 2, "binaryFunctions expect to take exactly two arguments but we've been passed "
-                        + ds.length);
-                return binaryFunction.apply(ds[0], ds[1]);
-            }
-        };
-        return calculate(label, calculationFunction, arg1, arg2);
+    public ResultDescriptor calculate(String label, BinaryFunction binaryFunction, String arg1, String arg2) {
+        return calculate(label, new BinaryCalculation(binaryFunction), arg1, arg2);
+    }
 
+    public ResultDescriptor calculate(String label, UnaryFunction unaryFunction, String arg) {
+        return calculate(label, new UnaryCalculation(unaryFunction), arg);
     }
 
-    public ResultDescriptor calculate(String label, final UnaryFunction unaryFunction, String arg) {
-        CalculationFunction calculationFunction = new CalculationFunction() {
+    /**
+     * Adds a calculation defined by a JEXL expression of the labels defined so far. Arithmetic
+     * expressions are compiled (see {@link CompiledExpression}), anything else is evaluated by the
+     * JEXL interpreter.
+     *
+     * @param label
+     *            label of the calculation
+     * @param expression
+     *            the expression to evaluate
+     * @return this descriptor
+     */
+    public ResultDescriptor expression(String label, String expression) {
+        Optional<CompiledExpression> compiled = CompiledExpression.compile(expression, getLabels());
 
-            @Override
-            public double apply(double... ds) {
-                checkArgument(ds.length == 1, "unaryFunctions expect to take exactly one argument but we've been passed "
-                        + ds.length);
-                return unaryFunction.apply(ds[0]);
-            }
-        };
-        return calculate(label, calculationFunction, arg);
+        if (compiled.isPresent()) {
+            // Constant expressions have no arguments of their own (and will ignore any passed).
+            String[] args = compiled.get().isConstant() ? CONSTANT_ARGS : compiled.get().getArguments();
+            return calculate(label, compiled.get(), args);
+        }
 
-    }
-    
-    public ResultDescriptor expression(String label, String expression) {
-        final JexlEngine je = new JexlEngine();
-        final Expression expr = je.createExpression(expression);
         final String[] labels = getLabels().toArray(new String[0]);
+
+        final Expression expr = s_jexlEngine.createExpression(expression);
         CalculationFunction evaluate = new CalculationFunction() {
             
             @Override
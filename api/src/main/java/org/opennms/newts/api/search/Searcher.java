@@ -1,6 +1,15 @@
 package org.opennms.newts.api.search;
 
 
+import org.opennms.newts.api.Context;
+
+
 public interface Searcher {
+
+    /** Search resources of the default context. */
     public SearchResults search(String queryString);
+
+    /** Search resources of the given context. */
+    public SearchResults search(Context context, String queryString);
+
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.opennms.newts.api.query.Downsampling;
+import org.opennms.newts.api.query.ResultDescriptor;
+
+import com.google.common.base.Optional;
+
+
+public class AbstractSampleRepositoryTest {
+
+    private static final Resource RESOURCE = new Resource("localhost");
+    private static final Optional<Timestamp> START = Optional.of(Timestamp.fromEpochSeconds(900000000));
+    private static final Optional<Timestamp> END = Optional.of(Timestamp.fromEpochSeconds(900003600));
+    private static final ResultDescriptor DESCRIPTOR = new ResultDescriptor();
+    private static final Duration RESOLUTION = Duration.minutes(5);
+
+    @Test
+    public void testMeasurements() {
+        Recorder repository = new Recorder();
+        Context context = new Context("tenant");
+        Downsampling downsampling = new Downsampling(Downsampling.Method.LTTB, 10);
+
+        repository.select(RESOURCE, START, END, DESCRIPTOR, RESOLUTION);
+        repository.verify(Context.DEFAULT_CONTEXT, Optional.<Downsampling> absent());
+
+        repository.select(context, RESOURCE, START, END, DESCRIPTOR, RESOLUTION);
+        repository.verify(context, Optional.<Downsampling> absent());
+
+        repository.select(RESOURCE, START, END, DESCRIPTOR, RESOLUTION, downsampling);
+        repository.verify(Context.DEFAULT_CONTEXT, Optional.of(downsampling));
+
+        repository.select(context, RESOURCE, START, END, DESCRIPTOR, RESOLUTION, downsampling);
+        repository.verify(context, Optional.of(downsampling));
+    }
+
+    @Test
+    public void testSamples() {
+        Recorder repository = new Recorder();
+        Context context = new Context("tenant");
+
+        repository.select(RESOURCE, START, END);
+        repository.verify(Context.DEFAULT_CONTEXT, null);
+
+        repository.select(context, RESOURCE, START, END);
+        repository.verify(context, null);
+    }
+
+    // Records the arguments of the widest overloads.
+    private static class Recorder extends AbstractSampleRepository {
+
+        private Context m_context;
+        private Optional<Downsampling> m_downsampling;
+        private Deadline m_deadline;
+
+        @Override
+        public Results<Measurement> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor,
+                Duration resolution, Optional<Downsampling> downsampling, Deadline deadline) {
+            assertSame(RESOURCE, resource);
+            assertSame(START, start);
+            assertSame(END, end);
+            assertSame(DESCRIPTOR, descriptor);
+            assertSame(RESOLUTION, resolution);
+
+            m_context = context;
+            m_downsampling = downsampling;
+            m_deadline = deadline;
+
+            return new Results<>();
+        }
+
+        @Override
+        public Results<Sample> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, Deadline deadline) {
+            assertSame(RESOURCE, resource);
+            assertSame(START, start);
+            assertSame(END, end);
+
+            m_context = context;
+            m_downsampling = null;
+            m_deadline = deadline;
+
+            return new Results<>();
+        }
+
+        @Override
+        public void insert(Collection<Sample> samples) {
+            throw new UnsupportedOperationException();
+        }
+
+        void verify(Context context, Optional<Downsampling> downsampling) {
+            assertEquals(context, m_context);
+            assertEquals(downsampling, m_downsampling);
+            // Unbounded.
+            assertEquals(Long.MAX_VALUE, m_deadline.remaining(TimeUnit.NANOSECONDS));
+            assertFalse(m_deadline.isExpired());
+
+            m_context = null;
+            m_deadline = null;
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.primitives.UnsignedLong;
+
+
+public class AccumulatorTest {
+
+    private static final long[] EDGES = { 0, 1, 2, 0xFFFFFFFEL, 0xFFFFFFFFL, 0x100000000L, Long.MAX_VALUE, Long.MIN_VALUE, -2, -1 };
+
+    @Test
+    public void testForType() {
+        assertTrue(Accumulator.forType(MetricType.GAUGE) instanceof GaugeAccumulator);
+        assertEquals(MetricType.DERIVE, Accumulator.forType(MetricType.DERIVE).getType());
+        assertEquals(new Derive(UnsignedLong.valueOf(5)), Accumulator.forType(MetricType.DERIVE).set(new Counter(5)).getValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadCounterType() {
+        new CounterAccumulator(MetricType.GAUGE);
+    }
+
+    @Test
+    public void testDeltaWraps() {
+        CounterAccumulator accumulator = new CounterAccumulator(MetricType.COUNTER);
+
+        // 32-bit wrap
+        assertEquals(2L, accumulator.set(1).delta(new Counter(0xFFFFFFFFL)).longValue());
+        // 64-bit wrap
+        assertEquals(2L, accumulator.set(1).delta(new Counter(-1L)).longValue());
+    }
+
+    @Test
+    public void testCounters() {
+        Random random = new Random(42);
+
+        for (MetricType type : new MetricType[] { MetricType.COUNTER, MetricType.DERIVE, MetricType.ABSOLUTE }) {
+            CounterAccumulator accumulator = new CounterAccumulator(type);
+
+            for (long current : EDGES) {
+                for (long previous : EDGES) {
+                    checkCounter(accumulator, type, current, previous, 1 + random.nextInt(600));
+                }
+            }
+
+            for (int i = 0; i < 10000; i++) {
+                long current = (i % 2 == 0) ? random.nextLong() : random.nextInt() & 0xFFFFFFFFL;
+                long previous = (i % 3 == 0) ? random.nextLong() : random.nextInt() & 0xFFFFFFFFL;
+                checkCounter(accumulator, type, current, previous, 1 + random.nextInt(600));
+            }
+        }
+    }
+
+    @Test
+    public void testGaugeProducts() {
+        Random random = new Random(42);
+        GaugeAccumulator accumulator = new GaugeAccumulator();
+        ValueType<?> expected = new Gauge(0.0d);
+
+        for (int i = 0; i < 10000; i++) {
+            long factor = random.nextInt(300000);
+            ValueType<?> value = (i % 2 == 0) ? new Gauge(random.nextDouble() * 1e6) : new Counter(random.nextLong());
+
+            expected = expected.plus(value.times(factor));
+            accumulator.plusProduct(value, factor);
+
+            assertEquals(expected.doubleValue(), accumulator.doubleValue(), 0.0d);
+        }
+
+        assertEquals(expected.divideBy(7).doubleValue(), accumulator.divideBy(7).doubleValue(), 0.0d);
+        assertEquals(0.0d, accumulator.reset().doubleValue(), 0.0d);
+    }
+
+    @Test
+    public void testCounterProducts() {
+        Random random = new Random(42);
+        CounterAccumulator accumulator = new CounterAccumulator(MetricType.COUNTER);
+        ValueType<?> expected = new Counter(0);
+
+        for (int i = 0; i < 10000; i++) {
+            long factor = random.nextInt(300000);
+            ValueType<?> value = (i % 2 == 0) ? new Gauge(random.nextDouble() * 1e6) : new Counter(random.nextLong());
+
+            expected = expected.plus(value.times(factor));
+            accumulator.plusProduct(value, factor);
+
+            assertEquals(expected.longValue(), accumulator.longValue());
+            assertEquals(expected.doubleValue(), accumulator.doubleValue(), 0.0d);
+        }
+
+        assertEquals(expected, accumulator.getValue());
+    }
+
+    private static void checkCounter(CounterAccumulator accumulator, MetricType type, long current, long previous, long elapsed) {
+        ValueType<?> value = counter(type, current);
+        ValueType<?> expected = value.delta(counter(type, previous)).divideBy(elapsed);
+
+        accumulator.set(value).delta(counter(type, previous)).divideBy(elapsed);
+
+        assertEquals(expected.longValue(), accumulator.longValue());
+        assertEquals(expected.doubleValue(), accumulator.doubleValue(), 0.0d);
+    }
+
+    private static ValueType<?> counter(MetricType type, long bits) {
+        return ValueType.compose(bits, type);
+    }
+
+}
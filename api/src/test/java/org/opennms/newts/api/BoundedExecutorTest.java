@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.newts.api.BoundedExecutor.WaitStrategy;
+
+import com.codahale.metrics.MetricRegistry;
+
+
+public class BoundedExecutorTest {
+
+    private final MetricRegistry m_registry = new MetricRegistry();
+    private final CountDownLatch m_release = new CountDownLatch(1);
+    private final AtomicInteger m_completed = new AtomicInteger();
+    private BoundedExecutor m_executor;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        m_release.countDown();
+        m_executor.shutdown();
+        assertTrue(m_executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCallerRuns() {
+        m_executor = newExecutor(WaitStrategy.CALLER_RUNS);
+
+        // One running, one queued
+        m_executor.execute(blocker());
+        m_executor.execute(blocker());
+
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+
+        m_executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                thread.set(Thread.currentThread());
+            }
+        });
+
+        assertSame(Thread.currentThread(), thread.get());
+        assertEquals(1, m_registry.meter("test.queue-full").getCount());
+        assertEquals(1, m_registry.getGauges().get("test.queue-depth").getValue());
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        m_executor = newExecutor(WaitStrategy.DROP_OLDEST);
+
+        m_executor.execute(blocker());
+        m_executor.execute(counter());  // Dropped
+        m_executor.execute(counter());  // Dropped
+        m_executor.execute(counter());
+
+        assertEquals(2, m_executor.getDroppedCount());
+        assertEquals(2, m_registry.meter("test.queue-full").getCount());
+
+        m_release.countDown();
+        m_executor.shutdown();
+        assertTrue(m_executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(1, m_completed.get());
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        m_executor = newExecutor(WaitStrategy.BLOCK);
+
+        m_executor.execute(blocker());
+        m_executor.execute(counter());
+
+        Thread submitter = new Thread() {
+
+            @Override
+            public void run() {
+                m_executor.execute(counter());
+            }
+        };
+
+        submitter.start();
+        submitter.join(200);
+
+        // Still waiting for room in the queue
+        assertTrue(submitter.isAlive());
+
+        m_release.countDown();
+        submitter.join(5000);
+
+        m_executor.shutdown();
+        assertTrue(m_executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(2, m_completed.get());
+        assertEquals(1, m_registry.timer("test.submit-wait").getCount());
+    }
+
+    // One thread, and a queue of one.
+    private BoundedExecutor newExecutor(WaitStrategy strategy) {
+        return new BoundedExecutor(1, 1, 1, TimeUnit.SECONDS, 1, strategy, m_registry, "test");
+    }
+
+    private Runnable blocker() {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    m_release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private Runnable counter() {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                m_completed.incrementAndGet();
+            }
+        };
+    }
+
+}
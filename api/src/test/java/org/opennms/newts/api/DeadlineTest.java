@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+
+public class DeadlineTest {
+
+    @Test
+    public void testNone() throws Exception {
+        Deadline deadline = Deadline.none();
+
+        assertFalse(deadline.isExpired());
+        assertEquals(Long.MAX_VALUE, deadline.remaining(TimeUnit.MILLISECONDS));
+
+        SettableFuture<String> future = SettableFuture.create();
+        future.set("done");
+
+        assertEquals("done", deadline.get(future));
+    }
+
+    @Test
+    public void testCancel() {
+        final AtomicInteger calls = new AtomicInteger();
+        Runnable callback = new Runnable() {
+
+            @Override
+            public void run() {
+                calls.incrementAndGet();
+            }
+        };
+
+        Deadline deadline = Deadline.after(Duration.seconds(60));
+        deadline.onCancel(callback);
+        deadline.check();
+
+        deadline.cancel();
+        deadline.cancel();
+
+        assertTrue(deadline.isCancelled());
+        assertEquals(1, calls.get());
+
+        // Registered late; Run immediately
+        deadline.onCancel(callback);
+        assertEquals(2, calls.get());
+
+        try {
+            deadline.check();
+            fail("cancelled deadline passed check");
+        }
+        catch (CancellationException e) {
+            assertEquals("query cancelled", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        Deadline deadline = Deadline.after(10, TimeUnit.MILLISECONDS);
+        SettableFuture<String> future = SettableFuture.create();
+
+        try {
+            deadline.get(future);
+            fail("future outlived deadline");
+        }
+        catch (CancellationException e) {
+            assertEquals("query deadline exceeded", e.getMessage());
+        }
+
+        // The abandoned future is cancelled, as are any callbacks
+        assertTrue(future.isCancelled());
+        assertTrue(deadline.isExpired());
+        assertTrue(deadline.isCancelled());
+        assertEquals(0, deadline.remaining(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testAlreadyExpired() throws Exception {
+        Deadline deadline = Deadline.after(0, TimeUnit.MILLISECONDS);
+        SettableFuture<String> future = SettableFuture.create();
+
+        try {
+            deadline.get(future);
+            fail("future outlived deadline");
+        }
+        catch (CancellationException e) {
+            assertEquals("query deadline exceeded", e.getMessage());
+        }
+
+        // Cancelled without waiting
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testChecked() {
+        Deadline deadline = Deadline.none();
+        Iterator<Integer> iterator = deadline.checked(Arrays.asList(1, 2, 3).iterator());
+
+        assertEquals(Integer.valueOf(1), iterator.next());
+
+        deadline.cancel();
+
+        assertTrue(iterator.hasNext());
+
+        try {
+            iterator.next();
+            fail("iteration continued past cancellation");
+        }
+        catch (CancellationException e) {
+            // Expected
+        }
+    }
+
+}
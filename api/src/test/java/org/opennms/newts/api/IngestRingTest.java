@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.opennms.newts.api.MetricType.GAUGE;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opennms.newts.api.IngestRing.WaitStrategy;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+
+public class IngestRingTest {
+
+    @Test
+    public void testStages() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        SampleRepository repository = mock(SampleRepository.class);
+        Recorder slow = new Recorder(release);
+        Recorder fast = new Recorder(null);
+        MetricRegistry registry = new MetricRegistry();
+
+        IngestRing ring = new IngestRing(repository, ImmutableSet.<SampleProcessor> of(slow, fast), 16, WaitStrategy.BLOCKING, 1000, registry);
+
+        for (int i = 0; i < 10; i++) {
+            ring.insert(Collections.singletonList(sample(i)));
+        }
+
+        // A stalled stage holds up neither storage, nor the other processors.
+        fast.await(10);
+
+        release.countDown();
+        ring.shutdown();
+
+        assertEquals(10, stored(repository));
+        assertEquals(10, slow.count());
+        assertEquals(10, fast.count());
+
+        // Entries published while the slow stage was stalled are coalesced into one write.
+        assertTrue(slow.m_batches.size() <= 2);
+
+        assertTrue(registry.getGauges().containsKey("ingest-ring.storage.lag"));
+        assertTrue(registry.getGauges().containsKey("ingest-ring.Recorder-2.lag"));
+        assertEquals(0L, registry.getGauges().get("ingest-ring.storage.lag").getValue());
+        assertEquals(10, registry.meter("ingest-ring.Recorder.samples").getCount());
+    }
+
+    @Test
+    public void testFailingStage() {
+        SampleRepository repository = mock(SampleRepository.class);
+        Flaky failing = new Flaky(Integer.MAX_VALUE);
+        MetricRegistry registry = new MetricRegistry();
+
+        IngestRing ring = new IngestRing(repository, Collections.<SampleProcessor> singleton(failing), 4, WaitStrategy.SLEEPING, 1000, 1, registry);
+
+        for (int i = 0; i < 10; i++) {
+            ring.insert(Collections.singletonList(sample(i)));
+        }
+
+        ring.shutdown();
+
+        assertEquals(10, stored(repository));
+
+        // Each write is retried once, and then abandoned.
+        long retries = registry.meter("ingest-ring.Flaky.retries").getCount();
+
+        assertEquals(2 * retries, failing.m_attempts);
+        assertEquals(10, registry.meter("ingest-ring.Flaky.failures").getCount());
+        assertEquals(0, registry.meter("ingest-ring.storage.failures").getCount());
+    }
+
+    @Test
+    public void testRetry() {
+        SampleRepository repository = mock(SampleRepository.class);
+        Flaky flaky = new Flaky(1);
+        MetricRegistry registry = new MetricRegistry();
+
+        IngestRing ring = new IngestRing(repository, Collections.<SampleProcessor> singleton(flaky), 4, WaitStrategy.BLOCKING, 1000, 2, registry);
+
+        for (int i = 0; i < 10; i++) {
+            ring.insert(Collections.singletonList(sample(i)));
+        }
+
+        ring.shutdown();
+
+        assertEquals(10, flaky.m_written.size());
+        assertEquals(1, registry.meter("ingest-ring.Flaky.retries").getCount());
+        assertEquals(0, registry.meter("ingest-ring.Flaky.failures").getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBufferSize() {
+        new IngestRing(mock(SampleRepository.class), Collections.<SampleProcessor> emptySet(), 1000, WaitStrategy.BLOCKING, 1000, new MetricRegistry());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInsertAfterShutdown() {
+        IngestRing ring = new IngestRing(mock(SampleRepository.class), Collections.<SampleProcessor> emptySet(), 4, WaitStrategy.BLOCKING, 1000, new MetricRegistry());
+        ring.shutdown();
+        ring.insert(Collections.singletonList(sample(0)));
+    }
+
+    // Number of samples inserted into a mock repository.
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int stored(SampleRepository repository) {
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(repository, atLeastOnce()).insert(captor.capture());
+
+        int count = 0;
+        for (Collection<Sample> batch : (List<Collection<Sample>>) (List<?>) captor.getAllValues()) {
+            count += batch.size();
+        }
+
+        return count;
+    }
+
+    private static Sample sample(int value) {
+        return new Sample(Timestamp.fromEpochSeconds(value), new Resource("resource"), "metric", GAUGE, ValueType.compose(value, GAUGE));
+    }
+
+    private static class Recorder implements SampleProcessor {
+
+        private final CountDownLatch m_release;
+        final List<Collection<Sample>> m_batches = Lists.newCopyOnWriteArrayList();
+
+        private Recorder(CountDownLatch release) {
+            m_release = release;
+        }
+
+        @Override
+        public void submit(Collection<Sample> samples) {
+            if (m_release != null) {
+                try {
+                    m_release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            m_batches.add(Lists.newArrayList(samples));
+        }
+
+        int count() {
+            int count = 0;
+            for (Collection<Sample> batch : m_batches) {
+                count += batch.size();
+            }
+            return count;
+        }
+
+        void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+
+            while (count() < count) {
+                assertTrue("Timed out waiting on processor", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+
+    }
+
+    // Fails the first failures writes, (and records the rest).
+    private static class Flaky implements SampleProcessor {
+
+        private final int m_failures;
+        final List<Sample> m_written = Lists.newArrayList();
+        int m_attempts = 0;
+
+        private Flaky(int failures) {
+            m_failures = failures;
+        }
+
+        @Override
+        public void submit(Collection<Sample> samples) {
+            if (m_attempts++ < m_failures) {
+                throw new RuntimeException("failed");
+            }
+            m_written.addAll(samples);
+        }
+
+    }
+
+}
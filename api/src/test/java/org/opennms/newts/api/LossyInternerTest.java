@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+
+public class LossyInternerTest {
+
+    @Test
+    public void testIntern() {
+        LossyInterner<String> interner = new LossyInterner<>(16);
+
+        String a = new String("ifInOctets");
+        String b = new String("ifInOctets");
+
+        assertSame(a, interner.intern(a));
+        assertSame(a, interner.intern(b));
+    }
+
+    @Test
+    public void testCollision() {
+        LossyInterner<String> interner = new LossyInterner<>(1);
+
+        String a = new String("ifInOctets"), b = new String("ifOutOctets");
+
+        assertSame(a, interner.intern(a));
+        assertSame(b, interner.intern(b));
+
+        // The slot now belongs to b; a is no longer interned.
+        String c = new String("ifInOctets");
+        assertSame(c, interner.intern(c));
+    }
+
+    @Test
+    public void testResources() {
+        Map<String, String> attrs = ImmutableMap.of("vendor", "Acme");
+
+        Resource r0 = SampleDictionary.resource(new Resource("localhost:eth0", Optional.of(attrs)));
+        Resource r1 = SampleDictionary.resource(new Resource("localhost:eth0", Optional.<Map<String, String>> of(ImmutableMap.of("vendor", "Acme"))));
+        Resource r2 = SampleDictionary.resource("localhost:eth0");
+
+        assertSame(r0, r1);
+
+        // Equal, but not interchangeable.
+        assertEquals(r0, r2);
+        assertEquals(r0.hashCode(), r2.hashCode());
+        assertNotSame(r0, r2);
+        assertEquals(Optional.absent(), r2.getAttributes());
+    }
+
+    @Test
+    public void testAttributes() {
+        Map<String, String> attrs = SampleDictionary.attributes(ImmutableMap.of(new String("vendor"), "Acme"));
+
+        assertEquals(ImmutableMap.of("vendor", "Acme"), attrs);
+        assertSame(SampleDictionary.attributeKey("vendor"), attrs.keySet().iterator().next());
+        assertSame(attrs, SampleDictionary.attributes(Collections.singletonMap("vendor", "Acme")));
+        assertNull(SampleDictionary.attributes(null));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAttributesUnmodifiable() {
+        SampleDictionary.attributes(ImmutableMap.of("vendor", "Acme")).put("model", "X1");
+    }
+
+    @Test
+    public void testResourceById() {
+        Map<String, String> attrs = ImmutableMap.of("vendor", "Acme");
+
+        Resource r0 = SampleDictionary.resource(new String("localhost:eth1"), attrs);
+        Resource r1 = SampleDictionary.resource(new String("localhost:eth1"), Collections.singletonMap("vendor", "Acme"));
+
+        assertSame(r0, r1);
+        assertEquals(Optional.of(attrs), r0.getAttributes());
+
+        Resource r2 = SampleDictionary.resource(new String("localhost:eth2"));
+
+        assertSame(r2, SampleDictionary.resource(new String("localhost:eth2")));
+        assertEquals(Optional.absent(), r2.getAttributes());
+    }
+
+}
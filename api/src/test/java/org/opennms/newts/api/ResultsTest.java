@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.newts.api.Results.ColumnIndex;
+import org.opennms.newts.api.Results.Row;
+
+import com.google.common.collect.Lists;
+
+
+public class ResultsTest {
+
+    private static final Resource RESOURCE = new Resource("localhost");
+
+    @Test
+    public void testInOrder() {
+        Results<Measurement> results = new Results<>();
+
+        for (int i = 0; i < 10; i++) {
+            results.addElement(measurement(i * 300, "a", i));
+            results.addElement(measurement(i * 300, "b", i * 2));
+        }
+
+        // Revisit an earlier row
+        results.addElement(measurement(600, "c", 42));
+
+        checkOrder(results, 10);
+        assertEquals(42.0d, get(results, 2).getElement("c").getValue(), 0.0d);
+        assertEquals(3, get(results, 2).getElements().size());
+        assertEquals(2, get(results, 3).getElements().size());
+    }
+
+    @Test
+    public void testOutOfOrder() {
+        Results<Measurement> results = new Results<>();
+
+        results.addElement(measurement(300, "a", 1));
+        results.addElement(measurement(900, "a", 3));
+        results.addElement(measurement(0, "a", 0));
+        results.addElement(measurement(600, "a", 2));
+        results.addElement(measurement(1200, "a", 4));
+        results.addElement(measurement(600, "b", 2));
+
+        checkOrder(results, 5);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, get(results, i).getElement("a").getValue(), 0.0d);
+        }
+
+        assertEquals(2, get(results, 2).getElements().size());
+    }
+
+    @Test
+    public void testReplaceRow() {
+        Results<Measurement> results = new Results<>();
+        Row<Measurement> row = new Row<>(Timestamp.fromEpochSeconds(0), RESOURCE);
+
+        results.addElement(measurement(0, "a", 1));
+        results.addRow(row);
+
+        assertEquals(1, results.getRows().size());
+        assertSame(row, get(results, 0));
+    }
+
+    @Test
+    public void testRow() {
+        ColumnIndex columns = new ColumnIndex(Lists.newArrayList("x", "y"));
+        Row<Measurement> r0 = new Row<>(Timestamp.fromEpochSeconds(0), RESOURCE, columns);
+        Row<Measurement> r1 = new Row<>(Timestamp.fromEpochSeconds(300), RESOURCE, columns);
+
+        r0.addElement(measurement(0, "y", 1));
+        r1.addElement(measurement(300, "z", 2));
+        r1.addElement(measurement(300, "x", 3));
+        r1.addElement(measurement(300, "x", 4));
+
+        assertEquals(3, columns.size());
+        assertNull(r0.getElement("x"));
+        assertNull(r0.getElement("z"));
+        assertNull(r0.getElement("nonesuch"));
+        assertEquals(1, r0.getElements().size());
+        assertEquals(2, r1.getElements().size());
+
+        // Elements iterate in column order
+        Iterator<Measurement> elements = r1.iterator();
+        assertEquals("x", elements.next().getName());
+        assertEquals("z", elements.next().getName());
+    }
+
+    private static void checkOrder(Results<Measurement> results, int expected) {
+        List<Row<Measurement>> rows = Lists.newArrayList(results.getRows());
+
+        assertEquals(expected, rows.size());
+
+        for (int i = 1; i < rows.size(); i++) {
+            assertEquals(-1, rows.get(i - 1).getTimestamp().compareTo(rows.get(i).getTimestamp()));
+        }
+    }
+
+    private static Row<Measurement> get(Results<Measurement> results, int index) {
+        return Lists.newArrayList(results.getRows()).get(index);
+    }
+
+    private static Measurement measurement(long seconds, String name, double value) {
+        return new Measurement(Timestamp.fromEpochSeconds(seconds), RESOURCE, name, value);
+    }
+
+}
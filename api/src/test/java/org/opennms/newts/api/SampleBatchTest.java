@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.UnsignedLong;
+
+
+public class SampleBatchTest {
+
+    @Test
+    public void testRoundTrip() {
+
+        Map<String, String> attrs = ImmutableMap.of("vendor", "Acme", "名前", "値");
+        Resource r0 = new Resource("localhost:chassis:temps");
+        Resource r1 = new Resource("localhost:eth0", Optional.<Map<String, String>> of(ImmutableMap.of("ifIndex", "2")));
+        Context context = new Context("other");
+
+        List<Sample> samples = Lists.newArrayList(
+                new Sample(Timestamp.fromEpochMillis(900000000123L), r0, "cpu", MetricType.GAUGE, new Gauge(42.5d), attrs),
+                new Sample(Timestamp.fromEpochMillis(900000000000L), r1, "ifInOctets", MetricType.COUNTER, new Counter(UnsignedLong.fromLongBits(-2L))),
+                new Sample(Timestamp.fromEpochMillis(900000300000L), context, r1, "ifOutOctets", MetricType.DERIVE, new Derive(UnsignedLong.valueOf(7))),
+                new Sample(Timestamp.fromEpochMillis(0), r0, "cpu", MetricType.ABSOLUTE, new Absolute(UnsignedLong.valueOf(1))),
+                new Sample(Timestamp.fromEpochMillis(900000300000L), r0, "nan", MetricType.GAUGE, new Gauge(Double.NaN), Collections.<String, String> emptyMap()));
+
+        SampleBatch batch = SampleBatch.decode(SampleBatch.encode(samples));
+
+        assertEquals(samples.size(), batch.size());
+
+        for (int i = 0; i < samples.size(); i++) {
+            Sample expected = samples.get(i);
+            Sample actual = batch.getSample(i);
+
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+            assertEquals(expected.getContext().getId(), actual.getContext().getId());
+            assertEquals(expected.getResource(), actual.getResource());
+            assertEquals(expected.getResource().getAttributes(), actual.getResource().getAttributes());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getType(), actual.getType());
+            assertEquals(expected.getValue(), actual.getValue());
+            assertEquals(expected.getAttributes(), actual.getAttributes());
+        }
+
+        // Dictionary entries are shared
+        assertSame(batch.getResource(1), batch.getResource(2));
+        assertSame(Context.DEFAULT_CONTEXT, batch.getContext(0));
+        assertNull(batch.getAttributes(1));
+        assertTrue(Double.isNaN(Double.longBitsToDouble(batch.getRawValue(4))));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, SampleBatch.decode(SampleBatch.encode(Collections.<Sample> emptyList())).size());
+    }
+
+    @Test
+    public void testBufferPosition() {
+        byte[] encoded = SampleBatch.encode(Collections.singletonList(
+                new Sample(Timestamp.fromEpochMillis(1000), new Resource("r"), "m", MetricType.GAUGE, new Gauge(1.0d))));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(encoded.length + 3);
+        buffer.put(new byte[3]).put(encoded).position(3);
+
+        assertEquals("r", SampleBatch.decode(buffer).getResource(0).getId());
+        assertEquals(3, buffer.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated() {
+        byte[] encoded = SampleBatch.encode(Collections.singletonList(
+                new Sample(Timestamp.fromEpochMillis(1000), new Resource("r"), "m", MetricType.GAUGE, new Gauge(1.0d))));
+
+        SampleBatch.decode(ByteBuffer.wrap(encoded, 0, encoded.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadMagic() {
+        SampleBatch.decode(new byte[] { '{', '"', 1, 0, 0, 0 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadReference() {
+        // One string, no resources, and one sample referencing a missing resource.
+        SampleBatch.decode(new byte[] { 'N', 'S', 1, 1, 1, 'x', 0, 1, 0, 0, 5, 0, 4, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+    }
+
+}
@@ -16,16 +16,26 @@
 package org.opennms.newts.api;
 
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.opennms.newts.api.MetricType.GAUGE;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.opennms.newts.api.BoundedExecutor.WaitStrategy;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 
 
 public class SampleProcessorServiceTest {
@@ -56,4 +66,119 @@ public class SampleProcessorServiceTest {
 
     }
 
+    @Test
+    public void testIsolationAndCoalescing() throws InterruptedException {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        Recorder slow = new Recorder(release);
+        Recorder fast = new Recorder(null);
+        MetricRegistry registry = new MetricRegistry();
+
+        SampleProcessorService service = new SampleProcessorService(1, 10, WaitStrategy.BLOCK, 1000, 0, registry, ImmutableSet.<SampleProcessor> of(slow, fast));
+
+        for (int i = 0; i < 5; i++) {
+            service.submit(samples(i, 2));
+        }
+
+        // The slow processor doesn't hold up the fast one
+        fast.await(10);
+
+        release.countDown();
+        service.shutdown();
+        assertTrue("Executor shutdown failed", service.awaitShutdown(5, TimeUnit.SECONDS));
+
+        // The slow processor's backlog was coalesced, (whatever queued while the first was blocked)
+        assertEquals(10, slow.count());
+        assertTrue(slow.m_batches.size() <= 2);
+        assertEquals(10, fast.count());
+
+        assertEquals(10, registry.meter("sample-processor.Recorder.samples").getCount());
+        assertEquals(10, registry.meter("sample-processor.Recorder-2.samples").getCount());
+        assertEquals(5, registry.timer("sample-processor.Recorder.lag").getCount());
+    }
+
+    @Test
+    public void testDroppable() throws InterruptedException {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        Droppable droppable = new Droppable(release);
+        Set<SampleProcessor> processors = Collections.<SampleProcessor> singleton(droppable);
+
+        // A queue of one; Submissions never block.
+        SampleProcessorService service = new SampleProcessorService(1, 1, WaitStrategy.BLOCK, 1000, 0, new MetricRegistry(), processors);
+
+        for (int i = 0; i < 5; i++) {
+            service.submit(samples(i, 1));
+        }
+
+        release.countDown();
+        service.shutdown();
+        assertTrue("Executor shutdown failed", service.awaitShutdown(5, TimeUnit.SECONDS));
+
+        // The oldest queued batches were dropped, the most recent one was not.
+        assertTrue(droppable.count() < 5);
+
+        List<Sample> last = Lists.newArrayList(droppable.m_batches.get(droppable.m_batches.size() - 1));
+        assertEquals(Timestamp.fromEpochSeconds(4), last.get(last.size() - 1).getTimestamp());
+    }
+
+    private static Collection<Sample> samples(int batch, int count) {
+        List<Sample> samples = Lists.newArrayList();
+
+        for (int i = 0; i < count; i++) {
+            samples.add(new Sample(Timestamp.fromEpochSeconds(batch), new Resource("resource"), "metric" + i, GAUGE, ValueType.compose(i, GAUGE)));
+        }
+
+        return samples;
+    }
+
+    private static class Recorder implements SampleProcessor {
+
+        private final CountDownLatch m_release;
+        final List<Collection<Sample>> m_batches = Lists.newCopyOnWriteArrayList();
+
+        private Recorder(CountDownLatch release) {
+            m_release = release;
+        }
+
+        @Override
+        public void submit(Collection<Sample> samples) {
+            if (m_release != null) {
+                try {
+                    m_release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            m_batches.add(samples);
+        }
+
+        int count() {
+            int count = 0;
+            for (Collection<Sample> batch : m_batches) {
+                count += batch.size();
+            }
+            return count;
+        }
+
+        void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+
+            while (count() < count) {
+                assertTrue("Timed out waiting on processor", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+
+    }
+
+    private static class Droppable extends Recorder implements DroppableSampleProcessor {
+
+        private Droppable(CountDownLatch release) {
+            super(release);
+        }
+
+    }
+
 }
\ No newline at end of file
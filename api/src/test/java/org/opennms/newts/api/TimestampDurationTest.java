@@ -69,12 +69,39 @@ public class TimestampDurationTest {
         assertEquals(fromEpochSeconds(3600), fromEpochSeconds(3300).stepCeiling(Duration.minutes(60)));
     }
 
+    @Test
+    public void testCanonicalNanos() {
+        assertEquals(1000000000L, fromEpochSeconds(1).asNanos());
+        assertEquals(fromEpochSeconds(1).asNanos(), Timestamp.fromEpochMillis(1000).asNanos());
+        assertEquals(Duration.minutes(5).asNanos(), Duration.millis(300000).asNanos());
+
+        // Mixed units compare, and hash consistently
+        assertTrue(new Timestamp(1000001, TimeUnit.MICROSECONDS).gt(Timestamp.fromEpochMillis(1000)));
+        assertTrue(new Timestamp(1000001, TimeUnit.MICROSECONDS).lt(fromEpochSeconds(2)));
+        assertEquals(0, new Timestamp(1000000, TimeUnit.MICROSECONDS).compareTo(fromEpochSeconds(1)));
+        assertEquals(fromEpochSeconds(60).hashCode(), new Timestamp(1, TimeUnit.MINUTES).hashCode());
+    }
+
+    @Test
+    public void testPrimitiveSteps() {
+        long step = Duration.seconds(300).asNanos();
+
+        assertEquals(fromEpochSeconds(600).asNanos(), Timestamp.stepFloor(fromEpochSeconds(601).asNanos(), step));
+        assertEquals(fromEpochSeconds(900).asNanos(), Timestamp.stepCeiling(fromEpochSeconds(601).asNanos(), step));
+        assertEquals(fromEpochSeconds(900).asNanos(), Timestamp.stepCeiling(fromEpochSeconds(900).asNanos(), step));
+        assertEquals(
+                fromEpochSeconds(3300).stepFloor(Duration.minutes(60)).asNanos(),
+                Timestamp.stepFloor(fromEpochSeconds(3300).asNanos(), Duration.minutes(60).asNanos()));
+    }
+
     @Test
     public void test() {
         assertTrue(Timestamp.isFiner(TimeUnit.MILLISECONDS, TimeUnit.SECONDS));
         assertFalse(Timestamp.isFiner(TimeUnit.SECONDS, TimeUnit.MILLISECONDS));
         assertFalse(Timestamp.isFiner(TimeUnit.MILLISECONDS, TimeUnit.MILLISECONDS));
         assertFalse(Timestamp.isFiner(TimeUnit.SECONDS, TimeUnit.SECONDS));
+        assertTrue(Timestamp.isFiner(TimeUnit.NANOSECONDS, TimeUnit.DAYS));
+        assertFalse(Timestamp.isFiner(TimeUnit.HOURS, TimeUnit.MINUTES));
 
         Duration sec = Duration.seconds(1);
         Duration kMillis = Duration.millis(1000);
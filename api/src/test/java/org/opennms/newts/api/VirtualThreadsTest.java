@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.Test;
+
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void testFactory() throws InterruptedException {
+        final String[] name = new String[1];
+
+        Thread thread = VirtualThreads.factory("test", true).newThread(new Runnable() {
+
+            @Override
+            public void run() {
+                name[0] = Thread.currentThread().getName();
+            }
+        });
+
+        thread.start();
+        thread.join();
+
+        assertEquals("test-0", name[0]);
+    }
+
+    @Test
+    public void testNewThreadPerTaskExecutor() throws Exception {
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test", true);
+
+        try {
+            String name = executor.submit(new Callable<String>() {
+
+                @Override
+                public String call() {
+                    return Thread.currentThread().getName();
+                }
+            }).get();
+
+            assertTrue(name.startsWith("test-"));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api.query;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.newts.api.query.StandardAggregationFunctions.AVERAGE;
+
+import java.util.Set;
+
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.MapContext;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Sets;
+
+
+public class CompiledExpressionTest {
+
+    private static final Set<String> LABELS = Sets.newHashSet("in", "out", "x");
+
+    @Test
+    public void testMatchesInterpreter() {
+        String[] expressions = {
+                "in + out",
+                "in - out",
+                "in * 8",
+                "in / out",
+                "in % 3",
+                "-in",
+                "in - - out",
+                "(in + out) * 2 - x",
+                "in + out * x",
+                "in / 0",
+                "in % 0",
+                "in * 0.1",
+                "in * 0.1234567891",
+                "x + 1 / 2",
+                "x * 010",
+                "in * (2147483647 + 1)",
+                "in/out/x",
+        };
+
+        double[][] inputs = { { 20, 10, 3 }, { 0, 0, 0 }, { -7.5, 2.25, 1e9 }, { Double.NaN, 1, 2 } };
+
+        for (String expression : expressions) {
+            Optional<CompiledExpression> compiled = CompiledExpression.compile(expression, LABELS);
+            assertTrue(String.format("failed to compile \"%s\"", expression), compiled.isPresent());
+
+            for (double[] input : inputs) {
+                assertEquals(expression, interpret(expression, input), evaluate(compiled.get(), input), 0.0d);
+            }
+        }
+    }
+
+    @Test
+    public void testBlock() {
+        String[] expressions = { "(in + out) * 8 / x - -in % 3", "in - (out - (x - in * 2)) / (x + 1)" };
+
+        for (String expression : expressions) {
+            CompiledExpression expr = CompiledExpression.compile(expression, LABELS).get();
+            String[] args = expr.getArguments();
+
+            double[][] columns = new double[args.length][10];
+            double[][] scratch = new double[expr.getScratchColumns()][10];
+            double[] row = new double[args.length];
+            double[] result = new double[10];
+
+            for (int i = 0; i < 10; i++) {
+                for (int j = 0; j < args.length; j++) {
+                    columns[j][i] = (i * 7 + j * 3) % 5;
+                }
+            }
+
+            // Evaluates only the first length elements, and leaves the argument columns untouched.
+            expr.apply(result, 9, columns, scratch);
+
+            for (int i = 0; i < 9; i++) {
+                for (int j = 0; j < args.length; j++) {
+                    row[j] = columns[j][i];
+                }
+                assertEquals(expression, expr.apply(row), result[i], 0.0d);
+            }
+
+            assertEquals(0.0d, result[9], 0.0d);
+            assertEquals(4.0d, columns[0][2], 0.0d);
+        }
+    }
+
+    @Test
+    public void testScratchColumns() {
+        assertEquals(0, CompiledExpression.compile("in + out - x", LABELS).get().getScratchColumns());
+        assertEquals(1, CompiledExpression.compile("in * 8", LABELS).get().getScratchColumns());
+        assertEquals(1, CompiledExpression.compile("(in + out) * (x + in)", LABELS).get().getScratchColumns());
+        assertEquals(2, CompiledExpression.compile("in - (out - (x + in))", LABELS).get().getScratchColumns());
+    }
+
+    @Test
+    public void testArguments() {
+        CompiledExpression expr = CompiledExpression.compile("out / in + out", LABELS).get();
+
+        assertArrayEquals(new String[] { "out", "in" }, expr.getArguments());
+        assertEquals(44.0d, expr.apply(40, 10), 0.0d);
+    }
+
+    @Test
+    public void testConstant() {
+        CompiledExpression expr = CompiledExpression.compile("1 / 2 + 0.5 * 3", LABELS).get();
+
+        assertTrue(expr.isConstant());
+        assertEquals(0, expr.getArguments().length);
+        assertEquals(1.5d, expr.apply(), 0.0d);
+
+        Calculation calc = new ResultDescriptor()
+                .datasource("in", AVERAGE)
+                .datasource("out", AVERAGE)
+                .expression("half", "1 / 2")
+                .getCalculations().get("half");
+
+        // Bound to no labels (so none need be read).
+        assertArrayEquals(new String[] { "0" }, calc.getArgs());
+    }
+
+    @Test
+    public void testUnsupported() {
+        String[] expressions = {
+                "in > out ? in : out",
+                "in + bogus",
+                "in div 2",
+                "in.value",
+                "1.5d * in",
+                "in +",
+                "math:abs(in)",
+                "in; out",
+        };
+
+        for (String expression : expressions) {
+            assertFalse(expression, CompiledExpression.compile(expression, LABELS).isPresent());
+        }
+    }
+
+    @Test
+    public void testInterpreterFallback() {
+        ResultDescriptor descriptor = new ResultDescriptor()
+                .datasource("in", AVERAGE)
+                .datasource("out", AVERAGE)
+                .expression("sum", "in + out")
+                .expression("max", "in > out ? in : out");
+
+        Calculation sum = descriptor.getCalculations().get("sum");
+        Calculation max = descriptor.getCalculations().get("max");
+
+        assertTrue(sum.getCalculationFunction() instanceof CompiledExpression);
+        assertFalse(max.getCalculationFunction() instanceof CompiledExpression);
+        assertEquals(3, max.getArgs().length);
+    }
+
+    private static double evaluate(CompiledExpression expr, double[] input) {
+        double[] args = new double[expr.getArguments().length];
+
+        for (int i = 0; i < args.length; i++) {
+            args[i] = input[indexOf(expr.getArguments()[i])];
+        }
+
+        return expr.apply(args);
+    }
+
+    private static double interpret(String expression, double[] input) {
+        MapContext context = new MapContext();
+        context.set("in", input[0]);
+        context.set("out", input[1]);
+        context.set("x", input[2]);
+        return ((Number) new JexlEngine().createExpression(expression).evaluate(context)).doubleValue();
+    }
+
+    private static int indexOf(String label) {
+        switch (label) {
+            case "in":
+                return 0;
+            case "out":
+                return 1;
+            case "x":
+                return 2;
+            default:
+                throw new IllegalArgumentException(label);
+        }
+    }
+
+}
@@ -17,6 +17,8 @@ package org.opennms.newts.api.query;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.opennms.newts.api.Duration.seconds;
 import static org.opennms.newts.api.query.StandardAggregationFunctions.AVERAGE;
@@ -27,6 +29,7 @@ import org.junit.Test;
 import org.opennms.newts.api.Duration;
 import org.opennms.newts.api.query.ResultDescriptor.BinaryFunction;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 
@@ -178,4 +181,38 @@ public class ResultDescriptorTest {
 
     }
 
+    @Test
+    public void testImmutableCopy() {
+        ResultDescriptor descriptor = new ResultDescriptor(seconds(300))
+                .datasource("in", "ifInOctets", seconds(600), AVERAGE)
+                .datasource("out", "ifOutOctets", seconds(600), AVERAGE)
+                .expression("total", "in + out")
+                .expression("half", "total / 2")
+                .export("total", "half");
+
+        ResultDescriptor copy = descriptor.immutableCopy();
+
+        assertFalse(descriptor.isImmutable());
+        assertTrue(copy.isImmutable());
+        assertSame(copy, copy.immutableCopy());
+
+        assertEquals(descriptor.getInterval(), copy.getInterval());
+        assertEquals(descriptor.getDatasources(), copy.getDatasources());
+        assertEquals(descriptor.getExports(), copy.getExports());
+        assertEquals(Sets.newHashSet("ifInOctets", "ifOutOctets"), copy.getSourceNames());
+        assertSame(copy.getSourceNames(), copy.getSourceNames());
+
+        // Calculation order is preserved
+        assertEquals(Lists.newArrayList("total", "half"), Lists.newArrayList(copy.getCalculations().keySet()));
+
+        // The original remains mutable
+        descriptor.export("in");
+        assertEquals(2, copy.getExports().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testImmutable() {
+        new ResultDescriptor().datasource("in", AVERAGE).immutableCopy().datasource("out", AVERAGE);
+    }
+
 }
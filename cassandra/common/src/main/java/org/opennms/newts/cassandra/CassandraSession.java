@@ -6,6 +6,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -25,6 +26,8 @@ import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.exceptions.DriverException;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.MoreExecutors;
 
 
 public class CassandraSession {
@@ -32,13 +35,26 @@ public class CassandraSession {
     private static final Logger LOG = LoggerFactory.getLogger(CassandraSession.class);
 
     private final Session m_session;
+    private final Semaphore m_permits;
 
+    public CassandraSession(String keyspace, String hostname, int port, String compression) {
+        this(keyspace, hostname, port, compression, 0);
+    }
+
+    /**
+     * @param maxConcurrentRequests
+     *            maximum number of requests in flight at once (callers block for a permit), or 0
+     *            for no limit; Bounds the load placed on the cluster when callers are cheap to
+     *            create, (virtual threads, for example).
+     */
     @Inject
-    public CassandraSession(@Named("cassandra.keyspace") String keyspace, @Named("cassandra.hostname") String hostname, @Named("cassandra.port") int port, @Named("cassandra.compression") String compression) {
+    public CassandraSession(@Named("cassandra.keyspace") String keyspace, @Named("cassandra.hostname") String hostname, @Named("cassandra.port") int port, @Named("cassandra.compression") String compression,
+            @Named("cassandra.maxConcurrentRequests") int maxConcurrentRequests) {
         checkNotNull(keyspace, "keyspace argument");
         checkNotNull(hostname, "hostname argument");
         checkArgument(port > 0 && port < 65535, "not a valid port number: %d", port);
         checkNotNull(compression, "compression argument");
+        checkArgument(maxConcurrentRequests >= 0, "maxConcurrentRequests must be non-negative");
 
         LOG.info("Setting up session with {}:{} using compression {}", hostname, port, compression.toUpperCase());
 
@@ -50,6 +66,7 @@ public class CassandraSession {
                 .build();
 
         m_session = cluster.connect(keyspace);
+        m_permits = (maxConcurrentRequests > 0) ? new Semaphore(maxConcurrentRequests) : null;
 
     }
 
@@ -64,18 +81,63 @@ public class CassandraSession {
     }
 
     public ResultSetFuture executeAsync(Statement statement) {
-        try                           {  return m_session.executeAsync(statement);  }
-        catch (DriverException excep) {  throw new CassandraException(excep);  } 
+        acquire();
+
+        ResultSetFuture future;
+
+        try {
+            future = m_session.executeAsync(statement);
+        }
+        catch (DriverException excep) {
+            release();
+            throw new CassandraException(excep);
+        }
+        catch (RuntimeException excep) {
+            release();
+            throw excep;
+        }
+
+        if (m_permits != null) {
+            future.addListener(new Runnable() {
+
+                @Override
+                public void run() {
+                    release();
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        return future;
     }
 
     public ResultSet execute(Statement statement) {
+        acquire();
         try                           {  return m_session.execute(statement);  }
         catch (DriverException excep) {  throw new CassandraException(excep);  }
+        finally                       {  release();  }
     }
 
     public ResultSet execute(String statement) {
+        acquire();
         try                           {  return m_session.execute(statement);  }
         catch (DriverException excep) {  throw new CassandraException(excep);  }
+        finally                       {  release();  }
+    }
+
+    private void acquire() {
+        if (m_permits == null) return;
+
+        try {
+            m_permits.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private void release() {
+        if (m_permits != null) m_permits.release();
     }
 
     public Future<Void> shutdown() {
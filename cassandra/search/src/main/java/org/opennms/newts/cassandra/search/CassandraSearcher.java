@@ -43,8 +43,14 @@ public class CassandraSearcher implements Searcher {
         m_searchTimer = registry.timer(name("search", "search"));
     }
 
-    // FIXME: use of hard-coded application ID!
+    @Override
     public SearchResults search(String queryString) {
+        return search(Context.DEFAULT_CONTEXT, queryString);
+    }
+
+    @Override
+    public SearchResults search(Context context, String queryString) {
+        checkNotNull(context, "context argument");
 
         Timer.Context ctx = m_searchTimer.time();
 
@@ -55,15 +61,15 @@ public class CassandraSearcher implements Searcher {
             Term t = Term.parse(term);
 
             Statement searchQuery = select(Constants.Schema.C_TERMS_RESOURCE).from(Constants.Schema.T_TERMS)
-                    .where(eq(Constants.Schema.C_TERMS_CONTEXT, Context.DEFAULT_CONTEXT.getId()))
+                    .where(eq(Constants.Schema.C_TERMS_CONTEXT, context.getId()))
                     .and(  eq(Constants.Schema.C_TERMS_FIELD, t.getField()))
                     .and(  eq(Constants.Schema.C_TERMS_VALUE, t.getValue()));
 
             // TODO: Use async DB calls; Get attrs and metrics concurrently
             for (Row row : m_session.execute(searchQuery.toString())) {  // FIXME: toString()?
                 String id = row.getString(Constants.Schema.C_TERMS_RESOURCE);
-                Optional<Map<String, String>> attrs = fetchResourceAttributes(Context.DEFAULT_CONTEXT, id);
-                Collection<String> metrics = fetchMetricNames(Context.DEFAULT_CONTEXT, id);
+                Optional<Map<String, String>> attrs = fetchResourceAttributes(context, id);
+                Collection<String> metrics = fetchMetricNames(context, id);
 
                 searchResults.addResult(new Resource(id, attrs), metrics);
             }
@@ -37,6 +37,9 @@ import javax.inject.Named;
 
 import org.opennms.newts.aggregate.IntervalGenerator;
 import org.opennms.newts.aggregate.ResultProcessor;
+import org.opennms.newts.api.AbstractSampleRepository;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Deadline;
 import org.opennms.newts.api.Duration;
 import org.opennms.newts.api.Measurement;
 import org.opennms.newts.api.Resource;
@@ -44,9 +47,9 @@ import org.opennms.newts.api.Results;
 import org.opennms.newts.api.Results.Row;
 import org.opennms.newts.api.Sample;
 import org.opennms.newts.api.SampleProcessorService;
-import org.opennms.newts.api.SampleRepository;
 import org.opennms.newts.api.Timestamp;
 import org.opennms.newts.api.ValueType;
+import org.opennms.newts.api.query.Downsampling;
 import org.opennms.newts.api.query.ResultDescriptor;
 import org.opennms.newts.cassandra.CassandraSession;
 import org.slf4j.Logger;
@@ -54,7 +57,6 @@ import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
-import com.codahale.metrics.Timer.Context;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
@@ -65,10 +67,13 @@ import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 
 
-public class CassandraSampleRepository implements SampleRepository {
+public class CassandraSampleRepository extends AbstractSampleRepository {
 
     private static final Logger LOG = LoggerFactory.getLogger(CassandraSampleRepository.class);
 
+    /** Span of time stored in each partition of a resource's samples. */
+    public static final Duration DEFAULT_RESOURCE_SHARD = Duration.seconds(600000);
+
     private final CassandraSession m_session;
     private final int m_ttl;
     private final SampleProcessorService m_processorService;
@@ -78,7 +83,7 @@ public class CassandraSampleRepository implements SampleRepository {
     private final Timer m_measurementSelectTimer;
     private final Timer m_insertTimer;
 
-    private Duration m_resourceShard = Duration.seconds(600000);
+    private Duration m_resourceShard = DEFAULT_RESOURCE_SHARD;
 
     @Inject
     public CassandraSampleRepository(CassandraSession session, @Named("samples.cassandra.time-to-live") int ttl, MetricRegistry registry, SampleProcessorService processorService) {
@@ -92,6 +97,7 @@ public class CassandraSampleRepository implements SampleRepository {
         m_processorService = processorService;
 
         Select select = QueryBuilder.select().from(SchemaConstants.T_SAMPLES);
+        select.where(eq(SchemaConstants.F_CONTEXT, bindMarker(SchemaConstants.F_CONTEXT)));
         select.where(eq(SchemaConstants.F_PARTITION, bindMarker(SchemaConstants.F_PARTITION)));
         select.where(eq(SchemaConstants.F_RESOURCE, bindMarker(SchemaConstants.F_RESOURCE)));
 
@@ -107,19 +113,22 @@ public class CassandraSampleRepository implements SampleRepository {
     }
 
     @Override
-    public Results<Measurement> select(Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor, Duration resolution) {
+    public Results<Measurement> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, ResultDescriptor descriptor, Duration resolution, Optional<Downsampling> downsampling, Deadline deadline) {
+        checkNotNull(context, "context argument");
+        checkNotNull(deadline, "deadline argument");
 
-        Context context = m_measurementSelectTimer.time();
+        Timer.Context ctx = m_measurementSelectTimer.time();
 
         validateSelect(start, end);
 
         Timestamp upper = end.isPresent() ? end.get() : Timestamp.now();
         Timestamp lower = start.isPresent() ? start.get() : upper.minus(Duration.seconds(86400));
 
-        LOG.debug("Querying database for resource {}, from {} to {}", resource, lower.minus(resolution), upper);
+        LOG.debug("Querying database for resource {} of {}, from {} to {}", resource, context, lower.minus(resolution), upper);
 
-        DriverAdapter driverAdapter = new DriverAdapter(cassandraSelect(resource, lower.minus(resolution), upper), descriptor.getSourceNames());
-        Results<Measurement> results = new ResultProcessor(resource, lower, upper, descriptor, resolution).process(driverAdapter);
+        DriverAdapter driverAdapter = new DriverAdapter(cassandraSelect(context, resource, lower.minus(resolution), upper, deadline), descriptor.getSourceNames());
+        ResultProcessor processor = new ResultProcessor(resource, lower, upper, descriptor, resolution, deadline);
+        Results<Measurement> results = downsampling.isPresent() ? processor.process(driverAdapter, downsampling.get()) : processor.process(driverAdapter);
 
         LOG.debug("{} results returned from database", driverAdapter.getResultCount());
 
@@ -127,28 +136,31 @@ public class CassandraSampleRepository implements SampleRepository {
             return results;
         }
         finally {
-            context.stop();
+            ctx.stop();
         }
 
     }
 
     @Override
-    public Results<Sample> select(Resource resource, Optional<Timestamp> start, Optional<Timestamp> end) {
+    public Results<Sample> select(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, Deadline deadline) {
+        checkNotNull(context, "context argument");
+        checkNotNull(deadline, "deadline argument");
 
-        Context context = m_sampleSelectTimer.time();
+        Timer.Context ctx = m_sampleSelectTimer.time();
 
         validateSelect(start, end);
 
         Timestamp upper = end.isPresent() ? end.get() : Timestamp.now();
         Timestamp lower = start.isPresent() ? start.get() : upper.minus(Duration.seconds(86400));
 
-        LOG.debug("Querying database for resource {}, from {} to {}", resource, lower, upper);
+        LOG.debug("Querying database for resource {} of {}, from {} to {}", resource, context, lower, upper);
 
         Results<Sample> samples = new Results<Sample>();
-        DriverAdapter driverAdapter = new DriverAdapter(cassandraSelect(resource, lower, upper));
+        DriverAdapter driverAdapter = new DriverAdapter(cassandraSelect(context, resource, lower, upper, deadline));
+        Iterator<Row<Sample>> rows = deadline.checked(driverAdapter);
 
-        for (Row<Sample> row : driverAdapter) {
-            samples.addRow(row);
+        while (rows.hasNext()) {
+            samples.addRow(rows.next());
         }
 
         LOG.debug("{} results returned from database", driverAdapter.getResultCount());
@@ -157,20 +169,21 @@ public class CassandraSampleRepository implements SampleRepository {
             return samples;
         }
         finally {
-            context.stop();
+            ctx.stop();
         }
     }
 
     @Override
     public void insert(Collection<Sample> samples) {
 
-        Context context = m_insertTimer.time();
+        Timer.Context ctx = m_insertTimer.time();
 
         Batch batch = unloggedBatch();
 
         for (Sample m : samples) {
             batch.add(
                     insertInto(SchemaConstants.T_SAMPLES)
+                        .value(SchemaConstants.F_CONTEXT, m.getContext().getId())
                         .value(SchemaConstants.F_PARTITION, m.getTimestamp().stepFloor(m_resourceShard).asSeconds())
                         .value(SchemaConstants.F_RESOURCE, m.getResource().getId())
                         .value(SchemaConstants.F_COLLECTED, m.getTimestamp().asMillis())
@@ -189,20 +202,21 @@ public class CassandraSampleRepository implements SampleRepository {
             }
         }
         finally {
-            context.stop();
+            ctx.stop();
         }
 
     }
 
-    private Iterator<com.datastax.driver.core.Row> cassandraSelect(Resource resource, Timestamp start, Timestamp end) {
+    private Iterator<com.datastax.driver.core.Row> cassandraSelect(Context context, Resource resource, Timestamp start, Timestamp end, Deadline deadline) {
 
-        List<Future<ResultSet>> futures = Lists.newArrayList();
+        final List<Future<ResultSet>> futures = Lists.newArrayList();
 
         Timestamp lower = start.stepFloor(m_resourceShard);
         Timestamp upper = end.stepFloor(m_resourceShard);
 
         for (Timestamp partition : new IntervalGenerator(lower, upper, m_resourceShard)) {
             BoundStatement bindStatement = m_selectStatement.bind();
+            bindStatement.setString(SchemaConstants.F_CONTEXT, context.getId());
             bindStatement.setInt(SchemaConstants.F_PARTITION, (int) partition.asSeconds());
             bindStatement.setString(SchemaConstants.F_RESOURCE, resource.getId());
             bindStatement.setDate("start", start.asDate());
@@ -211,7 +225,18 @@ public class CassandraSampleRepository implements SampleRepository {
             futures.add(m_session.executeAsync(bindStatement));
         }
 
-        return new ConcurrentResultWrapper(futures);
+        // Abandon outstanding requests on cancellation
+        deadline.onCancel(new Runnable() {
+
+            @Override
+            public void run() {
+                for (Future<ResultSet> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        });
+
+        return new ConcurrentResultWrapper(futures, deadline);
     }
 
     private void validateSelect(Optional<Timestamp> start, Optional<Timestamp> end) {
@@ -5,6 +5,8 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.concurrent.Future;
 
+import org.opennms.newts.api.Deadline;
+
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.google.common.base.Function;
@@ -17,16 +19,21 @@ public class ConcurrentResultWrapper implements Iterator<Row> {
     private Iterator<Row> m_rowIter;
 
     public ConcurrentResultWrapper(Collection<Future<ResultSet>> futures) {
-        m_rowIter = Iterators.concat(getIterators(futures));
+        this(futures, Deadline.none());
+    }
+
+    /** Waits for results no longer than {@code deadline}. */
+    public ConcurrentResultWrapper(Collection<Future<ResultSet>> futures, Deadline deadline) {
+        m_rowIter = Iterators.concat(getIterators(futures, deadline));
     }
 
-    private Iterator<Iterator<Row>> getIterators(Collection<Future<ResultSet>> futures) {
+    private Iterator<Iterator<Row>> getIterators(Collection<Future<ResultSet>> futures, final Deadline deadline) {
         return Iterators.transform(futures.iterator(), new Function<Future<ResultSet>, Iterator<Row>>() {
 
             @Override
             public Iterator<Row> apply(Future<ResultSet> input) {
                 try {
-                    return input.get().iterator();
+                    return deadline.get(input).iterator();
                 }
                 catch (Exception e) {
                     throw Throwables.propagate(e);
@@ -24,10 +24,12 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import org.opennms.newts.api.Context;
 import org.opennms.newts.api.Resource;
 import org.opennms.newts.api.Results;
 import org.opennms.newts.api.Results.Row;
 import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.SampleDictionary;
 import org.opennms.newts.api.Timestamp;
 import org.opennms.newts.api.ValueType;
 
@@ -43,6 +45,7 @@ class DriverAdapter implements Iterable<Results.Row<Sample>>, Iterator<Results.R
 
     private final Iterator<com.datastax.driver.core.Row> m_results;
     private final Set<String> m_metrics;
+    private final Results.ColumnIndex m_columns = new Results.ColumnIndex();
     private Results.Row<Sample> m_next = null;
     private int m_count = 0;
 
@@ -65,7 +68,7 @@ class DriverAdapter implements Iterable<Results.Row<Sample>>, Iterator<Results.R
 
         if (m_results.hasNext()) {
             Sample m = getNextSample();
-            m_next = new Results.Row<Sample>(m.getTimestamp(), m.getResource());
+            m_next = new Results.Row<Sample>(m.getTimestamp(), m.getResource(), m_columns);
             addSample(m_next, m);
         }
 
@@ -87,7 +90,7 @@ class DriverAdapter implements Iterable<Results.Row<Sample>>, Iterator<Results.R
             Sample m = getNextSample();
 
             if (m.getTimestamp().gt(m_next.getTimestamp())) {
-                nextNext = new Results.Row<Sample>(m.getTimestamp(), m.getResource());
+                nextNext = new Results.Row<Sample>(m.getTimestamp(), m.getResource(), m_columns);
                 addSample(nextNext, m);
                 break;
             }
@@ -130,7 +133,11 @@ class DriverAdapter implements Iterable<Results.Row<Sample>>, Iterator<Results.R
 
     private static Sample getSample(com.datastax.driver.core.Row row) {
         ValueType<?> value = getValue(row);
-        return new Sample(getTimestamp(row), getResource(row), getMetricName(row), value.getType(), value, getAttributes(row));
+        return new Sample(getTimestamp(row), getContext(row), getResource(row), getMetricName(row), value.getType(), value, getAttributes(row));
+    }
+
+    private static Context getContext(com.datastax.driver.core.Row row) {
+        return SampleDictionary.context(row.getString(SchemaConstants.F_CONTEXT));
     }
 
     private static ValueType<?> getValue(com.datastax.driver.core.Row row) {
@@ -138,7 +145,7 @@ class DriverAdapter implements Iterable<Results.Row<Sample>>, Iterator<Results.R
     }
 
     private static String getMetricName(com.datastax.driver.core.Row row) {
-        return row.getString(SchemaConstants.F_METRIC_NAME);
+        return SampleDictionary.metricName(row.getString(SchemaConstants.F_METRIC_NAME));
     }
 
     private static Timestamp getTimestamp(com.datastax.driver.core.Row row) {
@@ -146,11 +153,11 @@ class DriverAdapter implements Iterable<Results.Row<Sample>>, Iterator<Results.R
     }
 
     private static Resource getResource(com.datastax.driver.core.Row row) {
-        return new Resource(row.getString(SchemaConstants.F_RESOURCE));
+        return SampleDictionary.resource(row.getString(SchemaConstants.F_RESOURCE));
     }
 
     private static Map<String, String> getAttributes(com.datastax.driver.core.Row row) {
-        return row.getMap(SchemaConstants.F_ATTRIBUTES, String.class, String.class);
+        return SampleDictionary.attributes(row.getMap(SchemaConstants.F_ATTRIBUTES, String.class, String.class));
     }
 
 }
@@ -17,6 +17,7 @@ package org.opennms.newts.persistence.cassandra;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.opennms.newts.api.MetricType.GAUGE;
@@ -25,6 +26,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.junit.Test;
+import org.opennms.newts.api.Context;
 import org.opennms.newts.api.Duration;
 import org.opennms.newts.api.Gauge;
 import org.opennms.newts.api.Resource;
@@ -86,4 +88,36 @@ public class InsertSelectSamplesITCase extends AbstractCassandraTestCase {
 
     }
 
+    @Test
+    public void testContexts() {
+
+        Context other = new Context("other");
+        Resource resource = new Resource("r");
+        Timestamp ts = Timestamp.fromEpochMillis(1000);
+
+        getRepository().insert(Lists.newArrayList(
+                new Sample(ts, resource, "m", GAUGE, new Gauge(1)),
+                new Sample(ts, other, resource, "m", GAUGE, new Gauge(2))));
+
+        Optional<Timestamp> start = Optional.of(Timestamp.fromEpochMillis(0)), end = Optional.of(Timestamp.fromEpochMillis(2000));
+
+        // Each context sees only its own samples of the (same) resource.
+        Iterator<Row<Sample>> results = getRepository().select(other, resource, start, end).iterator();
+
+        assertTrue("Insufficient number of results", results.hasNext());
+        Sample sample = results.next().getElement("m");
+        assertEquals(other, sample.getContext());
+        assertEquals(2.0d, sample.getValue().doubleValue(), 0.0d);
+        assertFalse(results.hasNext());
+
+        results = getRepository().select(resource, start, end).iterator();
+
+        assertTrue("Insufficient number of results", results.hasNext());
+        sample = results.next().getElement("m");
+        assertEquals(Context.DEFAULT_CONTEXT, sample.getContext());
+        assertEquals(1.0d, sample.getValue().doubleValue(), 0.0d);
+        assertFalse(results.hasNext());
+
+    }
+
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.aggregate;
+
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.newts.api.Duration;
+import org.opennms.newts.api.Gauge;
+import org.opennms.newts.api.MetricType;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Results.Row;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.Timestamp;
+import org.opennms.newts.api.query.ResultDescriptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.Lists;
+
+
+/**
+ * Primary data point generation for reports of varying width (datasource count), over a day of
+ * 5 minute samples.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PrimaryDataBenchmark {
+
+    private static final Resource RESOURCE = new Resource("localhost");
+    private static final int ROWS = 288;
+    private static final Timestamp START = Timestamp.fromEpochSeconds(900000000);
+    private static final Timestamp END = START.plus(Duration.seconds(ROWS * 300));
+
+    @Param({ "10", "100", "1000" })
+    public int width;
+
+    private ResultDescriptor m_descriptor;
+    private List<Row<Sample>> m_samples;
+
+    @Setup
+    public void setUp() {
+        m_descriptor = new ResultDescriptor(Duration.seconds(300));
+        m_samples = Lists.newArrayListWithCapacity(ROWS);
+
+        for (int i = 0; i < width; i++) {
+            m_descriptor.datasource("m" + i, "m" + i, Duration.seconds(600), null);
+        }
+
+        for (int i = 0; i < ROWS; i++) {
+            Timestamp timestamp = START.plus(Duration.seconds((i * 300) + 7));
+            Row<Sample> row = new Row<>(timestamp, RESOURCE);
+
+            for (int j = 0; j < width; j++) {
+                row.addElement(new Sample(timestamp, RESOURCE, "m" + j, MetricType.GAUGE, new Gauge(i * j)));
+            }
+
+            m_samples.add(row);
+        }
+    }
+
+    @Benchmark
+    public void primaryData(Blackhole blackhole) {
+        for (Row<org.opennms.newts.api.Measurement> row : new PrimaryData(RESOURCE, START, END, m_descriptor, m_samples.iterator())) {
+            blackhole.consume(row);
+        }
+    }
+
+}
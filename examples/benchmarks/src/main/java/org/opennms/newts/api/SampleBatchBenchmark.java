@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+
+/**
+ * Decoding a batch of samples from {@link SampleBatch} binary, versus from the JSON format
+ * accepted by the REST interface (parsed with Jackson, and converted as the REST service does).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SampleBatchBenchmark {
+
+    private static final TypeReference<List<Map<String, Object>>> JSON_TYPE = new TypeReference<List<Map<String, Object>>>() {};
+
+    @Param({ "1000" })
+    public int size;
+
+    private final ObjectMapper m_mapper = new ObjectMapper();
+
+    private byte[] m_binary;
+    private byte[] m_json;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Sample> samples = Lists.newArrayList();
+        List<Map<String, Object>> json = Lists.newArrayList();
+
+        for (int i = 0; i < size; i++) {
+            Map<String, String> attrs = ImmutableMap.of("host", "node" + (i % 10));
+            Resource resource = new Resource("node" + (i % 10) + ":interfaces:eth" + (i % 4), Optional.of(attrs));
+            String name = (i % 2 == 0) ? "ifInOctets" : "ifOutOctets";
+            long timestamp = 900000000000L + ((i / 80) * 300000L);
+
+            samples.add(new Sample(Timestamp.fromEpochMillis(timestamp), resource, name, MetricType.COUNTER, new Counter(i * 1000L)));
+
+            Map<String, Object> sample = Maps.newLinkedHashMap();
+            sample.put("timestamp", timestamp);
+            sample.put("resource", ImmutableMap.of("id", resource.getId(), "attributes", attrs));
+            sample.put("name", name);
+            sample.put("type", "COUNTER");
+            sample.put("value", i * 1000L);
+            sample.put("attributes", null);
+            json.add(sample);
+        }
+
+        m_binary = SampleBatch.encode(samples);
+        m_json = m_mapper.writeValueAsBytes(json);
+    }
+
+    @Benchmark
+    public List<Sample> binary() {
+        return SampleBatch.decode(m_binary).getSamples();
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<Sample> json() throws IOException {
+        List<Map<String, Object>> json = m_mapper.readValue(m_json, JSON_TYPE);
+        List<Sample> samples = Lists.newArrayListWithCapacity(json.size());
+
+        for (Map<String, Object> sample : json) {
+            Map<String, Object> resource = (Map<String, Object>) sample.get("resource");
+            MetricType type = MetricType.valueOf((String) sample.get("type"));
+
+            samples.add(new Sample(
+                    Timestamp.fromEpochMillis(((Number) sample.get("timestamp")).longValue()),
+                    new Resource((String) resource.get("id"), Optional.fromNullable((Map<String, String>) resource.get("attributes"))),
+                    (String) sample.get("name"),
+                    type,
+                    ValueType.compose((Number) sample.get("value"), type),
+                    (Map<String, String>) sample.get("attributes")));
+        }
+
+        return samples;
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.api;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * {@link Timestamp} and {@link Duration} operations, as performed in the inner loops of results
+ * processing; Each invocation operates on an array of timestamps of mixed units.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TimestampBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private final Timestamp[] m_timestamps = new Timestamp[SIZE];
+    private final Duration m_interval = Duration.seconds(300);
+    private final Duration m_heartbeat = Duration.millis(600000);
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < SIZE; i++) {
+            long seconds = 900000000 + (i * 17);
+            m_timestamps[i] = (i % 2 == 0) ? Timestamp.fromEpochSeconds(seconds) : Timestamp.fromEpochMillis((seconds * 1000) + i);
+        }
+    }
+
+    @Benchmark
+    public int compare() {
+        int count = 0;
+
+        for (int i = 1; i < SIZE; i++) {
+            if (m_timestamps[i].gt(m_timestamps[i - 1])) count++;
+            if (m_timestamps[i].lte(m_timestamps[i - 1])) count--;
+        }
+
+        return count;
+    }
+
+    @Benchmark
+    public void equalsAndHash(Blackhole blackhole) {
+        for (int i = 1; i < SIZE; i++) {
+            blackhole.consume(m_timestamps[i].equals(m_timestamps[i - 1]));
+            blackhole.consume(m_timestamps[i].hashCode());
+        }
+    }
+
+    @Benchmark
+    public void arithmetic(Blackhole blackhole) {
+        for (int i = 1; i < SIZE; i++) {
+            Timestamp ceiling = m_timestamps[i].stepCeiling(m_interval);
+            Duration elapsed = ceiling.minus(m_timestamps[i - 1]);
+            blackhole.consume(elapsed.lt(m_heartbeat) ? elapsed.asMillis() : 0);
+            blackhole.consume(ceiling.minus(m_interval));
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jetty.HttpConnectorFactory;
+import io.dropwizard.server.DefaultServerFactory;
+import io.dropwizard.setup.Environment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.Validation;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opennms.newts.api.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+
+/**
+ * Platform versus virtual threads for request handling; A Jetty server from
+ * {@link DefaultServerFactory} (with a pool of <code>maxThreads</code>), or from
+ * {@link VirtualThreadServerFactory}. A Cassandra round trip is simulated by sleeping for
+ * <code>latencyMillis</code> in the request; Each operation is a burst of concurrent requests,
+ * timed until all have completed.
+ * <p>
+ * Virtual threads require a Java 21 (or later) runtime; On older runtimes, both modes use
+ * platform threads.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+    @Param({ "platform", "virtual" })
+    public String mode;
+
+    @Param({ "2", "50" })
+    public int latencyMillis;
+
+    /** Concurrent requests per operation. */
+    @Param({ "200" })
+    public int concurrency;
+
+    /** Size of the (platform) request thread pool. */
+    @Param({ "64" })
+    public int maxThreads;
+
+    @Path("/lookup")
+    public static class LookupResource {
+
+        private final int m_latencyMillis;
+
+        public LookupResource(int latencyMillis) {
+            m_latencyMillis = latencyMillis;
+        }
+
+        @GET
+        @Produces(MediaType.TEXT_PLAIN)
+        public String lookup() throws InterruptedException {
+            Thread.sleep(m_latencyMillis);
+            return "ok";
+        }
+
+    }
+
+    private Server m_server;
+    private URL m_url;
+    private ExecutorService m_clients;
+
+    @Setup
+    public void setUp() throws Exception {
+        boolean virtual = "virtual".equals(mode);
+
+        // Jetty and Jersey log each request and connection at debug.
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        if (virtual && !VirtualThreads.isAvailable()) {
+            System.out.printf("%nVirtual threads are not available (Java %s); Both modes use platform threads%n", System.getProperty("java.version"));
+        }
+
+        DefaultServerFactory factory = virtual ? new VirtualThreadServerFactory() : new DefaultServerFactory();
+        factory.setMaxThreads(maxThreads);
+
+        HttpConnectorFactory connector = (HttpConnectorFactory) factory.getApplicationConnectors().get(0);
+        connector.setPort(0);
+        connector.setAcceptQueueSize(concurrency);
+        ((HttpConnectorFactory) factory.getAdminConnectors().get(0)).setPort(0);
+
+        Environment environment = new Environment(
+                "benchmark",
+                Jackson.newObjectMapper(),
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                new MetricRegistry(),
+                getClass().getClassLoader());
+        environment.jersey().register(new LookupResource(latencyMillis));
+
+        m_server = factory.build(environment);
+        m_server.start();
+        m_url = new URL(String.format("http://127.0.0.1:%d/lookup", ((ServerConnector) m_server.getConnectors()[0]).getLocalPort()));
+
+        // Clients use (cheap) virtual threads where available, in both modes, so that only the server differs.
+        m_clients = VirtualThreads.newThreadPerTaskExecutor("client", true);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        m_clients.shutdownNow();
+        m_server.stop();
+    }
+
+    @Benchmark
+    public int requests() throws Exception {
+        List<Future<Long>> responses = Lists.newArrayListWithCapacity(concurrency);
+
+        for (int i = 0; i < concurrency; i++) {
+            responses.add(m_clients.submit(new Callable<Long>() {
+
+                @Override
+                public Long call() throws IOException {
+                    HttpURLConnection connection = (HttpURLConnection) m_url.openConnection();
+
+                    try (InputStream input = connection.getInputStream()) {
+                        return ByteStreams.copy(input, ByteStreams.nullOutputStream());
+                    }
+                }
+            }));
+        }
+
+        int bytes = 0;
+
+        for (Future<Long> response : responses) {
+            bytes += response.get();
+        }
+
+        return bytes;
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Results;
+import org.opennms.newts.api.Timestamp;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.google.common.io.ByteStreams;
+import com.sun.jersey.api.core.DefaultResourceConfig;
+import com.sun.jersey.spi.container.servlet.ServletContainer;
+
+
+/**
+ * End-to-end latency of a measurements response, in the binary measurements format versus JSON
+ * (row and columnar): Each operation is an HTTP request, over loopback, to a Jetty/Jersey server
+ * that writes the results with the same message body writers as the service, and a client that
+ * reads the response back. Storage is excluded (the results are built at setup). Payload sizes
+ * are printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResponseFormatBenchmark {
+
+    private static final TypeReference<List<List<Map<String, Object>>>> ROWS_TYPE = new TypeReference<List<List<Map<String, Object>>>>() {};
+    private static final String[] LABELS = { "ifInOctets", "ifOutOctets", "ifInErrors", "ifOutErrors" };
+
+    @Param({ "10000" })
+    public int rows;
+
+    private final ObjectMapper m_mapper = new ObjectMapper();
+    private final Resource m_resource = new Resource("localhost");
+
+    private Server m_server;
+    private String m_url;
+
+    @Path("/measurements")
+    public static class ResultsResource {
+
+        private final Results<org.opennms.newts.api.Measurement> m_results;
+
+        public ResultsResource(Results<org.opennms.newts.api.Measurement> results) {
+            m_results = results;
+        }
+
+        @GET
+        @Produces({ MediaType.APPLICATION_JSON, BinaryMeasurementsWriter.MEDIA_TYPE })
+        public MeasurementResults getMeasurements(@QueryParam("format") MeasurementResults.Format format) {
+            return new MeasurementResults(m_results, format != null ? format : MeasurementResults.Format.ROWS);
+        }
+
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        Results<org.opennms.newts.api.Measurement> results = new Results<>();
+
+        for (int i = 0; i < rows; i++) {
+            Timestamp timestamp = Timestamp.fromEpochSeconds(900000000 + (i * 300));
+
+            for (int j = 0; j < LABELS.length; j++) {
+                results.addElement(new org.opennms.newts.api.Measurement(timestamp, m_resource, LABELS[j], (i * 1000.5d) + j));
+            }
+        }
+
+        DefaultResourceConfig config = new DefaultResourceConfig();
+        config.getSingletons().add(new ResultsResource(results));
+        config.getSingletons().add(new BinaryMeasurementsWriter());
+        config.getSingletons().add(new JacksonJsonProvider(m_mapper));
+
+        ServletContextHandler handler = new ServletContextHandler();
+        handler.addServlet(new ServletHolder(new ServletContainer(config)), "/*");
+
+        m_server = new Server(new InetSocketAddress("127.0.0.1", 0));
+        m_server.setHandler(handler);
+        m_server.start();
+
+        m_url = String.format("http://127.0.0.1:%d/measurements", ((ServerConnector) m_server.getConnectors()[0]).getLocalPort());
+
+        System.out.printf(
+                "%nPayload sizes (bytes): binary=%d, json-rows=%d, json-columns=%d%n",
+                payloadSize(BinaryMeasurementsWriter.MEDIA_TYPE, "ROWS"),
+                payloadSize(MediaType.APPLICATION_JSON, "ROWS"),
+                payloadSize(MediaType.APPLICATION_JSON, "COLUMNS"));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        m_server.stop();
+    }
+
+    @Benchmark
+    public Results<org.opennms.newts.api.Measurement> binary() throws IOException {
+        HttpURLConnection connection = open(BinaryMeasurementsWriter.MEDIA_TYPE, "ROWS");
+
+        try (InputStream input = new BufferedInputStream(connection.getInputStream())) {
+            return BinaryMeasurementsWriter.read(input, m_resource);
+        }
+    }
+
+    @Benchmark
+    public List<List<Map<String, Object>>> jsonRows() throws IOException {
+        HttpURLConnection connection = open(MediaType.APPLICATION_JSON, "ROWS");
+
+        try (InputStream input = connection.getInputStream()) {
+            return m_mapper.readValue(input, ROWS_TYPE);
+        }
+    }
+
+    @Benchmark
+    public Object jsonColumns() throws IOException {
+        HttpURLConnection connection = open(MediaType.APPLICATION_JSON, "COLUMNS");
+
+        try (InputStream input = connection.getInputStream()) {
+            return m_mapper.readTree(input);
+        }
+    }
+
+    private HttpURLConnection open(String mediaType, String format) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(m_url + "?format=" + format).openConnection();
+        connection.setRequestProperty("Accept", mediaType);
+        return connection;
+    }
+
+    private long payloadSize(String mediaType, String format) throws IOException {
+        try (InputStream input = open(mediaType, format).getInputStream()) {
+            return ByteStreams.copy(input, ByteStreams.nullOutputStream());
+        }
+    }
+
+}
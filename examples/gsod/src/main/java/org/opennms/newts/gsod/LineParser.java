@@ -13,6 +13,7 @@ import java.util.concurrent.TimeUnit;
 import org.opennms.newts.api.Gauge;
 import org.opennms.newts.api.Resource;
 import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.SampleDictionary;
 import org.opennms.newts.api.Timestamp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,7 +42,7 @@ public class LineParser {
     
         List<Sample> samples = Lists.newArrayList();
     
-        Resource station = new Resource(stringAt(line, 0));
+        Resource station = SampleDictionary.resource(stringAt(line, 0));
         String wban      = stringAt(line, 7);
         String dateYMD   = stringAt(line, 14);
     
@@ -29,6 +29,8 @@ class Config {
     private int m_cassandraPort = 9042;
     private String m_cassandraKeyspace = "newts";
     private String m_cassandraCompression = "NONE";
+    private int m_cassandraMaxRequests = 0;
+    private boolean m_virtualThreads = false;
     private Timestamp m_start = Timestamp.fromEpochSeconds(900000000);
     private Timestamp m_end = Timestamp.fromEpochSeconds(931536000);
     private Duration m_interval = Duration.seconds(300);
@@ -80,6 +82,17 @@ class Config {
         m_cassandraKeyspace = keyspace;
     }
 
+    @Option(name = "-M", aliases = "--cassandra-max-requests", metaVar = "<requests>", usage = "Maximum concurrent Cassandra requests (0 = unlimited).")
+    void setCassandraMaxRequests(int maxRequests) throws CmdLineException {
+        checkArgument(maxRequests >= 0, "-M/--cassandra-max-requests must not be negative");
+        m_cassandraMaxRequests = maxRequests;
+    }
+
+    @Option(name = "-V", aliases = "--virtual-threads", usage = "Run workers on virtual threads (Java 21+).")
+    void setVirtualThreads(boolean virtualThreads) {
+        m_virtualThreads = virtualThreads;
+    }
+
     @Option(name = "-s", aliases = "--start", metaVar = "<start>", usage = "ISO8601 formatted start time.")
     void setStart(Timestamp start) {
         m_start = start;
@@ -123,6 +136,14 @@ class Config {
         return m_cassandraCompression;
     }
 
+    int getCassandraMaxRequests() {
+        return m_cassandraMaxRequests;
+    }
+
+    boolean isVirtualThreads() {
+        return m_virtualThreads;
+    }
+
     Command getCommand() {
         return m_command;
     }
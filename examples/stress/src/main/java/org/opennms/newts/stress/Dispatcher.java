@@ -3,6 +3,10 @@ package org.opennms.newts.stress;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.concurrent.ThreadFactory;
+
+import org.opennms.newts.api.VirtualThreads;
+
 import com.codahale.metrics.ConsoleReporter;
 import com.codahale.metrics.MetricRegistry;
 
@@ -11,10 +15,12 @@ abstract class Dispatcher {
 
     protected final Worker[] m_threads;
     protected final MetricRegistry m_metricRegistry = new MetricRegistry();
+    protected final ThreadFactory m_threadFactory;
 
     Dispatcher(Config config) {
         checkNotNull(config, "config argument");
         m_threads = new Worker[config.getThreads()];
+        m_threadFactory = VirtualThreads.factory("worker", config.isVirtualThreads());
     }
 
     abstract void go() throws InterruptedException;
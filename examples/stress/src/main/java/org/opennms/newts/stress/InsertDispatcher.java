@@ -42,7 +42,8 @@ class InsertDispatcher extends Dispatcher {
                 config.getCassandraKeyspace(),
                 config.getCassandraHost(),
                 config.getCassandraPort(),
-                config.getCassandraCompression());
+                config.getCassandraCompression(),
+                config.getCassandraMaxRequests());
         m_repository = new CassandraSampleRepository(
                 session,
                 Config.CASSANDRA_TTL,
@@ -55,7 +56,7 @@ class InsertDispatcher extends Dispatcher {
 
     private void createThreads() {
         for (int i = 0; i < m_config.getThreads(); i++) {
-            m_threads[i] = new Inserter(i, m_repository, m_samplesQueue);
+            m_threads[i] = new Inserter(i, m_repository, m_samplesQueue, m_threadFactory);
         }
     }
 
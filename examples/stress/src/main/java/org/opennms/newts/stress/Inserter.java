@@ -5,6 +5,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Collection;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
 
 import org.opennms.newts.api.Sample;
 import org.opennms.newts.api.SampleRepository;
@@ -23,8 +24,8 @@ public class Inserter extends Worker {
     private final SampleRepository m_repository;
     private final BlockingQueue<Collection<Sample>> m_queue;
 
-    public Inserter(int sequence, SampleRepository repository, BlockingQueue<Collection<Sample>> queue) {
-        super(String.format("INSERTER-%d", sequence));
+    public Inserter(int sequence, SampleRepository repository, BlockingQueue<Collection<Sample>> queue, ThreadFactory threadFactory) {
+        super(String.format("INSERTER-%d", sequence), threadFactory);
 
         m_repository = checkNotNull(repository, "repository argument");
         m_queue = checkNotNull(queue, "queue argument");
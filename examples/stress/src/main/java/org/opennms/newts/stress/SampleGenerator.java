@@ -11,6 +11,7 @@ import org.opennms.newts.api.Gauge;
 import org.opennms.newts.api.MetricType;
 import org.opennms.newts.api.Resource;
 import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.SampleDictionary;
 import org.opennms.newts.api.Timestamp;
 import org.opennms.newts.api.ValueType;
 
@@ -30,8 +31,8 @@ public class SampleGenerator implements Iterable<Optional<Sample>>, Iterator<Opt
     private final String m_metric;
 
     public SampleGenerator(String resource, String metric, Timestamp start, Timestamp end, Duration interval) {
-        m_resource = new Resource(checkNotNull(resource, "resource argument"));
-        m_metric = checkNotNull(metric, "metric argument");
+        m_resource = SampleDictionary.resource(checkNotNull(resource, "resource argument"));
+        m_metric = SampleDictionary.metricName(checkNotNull(metric, "metric argument"));
 
         checkNotNull(start, "start argument");
         checkNotNull(end, "end argument");
@@ -37,7 +37,8 @@ public class SelectDispatcher extends Dispatcher {
                 config.getCassandraKeyspace(),
                 config.getCassandraHost(),
                 config.getCassandraPort(),
-                config.getCassandraCompression());
+                config.getCassandraCompression(),
+                config.getCassandraMaxRequests());
         m_repository = new CassandraSampleRepository(
                 session,
                 Config.CASSANDRA_TTL,
@@ -62,7 +63,7 @@ public class SelectDispatcher extends Dispatcher {
 
     private void createThreads() {
         for (int i = 0; i < m_config.getThreads(); i++) {
-            m_threads[i] = new Selecter(i, m_repository, getResultDescriptor(), m_queryQueue, m_metricRegistry);
+            m_threads[i] = new Selecter(i, m_repository, getResultDescriptor(), m_queryQueue, m_metricRegistry, m_threadFactory);
         }
     }
 
@@ -5,6 +5,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.nio.channels.Selector;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
 
 import org.opennms.newts.api.Measurement;
 import org.opennms.newts.api.Results;
@@ -30,8 +31,8 @@ public class Selecter extends Worker {
     private final BlockingQueue<Query> m_queue;
     private final MetricRegistry m_metricRegistry;
 
-    public Selecter(int sequence, SampleRepository repository, ResultDescriptor rDescriptor, BlockingQueue<Query> queue, MetricRegistry registry) {
-        super(String.format("SELECTER-%d", sequence));
+    public Selecter(int sequence, SampleRepository repository, ResultDescriptor rDescriptor, BlockingQueue<Query> queue, MetricRegistry registry, ThreadFactory threadFactory) {
+        super(String.format("SELECTER-%d", sequence), threadFactory);
 
         m_repository = checkNotNull(repository, "repository argument");
         m_rDescriptor = checkNotNull(rDescriptor, "rDescriptor argument");
@@ -1,16 +1,33 @@
 package org.opennms.newts.stress;
 
 
-abstract class Worker extends Thread {
+import java.util.concurrent.ThreadFactory;
 
-    private boolean m_isShutdown = false;
 
-    Worker(String name) {
-        super(name);
+abstract class Worker implements Runnable {
+
+    private final Thread m_thread;
+    private volatile boolean m_isShutdown = false;
+
+    Worker(String name, ThreadFactory threadFactory) {
+        m_thread = threadFactory.newThread(this);
+        m_thread.setName(name);
     }
 
     public abstract void run();
 
+    void setDaemon(boolean on) {
+        m_thread.setDaemon(on);
+    }
+
+    void start() {
+        m_thread.start();
+    }
+
+    void join() throws InterruptedException {
+        m_thread.join();
+    }
+
     boolean isShutdown() {
         return m_isShutdown;
     }
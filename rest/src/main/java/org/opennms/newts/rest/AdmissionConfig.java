@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/**
+ * Limits applied (separately) to each query endpoint; See {@link AdmissionControl}.
+ */
+public class AdmissionConfig {
+
+    @JsonProperty("enabled")
+    private boolean m_enabled = false;
+
+    @Min(value = 1)
+    @JsonProperty("maxConcurrentQueries")
+    private int m_maxConcurrentQueries = 16;
+
+    @Min(value = 0)
+    @JsonProperty("maxCost")
+    private long m_maxCost = 5000000;
+
+    @Min(value = 0)
+    @JsonProperty("maxQueued")
+    private int m_maxQueued = 64;
+
+    @Min(value = 0)
+    @JsonProperty("queueTimeoutMillis")
+    private long m_queueTimeoutMillis = 1000;
+
+    @Min(value = 1)
+    @JsonProperty("retryAfterSeconds")
+    private int m_retryAfterSeconds = 1;
+
+    public AdmissionConfig() {
+    }
+
+    AdmissionConfig(int maxConcurrentQueries, long maxCost, int maxQueued, long queueTimeoutMillis) {
+        m_enabled = true;
+        m_maxConcurrentQueries = maxConcurrentQueries;
+        m_maxCost = maxCost;
+        m_maxQueued = maxQueued;
+        m_queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    public boolean isEnabled() {
+        return m_enabled;
+    }
+
+    public int getMaxConcurrentQueries() {
+        return m_maxConcurrentQueries;
+    }
+
+    /** @return the total estimated cost of queries in progress (zero for unlimited) */
+    public long getMaxCost() {
+        return m_maxCost;
+    }
+
+    public int getMaxQueued() {
+        return m_maxQueued;
+    }
+
+    public long getQueueTimeoutMillis() {
+        return m_queueTimeoutMillis;
+    }
+
+    public int getRetryAfterSeconds() {
+        return m_retryAfterSeconds;
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.opennms.newts.api.Duration;
+import org.opennms.newts.api.Timestamp;
+import org.opennms.newts.persistence.cassandra.CassandraSampleRepository;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+
+
+/**
+ * Admission control for a query endpoint. Queries are admitted while both the number in progress,
+ * and the sum of their estimated costs, are within limits; Others wait (in a bounded queue, for a
+ * bounded time) for capacity to free up, and are otherwise shed with a
+ * {@code 503 Service Unavailable} and a {@code Retry-After}. A query whose cost alone exceeds the
+ * budget is admitted only when the endpoint is otherwise idle.
+ * <p>
+ * Costs are in units of samples read, estimated from the time range, the number of storage
+ * partitions it spans (each charged {@link #PARTITION_COST}), and the number of datasources.
+ * </p>
+ * <p>
+ * Metrics are prefixed <code>admission.&lt;endpoint&gt;</code>; These are <code>queued</code>
+ * (queries that had to wait), and <code>rejected</code> (queries shed).
+ * </p>
+ */
+class AdmissionControl {
+
+    static final String RETRY_AFTER = "Retry-After";
+
+    /** Cost of reading one partition, (in addition to the samples in it). */
+    static final long PARTITION_COST = 1000;
+
+    /** Range queried when no start is given (mirrors the repository). */
+    private static final Duration DEFAULT_RANGE = Duration.seconds(86400);
+
+    private final boolean m_enabled;
+    private final int m_maxConcurrent;
+    private final long m_maxCost;
+    private final int m_maxQueued;
+    private final long m_queueTimeoutMillis;
+    private final int m_retryAfterSeconds;
+    private final Duration m_shard;
+    private final Meter m_queued;
+    private final Meter m_rejected;
+
+    private int m_inFlight = 0;
+    private long m_inFlightCost = 0;
+    private int m_waiting = 0;
+
+    AdmissionControl(String endpoint, AdmissionConfig config, MetricRegistry registry) {
+        checkNotNull(endpoint, "endpoint argument");
+        checkNotNull(config, "config argument");
+        checkNotNull(registry, "registry argument");
+
+        m_enabled = config.isEnabled();
+        m_maxConcurrent = config.getMaxConcurrentQueries();
+        m_maxCost = config.getMaxCost();
+        m_maxQueued = config.getMaxQueued();
+        m_queueTimeoutMillis = config.getQueueTimeoutMillis();
+        m_retryAfterSeconds = config.getRetryAfterSeconds();
+        m_shard = CassandraSampleRepository.DEFAULT_RESOURCE_SHARD;
+        m_queued = registry.meter(MetricRegistry.name("admission", endpoint, "queued"));
+        m_rejected = registry.meter(MetricRegistry.name("admission", endpoint, "rejected"));
+    }
+
+    /** @return admission control that admits everything */
+    static AdmissionControl unlimited() {
+        return new AdmissionControl("unlimited", new AdmissionConfig(), new MetricRegistry());
+    }
+
+    /**
+     * Estimates the cost of querying a resource.
+     *
+     * @param start
+     *            query start (defaults to one day before the end)
+     * @param end
+     *            query end (defaults to now)
+     * @param interval
+     *            the expected interval between samples
+     * @param sources
+     *            the number of datasources read; Zero if not known
+     * @return the estimated cost
+     */
+    long cost(Optional<Timestamp> start, Optional<Timestamp> end, Duration interval, int sources) {
+        checkArgument(sources >= 0, "negative datasource count");
+
+        Timestamp upper = end.isPresent() ? end.get() : Timestamp.now();
+        Timestamp lower = start.isPresent() ? start.get() : upper.minus(DEFAULT_RANGE);
+
+        if (upper.lt(lower)) {
+            return PARTITION_COST;
+        }
+
+        long partitions = upper.stepFloor(m_shard).minus(lower.stepFloor(m_shard)).divideBy(m_shard) + 1;
+        long samples = Math.max(1, upper.minus(lower).divideBy(interval)) * sources;
+
+        return (partitions * PARTITION_COST) + samples;
+    }
+
+    /**
+     * Admits a query, waiting for capacity if need be.
+     *
+     * @param cost
+     *            the estimated cost of the query (see {@link #cost})
+     * @return the admitted query; Must be closed once complete
+     * @throws WebApplicationException
+     *             (503) if the endpoint is over budget, and the query could not be queued
+     */
+    Permit admit(long cost) {
+
+        if (!m_enabled) {
+            return new Permit(null, 0);
+        }
+
+        synchronized (this) {
+            if (!fits(cost)) {
+                if (m_waiting >= m_maxQueued) {
+                    throw reject("query queue is full");
+                }
+
+                m_queued.mark();
+                m_waiting++;
+
+                try {
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_queueTimeoutMillis);
+                    long remaining;
+
+                    while (!fits(cost)) {
+                        remaining = deadline - System.nanoTime();
+
+                        if (remaining <= 0) {
+                            throw reject("timed out waiting for query capacity");
+                        }
+
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw reject("interrupted waiting for query capacity");
+                }
+                finally {
+                    m_waiting--;
+                }
+            }
+
+            m_inFlight++;
+            m_inFlightCost += cost;
+
+            return new Permit(this, cost);
+        }
+    }
+
+    private boolean fits(long cost) {
+        if (m_inFlight == 0) {
+            return true;
+        }
+        return m_inFlight < m_maxConcurrent && (m_maxCost == 0 || m_inFlightCost + cost <= m_maxCost);
+    }
+
+    private synchronized void release(long cost) {
+        m_inFlight--;
+        m_inFlightCost -= cost;
+        notifyAll();
+    }
+
+    private WebApplicationException reject(String reason) {
+        m_rejected.mark();
+
+        return new WebApplicationException(
+                Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                        .header(RETRY_AFTER, m_retryAfterSeconds)
+                        .type(MediaType.TEXT_PLAIN)
+                        .entity(reason)
+                        .build());
+    }
+
+    /** An admitted query; Must be closed once complete. */
+    static class Permit implements AutoCloseable {
+
+        private AdmissionControl m_admission;
+        private final long m_cost;
+
+        private Permit(AdmissionControl admission, long cost) {
+            m_admission = admission;
+            m_cost = cost;
+        }
+
+        @Override
+        public void close() {
+            if (m_admission != null) {
+                m_admission.release(m_cost);
+                m_admission = null;
+            }
+        }
+
+    }
+
+}
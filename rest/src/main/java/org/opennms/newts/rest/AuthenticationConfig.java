@@ -19,6 +19,8 @@ package org.opennms.newts.rest;
 import java.util.Collections;
 import java.util.Map;
 
+import javax.validation.constraints.Min;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 
@@ -30,12 +32,31 @@ public class AuthenticationConfig {
     @JsonProperty("credentials")
     private Map<String, String> m_credentials = Collections.emptyMap();
 
+    @Min(value = 0)
+    @JsonProperty("cacheMaxEntries")
+    private long m_cacheMaxEntries = 1000;
+
+    @Min(value = 1)
+    @JsonProperty("cacheTtlSeconds")
+    private long m_cacheTtlSeconds = 300;
+
     public boolean isEnabled() {
         return m_enabled;
     }
 
+    /**
+     * @return passwords by user name; Either in cleartext, or bcrypt hashed
+     */
     public Map<String, String> getCredentials() {
         return m_credentials;
     }
 
+    public long getCacheMaxEntries() {
+        return m_cacheMaxEntries;
+    }
+
+    public long getCacheTtlSeconds() {
+        return m_cacheTtlSeconds;
+    }
+
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import org.opennms.newts.api.Measurement;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Results;
+import org.opennms.newts.api.Results.Row;
+import org.opennms.newts.api.Timestamp;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+
+/**
+ * Writes {@link MeasurementResults} in a compact, binary, columnar format, streamed from the
+ * results in blocks of (up to) {@link #BLOCK_ROWS} rows. Values are written as raw IEEE 754
+ * doubles, so that neither end pays for number formatting or parsing.
+ *
+ * <pre>
+ * stream := 'N' 'M' version(=1) block* end
+ * block  := rows:int32 timestamps:int64[rows] columns:int32 column*
+ * column := name:utf (as DataOutput#writeUTF) values:float64[rows]
+ * end    := 0:int32
+ * </pre>
+ * <p>
+ * All numbers are big-endian, and timestamps are in milliseconds. Where a row has no measurement
+ * for a column's label, its value is NaN.
+ * </p>
+ * <p>
+ * Measurement attributes are <em>not</em> encoded; Clients that need them must request JSON.
+ * </p>
+ */
+@Provider
+@Produces(BinaryMeasurementsWriter.MEDIA_TYPE)
+public class BinaryMeasurementsWriter implements MessageBodyWriter<MeasurementResults> {
+
+    /** Media type of the binary measurements format (values only; attributes are dropped). */
+    public static final String MEDIA_TYPE = "application/x-newts-measurements";
+
+    static final int BLOCK_ROWS = 1024;
+
+    private static final byte[] MAGIC = { 'N', 'M' };
+    private static final byte VERSION = 1;
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return MeasurementResults.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(MeasurementResults t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(MeasurementResults t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+        write(t.getResults(), entityStream);
+    }
+
+    /**
+     * Write results to a stream.
+     */
+    static void write(Results<Measurement> results, OutputStream output) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(output, 1 << 16));
+        List<Row<Measurement>> block = Lists.newArrayListWithCapacity(BLOCK_ROWS);
+        Iterator<Row<Measurement>> rows = results.iterator();
+
+        data.write(MAGIC);
+        data.writeByte(VERSION);
+
+        while (rows.hasNext()) {
+            block.clear();
+
+            while (block.size() < BLOCK_ROWS && rows.hasNext()) {
+                block.add(rows.next());
+            }
+
+            writeBlock(block, data);
+        }
+
+        data.writeInt(0);
+        data.flush();
+    }
+
+    private static void writeBlock(List<Row<Measurement>> block, DataOutputStream data) throws IOException {
+        Set<String> labels = Sets.newLinkedHashSet();
+
+        data.writeInt(block.size());
+
+        for (Row<Measurement> row : block) {
+            data.writeLong(row.getTimestamp().asMillis());
+
+            for (Measurement measurement : row) {
+                labels.add(measurement.getName());
+            }
+        }
+
+        data.writeInt(labels.size());
+
+        for (String label : labels) {
+            data.writeUTF(label);
+
+            for (Row<Measurement> row : block) {
+                Measurement measurement = row.getElement(label);
+                data.writeDouble((measurement != null) ? measurement.getValue() : Double.NaN);
+            }
+        }
+    }
+
+    /**
+     * Read results from a stream, (the inverse of {@link #write(Results, OutputStream)}). Missing
+     * (NaN) values are omitted.
+     *
+     * @param input
+     *            stream to read
+     * @param resource
+     *            resource of the measurements
+     * @return the results read
+     * @throws IllegalArgumentException
+     *             if the stream is not in the binary measurements format
+     */
+    static Results<Measurement> read(InputStream input, Resource resource) throws IOException {
+        checkNotNull(resource, "resource argument");
+
+        DataInputStream data = new DataInputStream(checkNotNull(input, "input argument"));
+        Results<Measurement> results = new Results<>();
+
+        try {
+            checkArgument(data.readByte() == MAGIC[0] && data.readByte() == MAGIC[1], "Not a binary measurements stream");
+
+            byte version = data.readByte();
+            checkArgument(version == VERSION, "Unsupported binary measurements version: %s", version);
+
+            for (int rows = data.readInt(); rows > 0; rows = data.readInt()) {
+                Timestamp[] timestamps = new Timestamp[rows];
+
+                for (int i = 0; i < rows; i++) {
+                    timestamps[i] = Timestamp.fromEpochMillis(data.readLong());
+                }
+
+                for (int columns = data.readInt(); columns > 0; columns--) {
+                    String label = data.readUTF();
+
+                    for (int i = 0; i < rows; i++) {
+                        double value = data.readDouble();
+
+                        if (!Double.isNaN(value)) {
+                            results.addElement(new Measurement(timestamps[i], resource, label, value));
+                        }
+                    }
+                }
+            }
+        }
+        catch (EOFException e) {
+            throw new IllegalArgumentException("Truncated binary measurements stream", e);
+        }
+
+        return results;
+    }
+
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.SampleBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+
+
+/**
+ * Bulk ingest of a (long) stream of samples, over a single request. The stream is read in
+ * chunks, and chunks are written concurrently, up to a bounded number in flight; An
+ * acknowledgement of each chunk is streamed back, in order, as the chunk completes.
+ * <p>
+ * Acknowledgements are newline-delimited JSON objects, with the chunk index, (for NDJSON input)
+ * the first and last line numbers of the chunk, the number of samples written, and a status. The
+ * status is one of <code>ok</code>, <code>invalid</code> (the chunk was malformed, and nothing in
+ * it written; Retrying is pointless), or <code>failed</code> (the write failed, or was rejected
+ * for being over quota; The chunk can be retried). Anything other than <code>ok</code> carries an
+ * <code>error</code> detail. A final object (with <code>"done":true</code>) summarizes the
+ * request.
+ * </p>
+ * <p>
+ * The body is read while acknowledgements are written, so clients must read the response
+ * concurrently with sending the body. One that sends the entire body before reading anything will
+ * deadlock once enough acknowledgements are pending to fill the connection's buffers (the request
+ * thread blocks writing acknowledgements, and stops reading the body). Acknowledgements are small
+ * (tens of bytes), so this takes some thousands of chunks; Clients that cannot read and write at
+ * once should limit the number of chunks per request accordingly.
+ * </p>
+ */
+class BulkIngest {
+
+    static final String NDJSON = "application/x-ndjson";
+
+    /** Largest binary frame accepted. */
+    static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    /** Default limit on the length of a line of NDJSON, in characters. */
+    static final int DEFAULT_MAX_LINE_LENGTH = 64 * 1024;
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkIngest.class);
+    private static final JsonFactory s_jsonFactory = new JsonFactory();
+
+    /** Marks a line exceeding the maximum length, (compared by identity). */
+    private static final String TOO_LONG = new String("");
+
+    /** Source of chunks. */
+    interface Source {
+
+        /** @return the next chunk, or null if there are no more */
+        Chunk next() throws IOException;
+    }
+
+    /** A chunk of samples, (or the reason it is invalid). */
+    static class Chunk {
+
+        private final List<Sample> m_samples;
+        private final long m_firstLine;
+        private final long m_lastLine;
+        private final String m_invalid;
+
+        Chunk(List<Sample> samples, long firstLine, long lastLine, String invalid) {
+            m_samples = checkNotNull(samples, "samples argument");
+            m_firstLine = firstLine;
+            m_lastLine = lastLine;
+            m_invalid = invalid;
+        }
+
+        List<Sample> getSamples() {
+            return m_samples;
+        }
+
+        boolean isValid() {
+            return m_invalid == null;
+        }
+
+    }
+
+    private final ExecutorService m_executor;
+    private final int m_maxInFlight;
+    private final int m_maxLineLength;
+
+    BulkIngest(ExecutorService executor, int maxInFlight) {
+        this(executor, maxInFlight, DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * @param executor
+     *            executor chunks are written on
+     * @param maxInFlight
+     *            maximum number of chunks (per request) written concurrently
+     * @param maxLineLength
+     *            maximum length of a line of NDJSON, in characters
+     */
+    BulkIngest(ExecutorService executor, int maxInFlight, int maxLineLength) {
+        checkArgument(maxInFlight > 0, "maximum chunks in flight must be greater than zero");
+        checkArgument(maxLineLength > 0, "maximum line length must be greater than zero");
+
+        m_executor = checkNotNull(executor, "executor argument");
+        m_maxInFlight = maxInFlight;
+        m_maxLineLength = maxLineLength;
+    }
+
+    /** @return the maximum length of a line of NDJSON, in characters */
+    int getMaxLineLength() {
+        return m_maxLineLength;
+    }
+
+    /** @return output that ingests {@code source} into {@code sink}, and writes the acknowledgements */
+    StreamingOutput ingest(final Source source, final SampleSink sink) {
+        checkNotNull(source, "source argument");
+        checkNotNull(sink, "sink argument");
+
+        return new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream output) throws IOException, WebApplicationException {
+                try (JsonGenerator generator = s_jsonFactory.createGenerator(output, JsonEncoding.UTF8)) {
+                    generator.setRootValueSeparator(null);
+                    run(source, sink, generator);
+                }
+            }
+        };
+    }
+
+    private void run(Source source, final SampleSink sink, JsonGenerator acks) throws IOException {
+        Deque<Pending> window = new ArrayDeque<>(m_maxInFlight);
+        Summary summary = new Summary();
+        String error = null;
+
+        try {
+            for (Chunk chunk = source.next(); chunk != null; chunk = source.next()) {
+
+                // Window is full; Wait for the oldest chunk.
+                if (window.size() >= m_maxInFlight) {
+                    acknowledge(window.removeFirst(), summary, acks);
+                }
+
+                window.addLast(submit(summary.m_chunks++, chunk, sink));
+
+                // Acknowledge whatever has completed since, (in order).
+                while (!window.isEmpty() && window.peekFirst().m_result.isDone()) {
+                    acknowledge(window.removeFirst(), summary, acks);
+                }
+            }
+        }
+        catch (IOException | IllegalArgumentException e) {
+            // Reading the stream failed; Nothing more can be read, but chunks in flight are seen through.
+            LOG.warn("Bulk ingest aborted after {} chunks: {}", summary.m_chunks, e.getMessage());
+            error = e.getMessage();
+        }
+
+        while (!window.isEmpty()) {
+            acknowledge(window.removeFirst(), summary, acks);
+        }
+
+        acks.writeStartObject();
+        acks.writeBooleanField("done", true);
+        acks.writeNumberField("chunks", summary.m_chunks);
+        acks.writeNumberField("samples", summary.m_samples);
+        acks.writeNumberField("failed", summary.m_failed);
+        if (error != null) {
+            acks.writeStringField("error", error);
+        }
+        acks.writeEndObject();
+        acks.writeRaw('\n');
+        acks.flush();
+    }
+
+    private Pending submit(int index, final Chunk chunk, final SampleSink sink) {
+        Future<String> result;
+
+        if (!chunk.isValid()) {
+            result = Futures.immediateFuture(chunk.m_invalid);
+        }
+        else {
+            result = m_executor.submit(new Callable<String>() {
+
+                @Override
+                public String call() {
+                    sink.insert(chunk.getSamples());
+                    return null;
+                }
+            });
+        }
+
+        return new Pending(index, chunk, result);
+    }
+
+    private static void acknowledge(Pending pending, Summary summary, JsonGenerator acks) throws IOException {
+        Chunk chunk = pending.m_chunk;
+        String status = "ok", error = null;
+
+        try {
+            error = pending.m_result.get();
+
+            if (error != null) {
+                status = "invalid";
+            }
+        }
+        catch (ExecutionException e) {
+            status = "failed";
+            error = describe(e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = "failed";
+            error = "interrupted";
+        }
+
+        int written = (error == null) ? chunk.getSamples().size() : 0;
+
+        summary.m_samples += written;
+
+        if (error != null) {
+            summary.m_failed++;
+        }
+
+        acks.writeStartObject();
+        acks.writeNumberField("chunk", pending.m_index);
+        if (chunk.m_firstLine > 0) {
+            acks.writeNumberField("firstLine", chunk.m_firstLine);
+            acks.writeNumberField("lastLine", chunk.m_lastLine);
+        }
+        acks.writeNumberField("samples", written);
+        acks.writeStringField("status", status);
+        if (error != null) {
+            acks.writeStringField("error", error);
+        }
+        acks.writeEndObject();
+        acks.writeRaw('\n');
+        acks.flush();
+    }
+
+    private static String describe(Throwable t) {
+        if (t instanceof WebApplicationException) {
+            Object entity = ((WebApplicationException) t).getResponse().getEntity();
+            return (entity != null) ? entity.toString() : String.format("status %d", ((WebApplicationException) t).getResponse().getStatus());
+        }
+        return (t.getMessage() != null) ? t.getMessage() : t.getClass().getSimpleName();
+    }
+
+    /**
+     * Reads newline-delimited JSON, one sample (in the format of {@link SampleDTO}) per line, in
+     * chunks of a fixed number of lines. A chunk with a malformed line, (or one longer than the
+     * maximum), is invalid in its entirety.
+     */
+    static class LineSource implements Source {
+
+        private final Reader m_reader;
+        private final Context m_context;
+        private final int m_chunkLines;
+        private final int m_maxLineLength;
+        private final char[] m_buffer = new char[8192];
+        private final StringBuilder m_text = new StringBuilder();
+        private int m_position = 0;
+        private int m_limit = 0;
+        private long m_line = 0;
+
+        LineSource(InputStream input, Context context, int chunkLines) {
+            this(input, context, chunkLines, DEFAULT_MAX_LINE_LENGTH);
+        }
+
+        LineSource(InputStream input, Context context, int chunkLines, int maxLineLength) {
+            checkNotNull(input, "input argument");
+            checkArgument(chunkLines > 0, "chunk size must be greater than zero");
+            checkArgument(maxLineLength > 0, "maximum line length must be greater than zero");
+
+            m_reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+            m_context = checkNotNull(context, "context argument");
+            m_chunkLines = chunkLines;
+            m_maxLineLength = maxLineLength;
+        }
+
+        @Override
+        public Chunk next() throws IOException {
+            List<Sample> samples = Lists.newArrayListWithCapacity(m_chunkLines);
+            String invalid = null;
+            long first = m_line + 1;
+            String line;
+
+            while (m_line - first + 1 < m_chunkLines && (line = readLine()) != null) {
+                m_line++;
+
+                if (invalid != null) {
+                    continue;
+                }
+
+                if (line == TOO_LONG) {
+                    invalid = String.format("line %d: longer than %d characters", m_line, m_maxLineLength);
+                    continue;
+                }
+
+                // Blank lines are ignored, (but counted).
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    samples.add(parse(line));
+                }
+                catch (IllegalArgumentException e) {
+                    invalid = String.format("line %d: %s", m_line, e.getMessage());
+                }
+            }
+
+            if (m_line < first) {
+                return null;
+            }
+
+            return new Chunk((invalid == null) ? samples : Collections.<Sample> emptyList(), first, m_line, invalid);
+        }
+
+        /**
+         * Reads a line, (less the terminating newline, and any carriage return before it), buffering
+         * no more than the maximum line length; The remainder of a longer line is discarded.
+         *
+         * @return the line, {@link #TOO_LONG} if it was too long, or null at the end of the stream
+         */
+        private String readLine() throws IOException {
+            boolean truncated = false, read = false;
+
+            m_text.setLength(0);
+
+            while (true) {
+                if (m_position >= m_limit) {
+                    m_limit = m_reader.read(m_buffer);
+                    m_position = 0;
+
+                    if (m_limit < 0) {
+                        m_limit = 0;
+                        break;
+                    }
+                }
+
+                read = true;
+
+                int end = m_position;
+
+                while (end < m_limit && m_buffer[end] != '\n') {
+                    end++;
+                }
+
+                if (!truncated) {
+                    int length = Math.min(end - m_position, m_maxLineLength + 1 - m_text.length());
+                    m_text.append(m_buffer, m_position, length);
+                    truncated = m_text.length() > m_maxLineLength;
+                }
+
+                if (end < m_limit) {
+                    m_position = end + 1;
+                    break;
+                }
+
+                m_position = end;
+            }
+
+            if (!read) {
+                return null;
+            }
+
+            int length = m_text.length();
+
+            if (length > 0 && m_text.charAt(length - 1) == '\r') {
+                m_text.setLength(--length);
+            }
+
+            return (length > m_maxLineLength) ? TOO_LONG : m_text.toString();
+        }
+
+        private Sample parse(String line) throws IOException {
+            try (JsonParser parser = s_jsonFactory.createParser(line)) {
+                SampleStreamReader.expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+                Sample sample = SampleStreamReader.readSample(parser, m_context);
+                checkArgument(parser.nextToken() == null, "trailing content after sample");
+                return sample;
+            }
+            catch (JsonParseException e) {
+                throw new IllegalArgumentException(String.format("Invalid sample JSON: %s", e.getOriginalMessage()), e);
+            }
+        }
+
+    }
+
+    /**
+     * Reads a sequence of {@link SampleBatch}es, each preceded by its length in bytes (as a 32 bit
+     * integer, big-endian); Each batch is a chunk.
+     */
+    static class FrameSource implements Source {
+
+        private final DataInputStream m_input;
+        private final Context m_context;
+
+        FrameSource(InputStream input, Context context) {
+            m_input = new DataInputStream(checkNotNull(input, "input argument"));
+            m_context = checkNotNull(context, "context argument");
+        }
+
+        @Override
+        public Chunk next() throws IOException {
+            int length;
+
+            try {
+                length = m_input.readInt();
+            }
+            catch (EOFException e) {
+                return null;
+            }
+
+            // The stream cannot be resynchronized after a bad length.
+            checkArgument(length > 0 && length <= MAX_FRAME_BYTES, "invalid frame length: %s", length);
+
+            byte[] frame = new byte[length];
+            m_input.readFully(frame);
+
+            try {
+                List<Sample> samples = Lists.newArrayList(Transform.inContext(SampleBatch.decode(frame).getSamples(), m_context));
+                return new Chunk(samples, 0, 0, null);
+            }
+            catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                return new Chunk(Collections.<Sample> emptyList(), 0, 0, String.format("invalid sample batch: %s", e.getMessage()));
+            }
+        }
+
+    }
+
+    private static class Pending {
+
+        private final int m_index;
+        private final Chunk m_chunk;
+        private final Future<String> m_result;
+
+        private Pending(int index, Chunk chunk, Future<String> result) {
+            m_index = index;
+            m_chunk = chunk;
+            m_result = result;
+        }
+
+    }
+
+    private static class Summary {
+        private int m_chunks = 0;
+        private long m_samples = 0;
+        private int m_failed = 0;
+    }
+
+}
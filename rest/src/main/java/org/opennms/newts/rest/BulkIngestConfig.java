@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/**
+ * Bulk ingest settings; See {@link BulkIngest}.
+ */
+public class BulkIngestConfig {
+
+    @Min(value = 1)
+    @JsonProperty("threads")
+    private int m_threads = 16;
+
+    @Min(value = 1)
+    @JsonProperty("maxInFlightChunks")
+    private int m_maxInFlightChunks = 4;
+
+    @Min(value = 1)
+    @JsonProperty("maxLineLength")
+    private int m_maxLineLength = BulkIngest.DEFAULT_MAX_LINE_LENGTH;
+
+    /** @return the number of threads chunks are written on (shared by all requests) */
+    public int getThreads() {
+        return m_threads;
+    }
+
+    /** @return the maximum number of chunks written concurrently, per request */
+    public int getMaxInFlightChunks() {
+        return m_maxInFlightChunks;
+    }
+
+    /** @return the maximum length of a line of NDJSON, in characters */
+    public int getMaxLineLength() {
+        return m_maxLineLength;
+    }
+
+}
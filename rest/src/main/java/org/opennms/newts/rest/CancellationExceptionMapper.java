@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import java.util.concurrent.CancellationException;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+
+
+/** Maps abandoned queries (see {@link org.opennms.newts.api.Deadline}) to a {@code 504}. */
+public class CancellationExceptionMapper implements ExceptionMapper<CancellationException> {
+
+    static final int GATEWAY_TIMEOUT = 504;
+
+    @Override
+    public Response toResponse(CancellationException exception) {
+        return Response.status(GATEWAY_TIMEOUT).type(MediaType.TEXT_PLAIN).entity(exception.getLocalizedMessage()).build();
+    }
+
+}
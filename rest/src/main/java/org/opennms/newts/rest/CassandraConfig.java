@@ -45,6 +45,10 @@ public class CassandraConfig {
     @JsonProperty("compression")
     private String m_compression = "NONE"; 
 
+    @Min(value = 0)
+    @JsonProperty("maxConcurrentRequests")
+    private int m_maxConcurrentRequests = 0;
+
     public String getKeyspace() {
         return m_keyspace;
     }
@@ -65,4 +69,8 @@ public class CassandraConfig {
         return m_compression;
     }
 
+    public int getMaxConcurrentRequests() {
+        return m_maxConcurrentRequests;
+    }
+
 }
@@ -19,16 +19,24 @@ package org.opennms.newts.rest;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.inject.name.Names.named;
 
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.opennms.newts.api.BoundedExecutor.WaitStrategy;
+import org.opennms.newts.api.IngestRing;
 import org.opennms.newts.api.SampleProcessor;
 import org.opennms.newts.api.SampleRepository;
 import org.opennms.newts.api.search.Searcher;
+import org.opennms.newts.cassandra.CassandraSession;
 import org.opennms.newts.cassandra.search.CassandraIndexerSampleProcessor;
 import org.opennms.newts.cassandra.search.CassandraSearcher;
 import org.opennms.newts.cassandra.search.GuavaResourceMetadataCache;
 import org.opennms.newts.cassandra.search.ResourceMetadataCache;
 import org.opennms.newts.persistence.cassandra.CassandraSampleRepository;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
 import com.google.inject.multibindings.Multibinder;
 
 
@@ -52,16 +60,38 @@ public class CassandraGuiceModule extends AbstractModule {
         bind(String.class).annotatedWith(named("cassandra.hostname")).toInstance(m_newtsConf.getCassandraHost());
         bind(Integer.class).annotatedWith(named("cassandra.port")).toInstance(m_newtsConf.getCassandraPort());
         bind(String.class).annotatedWith(named("cassandra.compression")).toInstance(m_newtsConf.getCassandraCompression());
+        bind(Integer.class).annotatedWith(named("cassandra.maxConcurrentRequests")).toInstance(m_newtsConf.getCassandraMaxConcurrentRequests());
 
         bind(Integer.class).annotatedWith(named("samples.cassandra.time-to-live")).toInstance(m_newtsConf.getCassandraColumnTTL());
         bind(Integer.class).annotatedWith(named("search.cassandra.time-to-live")).toInstance(m_newtsConf.getCassandraColumnTTL());
         bind(Integer.class).annotatedWith(named("sampleProcessor.maxThreads")).toInstance(m_newtsConf.getMaxSampleProcessorThreads());
+        bind(Integer.class).annotatedWith(named("sampleProcessor.queueCapacity")).toInstance(m_newtsConf.getSampleProcessorQueueCapacity());
+        bind(WaitStrategy.class).annotatedWith(named("sampleProcessor.waitStrategy")).toInstance(m_newtsConf.getSampleProcessorWaitStrategy());
+        bind(Integer.class).annotatedWith(named("sampleProcessor.coalesceMaxSamples")).toInstance(m_newtsConf.getSampleProcessorCoalesceMaxSamples());
+        bind(Long.class).annotatedWith(named("sampleProcessor.coalesceWindowMillis")).toInstance(m_newtsConf.getSampleProcessorCoalesceWindowMillis());
         
         bind(Long.class).annotatedWith(named("search.resourceMetadata.maxCacheEntries")).toInstance(m_newtsConf.getSearchConfig().getMaxCacheEntries());
 
         bind(ResourceMetadataCache.class).to(GuavaResourceMetadataCache.class);
         bind(Searcher.class).to(CassandraSearcher.class);
-        bind(SampleRepository.class).to(CassandraSampleRepository.class);
+
+        // With the ingest ring enabled, samples are published to a ring buffer consumed by storage
+        // and the sample processors, (rather than written by the repository, and then submitted to
+        // the processor service).
+        if (m_newtsConf.getIngestRingConfig().isEnabled()) {
+            IngestRingConfig ringConf = m_newtsConf.getIngestRingConfig();
+
+            bind(Integer.class).annotatedWith(named("ingestRing.bufferSize")).toInstance(ringConf.getBufferSize());
+            bind(IngestRing.WaitStrategy.class).annotatedWith(named("ingestRing.waitStrategy")).toInstance(ringConf.getWaitStrategy());
+            bind(Integer.class).annotatedWith(named("ingestRing.maxBatchSamples")).toInstance(ringConf.getMaxBatchSamples());
+            bind(Integer.class).annotatedWith(named("ingestRing.maxRetries")).toInstance(ringConf.getMaxRetries());
+
+            bind(IngestRing.class).in(Singleton.class);
+            bind(SampleRepository.class).to(IngestRing.class);
+        }
+        else {
+            bind(SampleRepository.class).to(CassandraSampleRepository.class);
+        }
 
         Multibinder<SampleProcessor> processors = Multibinder.newSetBinder(binder(), SampleProcessor.class);
 
@@ -72,4 +102,12 @@ public class CassandraGuiceModule extends AbstractModule {
 
     }
 
+    /** Storage for the ingest ring; Sample processors are consumers of the ring instead. */
+    @Provides
+    @Singleton
+    @Named("ingestRing.repository")
+    SampleRepository getIngestRingRepository(CassandraSession session, @Named("samples.cassandra.time-to-live") int ttl, MetricRegistry registry) {
+        return new CassandraSampleRepository(session, ttl, registry, null);
+    }
+
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.Timestamp;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+
+/**
+ * Validators (ETag and Last-Modified) for queries, so that a query of an unchanged window can be
+ * answered with a {@code 304 Not Modified}, without reading or processing samples.
+ * <p>
+ * Validators derive from the queried window, and the time samples of the resource were last
+ * written. Write times are tracked in memory, as samples are written through this service; They
+ * are therefore only sound when all writes go through this instance, and once written, samples
+ * are visible to queries. Resources not written to since startup (or whose write times have been
+ * evicted), are treated as last written at startup (or eviction). Queries of open-ended windows
+ * (those without both a start and an end) are not validated, since their results change over time.
+ * </p>
+ */
+class ConditionalRequests {
+
+    /** The validators of a query. */
+    static class Validators {
+
+        private static final Validators NONE = new Validators(null, null);
+
+        private final EntityTag m_tag;
+        private final Date m_lastModified;
+
+        private Validators(EntityTag tag, Date lastModified) {
+            m_tag = tag;
+            m_lastModified = lastModified;
+        }
+
+        /**
+         * @return a response builder if the request's preconditions are met (i.e. not modified),
+         *         or null if the query should proceed
+         */
+        ResponseBuilder evaluate(Request request) {
+            return (m_tag != null) ? request.evaluatePreconditions(m_lastModified, m_tag) : null;
+        }
+
+        /** @return a 200 response of {@code entity}, with validators */
+        Response ok(Object entity) {
+            ResponseBuilder builder = Response.ok(entity);
+
+            if (m_tag != null) {
+                builder.tag(m_tag).lastModified(m_lastModified);
+            }
+
+            return builder.build();
+        }
+
+    }
+
+    private final boolean m_isEnabled;
+    private final long m_startMillis;
+    private final AtomicLong m_evictedMillis = new AtomicLong();
+    private final Cache<String, Long> m_writes;
+
+    /**
+     * @param enabled
+     *            whether or not to validate queries
+     * @param maxResources
+     *            maximum number of resource write times to track
+     */
+    ConditionalRequests(boolean enabled, long maxResources) {
+        checkArgument(maxResources > 0, "maxResources must be greater than zero");
+
+        m_isEnabled = enabled;
+        m_startMillis = System.currentTimeMillis();
+        m_writes = CacheBuilder.newBuilder().maximumSize(maxResources).removalListener(new RemovalListener<String, Long>() {
+
+            @Override
+            public void onRemoval(RemovalNotification<String, Long> notification) {
+                if (notification.wasEvicted()) {
+                    advance(m_evictedMillis, notification.getValue());
+                }
+            }
+        }).build();
+    }
+
+    /** @return an instance that never validates */
+    static ConditionalRequests disabled() {
+        return new ConditionalRequests(false, 1);
+    }
+
+    boolean isEnabled() {
+        return m_isEnabled;
+    }
+
+    /**
+     * Record that samples have been written, (and are visible to queries).
+     */
+    void written(Collection<Sample> samples) {
+        if (!m_isEnabled) return;
+
+        Set<String> keys = Sets.newHashSet();
+
+        for (Sample sample : samples) {
+            keys.add(key(sample.getContext(), sample.getResource()));
+        }
+
+        Long now = System.currentTimeMillis();
+
+        for (String key : keys) {
+            m_writes.put(key, now);
+        }
+    }
+
+    /**
+     * @param variant
+     *            everything else that distinguishes the query's representation (report,
+     *            resolution, media type, etc)
+     * @return validators of a query
+     */
+    Validators validators(Context context, Resource resource, Optional<Timestamp> start, Optional<Timestamp> end, Object... variant) {
+        if (!m_isEnabled || !start.isPresent() || !end.isPresent()) {
+            return Validators.NONE;
+        }
+
+        String key = key(context, resource);
+        Long written = m_writes.getIfPresent(key);
+        long lastModified = Math.max(m_startMillis, (written != null) ? written : m_evictedMillis.get());
+
+        Hasher hasher = Hashing.murmur3_128().newHasher()
+                .putString(key, StandardCharsets.UTF_8)
+                .putLong(start.get().asMillis())
+                .putLong(end.get().asMillis())
+                .putLong(lastModified);
+
+        for (Object v : variant) {
+            hasher.putString(String.valueOf(v), StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+
+        // Weak, since the representation differs by content-encoding
+        EntityTag tag = new EntityTag(hasher.hash().toString(), true);
+
+        // Rounded up, since Last-Modified has a precision of seconds
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(lastModified + 999);
+
+        return new Validators(tag, new Date(TimeUnit.SECONDS.toMillis(seconds)));
+    }
+
+    private static String key(Context context, Resource resource) {
+        return context.getId() + '\u0000' + resource.getId();
+    }
+
+    private static void advance(AtomicLong value, long millis) {
+        long current;
+        do {
+            current = value.get();
+        } while (millis > current && !value.compareAndSet(current, millis));
+    }
+
+}
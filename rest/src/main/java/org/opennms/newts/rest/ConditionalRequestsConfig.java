@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+public class ConditionalRequestsConfig {
+
+    @JsonProperty("enabled")
+    private boolean m_isEnabled = false;
+
+    @Min(value = 1)
+    @JsonProperty("maxResources")
+    private long m_maxResources = 100000;
+
+    public boolean isEnabled() {
+        return m_isEnabled;
+    }
+
+    public long getMaxResources() {
+        return m_maxResources;
+    }
+
+}
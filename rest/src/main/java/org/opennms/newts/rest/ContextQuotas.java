@@ -0,0 +1,264 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Sample;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+
+/**
+ * Per-{@link Context} limits on the rate at which samples are ingested, and on the number of
+ * concurrent queries, so that one busy context cannot degrade the others. Requests over quota are
+ * rejected with a {@code 429 Too Many Requests} (and a {@code Retry-After} of one second).
+ * <p>
+ * Only configured contexts have quotas of their own; All others (their IDs being chosen by
+ * clients) share a single quota of the default limits, so that inventing contexts can neither
+ * grow the number of quotas (and metrics), nor escape a quota.
+ * </p>
+ * <p>
+ * Metrics are reported per quota, prefixed <code>contexts.&lt;id&gt;</code> (or
+ * <code>contexts.unlisted</code> for the shared quota); These are <code>samples</code> (samples
+ * admitted), <code>insert</code> and <code>select</code> (request latency), and
+ * <code>rejected</code> (requests over quota).
+ * </p>
+ */
+class ContextQuotas {
+
+    static final int TOO_MANY_REQUESTS = 429;
+
+    /** Name of the quota shared by contexts not configured. */
+    static final String UNLISTED = "unlisted";
+
+    private final Map<Context, Quota> m_quotas;
+    private final Quota m_unlisted;
+
+    ContextQuotas(QuotasConfig config, MetricRegistry registry) {
+        checkNotNull(config, "config argument");
+        checkNotNull(registry, "registry argument");
+
+        ImmutableMap.Builder<Context, Quota> quotas = ImmutableMap.builder();
+
+        for (Map.Entry<String, QuotaConfig> entry : config.getContexts().entrySet()) {
+            quotas.put(new Context(entry.getKey()), new Quota(entry.getKey(), entry.getValue(), registry));
+        }
+
+        m_quotas = quotas.build();
+        m_unlisted = new Quota(UNLISTED, config.getDefault(), registry);
+    }
+
+    /** @return quotas without limits (metrics are still kept) */
+    static ContextQuotas unlimited() {
+        return new ContextQuotas(new QuotasConfig(), new MetricRegistry());
+    }
+
+    /**
+     * Admits an insert of samples, charging the ingest rate of each context they belong to.
+     *
+     * @throws WebApplicationException
+     *             (429) if any of the contexts is over quota
+     */
+    Admission admitInsert(Collection<Sample> samples) {
+        Map<Context, Integer> counts = Maps.newHashMapWithExpectedSize(1);
+
+        for (Sample sample : samples) {
+            Integer count = counts.get(sample.getContext());
+            counts.put(sample.getContext(), (count == null) ? 1 : count + 1);
+        }
+
+        // Charge per quota, (unlisted contexts share one).
+        Map<Quota, Integer> charges = Maps.newHashMapWithExpectedSize(counts.size());
+        Map<Quota, Context> rejectAs = Maps.newHashMapWithExpectedSize(counts.size());
+
+        for (Map.Entry<Context, Integer> entry : counts.entrySet()) {
+            Quota quota = getQuota(entry.getKey());
+            Integer charge = charges.get(quota);
+            charges.put(quota, (charge == null) ? entry.getValue() : charge + entry.getValue());
+            rejectAs.put(quota, entry.getKey());
+        }
+
+        Map<Quota, Integer> charged = Maps.newHashMapWithExpectedSize(charges.size());
+
+        for (Map.Entry<Quota, Integer> entry : charges.entrySet()) {
+            Quota quota = entry.getKey();
+
+            if (quota.m_ingest != null && !quota.m_ingest.tryAcquire(entry.getValue())) {
+                // Refund the quotas already charged.
+                for (Map.Entry<Quota, Integer> refund : charged.entrySet()) {
+                    refund.getKey().m_ingest.release(refund.getValue());
+                }
+                throw quota.reject("ingest rate quota exceeded", rejectAs.get(quota));
+            }
+
+            if (quota.m_ingest != null) {
+                charged.put(quota, entry.getValue());
+            }
+        }
+
+        Admission admission = new Admission();
+
+        for (Map.Entry<Quota, Integer> entry : charges.entrySet()) {
+            entry.getKey().m_samples.mark(entry.getValue());
+            admission.m_timers.add(entry.getKey().m_insertTimer.time());
+        }
+
+        return admission;
+    }
+
+    /**
+     * Admits a query of the given context.
+     *
+     * @throws WebApplicationException
+     *             (429) if the context already has its maximum number of queries in progress
+     */
+    Admission admitQuery(Context context) {
+        Quota quota = getQuota(context);
+
+        if (quota.m_queries != null && !quota.m_queries.tryAcquire()) {
+            throw quota.reject("concurrent query quota exceeded", context);
+        }
+
+        Admission admission = new Admission();
+        admission.m_permits = quota.m_queries;
+        admission.m_timers.add(quota.m_selectTimer.time());
+
+        return admission;
+    }
+
+    private Quota getQuota(Context context) {
+        Quota quota = m_quotas.get(context);
+        return (quota != null) ? quota : m_unlisted;
+    }
+
+    /** An admitted request; Must be closed once complete. */
+    static class Admission implements AutoCloseable {
+
+        private final List<Timer.Context> m_timers = Lists.newArrayListWithCapacity(1);
+        private Semaphore m_permits;
+
+        private Admission() {
+        }
+
+        @Override
+        public void close() {
+            for (Timer.Context timer : m_timers) {
+                timer.stop();
+            }
+
+            m_timers.clear();
+
+            if (m_permits != null) {
+                m_permits.release();
+                m_permits = null;
+            }
+        }
+
+    }
+
+    private static class Quota {
+
+        private final TokenBucket m_ingest;
+        private final Semaphore m_queries;
+        private final Meter m_samples;
+        private final Meter m_rejected;
+        private final Timer m_insertTimer;
+        private final Timer m_selectTimer;
+
+        private Quota(String name, QuotaConfig config, MetricRegistry registry) {
+            String prefix = MetricRegistry.name("contexts", name);
+
+            m_ingest = (config.getMaxSamplesPerSecond() > 0) ? new TokenBucket(config.getMaxSamplesPerSecond()) : null;
+            m_queries = (config.getMaxConcurrentQueries() > 0) ? new Semaphore(config.getMaxConcurrentQueries()) : null;
+            m_samples = registry.meter(MetricRegistry.name(prefix, "samples"));
+            m_rejected = registry.meter(MetricRegistry.name(prefix, "rejected"));
+            m_insertTimer = registry.timer(MetricRegistry.name(prefix, "insert"));
+            m_selectTimer = registry.timer(MetricRegistry.name(prefix, "select"));
+        }
+
+        private WebApplicationException reject(String reason, Context context) {
+            m_rejected.mark();
+
+            return new WebApplicationException(
+                    Response.status(TOO_MANY_REQUESTS)
+                            .header(AdmissionControl.RETRY_AFTER, 1)
+                            .type(MediaType.TEXT_PLAIN)
+                            .entity(String.format("%s for context %s", reason, context.getId()))
+                            .build());
+        }
+
+    }
+
+    /**
+     * Token bucket of a sample rate, holding (up to) one second's worth. As with Guava's
+     * {@code RateLimiter}, a charge larger than the bucket is admitted when the bucket is full,
+     * leaving it in debt; Unlike it, charges can be refunded.
+     */
+    static class TokenBucket {
+
+        private final double m_rate;
+        private double m_tokens;
+        private long m_updated;
+
+        TokenBucket(double rate) {
+            m_rate = rate;
+            m_tokens = rate;
+            m_updated = System.nanoTime();
+        }
+
+        synchronized boolean tryAcquire(int permits) {
+            refill();
+
+            if (m_tokens < Math.min(permits, m_rate)) {
+                return false;
+            }
+
+            m_tokens -= permits;
+
+            return true;
+        }
+
+        synchronized void release(int permits) {
+            m_tokens = Math.min(m_rate, m_tokens + permits);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            m_tokens = Math.min(m_rate, m_tokens + ((now - m_updated) * m_rate / TimeUnit.SECONDS.toNanos(1)));
+            m_updated = now;
+        }
+
+    }
+
+}
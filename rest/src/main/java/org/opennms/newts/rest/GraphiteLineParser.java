@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.SortedMap;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.Timestamp;
+
+
+/**
+ * Parses the Graphite plaintext protocol, lines of the form
+ * <code>&lt;path&gt;[;&lt;tag&gt;=&lt;value&gt;...] &lt;value&gt; [&lt;timestamp&gt;]</code>,
+ * where timestamps are in seconds since the epoch, (and a timestamp of <code>-1</code>, or none at
+ * all, means now).
+ */
+class GraphiteLineParser extends LineParser {
+
+    GraphiteLineParser(Context context) {
+        super(context);
+    }
+
+    @Override
+    void parse(ChannelBuffer buffer, int start, int end, Timestamp now, List<Sample> samples) {
+        int pathStart = skipWhitespace(buffer, start, end);
+        int pathEnd = token(buffer, pathStart, end);
+
+        // Blank line
+        if (pathStart == pathEnd) {
+            return;
+        }
+
+        int valueStart = skipWhitespace(buffer, pathEnd, end);
+        int valueEnd = token(buffer, valueStart, end);
+
+        checkArgument(valueStart < valueEnd, "missing value");
+
+        int timestampStart = skipWhitespace(buffer, valueEnd, end);
+        int timestampEnd = token(buffer, timestampStart, end);
+
+        checkArgument(skipWhitespace(buffer, timestampEnd, end) == end, "trailing content");
+
+        Timestamp timestamp = now;
+
+        if (timestampStart < timestampEnd && !equals(buffer, timestampStart, timestampEnd, "-1")) {
+            timestamp = Timestamp.fromEpochMillis(Math.round(parseDouble(buffer, timestampStart, timestampEnd) * 1000));
+        }
+
+        double value = parseDouble(buffer, valueStart, valueEnd);
+        Series series = getSeriesCache().get(buffer, pathStart, pathEnd);
+
+        if (series == null) {
+            int tagsStart = indexOf(buffer, pathStart, pathEnd, (byte) ';');
+            SortedMap<String, String> tags = tags();
+
+            for (int tagStart = tagsStart + 1; tagStart < pathEnd;) {
+                int tagEnd = indexOf(buffer, tagStart, pathEnd, (byte) ';');
+                int equals = indexOf(buffer, tagStart, tagEnd, (byte) '=');
+
+                checkArgument(equals > tagStart && equals < tagEnd - 1, "invalid tag: %s", string(buffer, tagStart, tagEnd));
+                tags.put(string(buffer, tagStart, equals), string(buffer, equals + 1, tagEnd));
+
+                tagStart = tagEnd + 1;
+            }
+
+            series = getSeriesCache().put(buffer, pathStart, pathEnd, pathSeries(string(buffer, pathStart, tagsStart), tags));
+        }
+
+        samples.add(sample(timestamp, series, value));
+    }
+
+}
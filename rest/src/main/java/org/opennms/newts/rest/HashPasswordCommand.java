@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+import io.dropwizard.cli.Command;
+import io.dropwizard.setup.Bootstrap;
+
+import java.io.Console;
+
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * Prints the bcrypt hash of a password, for use in the authentication credentials configuration.
+ */
+public class HashPasswordCommand extends Command {
+
+    protected HashPasswordCommand() {
+        super("hash-password", "Hash a password for use in the authentication configuration");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        subparser.addArgument("-r", "--rounds")
+                .dest("rounds")
+                .type(Integer.class)
+                .setDefault(10)
+                .help("log2 of the number of hashing rounds (default: 10)");
+        subparser.addArgument("password")
+                .nargs("?")
+                .help("the password to hash (prompted for if omitted)");
+    }
+
+    @Override
+    public void run(Bootstrap<?> bootstrap, Namespace namespace) throws Exception {
+        String password = namespace.getString("password");
+
+        if (password == null) {
+            Console console = System.console();
+
+            if (console == null) {
+                throw new IllegalStateException("no console to prompt for a password with; Pass one as an argument");
+            }
+
+            password = new String(console.readPassword("Password: "));
+        }
+
+        System.out.println(BCrypt.hashpw(password, BCrypt.gensalt(namespace.getInt("rounds"))));
+    }
+
+}
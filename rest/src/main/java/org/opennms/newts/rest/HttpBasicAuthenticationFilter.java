@@ -18,9 +18,10 @@ package org.opennms.newts.rest;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.Map;
-import java.util.regex.Matcher;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import javax.servlet.Filter;
@@ -33,21 +34,67 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.codec.binary.Base64;
+import org.mindrot.jbcrypt.BCrypt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Optional;
-import com.google.common.base.Throwables;
-
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * HTTP basic authentication. Configured passwords are either cleartext, or bcrypt hashes (see
+ * {@link HashPasswordCommand}). Hashes of versions <code>$2$</code>, <code>$2a$</code>,
+ * <code>$2b$</code>, and <code>$2y$</code> are accepted, (the last two are verified as
+ * <code>$2a$</code>, with which they are compatible); Any other is rejected at startup.
+ * <p>
+ * Successfully verified authorization headers are cached (for a bounded time, and by their SHA-256
+ * digest, so that no credentials are held in memory), so that clients repeating the same header
+ * pay neither for parsing, nor for hashing, on each request. Metrics
+ * are <code>authentication.latency</code> (time spent authenticating),
+ * <code>authentication.cache-misses</code>, and <code>authentication.failures</code>.
+ * </p>
+ */
 public class HttpBasicAuthenticationFilter implements Filter {
 
     private final static Logger LOG = LoggerFactory.getLogger(HttpBasicAuthenticationFilter.class);
     private final static String m_realm = "Newts";
+    private final static Pattern BCRYPT_VERSION = Pattern.compile("^\\$2[a-z]?\\$");
+    private final static Pattern BCRYPT_HASH = Pattern.compile("^\\$2[aby]?\\$\\d\\d\\$[./A-Za-z0-9]{53}$");
 
     private final NewtsConfig m_config;
+    private final Cache<HashCode, String> m_verified;
+    private final Timer m_latency;
+    private final Meter m_misses;
+    private final Meter m_failures;
 
     public HttpBasicAuthenticationFilter(NewtsConfig config) {
+        this(config, new MetricRegistry());
+    }
+
+    public HttpBasicAuthenticationFilter(NewtsConfig config, MetricRegistry registry) {
         m_config = checkNotNull(config, "config argument");
+        checkNotNull(registry, "registry argument");
+
+        AuthenticationConfig authConfig = m_config.getAuthenticationConfig();
+
+        for (Map.Entry<String, String> entry : authConfig.getCredentials().entrySet()) {
+            checkPassword(entry.getKey(), entry.getValue());
+        }
+
+        m_verified = CacheBuilder.newBuilder()
+                .maximumSize(authConfig.getCacheMaxEntries())
+                .expireAfterWrite(authConfig.getCacheTtlSeconds(), TimeUnit.SECONDS)
+                .build();
+
+        m_latency = registry.timer(MetricRegistry.name("authentication", "latency"));
+        m_misses = registry.meter(MetricRegistry.name("authentication", "cache-misses"));
+        m_failures = registry.meter(MetricRegistry.name("authentication", "failures"));
     }
 
     @Override
@@ -73,14 +120,20 @@ public class HttpBasicAuthenticationFilter implements Filter {
             Optional<String> authHeader = getAuthorizationHeader(request);
 
             if (authHeader.isPresent()) {
-                Credentials credentials = Credentials.fromHeader(authHeader.get());
-                if (!isAuthorized(credentials)) {
+                Optional<String> user;
+
+                try (Timer.Context ctx = m_latency.time()) {
+                    user = authenticate(authHeader.get());
+                }
+
+                if (!user.isPresent()) {
                     LOG.trace("Credentials do NOT match; Authorizationi failed");
+                    m_failures.mark();
                     sendUnauthorized(response);
                     return;    // Stop processing filters on failed authentication
                 }
 
-                LOG.trace("User {} is authorized", credentials.getUser());
+                LOG.trace("User {} is authorized", user.get());
             }
             else {
                 LOG.trace("Missing Authorization HTTP header; Authorization failed");
@@ -106,15 +159,68 @@ public class HttpBasicAuthenticationFilter implements Filter {
         response.sendError(401, msg);
     }
 
+    /** @return the authenticated user, if any */
+    private Optional<String> authenticate(String authHeader) {
+        HashCode digest = Hashing.sha256().hashString(authHeader, StandardCharsets.UTF_8);
+        String user = m_verified.getIfPresent(digest);
+
+        if (user != null) {
+            return Optional.of(user);
+        }
+
+        m_misses.mark();
+
+        Credentials credentials = Credentials.fromHeader(authHeader);
+
+        if (!isAuthorized(credentials)) {
+            return Optional.absent();
+        }
+
+        m_verified.put(digest, credentials.getUser());
+
+        return Optional.of(credentials.getUser());
+    }
+
     private boolean isAuthorized(Credentials credentials) {
         Map<String, String> passwords = m_config.getAuthenticationConfig().getCredentials();
-        String user = credentials.getUser(), pass = credentials.getPass();
+        String password = passwords.get(credentials.getUser());
+
+        if (password == null) {
+            return false;
+        }
+
+        if (isHashed(password)) {
+            return BCrypt.checkpw(credentials.getPass(), normalized(password));
+        }
 
-        if (passwords.containsKey(user) && (passwords.get(user) != null)) {
-            return passwords.get(user).equals(pass);
+        // Constant-time, so as not to leak (by timing) how much of the password matched
+        return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), credentials.getPass().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @return true if {@code password} is (by its version prefix) a bcrypt hash */
+    static boolean isHashed(String password) {
+        return BCRYPT_VERSION.matcher(password).find();
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if {@code password} is a bcrypt hash of an unsupported version, or malformed
+     */
+    static void checkPassword(String user, String password) {
+        if (isHashed(password) && !BCRYPT_HASH.matcher(password).matches()) {
+            throw new IllegalArgumentException(String.format("password of user %s is not a supported bcrypt hash ($2$, $2a$, $2b$, or $2y$)", user));
         }
+    }
 
-        return false;
+    /**
+     * @return the hash, with a <code>$2b$</code> or <code>$2y$</code> version replaced by the
+     *         equivalent <code>$2a$</code>, (the only one that jBCrypt accepts)
+     */
+    static String normalized(String hash) {
+        if (hash.startsWith("$2b$") || hash.startsWith("$2y$")) {
+            return "$2a$" + hash.substring(4);
+        }
+        return hash;
     }
 
     private boolean isCorsPreflight(HttpServletRequest request) {
@@ -136,8 +242,7 @@ public class HttpBasicAuthenticationFilter implements Filter {
     }
 
     static class Credentials {
-        private static final Pattern s_headerPattern = Pattern.compile("Basic (?<token>.+)", Pattern.CASE_INSENSITIVE);
-        private static final Pattern s_credsPattern  = Pattern.compile("(?<user>.+):(?<pass>.+)");
+        private static final String BASIC = "Basic ";
 
         private final String m_user;
         private final String m_pass;
@@ -157,33 +262,19 @@ public class HttpBasicAuthenticationFilter implements Filter {
 
         /** Creates a {@link Credentials} instance from an HTTP basic authentication header value. */
         static Credentials fromHeader(String headerValue) {
-            String encoded, decoded;
-            Matcher matcher;
-
-            matcher = s_headerPattern.matcher(headerValue);
 
-            if (matcher.matches()) {
-                encoded = matcher.group("token");
-            }
-            else {
+            if (headerValue.length() <= BASIC.length() || !headerValue.regionMatches(true, 0, BASIC, 0, BASIC.length())) {
                 throw new IllegalArgumentException("malformed credentials header");
             }
 
-            try {
-                decoded = new String(Base64.decodeBase64(encoded), "UTF-8");
-            }
-            catch (UnsupportedEncodingException e) {
-                throw Throwables.propagate(e);
-            }
-
-            matcher = s_credsPattern.matcher(decoded);
+            String decoded = new String(Base64.decodeBase64(headerValue.substring(BASIC.length())), StandardCharsets.UTF_8);
+            int colon = decoded.lastIndexOf(':');
 
-            if (matcher.matches()) {
-                return new Credentials(matcher.group("user"), matcher.group("pass"));
-            }
-            else {
+            if (colon < 1 || colon == (decoded.length() - 1)) {
                 throw new IllegalArgumentException("malformed credentials header");
             }
+
+            return new Credentials(decoded.substring(0, colon), decoded.substring(colon + 1));
         }
 
     }
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.SortedMap;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.SampleDictionary;
+import org.opennms.newts.api.Timestamp;
+
+import com.google.common.collect.Lists;
+
+
+/**
+ * Parses the Influx line protocol, lines of the form
+ * <code>&lt;measurement&gt;[,&lt;tag&gt;=&lt;value&gt;...] &lt;field&gt;=&lt;value&gt;[,&lt;field&gt;=&lt;value&gt;...] [&lt;timestamp&gt;]</code>,
+ * where timestamps are in nanoseconds since the epoch. Each numeric (float, integer, or unsigned)
+ * or boolean field is a sample; String fields are ignored.
+ */
+class InfluxLineParser extends LineParser {
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    // Field names, (by their escaped bytes).
+    private final SeriesCache m_fields = new SeriesCache(CACHED_SERIES);
+
+    InfluxLineParser(Context context) {
+        super(context);
+    }
+
+    @Override
+    void parse(ChannelBuffer buffer, int start, int end, Timestamp now, List<Sample> samples) {
+        int keyStart = skipWhitespace(buffer, start, end);
+
+        // Blank line, or comment
+        if (keyStart == end || buffer.getByte(keyStart) == '#') {
+            return;
+        }
+
+        // Series key; The measurement, and its tags.
+        int keyEnd = scan(buffer, keyStart, end, (byte) ' ', (byte) ' ');
+        int measurementEnd = scan(buffer, keyStart, keyEnd, (byte) ',', (byte) ',');
+
+        checkArgument(keyEnd < end, "missing fields");
+        checkArgument(keyStart < measurementEnd, "missing measurement");
+
+        Series series = getSeriesCache().get(buffer, keyStart, keyEnd);
+
+        if (series == null) {
+            SortedMap<String, String> tags = tags();
+
+            for (int tagStart = measurementEnd + 1; tagStart < keyEnd;) {
+                int tagEnd = scan(buffer, tagStart, keyEnd, (byte) ',', (byte) ',');
+                int equals = scan(buffer, tagStart, tagEnd, (byte) '=', (byte) '=');
+
+                checkArgument(equals > tagStart && equals < tagEnd - 1, "invalid tag: %s", string(buffer, tagStart, tagEnd));
+                tags.put(unescaped(buffer, tagStart, equals), unescaped(buffer, equals + 1, tagEnd));
+
+                tagStart = tagEnd + 1;
+            }
+
+            series = getSeriesCache().put(buffer, keyStart, keyEnd, new Series(resource(unescaped(buffer, keyStart, measurementEnd), tags), null));
+        }
+
+        // Fields
+        List<String> names = Lists.newArrayList();
+        List<Double> values = Lists.newArrayList();
+        int fieldStart = keyEnd + 1, fieldEnd;
+
+        while (true) {
+            int equals = scan(buffer, fieldStart, end, (byte) '=', (byte) ' ');
+
+            checkArgument(equals > fieldStart && equals < end - 1 && buffer.getByte(equals) == '=', "invalid field: %s", string(buffer, fieldStart, end));
+
+            if (buffer.getByte(equals + 1) == '"') {
+                fieldEnd = closingQuote(buffer, equals + 2, end) + 1;
+            }
+            else {
+                fieldEnd = scan(buffer, equals + 1, end, (byte) ',', (byte) ' ');
+                names.add(fieldName(buffer, fieldStart, equals));
+                values.add(parseValue(buffer, equals + 1, fieldEnd));
+            }
+
+            if (fieldEnd < end && buffer.getByte(fieldEnd) == ',') {
+                fieldStart = fieldEnd + 1;
+                continue;
+            }
+
+            break;
+        }
+
+        int timestampStart = skipWhitespace(buffer, fieldEnd, end);
+        int timestampEnd = token(buffer, timestampStart, end);
+
+        checkArgument(skipWhitespace(buffer, timestampEnd, end) == end, "trailing content");
+
+        Timestamp timestamp = now;
+
+        if (timestampStart < timestampEnd) {
+            timestamp = Timestamp.fromEpochMillis(parseLong(buffer, timestampStart, timestampEnd) / NANOS_PER_MILLI);
+        }
+
+        for (int i = 0; i < names.size(); i++) {
+            samples.add(sample(timestamp, series.getResource(), names.get(i), values.get(i)));
+        }
+    }
+
+    private String fieldName(ChannelBuffer buffer, int start, int end) {
+        Series name = m_fields.get(buffer, start, end);
+
+        if (name == null) {
+            name = m_fields.put(buffer, start, end, new Series(null, SampleDictionary.metricName(unescaped(buffer, start, end))));
+        }
+
+        return name.getName();
+    }
+
+    private static double parseValue(ChannelBuffer buffer, int start, int end) {
+        checkArgument(start < end, "missing field value");
+
+        byte first = buffer.getByte(start), last = buffer.getByte(end - 1);
+
+        // Integer, or unsigned
+        if (last == 'i' || last == 'u') {
+            return parseLong(buffer, start, end - 1);
+        }
+
+        // Boolean
+        if (first == 't' || first == 'T' || first == 'f' || first == 'F') {
+            switch (string(buffer, start, end)) {
+                case "t":
+                case "T":
+                case "true":
+                case "True":
+                case "TRUE":
+                    return 1.0d;
+                case "f":
+                case "F":
+                case "false":
+                case "False":
+                case "FALSE":
+                    return 0.0d;
+                default:
+                    throw new IllegalArgumentException(String.format("invalid field value: %s", string(buffer, start, end)));
+            }
+        }
+
+        return parseDouble(buffer, start, end);
+    }
+
+    /** @return the index of the first unescaped {@code a} or {@code b}, (or {@code end}) */
+    private static int scan(ChannelBuffer buffer, int index, int end, byte a, byte b) {
+        for (; index < end; index++) {
+            byte c = buffer.getByte(index);
+
+            if (c == '\\') {
+                index++;
+            }
+            else if (c == a || c == b) {
+                return index;
+            }
+        }
+        return end;
+    }
+
+    /** @return the index of the (unescaped) quote closing a string that begins at {@code index} */
+    private static int closingQuote(ChannelBuffer buffer, int index, int end) {
+        for (; index < end; index++) {
+            byte c = buffer.getByte(index);
+
+            if (c == '\\') {
+                index++;
+            }
+            else if (c == '"') {
+                return index;
+            }
+        }
+        throw new IllegalArgumentException("unterminated string field");
+    }
+
+    /** @return the string, with escaped commas, equals signs, and spaces unescaped */
+    private static String unescaped(ChannelBuffer buffer, int start, int end) {
+        String value = string(buffer, start, end);
+
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+
+        StringBuilder builder = new StringBuilder(value.length());
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(i + 1);
+
+                if (next == ',' || next == '=' || next == ' ') {
+                    builder.append(next);
+                    i++;
+                    continue;
+                }
+            }
+
+            builder.append(c);
+        }
+
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.opennms.newts.api.IngestRing;
+import org.opennms.newts.api.IngestRing.WaitStrategy;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+public class IngestRingConfig {
+
+    @JsonProperty("enabled")
+    private boolean m_isEnabled = false;
+
+    @Min(value = 1)
+    @JsonProperty("bufferSize")
+    private int m_bufferSize = 1024;
+
+    @NotNull
+    @JsonProperty("waitStrategy")
+    private WaitStrategy m_waitStrategy = WaitStrategy.BLOCKING;
+
+    @Min(value = 1)
+    @JsonProperty("maxBatchSamples")
+    private int m_maxBatchSamples = 10000;
+
+    @Min(value = 0)
+    @JsonProperty("maxRetries")
+    private int m_maxRetries = IngestRing.DEFAULT_MAX_RETRIES;
+
+    public boolean isEnabled() {
+        return m_isEnabled;
+    }
+
+    public int getBufferSize() {
+        return m_bufferSize;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return m_waitStrategy;
+    }
+
+    public int getMaxBatchSamples() {
+        return m_maxBatchSamples;
+    }
+
+    public int getMaxRetries() {
+        return m_maxRetries;
+    }
+
+}
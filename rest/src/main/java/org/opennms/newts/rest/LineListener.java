@@ -0,0 +1,361 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.FixedReceiveBufferSizePredictorFactory;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.MemoryAwareThreadPoolExecutor;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+import org.jboss.netty.util.DefaultObjectSizeEstimator;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+/**
+ * Listens for samples in a line protocol (see {@link LineParser}), over TCP or UDP, and writes them
+ * to a {@link SampleSink}. Lines are parsed in place, from the buffers they were read into, and the
+ * samples of each read written as a batch, on a pool of writer threads (never on an I/O thread).
+ * The samples queued for writing are bounded, per connection and in total; Once either limit is
+ * reached, reads are suspended, so a slow sink throttles TCP senders, (UDP datagrams are dropped
+ * by the network stack instead). Samples of a TCP connection are written in the order received.
+ * Malformed lines, and those longer than the maximum, are skipped.
+ * <p>
+ * Metrics are prefixed <code>listeners.&lt;name&gt;</code>; These are <code>samples</code>
+ * (samples written), <code>errors</code> (malformed lines), and <code>failures</code> (samples
+ * that could not be written).
+ * </p>
+ */
+class LineListener implements Managed {
+
+    /** Largest datagram received; Datagrams are not reassembled, so lines must not span them. */
+    static final int MAX_DATAGRAM_BYTES = 65536;
+
+    /** Approximate size of a queued sample, for the purposes of bounding the write queues. */
+    static final int ESTIMATED_SAMPLE_BYTES = 256;
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private static final Logger LOG = LoggerFactory.getLogger(LineListener.class);
+
+    private final String m_name;
+    private final LineListenerConfig m_config;
+    private final LineParser m_parser;
+    private final SampleSink m_sink;
+    private final Meter m_samples;
+    private final Meter m_errors;
+    private final Meter m_failures;
+    private final ChannelGroup m_channels;
+
+    private ChannelFactory m_factory;
+    private ExecutorService m_writers;
+    private Channel m_channel;
+
+    LineListener(String name, LineListenerConfig config, SampleSink sink, MetricRegistry registry) {
+        m_name = checkNotNull(name, "name argument");
+        m_config = checkNotNull(config, "config argument");
+        m_parser = LineParser.create(config.getProtocol(), Transform.context(Optional.fromNullable(config.getContext())));
+        m_sink = checkNotNull(sink, "sink argument");
+
+        checkNotNull(registry, "registry argument");
+
+        m_samples = registry.meter(MetricRegistry.name("listeners", name, "samples"));
+        m_errors = registry.meter(MetricRegistry.name("listeners", name, "errors"));
+        m_failures = registry.meter(MetricRegistry.name("listeners", name, "failures"));
+        m_channels = new DefaultChannelGroup("listener-" + name);
+    }
+
+    @Override
+    public void start() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool(threads("listener-" + m_name + "-io-%d"));
+        InetSocketAddress address = new InetSocketAddress(m_config.getHost(), m_config.getPort());
+
+        switch (m_config.getTransport()) {
+            case TCP:
+                ServerBootstrap server = new ServerBootstrap(m_factory = new NioServerSocketChannelFactory(executor, executor));
+                final Writer writer = new Writer();
+
+                // Ordered, so that the samples of a connection are written in sequence.
+                m_writers = new OrderedMemoryAwareThreadPoolExecutor(
+                        m_config.getThreads(),
+                        m_config.getMaxChannelQueueBytes(),
+                        m_config.getMaxQueueBytes(),
+                        60,
+                        TimeUnit.SECONDS,
+                        new SampleSizeEstimator(),
+                        threads("listener-" + m_name + "-writer-%d"));
+
+                final ExecutionHandler writers = new ExecutionHandler(m_writers);
+
+                server.setPipelineFactory(new ChannelPipelineFactory() {
+
+                    @Override
+                    public ChannelPipeline getPipeline() {
+                        return Channels.pipeline(new LineDecoder(), writers, writer);
+                    }
+                });
+                server.setOption("child.keepAlive", true);
+
+                m_channel = server.bind(address);
+                break;
+
+            case UDP:
+                ConnectionlessBootstrap datagrams = new ConnectionlessBootstrap(m_factory = new NioDatagramChannelFactory(executor));
+
+                // Unordered; There is only the one channel, and datagrams are unordered anyway.
+                m_writers = new MemoryAwareThreadPoolExecutor(
+                        m_config.getThreads(),
+                        m_config.getMaxChannelQueueBytes(),
+                        m_config.getMaxQueueBytes(),
+                        60,
+                        TimeUnit.SECONDS,
+                        new SampleSizeEstimator(),
+                        threads("listener-" + m_name + "-writer-%d"));
+
+                datagrams.setPipeline(Channels.pipeline(new ExecutionHandler(m_writers), new DatagramHandler()));
+                datagrams.setOption("receiveBufferSizePredictorFactory", new FixedReceiveBufferSizePredictorFactory(MAX_DATAGRAM_BYTES));
+
+                m_channel = datagrams.bind(address);
+                break;
+
+            default:
+                throw new IllegalArgumentException(String.format("unsupported transport: %s", m_config.getTransport()));
+        }
+
+        m_channels.add(m_channel);
+
+        LOG.info("Listening for {} over {} on {}", m_config.getProtocol(), m_config.getTransport(), m_channel.getLocalAddress());
+    }
+
+    @Override
+    public void stop() throws Exception {
+        // The bound channel, and any accepted connections.
+        m_channels.close().awaitUninterruptibly();
+
+        if (m_factory != null) {
+            m_factory.releaseExternalResources();
+        }
+
+        // Samples already queued are written.
+        if (m_writers != null) {
+            m_writers.shutdown();
+
+            if (!m_writers.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("{}: abandoning samples not written within {} seconds of stopping", m_name, SHUTDOWN_TIMEOUT_SECONDS);
+                m_writers.shutdownNow();
+            }
+        }
+    }
+
+    private static ThreadFactory threads(String nameFormat) {
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+    }
+
+    /** @return the address listened on, (once started) */
+    InetSocketAddress getAddress() {
+        return (InetSocketAddress) m_channel.getLocalAddress();
+    }
+
+    private void parse(ChannelBuffer buffer, int start, int end, Timestamp now, List<Sample> samples) {
+        try {
+            m_parser.parse(buffer, start, end, now, samples);
+        }
+        catch (IllegalArgumentException e) {
+            m_errors.mark();
+            LOG.debug("{}: skipping malformed line: {}", m_name, e.getMessage());
+        }
+    }
+
+    private void write(List<Sample> samples) {
+        try {
+            m_sink.insert(samples);
+            m_samples.mark(samples.size());
+        }
+        catch (RuntimeException e) {
+            m_failures.mark(samples.size());
+            LOG.warn("{}: unable to write {} samples: {}", m_name, samples.size(), e.toString());
+        }
+    }
+
+    private void tooLong() {
+        m_errors.mark();
+        LOG.debug("{}: skipping line longer than {} bytes", m_name, m_config.getMaxLineLength());
+    }
+
+    /**
+     * Parses the complete lines of a TCP stream, skipping any longer than the maximum. Yields the
+     * samples of each read, if any.
+     */
+    private class LineDecoder extends FrameDecoder {
+
+        private boolean m_discarding = false;
+
+        @Override
+        public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+            m_channels.add(e.getChannel());
+            super.channelOpen(ctx, e);
+        }
+
+        @Override
+        protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) {
+            List<Sample> samples = Lists.newArrayList();
+            Timestamp now = Timestamp.now();
+            int eol;
+
+            while ((eol = buffer.indexOf(buffer.readerIndex(), buffer.writerIndex(), (byte) '\n')) >= 0) {
+                if (m_discarding) {
+                    m_discarding = false;
+                }
+                else if (eol - buffer.readerIndex() > m_config.getMaxLineLength()) {
+                    tooLong();
+                }
+                else {
+                    parse(buffer, buffer.readerIndex(), eol, now, samples);
+                }
+                buffer.readerIndex(eol + 1);
+            }
+
+            // The remainder is a partial line; Discard it (and the rest of the line) if too long.
+            if (buffer.readableBytes() > m_config.getMaxLineLength()) {
+                if (!m_discarding) {
+                    tooLong();
+                }
+                m_discarding = true;
+                buffer.skipBytes(buffer.readableBytes());
+            }
+
+            return samples.isEmpty() ? null : samples;
+        }
+
+        @Override
+        protected Object decodeLast(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) {
+            List<Sample> samples = Lists.newArrayList();
+
+            // The final line of the stream need not be terminated.
+            if (buffer.readable() && !m_discarding) {
+                parse(buffer, buffer.readerIndex(), buffer.writerIndex(), Timestamp.now(), samples);
+            }
+            buffer.skipBytes(buffer.readableBytes());
+
+            return samples.isEmpty() ? null : samples;
+        }
+
+    }
+
+    @Sharable
+    private class Writer extends SimpleChannelUpstreamHandler {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            write((List<Sample>) e.getMessage());
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            LOG.debug("{}: closing connection from {}: {}", m_name, e.getChannel().getRemoteAddress(), e.getCause().toString());
+            e.getChannel().close();
+        }
+
+    }
+
+    /** Estimates queued batches of samples, (and datagrams), by size. */
+    private static class SampleSizeEstimator extends DefaultObjectSizeEstimator {
+
+        @Override
+        public int estimateSize(Object o) {
+            // The default recurses here for the messages of events.
+            if (o instanceof List) {
+                return ((List<?>) o).size() * ESTIMATED_SAMPLE_BYTES;
+            }
+            return super.estimateSize(o);
+        }
+
+    }
+
+    /** Parses each datagram in its entirety; Lines do not span datagrams. */
+    private class DatagramHandler extends SimpleChannelUpstreamHandler {
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
+            List<Sample> samples = Lists.newArrayList();
+            Timestamp now = Timestamp.now();
+
+            for (int start = buffer.readerIndex(), end = buffer.writerIndex(); start < end;) {
+                int eol = LineParser.indexOf(buffer, start, end, (byte) '\n');
+
+                if (eol - start > m_config.getMaxLineLength()) {
+                    tooLong();
+                }
+                else {
+                    parse(buffer, start, eol, now, samples);
+                }
+
+                start = eol + 1;
+            }
+
+            if (!samples.isEmpty()) {
+                write(samples);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            LOG.warn("{}: {}", m_name, e.getCause().toString());
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/**
+ * A line protocol listener; See {@link LineListener}.
+ */
+public class LineListenerConfig {
+
+    public static enum Transport {
+        TCP, UDP;
+    }
+
+    @NotNull
+    @JsonProperty("protocol")
+    private LineParser.Protocol m_protocol;
+
+    @NotNull
+    @JsonProperty("transport")
+    private Transport m_transport = Transport.TCP;
+
+    @NotNull
+    @JsonProperty("host")
+    private String m_host = "0.0.0.0";
+
+    @Min(value = 1)
+    @Max(value = 65535)
+    @JsonProperty("port")
+    private int m_port;
+
+    @JsonProperty("context")
+    private String m_context;
+
+    @Min(value = 1)
+    @JsonProperty("maxLineLength")
+    private int m_maxLineLength = 65536;
+
+    @Min(value = 1)
+    @JsonProperty("threads")
+    private int m_threads = 4;
+
+    @Min(value = 1)
+    @JsonProperty("maxChannelQueueBytes")
+    private long m_maxChannelQueueBytes = 4 * 1024 * 1024;
+
+    @Min(value = 1)
+    @JsonProperty("maxQueueBytes")
+    private long m_maxQueueBytes = 64 * 1024 * 1024;
+
+    public LineListenerConfig() {
+    }
+
+    LineListenerConfig(LineParser.Protocol protocol, Transport transport, String host, int port, String context, int maxLineLength) {
+        m_protocol = protocol;
+        m_transport = transport;
+        m_host = host;
+        m_port = port;
+        m_context = context;
+        m_maxLineLength = maxLineLength;
+    }
+
+    LineParser.Protocol getProtocol() {
+        return m_protocol;
+    }
+
+    public Transport getTransport() {
+        return m_transport;
+    }
+
+    public String getHost() {
+        return m_host;
+    }
+
+    public int getPort() {
+        return m_port;
+    }
+
+    /** @return the context samples are written to, (null for the default) */
+    public String getContext() {
+        return m_context;
+    }
+
+    /** @return the length of the longest line accepted, in bytes */
+    public int getMaxLineLength() {
+        return m_maxLineLength;
+    }
+
+    /** @return the number of threads samples are written on */
+    public int getThreads() {
+        return m_threads;
+    }
+
+    /** @return the (approximate) size of samples queued for writing, per connection, before reads are suspended */
+    public long getMaxChannelQueueBytes() {
+        return m_maxChannelQueueBytes;
+    }
+
+    /** @return the (approximate) size of samples queued for writing, in total, before reads are suspended */
+    public long getMaxQueueBytes() {
+        return m_maxQueueBytes;
+    }
+
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.util.CharsetUtil;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Gauge;
+import org.opennms.newts.api.MetricType;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.SampleDictionary;
+import org.opennms.newts.api.Timestamp;
+
+import com.google.common.collect.Maps;
+
+
+/**
+ * Parses samples from a line-oriented text protocol. Lines are parsed in place, from the buffer
+ * they were read into. The resources and metric names of recently seen series are cached (by the
+ * bytes that identify them), and are otherwise interned in the {@link SampleDictionary}; So a
+ * line of a series seen before allocates little more than its sample.
+ * <p>
+ * Series are mapped to samples alike, regardless of protocol: The metric path, less its last
+ * (dot-separated) segment, together with any tags (sorted by key), identifies the resource, and the
+ * last segment names the metric. Tags are also made attributes of the resource. For example, the
+ * Graphite path <code>servers.web1.cpu.user</code> is the metric <code>user</code> of resource
+ * <code>servers.web1.cpu</code>, and the OpenTSDB metric <code>sys.cpu.user</code>, tagged
+ * <code>host=web1</code>, is the metric <code>user</code> of resource
+ * <code>sys.cpu,host=web1</code>. (Influx measurements, and their tags, identify resources in
+ * their entirety; Fields name the metrics.) Commas, equals signs, and backslashes in the path and
+ * tags are escaped with a backslash, so that distinct series cannot share an ID. All values are
+ * gauges.
+ * </p>
+ */
+abstract class LineParser {
+
+    static enum Protocol {
+        GRAPHITE, OPENTSDB, INFLUX;
+    }
+
+    /** Name of metrics with single-segment paths. */
+    static final String DEFAULT_METRIC = "value";
+
+    /** Number of series cached, per parser. */
+    static final int CACHED_SERIES = 1 << 12;
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final Context m_context;
+    private final SeriesCache m_series = new SeriesCache(CACHED_SERIES);
+
+    LineParser(Context context) {
+        m_context = checkNotNull(context, "context argument");
+    }
+
+    static LineParser create(Protocol protocol, Context context) {
+        switch (checkNotNull(protocol, "protocol argument")) {
+            case GRAPHITE:
+                return new GraphiteLineParser(context);
+            case OPENTSDB:
+                return new OpenTsdbLineParser(context);
+            case INFLUX:
+                return new InfluxLineParser(context);
+            default:
+                throw new IllegalArgumentException(String.format("unsupported protocol: %s", protocol));
+        }
+    }
+
+    /**
+     * Parses a line, adding its samples (if any); A malformed line adds none.
+     *
+     * @param buffer
+     *            the buffer holding the line
+     * @param start
+     *            index of the first byte of the line
+     * @param end
+     *            index following the last byte of the line (excluding the newline)
+     * @param now
+     *            timestamp of samples that do not have one
+     * @param samples
+     *            samples parsed
+     * @throws IllegalArgumentException
+     *             if the line is malformed
+     */
+    abstract void parse(ChannelBuffer buffer, int start, int end, Timestamp now, List<Sample> samples);
+
+    Context getContext() {
+        return m_context;
+    }
+
+    SeriesCache getSeriesCache() {
+        return m_series;
+    }
+
+    /** @return the series of a path (and tags) in the dotted form common to Graphite and OpenTSDB */
+    static Series pathSeries(String path, SortedMap<String, String> tags) {
+        int dot = path.lastIndexOf('.');
+
+        checkArgument(!path.isEmpty(), "missing metric path");
+        checkArgument(dot < path.length() - 1, "metric path must not end in a dot: %s", path);
+
+        if (dot <= 0) {
+            return new Series(resource(path, tags), DEFAULT_METRIC);
+        }
+
+        return new Series(resource(path.substring(0, dot), tags), SampleDictionary.metricName(path.substring(dot + 1)));
+    }
+
+    Sample sample(Timestamp timestamp, Series series, double value) {
+        return sample(timestamp, series.getResource(), series.getName(), value);
+    }
+
+    Sample sample(Timestamp timestamp, Resource resource, String name, double value) {
+        return new Sample(timestamp, m_context, resource, name, MetricType.GAUGE, new Gauge(value));
+    }
+
+    /** @return the (interned) resource of an ID, and tags */
+    static Resource resource(String id, SortedMap<String, String> tags) {
+        StringBuilder builder = escape(new StringBuilder(id.length()), id);
+
+        if (tags.isEmpty()) {
+            return SampleDictionary.resource(builder.toString());
+        }
+
+        Map<String, String> attributes = Maps.newLinkedHashMap();
+
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            escape(escape(builder.append(','), tag.getKey()).append('='), tag.getValue());
+            attributes.put(tag.getKey(), tag.getValue());
+        }
+
+        return SampleDictionary.resource(builder.toString(), attributes);
+    }
+
+    /** @return {@code builder}, with {@code value} appended, (commas, equals signs, and backslashes escaped) */
+    static StringBuilder escape(StringBuilder builder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == ',' || c == '=' || c == '\\') {
+                builder.append('\\');
+            }
+
+            builder.append(c);
+        }
+
+        return builder;
+    }
+
+    /** @return a tag map to be populated */
+    static SortedMap<String, String> tags() {
+        return Maps.newTreeMap();
+    }
+
+    /** The resource, and (or) metric name, of a series. */
+    static class Series {
+
+        private final Resource m_resource;
+        private final String m_name;
+
+        Series(Resource resource, String name) {
+            m_resource = resource;
+            m_name = name;
+        }
+
+        Resource getResource() {
+            return m_resource;
+        }
+
+        String getName() {
+            return m_name;
+        }
+
+    }
+
+    /**
+     * A bounded cache of {@link Series}, keyed by the bytes of a line that identify them (in one or
+     * two ranges), and looked up in place; When two keys map to the same slot, the most recent
+     * wins. Safe for concurrent use.
+     */
+    static class SeriesCache {
+
+        private static class Entry {
+
+            private final byte[] m_key;
+            private final int m_split;
+            private final Series m_series;
+
+            private Entry(byte[] key, int split, Series series) {
+                m_key = key;
+                m_split = split;
+                m_series = series;
+            }
+
+        }
+
+        private final AtomicReferenceArray<Entry> m_table;
+        private final int m_mask;
+
+        SeriesCache(int size) {
+            checkArgument(Integer.bitCount(size) == 1, "size must be a power of two");
+            m_table = new AtomicReferenceArray<>(size);
+            m_mask = size - 1;
+        }
+
+        /** @return the series keyed by the bytes of {@code [start, end)}, or null */
+        Series get(ChannelBuffer buffer, int start, int end) {
+            return get(buffer, start, end, end, end);
+        }
+
+        /** @return the series keyed by the bytes of {@code [start1, end1)} and {@code [start2, end2)}, or null */
+        Series get(ChannelBuffer buffer, int start1, int end1, int start2, int end2) {
+            Entry entry = m_table.get(slot(buffer, start1, end1, start2, end2));
+
+            if (entry == null || entry.m_split != end1 - start1 || entry.m_key.length != (end1 - start1) + (end2 - start2)) {
+                return null;
+            }
+
+            for (int i = 0; i < entry.m_key.length; i++) {
+                int index = (i < entry.m_split) ? start1 + i : start2 + (i - entry.m_split);
+
+                if (entry.m_key[i] != buffer.getByte(index)) {
+                    return null;
+                }
+            }
+
+            return entry.m_series;
+        }
+
+        /** @return {@code series}, cached by the bytes of {@code [start, end)} */
+        Series put(ChannelBuffer buffer, int start, int end, Series series) {
+            return put(buffer, start, end, end, end, series);
+        }
+
+        /** @return {@code series}, cached by the bytes of {@code [start1, end1)} and {@code [start2, end2)} */
+        Series put(ChannelBuffer buffer, int start1, int end1, int start2, int end2, Series series) {
+            byte[] key = new byte[(end1 - start1) + (end2 - start2)];
+
+            buffer.getBytes(start1, key, 0, end1 - start1);
+            buffer.getBytes(start2, key, end1 - start1, end2 - start2);
+
+            m_table.set(slot(buffer, start1, end1, start2, end2), new Entry(key, end1 - start1, series));
+
+            return series;
+        }
+
+        private int slot(ChannelBuffer buffer, int start1, int end1, int start2, int end2) {
+            int hash = 1;
+
+            for (int i = start1; i < end1; i++) {
+                hash = (31 * hash) + buffer.getByte(i);
+            }
+            for (int i = start2; i < end2; i++) {
+                hash = (31 * hash) + buffer.getByte(i);
+            }
+
+            // Spread the hash bits (as java.util.HashMap does), since only the low bits select a slot.
+            hash ^= (hash >>> 20) ^ (hash >>> 12);
+            return (hash ^ (hash >>> 7) ^ (hash >>> 4)) & m_mask;
+        }
+
+    }
+
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /** @return the index of the first non-whitespace byte at or after {@code index}, (or {@code end}) */
+    static int skipWhitespace(ChannelBuffer buffer, int index, int end) {
+        while (index < end && isWhitespace(buffer.getByte(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    /** @return the index of the first whitespace byte at or after {@code index}, (or {@code end}) */
+    static int token(ChannelBuffer buffer, int index, int end) {
+        while (index < end && !isWhitespace(buffer.getByte(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    /** @return the index of the first {@code value} at or after {@code index}, (or {@code end}) */
+    static int indexOf(ChannelBuffer buffer, int index, int end, byte value) {
+        int found = buffer.indexOf(index, end, value);
+        return (found < 0) ? end : found;
+    }
+
+    static boolean equals(ChannelBuffer buffer, int start, int end, String ascii) {
+        if (end - start != ascii.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < ascii.length(); i++) {
+            if (buffer.getByte(start + i) != ascii.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static String string(ChannelBuffer buffer, int start, int end) {
+        return buffer.toString(start, end - start, CharsetUtil.UTF_8);
+    }
+
+    /**
+     * Parses a decimal integer.
+     *
+     * @throws IllegalArgumentException
+     *             if the number is malformed, or out of range
+     */
+    static long parseLong(ChannelBuffer buffer, int start, int end) {
+        int index = start;
+        boolean negative = false;
+
+        if (index < end && buffer.getByte(index) == '-') {
+            negative = true;
+            index++;
+        }
+
+        checkArgument(index < end, "not a number: %s", string(buffer, start, end));
+
+        long value = 0;
+
+        for (; index < end; index++) {
+            int digit = buffer.getByte(index) - '0';
+            checkArgument(digit >= 0 && digit <= 9, "not a number: %s", string(buffer, start, end));
+            checkArgument(value <= (Long.MAX_VALUE - digit) / 10, "number out of range: %s", string(buffer, start, end));
+            value = (value * 10) + digit;
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a floating point number. Plain decimals that can be converted exactly (those of up to
+     * 15 significant digits, or so) are parsed in place; Others (in exponent notation, for
+     * example) are handed to {@link Double#parseDouble(String)}.
+     *
+     * @throws IllegalArgumentException
+     *             if the number is malformed
+     */
+    static double parseDouble(ChannelBuffer buffer, int start, int end) {
+        int index = start;
+        boolean negative = false;
+
+        if (index < end && (buffer.getByte(index) == '-' || buffer.getByte(index) == '+')) {
+            negative = buffer.getByte(index) == '-';
+            index++;
+        }
+
+        long mantissa = 0;
+        int scale = 0, digits = 0;
+        boolean point = false;
+
+        for (; index < end; index++) {
+            byte b = buffer.getByte(index);
+
+            if (b >= '0' && b <= '9') {
+                if (mantissa >= MAX_EXACT_MANTISSA / 10) {
+                    return slowParseDouble(buffer, start, end);
+                }
+                mantissa = (mantissa * 10) + (b - '0');
+                digits++;
+                if (point) {
+                    scale++;
+                }
+            }
+            else if (b == '.' && !point) {
+                point = true;
+            }
+            else {
+                return slowParseDouble(buffer, start, end);
+            }
+        }
+
+        if (digits == 0 || scale >= POWERS_OF_TEN.length) {
+            return slowParseDouble(buffer, start, end);
+        }
+
+        // Both operands are exact, so the quotient is correctly rounded.
+        double value = (scale == 0) ? mantissa : mantissa / POWERS_OF_TEN[scale];
+
+        return negative ? -value : value;
+    }
+
+    private static double slowParseDouble(ChannelBuffer buffer, int start, int end) {
+        String value = string(buffer, start, end);
+
+        try {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("not a number: %s", value));
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.opennms.newts.api.Measurement;
+import org.opennms.newts.api.Results;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+
+/**
+ * {@link Results} of measurements, for serialization directly to JSON (without intermediate DTOs).
+ */
+@JsonSerialize(using = MeasurementResultsSerializer.class)
+public class MeasurementResults {
+
+    /** The shape of serialized results. */
+    public static enum Format {
+        /**
+         * An array of rows, each an array of measurement objects, (the same shape as that of
+         * {@link MeasurementDTO}s).
+         */
+        ROWS,
+        /** An object of timestamps, and an array of values for each label. */
+        COLUMNS;
+    }
+
+    private final Results<Measurement> m_results;
+    private final Format m_format;
+
+    public MeasurementResults(Results<Measurement> results, Format format) {
+        m_results = checkNotNull(results, "results argument");
+        m_format = checkNotNull(format, "format argument");
+    }
+
+    public Results<Measurement> getResults() {
+        return m_results;
+    }
+
+    public Format getFormat() {
+        return m_format;
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import org.opennms.newts.api.Measurement;
+import org.opennms.newts.api.Results;
+import org.opennms.newts.api.Results.Row;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.google.common.collect.Sets;
+
+
+/**
+ * Writes {@link MeasurementResults} straight from the underlying {@link Results}.
+ * <p>
+ * The columnar format looks like:
+ * </p>
+ *
+ * <pre>
+ * {
+ *   "timestamps": [900000000000, 900000300000],
+ *   "columns": {
+ *     "ifInOctets": [5000.0, 6000.0],
+ *     "ifOutOctets": [6000.0, null]
+ *   }
+ * }
+ * </pre>
+ * <p>
+ * Where a row has no measurement for a label, its value is {@code null}.
+ * </p>
+ */
+public class MeasurementResultsSerializer extends JsonSerializer<MeasurementResults> {
+
+    @Override
+    public void serialize(MeasurementResults value, JsonGenerator jgen, SerializerProvider provider) throws IOException, JsonProcessingException {
+        switch (value.getFormat()) {
+            case ROWS:
+                writeRows(value.getResults(), jgen);
+                break;
+            case COLUMNS:
+                writeColumns(value.getResults(), jgen);
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown format: %s", value.getFormat()));
+        }
+    }
+
+    private static void writeRows(Results<Measurement> results, JsonGenerator jgen) throws IOException {
+        jgen.writeStartArray();
+
+        for (Row<Measurement> row : results) {
+            writeRow(row, jgen);
+        }
+
+        jgen.writeEndArray();
+    }
+
+    /** Write a row in the same shape as a collection of {@link MeasurementDTO}s. */
+    static void writeRow(Row<Measurement> row, JsonGenerator jgen) throws IOException {
+        jgen.writeStartArray();
+
+        for (Measurement measurement : row) {
+            jgen.writeStartObject();
+            jgen.writeStringField("name", measurement.getName());
+            jgen.writeNumberField("timestamp", measurement.getTimestamp().asMillis());
+            jgen.writeNumberField("value", measurement.getValue());
+
+            Map<String, String> attributes = measurement.getAttributes();
+
+            if (attributes != null && !attributes.isEmpty()) {
+                jgen.writeObjectFieldStart("attributes");
+                for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                    jgen.writeStringField(entry.getKey(), entry.getValue());
+                }
+                jgen.writeEndObject();
+            }
+
+            jgen.writeEndObject();
+        }
+
+        jgen.writeEndArray();
+    }
+
+    private static void writeColumns(Results<Measurement> results, JsonGenerator jgen) throws IOException {
+        Set<String> labels = Sets.newLinkedHashSet();
+
+        jgen.writeStartObject();
+        jgen.writeArrayFieldStart("timestamps");
+
+        for (Row<Measurement> row : results) {
+            jgen.writeNumber(row.getTimestamp().asMillis());
+
+            for (Measurement measurement : row) {
+                labels.add(measurement.getName());
+            }
+        }
+
+        jgen.writeEndArray();
+        jgen.writeObjectFieldStart("columns");
+
+        for (String label : labels) {
+            jgen.writeArrayFieldStart(label);
+
+            for (Row<Measurement> row : results) {
+                Measurement measurement = row.getElement(label);
+
+                if (measurement != null) {
+                    jgen.writeNumber(measurement.getValue());
+                }
+                else {
+                    jgen.writeNull();
+                }
+            }
+
+            jgen.writeEndArray();
+        }
+
+        jgen.writeEndObject();
+        jgen.writeEndObject();
+    }
+
+}
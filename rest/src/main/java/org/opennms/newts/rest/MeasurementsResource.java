@@ -18,22 +18,32 @@ package org.opennms.newts.rest;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
+import org.opennms.newts.aggregate.IncrementalResultProcessor;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Deadline;
+import org.opennms.newts.api.Duration;
 import org.opennms.newts.api.Resource;
 import org.opennms.newts.api.SampleRepository;
 import org.opennms.newts.api.Timestamp;
+import org.opennms.newts.api.query.Downsampling;
 import org.opennms.newts.api.query.ResultDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,24 +57,50 @@ import com.google.common.base.Optional;
 public class MeasurementsResource {
 
     private static final Logger LOG = LoggerFactory.getLogger(MeasurementsResource.class);
+    private static final Duration MIN_POLL_INTERVAL = Duration.seconds(1);
 
     private final SampleRepository m_repository;
-    private final Map<String, ResultDescriptorDTO> m_reports;
+    private final ResultDescriptors m_descriptors;
+    private final ContextQuotas m_quotas;
+    private final ConditionalRequests m_conditional;
+    private final AdmissionControl m_admission;
+    private final QueryTimeouts m_timeouts;
+    private final Semaphore m_streams;
+    private final long m_maxStreamMillis;
 
     public MeasurementsResource(SampleRepository repository, Map<String, ResultDescriptorDTO> reports) {
+        this(repository, new ResultDescriptors(reports, ResultDescriptors.DEFAULT_CACHE_SIZE), ContextQuotas.unlimited(), ConditionalRequests.disabled(), AdmissionControl.unlimited(), QueryTimeouts.none(), new StreamsConfig());
+    }
+
+    MeasurementsResource(SampleRepository repository, ResultDescriptors descriptors, ContextQuotas quotas, ConditionalRequests conditional, AdmissionControl admission, QueryTimeouts timeouts, StreamsConfig streams) {
         m_repository = checkNotNull(repository, "repository argument");
-        m_reports = checkNotNull(reports, "reports argument");
+        m_descriptors = checkNotNull(descriptors, "descriptors argument");
+        m_quotas = checkNotNull(quotas, "quotas argument");
+        m_conditional = checkNotNull(conditional, "conditional argument");
+        m_admission = checkNotNull(admission, "admission argument");
+        m_timeouts = checkNotNull(timeouts, "timeouts argument");
+
+        checkNotNull(streams, "streams argument");
+
+        m_streams = new Semaphore(streams.getMaxStreams());
+        m_maxStreamMillis = TimeUnit.SECONDS.toMillis(streams.getMaxDurationSeconds());
     }
 
     @POST
     @Path("/{resource}")
+    @Produces({ MediaType.APPLICATION_JSON, BinaryMeasurementsWriter.MEDIA_TYPE })
     @Timed
-    public Collection<Collection<MeasurementDTO>> getMeasurements(
+    public MeasurementResults getMeasurements(
             ResultDescriptorDTO descriptorDTO,
             @PathParam("resource") Resource resource,
             @QueryParam("start") Optional<String> start,
             @QueryParam("end") Optional<String> end,
-            @QueryParam("resolution") Optional<String> resolutionParam) {
+            @QueryParam("resolution") Optional<String> resolutionParam,
+            @QueryParam("maxPoints") Optional<String> maxPointsParam,
+            @QueryParam("downsample") Optional<String> downsampleParam,
+            @QueryParam("context") Optional<String> contextParam,
+            @QueryParam("format") Optional<String> formatParam,
+            @QueryParam("timeout") Optional<String> timeoutParam) {
 
         /*
          * XXX: This resource method should accept a DurationParam instance for the resolution query
@@ -79,6 +115,21 @@ public class MeasurementsResource {
          * ETOOMUCHMAGIC
          *
          */
+        return select(m_descriptors.get(descriptorDTO), resource, start, end, resolutionParam, maxPointsParam, downsampleParam, contextParam, formatParam, timeoutParam);
+    }
+
+    private MeasurementResults select(
+            ResultDescriptor rDescriptor,
+            Resource resource,
+            Optional<String> start,
+            Optional<String> end,
+            Optional<String> resolutionParam,
+            Optional<String> maxPointsParam,
+            Optional<String> downsampleParam,
+            Optional<String> contextParam,
+            Optional<String> formatParam,
+            Optional<String> timeoutParam) {
+
         Optional<Timestamp> lower = Transform.timestampFromString(start);
         Optional<Timestamp> upper = Transform.timestampFromString(end);
 
@@ -90,38 +141,180 @@ public class MeasurementsResource {
         }
 
         DurationParam resolution = new DurationParam(resolutionParam.get());
+        Context context = Transform.context(contextParam);
 
         LOG.debug(
-                "Retrieving measurements for resource {}, from {} to {} w/ resolution {} and w/ report {}",
+                "Retrieving measurements for resource {} of {}, from {} to {} w/ resolution {} and w/ report {}",
                 resource,
+                context,
                 lower,
                 upper,
                 resolution.get(),
-                descriptorDTO);
+                rDescriptor);
 
-        ResultDescriptor rDescriptor = Transform.resultDescriptor(descriptorDTO);
+        Optional<Downsampling> downsampling = getDownsampling(maxPointsParam, downsampleParam);
+        MeasurementResults.Format format = getFormat(formatParam);
+        Deadline deadline = m_timeouts.deadline(timeoutParam);
+        long cost = m_admission.cost(lower, upper, rDescriptor.getInterval(), rDescriptor.getSourceNames().size());
 
-        return Transform.measurementDTOs(m_repository.select(resource, lower, upper, rDescriptor, resolution.get()));
+        try (ContextQuotas.Admission admission = m_quotas.admitQuery(context);
+                AdmissionControl.Permit permit = m_admission.admit(cost)) {
+            return new MeasurementResults(m_repository.select(context, resource, lower, upper, rDescriptor, resolution.get(), downsampling, deadline), format);
+        }
     }
 
     @GET
     @Path("/{report}/{resource}")
+    @Produces({ MediaType.APPLICATION_JSON, BinaryMeasurementsWriter.MEDIA_TYPE })
     @Timed
-    public Collection<Collection<MeasurementDTO>> getMeasurements(
+    public Response getMeasurements(
             @PathParam("report") String report,
             @PathParam("resource") Resource resource,
             @QueryParam("start") Optional<String> start,
             @QueryParam("end") Optional<String> end,
-            @QueryParam("resolution") Optional<String> resolutionParam) {
+            @QueryParam("resolution") Optional<String> resolutionParam,
+            @QueryParam("maxPoints") Optional<String> maxPointsParam,
+            @QueryParam("downsample") Optional<String> downsampleParam,
+            @QueryParam("context") Optional<String> contextParam,
+            @QueryParam("format") Optional<String> formatParam,
+            @QueryParam("timeout") Optional<String> timeoutParam,
+            @HeaderParam(HttpHeaders.ACCEPT) String accept,
+            @javax.ws.rs.core.Context Request request) {
 
-        ResultDescriptorDTO descriptorDTO = m_reports.get(report);
+        ResultDescriptor rDescriptor = m_descriptors.getReport(report);
 
         // Report not found; 404
-        if (descriptorDTO == null) {
-            return null;
+        if (rDescriptor == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        // Answer unchanged windows without querying
+        ConditionalRequests.Validators validators = m_conditional.validators(
+                Transform.context(contextParam),
+                resource,
+                Transform.timestampFromString(start),
+                Transform.timestampFromString(end),
+                report,
+                resolutionParam.orNull(),
+                maxPointsParam.orNull(),
+                downsampleParam.orNull(),
+                formatParam.orNull(),
+                accept);
+        ResponseBuilder notModified = validators.evaluate(request);
+
+        if (notModified != null) {
+            return notModified.build();
+        }
+
+        return validators.ok(select(rDescriptor, resource, start, end, resolutionParam, maxPointsParam, downsampleParam, contextParam, formatParam, timeoutParam));
+    }
+
+    @GET
+    @Path("/{report}/{resource}/stream")
+    @Produces(MeasurementsStream.MEDIA_TYPE)
+    public Response streamMeasurements(
+            @PathParam("report") String report,
+            @PathParam("resource") Resource resource,
+            @QueryParam("start") Optional<String> start,
+            @QueryParam("resolution") Optional<String> resolutionParam,
+            @QueryParam("poll") Optional<String> pollParam,
+            @QueryParam("context") Optional<String> contextParam) {
+
+        ResultDescriptor rDescriptor = m_descriptors.getReport(report);
+
+        // Report not found; 404
+        if (rDescriptor == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        if (!resolutionParam.isPresent()) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("the 'resolution' query argument is mandatory")
+                            .build());
+        }
+
+        // Live-tail from now, unless told otherwise.
+        Timestamp lower = Transform.timestampFromString(start).or(Timestamp.now());
+        Duration resolution = new DurationParam(resolutionParam.get()).get();
+
+        // Poll once per interval by default.
+        Duration poll = pollParam.isPresent() ? new DurationParam(pollParam.get()).get() : rDescriptor.getInterval();
+
+        if (poll.lt(MIN_POLL_INTERVAL)) {
+            poll = MIN_POLL_INTERVAL;
+        }
+
+        LOG.debug("Streaming measurements for resource {}, from {} w/ resolution {}, report {}, and poll interval {}", resource, lower, resolution, report, poll);
+
+        IncrementalResultProcessor processor = new IncrementalResultProcessor(resource, lower, rDescriptor, resolution);
+
+        // Each stream holds a request thread; Shed those over the limit. The slot itself is taken
+        // by the stream once it is written, (a HEAD request, for example, never writes it).
+        if (m_streams.availablePermits() == 0) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                            .header(AdmissionControl.RETRY_AFTER, poll.asSeconds())
+                            .type(MediaType.TEXT_PLAIN)
+                            .entity("too many measurement streams")
+                            .build());
         }
 
-        return getMeasurements(descriptorDTO, resource, start, end, resolutionParam);
+        MeasurementsStream stream = new MeasurementsStream(
+                m_repository,
+                Transform.context(contextParam),
+                resource,
+                processor,
+                poll,
+                m_quotas,
+                m_admission,
+                m_timeouts,
+                m_maxStreamMillis,
+                m_streams);
+
+        return Response.ok(stream).header("Cache-Control", "no-cache").build();
+    }
+
+    /**
+     * Returns the requested {@link Downsampling} (if any). The method defaults to LTTB, and is
+     * ignored if no maximum point count was supplied.
+     */
+    private static Optional<Downsampling> getDownsampling(Optional<String> maxPointsParam, Optional<String> downsampleParam) {
+
+        if (!maxPointsParam.isPresent()) {
+            return Optional.absent();
+        }
+
+        try {
+            Downsampling.Method method = downsampleParam.isPresent()
+                    ? Downsampling.Method.valueOf(downsampleParam.get().toUpperCase())
+                    : Downsampling.Method.LTTB;
+
+            return Optional.of(new Downsampling(method, Integer.parseInt(maxPointsParam.get())));
+        }
+        catch (IllegalArgumentException e) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity(String.format("invalid downsampling (maxPoints=%s, downsample=%s): %s", maxPointsParam.get(), downsampleParam.orNull(), e.getMessage()))
+                            .build());
+        }
+    }
+
+    private static MeasurementResults.Format getFormat(Optional<String> formatParam) {
+
+        if (!formatParam.isPresent()) {
+            return MeasurementResults.Format.ROWS;
+        }
+
+        try {
+            return MeasurementResults.Format.valueOf(formatParam.get().toUpperCase());
+        }
+        catch (IllegalArgumentException e) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity(String.format("invalid format: %s (expected rows or columns)", formatParam.get()))
+                            .build());
+        }
     }
 
 }
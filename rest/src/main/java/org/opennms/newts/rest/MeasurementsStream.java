@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.opennms.newts.aggregate.IncrementalResultProcessor;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Deadline;
+import org.opennms.newts.api.Duration;
+import org.opennms.newts.api.Measurement;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Results;
+import org.opennms.newts.api.Results.Row;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.SampleRepository;
+import org.opennms.newts.api.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Optional;
+
+
+/**
+ * Server-sent event stream of measurements for a live-tail query. Samples are polled from the
+ * repository, and each newly completed row is written as a {@code data:} event, (a comment line is
+ * written when a poll produces nothing, so that disconnected clients are noticed). Rows revised by
+ * late samples are written again, with the same timestamp.
+ * <p>
+ * A stream occupies a request thread for as long as it is open, so streams are limited in number
+ * (each takes a slot from the resource for as long as it is being written), and in duration; A
+ * stream written when no slot is free ends at once, with a comment line, and a {@code retry:}
+ * field of one poll interval. Otherwise, the stream ends when the client disconnects, the serving
+ * thread is interrupted, or the maximum duration has passed (clients reconnect, from the last
+ * timestamp they received). Each poll is a query like any other; It is subject to the quotas of
+ * the context, admission control, and the default query timeout. A poll that is refused, or times
+ * out, is noted with a comment line, and retried at the next interval.
+ * </p>
+ */
+class MeasurementsStream implements StreamingOutput {
+
+    static final String MEDIA_TYPE = "text/event-stream";
+
+    private static final Logger LOG = LoggerFactory.getLogger(MeasurementsStream.class);
+    private static final JsonFactory s_jsonFactory = new JsonFactory();
+
+    private final SampleRepository m_repository;
+    private final Context m_context;
+    private final Resource m_resource;
+    private final IncrementalResultProcessor m_processor;
+    private final Duration m_pollInterval;
+    private final ContextQuotas m_quotas;
+    private final AdmissionControl m_admission;
+    private final QueryTimeouts m_timeouts;
+    private final long m_maxDurationMillis;
+    private final Semaphore m_streams;
+
+    /**
+     * @param maxDurationMillis
+     *            the longest the stream is kept open
+     * @param streams
+     *            slots for open streams, (one is held while the stream is written)
+     */
+    MeasurementsStream(
+            SampleRepository repository,
+            Context context,
+            Resource resource,
+            IncrementalResultProcessor processor,
+            Duration pollInterval,
+            ContextQuotas quotas,
+            AdmissionControl admission,
+            QueryTimeouts timeouts,
+            long maxDurationMillis,
+            Semaphore streams) {
+        m_repository = checkNotNull(repository, "repository argument");
+        m_context = checkNotNull(context, "context argument");
+        m_resource = checkNotNull(resource, "resource argument");
+        m_processor = checkNotNull(processor, "processor argument");
+        m_pollInterval = checkNotNull(pollInterval, "poll interval argument");
+        m_quotas = checkNotNull(quotas, "quotas argument");
+        m_admission = checkNotNull(admission, "admission argument");
+        m_timeouts = checkNotNull(timeouts, "timeouts argument");
+        m_maxDurationMillis = maxDurationMillis;
+        m_streams = checkNotNull(streams, "streams argument");
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+
+        Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+
+        if (!m_streams.tryAcquire()) {
+            LOG.debug("Ending measurement stream for {}: too many measurement streams", m_resource);
+            writer.write(String.format("retry: %d\n: too many measurement streams\n\n", m_pollInterval.asMillis()));
+            writer.flush();
+            return;
+        }
+
+        long closeAt = System.currentTimeMillis() + m_maxDurationMillis;
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (poll(writer) == 0) {
+                    writer.write(":\n\n");
+                }
+
+                writer.flush();
+
+                long remaining = closeAt - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    LOG.debug("Ending measurement stream for {}: maximum duration reached", m_resource);
+                    break;
+                }
+
+                Thread.sleep(Math.min(remaining, m_pollInterval.asMillis()));
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e) {
+            LOG.debug("Ending measurement stream for {}: {}", m_resource, e.getMessage());
+        }
+        finally {
+            m_streams.release();
+        }
+    }
+
+    /**
+     * Fetch new samples, and write an event for each completed row of measurements.
+     *
+     * @return the number of rows written
+     */
+    int poll(Writer writer) throws IOException {
+
+        // Samples that could still revise a row are fetched again, (the processor skips those seen).
+        Optional<Timestamp> lower = Optional.of(m_processor.getLowerBound());
+        Deadline deadline = m_timeouts.deadline(Optional.<String> absent());
+        long cost = m_admission.cost(lower, Optional.<Timestamp> absent(), m_pollInterval, 0);
+        Results<Sample> samples;
+
+        try (ContextQuotas.Admission admission = m_quotas.admitQuery(m_context);
+                AdmissionControl.Permit permit = m_admission.admit(cost)) {
+            samples = m_repository.select(m_context, m_resource, lower, Optional.<Timestamp> absent(), deadline);
+        }
+        catch (WebApplicationException | CancellationException e) {
+            String reason = (e instanceof WebApplicationException) ? String.valueOf(((WebApplicationException) e).getResponse().getEntity()) : e.getMessage();
+            LOG.debug("Deferring poll of measurement stream for {}: {}", m_resource, reason);
+            writer.write(String.format(": poll deferred: %s\n\n", reason.replace('\n', ' ')));
+            return 0;
+        }
+
+        Results<Measurement> measurements = m_processor.process(samples.iterator());
+
+        int count = 0;
+
+        JsonGenerator jgen = s_jsonFactory.createGenerator(writer).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        jgen.setRootValueSeparator(null);
+
+        for (Row<Measurement> row : measurements) {
+            writer.write("data: ");
+            MeasurementResultsSerializer.writeRow(row, jgen);
+            jgen.flush();
+            writer.write("\n\n");
+            count++;
+        }
+
+        return count;
+    }
+
+}
@@ -23,6 +23,11 @@ import javax.validation.Valid;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 
+import javax.validation.constraints.NotNull;
+
+import org.opennms.newts.api.BoundedExecutor.WaitStrategy;
+import org.opennms.newts.api.SampleProcessorService;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.Configuration;
 
@@ -34,10 +39,66 @@ public class NewtsConfig extends Configuration {
     @JsonProperty("maxSampleProcessorThreads")
     private int m_maxThreads = 64;
 
+    @Min(value = 1)
+    @JsonProperty("sampleProcessorQueueCapacity")
+    private int m_queueCapacity = 96;
+
+    @NotNull
+    @JsonProperty("sampleProcessorWaitStrategy")
+    private WaitStrategy m_waitStrategy = WaitStrategy.BLOCK;
+
+    @Min(value = 1)
+    @JsonProperty("sampleProcessorCoalesceMaxSamples")
+    private int m_coalesceMaxSamples = SampleProcessorService.DEFAULT_COALESCE_MAX_SAMPLES;
+
+    @Min(value = 0)
+    @JsonProperty("sampleProcessorCoalesceWindowMillis")
+    private long m_coalesceWindowMillis = 0;
+
+    @Min(value = 1)
+    @JsonProperty("ingestChunkSize")
+    private int m_ingestChunkSize = SamplesResource.DEFAULT_CHUNK_SIZE;
+
+    @Min(value = 0)
+    @JsonProperty("queryTimeoutMillis")
+    private long m_queryTimeoutMillis = 30000;
+
+    @Min(value = 0)
+    @JsonProperty("maxQueryTimeoutMillis")
+    private long m_maxQueryTimeoutMillis = 300000;
+
     @Valid
     @JsonProperty("search")
     private SearchConfig m_searchConfig = new SearchConfig();
     
+    @Valid
+    @JsonProperty("ingestRing")
+    private IngestRingConfig m_ingestRingConfig = new IngestRingConfig();
+
+    @Valid
+    @JsonProperty("quotas")
+    private QuotasConfig m_quotasConfig = new QuotasConfig();
+
+    @Valid
+    @JsonProperty("conditionalRequests")
+    private ConditionalRequestsConfig m_conditionalRequestsConfig = new ConditionalRequestsConfig();
+
+    @Valid
+    @JsonProperty("admission")
+    private AdmissionConfig m_admissionConfig = new AdmissionConfig();
+
+    @Valid
+    @JsonProperty("streams")
+    private StreamsConfig m_streamsConfig = new StreamsConfig();
+
+    @Valid
+    @JsonProperty("bulk")
+    private BulkIngestConfig m_bulkIngestConfig = new BulkIngestConfig();
+
+    @Valid
+    @JsonProperty("listeners")
+    private Map<String, LineListenerConfig> m_listeners = Collections.emptyMap();
+
     @Valid
     @JsonProperty("cassandra")
     private CassandraConfig m_cassandraConfig = new CassandraConfig();
@@ -46,6 +107,10 @@ public class NewtsConfig extends Configuration {
     @JsonProperty("reports")
     private Map<String, ResultDescriptorDTO> m_reports = Collections.emptyMap();
 
+    @Min(value = 0)
+    @JsonProperty("descriptorCacheSize")
+    private long m_descriptorCacheSize = ResultDescriptors.DEFAULT_CACHE_SIZE;
+
     @Valid
     @JsonProperty("authentication")
     private AuthenticationConfig m_authenticationConfig = new AuthenticationConfig();
@@ -54,10 +119,66 @@ public class NewtsConfig extends Configuration {
         return m_maxThreads;
     }
 
+    public int getSampleProcessorQueueCapacity() {
+        return m_queueCapacity;
+    }
+
+    public WaitStrategy getSampleProcessorWaitStrategy() {
+        return m_waitStrategy;
+    }
+
+    public int getSampleProcessorCoalesceMaxSamples() {
+        return m_coalesceMaxSamples;
+    }
+
+    public long getSampleProcessorCoalesceWindowMillis() {
+        return m_coalesceWindowMillis;
+    }
+
+    public int getIngestChunkSize() {
+        return m_ingestChunkSize;
+    }
+
+    public long getQueryTimeoutMillis() {
+        return m_queryTimeoutMillis;
+    }
+
+    public long getMaxQueryTimeoutMillis() {
+        return m_maxQueryTimeoutMillis;
+    }
+
     public SearchConfig getSearchConfig() {
         return m_searchConfig;
     }
 
+    public IngestRingConfig getIngestRingConfig() {
+        return m_ingestRingConfig;
+    }
+
+    public QuotasConfig getQuotasConfig() {
+        return m_quotasConfig;
+    }
+
+    public ConditionalRequestsConfig getConditionalRequestsConfig() {
+        return m_conditionalRequestsConfig;
+    }
+
+    public AdmissionConfig getAdmissionConfig() {
+        return m_admissionConfig;
+    }
+
+    public StreamsConfig getStreamsConfig() {
+        return m_streamsConfig;
+    }
+
+    public BulkIngestConfig getBulkIngestConfig() {
+        return m_bulkIngestConfig;
+    }
+
+    public Map<String, LineListenerConfig> getListeners() {
+        return m_listeners;
+    }
+
     public String getCassandraKeyspace() {
         return m_cassandraConfig.getKeyspace();
     }
@@ -78,10 +199,18 @@ public class NewtsConfig extends Configuration {
         return m_cassandraConfig.getCompression();
     }
 
+    public int getCassandraMaxConcurrentRequests() {
+        return m_cassandraConfig.getMaxConcurrentRequests();
+    }
+
     public Map<String, ResultDescriptorDTO> getReports() {
         return m_reports;
     }
 
+    public long getDescriptorCacheSize() {
+        return m_descriptorCacheSize;
+    }
+
     public AuthenticationConfig getAuthenticationConfig() {
         return m_authenticationConfig;
     }
@@ -25,6 +25,7 @@ import io.dropwizard.setup.Environment;
 import java.io.IOException;
 import java.net.URL;
 import java.util.EnumSet;
+import java.util.Map;
 
 import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
@@ -38,6 +39,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.servlets.CrossOriginFilter;
+import org.opennms.newts.api.IngestRing;
 import org.opennms.newts.api.SampleRepository;
 import org.opennms.newts.api.search.Searcher;
 import org.slf4j.Logger;
@@ -66,6 +68,7 @@ public class NewtsService extends Application<NewtsConfig> {
     @Override
     public void initialize(Bootstrap<NewtsConfig> bootstrap) {
         bootstrap.addCommand(new InitCommand());
+        bootstrap.addCommand(new HashPasswordCommand());
         bootstrap.addBundle(new AssetsBundle("/app", UI_URL_PATH, "index.html"));
     }
 
@@ -75,12 +78,13 @@ public class NewtsService extends Application<NewtsConfig> {
         // Filters
         configureCors(environment);
         configureUIRedirect(environment);
-        configureAuthentication(environment, config);
 
         Injector injector = Guice.createInjector(new NewtsGuiceModule(), new CassandraGuiceModule(config));
 
         MetricRegistry metricRegistry = injector.getInstance(MetricRegistry.class);
 
+        configureAuthentication(environment, config, metricRegistry);
+
         // Create/start a JMX reporter for our MetricRegistry
         final JmxReporter reporter = JmxReporter.forRegistry(metricRegistry).inDomain("newts").build();
 
@@ -99,27 +103,86 @@ public class NewtsService extends Application<NewtsConfig> {
 
         SampleRepository repository = injector.getInstance(SampleRepository.class);
 
+        // Drain the ingest ring (if any) on shutdown
+        if (config.getIngestRingConfig().isEnabled()) {
+            final IngestRing ring = injector.getInstance(IngestRing.class);
+
+            environment.lifecycle().manage(new Managed() {
+
+                @Override
+                public void stop() throws Exception {
+                    ring.shutdown();
+                }
+
+                @Override
+                public void start() throws Exception {
+                }
+            });
+        }
+
+        ContextQuotas quotas = new ContextQuotas(config.getQuotasConfig(), metricRegistry);
+        ConditionalRequests conditional = getConditionalRequests(config);
+
         // Rest resources
-        environment.jersey().register(new MeasurementsResource(repository, config.getReports()));
-        environment.jersey().register(new SamplesResource(repository));
+        AdmissionControl measurementsAdmission = new AdmissionControl("measurements", config.getAdmissionConfig(), metricRegistry);
+        AdmissionControl samplesAdmission = new AdmissionControl("samples", config.getAdmissionConfig(), metricRegistry);
+
+        QueryTimeouts timeouts = new QueryTimeouts(config.getQueryTimeoutMillis(), config.getMaxQueryTimeoutMillis());
+
+        ResultDescriptors descriptors = new ResultDescriptors(config.getReports(), config.getDescriptorCacheSize());
+
+        BulkIngest bulk = new BulkIngest(
+                environment.lifecycle().executorService("bulk-ingest-%d")
+                        .minThreads(config.getBulkIngestConfig().getThreads())
+                        .maxThreads(config.getBulkIngestConfig().getThreads())
+                        .build(),
+                config.getBulkIngestConfig().getMaxInFlightChunks(),
+                config.getBulkIngestConfig().getMaxLineLength());
+
+        environment.jersey().register(new MeasurementsResource(repository, descriptors, quotas, conditional, measurementsAdmission, timeouts, config.getStreamsConfig()));
+        SamplesResource samples = new SamplesResource(repository, quotas, config.getIngestChunkSize(), conditional, samplesAdmission, timeouts, bulk);
+
+        environment.jersey().register(samples);
+
+        // Line protocol listeners (write as the samples resource does)
+        for (Map.Entry<String, LineListenerConfig> listener : config.getListeners().entrySet()) {
+            environment.lifecycle().manage(new LineListener(listener.getKey(), listener.getValue(), samples.getSink(), metricRegistry));
+        }
 
         // Add search resource only if search is enabled
         if (config.getSearchConfig().isEnabled()) {
-            environment.jersey().register(new SearchResource(injector.getInstance(Searcher.class)));
+            environment.jersey().register(new SearchResource(injector.getInstance(Searcher.class), quotas));
         }
 
         // Health checks
         environment.healthChecks().register("repository", new RepositoryHealthCheck(repository));
 
+        // Binary response formats
+        environment.jersey().register(BinaryMeasurementsWriter.class);
+        environment.jersey().register(SampleBatchWriter.class);
+
         // Mapped exceptions
         environment.jersey().register(IllegalArgumentExceptionMapper.class);
+        environment.jersey().register(CancellationExceptionMapper.class);
+
+    }
+
+    private ConditionalRequests getConditionalRequests(NewtsConfig config) {
+        ConditionalRequestsConfig conditionalConf = config.getConditionalRequestsConfig();
+
+        // With the ingest ring, inserts return before samples are visible; Validators would be unsound.
+        if (conditionalConf.isEnabled() && config.getIngestRingConfig().isEnabled()) {
+            LOG.warn("Conditional requests are not supported with the ingest ring enabled; Disabling");
+            return ConditionalRequests.disabled();
+        }
 
+        return new ConditionalRequests(conditionalConf.isEnabled(), conditionalConf.getMaxResources());
     }
 
-    private void configureAuthentication(Environment environment, NewtsConfig config) {
+    private void configureAuthentication(Environment environment, NewtsConfig config, MetricRegistry registry) {
         if (config.getAuthenticationConfig().isEnabled()) {
             environment.servlets()
-                .addFilter("BasicAuth", new HttpBasicAuthenticationFilter(config))
+                .addFilter("BasicAuth", new HttpBasicAuthenticationFilter(config, registry))
                 .addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, "/*");
         }
     }
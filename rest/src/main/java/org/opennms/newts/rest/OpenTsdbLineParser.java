@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.SortedMap;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.Timestamp;
+
+
+/**
+ * Parses OpenTSDB telnet-style <code>put</code> commands, lines of the form
+ * <code>put &lt;metric&gt; &lt;timestamp&gt; &lt;value&gt; [&lt;tag&gt;=&lt;value&gt;...]</code>,
+ * where timestamps are in seconds since the epoch, or milliseconds (if greater than
+ * {@link #MAX_SECONDS}). Other commands are not supported.
+ */
+class OpenTsdbLineParser extends LineParser {
+
+    /** Largest timestamp taken to be in seconds, (as opposed to milliseconds). */
+    static final long MAX_SECONDS = 9999999999L;
+
+    OpenTsdbLineParser(Context context) {
+        super(context);
+    }
+
+    @Override
+    void parse(ChannelBuffer buffer, int start, int end, Timestamp now, List<Sample> samples) {
+        int commandStart = skipWhitespace(buffer, start, end);
+        int commandEnd = token(buffer, commandStart, end);
+
+        // Blank line
+        if (commandStart == commandEnd) {
+            return;
+        }
+
+        checkArgument(equals(buffer, commandStart, commandEnd, "put"), "unsupported command: %s", string(buffer, commandStart, commandEnd));
+
+        int metricStart = skipWhitespace(buffer, commandEnd, end);
+        int metricEnd = token(buffer, metricStart, end);
+        int timestampStart = skipWhitespace(buffer, metricEnd, end);
+        int timestampEnd = token(buffer, timestampStart, end);
+        int valueStart = skipWhitespace(buffer, timestampEnd, end);
+        int valueEnd = token(buffer, valueStart, end);
+
+        checkArgument(valueStart < valueEnd, "expected put <metric> <timestamp> <value> [<tag>=<value>...]");
+
+        long time = parseLong(buffer, timestampStart, timestampEnd);
+        Timestamp timestamp = (time > MAX_SECONDS) ? Timestamp.fromEpochMillis(time) : Timestamp.fromEpochSeconds(time);
+        double value = parseDouble(buffer, valueStart, valueEnd);
+
+        // Series are keyed by the metric, and the tags (which follow the value).
+        int tagsStart = skipWhitespace(buffer, valueEnd, end);
+        Series series = getSeriesCache().get(buffer, metricStart, metricEnd, tagsStart, end);
+
+        if (series == null) {
+            SortedMap<String, String> tags = tags();
+
+            for (int tagStart = tagsStart; tagStart < end;) {
+                int tagEnd = token(buffer, tagStart, end);
+                int equals = indexOf(buffer, tagStart, tagEnd, (byte) '=');
+
+                checkArgument(equals > tagStart && equals < tagEnd - 1, "invalid tag: %s", string(buffer, tagStart, tagEnd));
+                tags.put(string(buffer, tagStart, equals), string(buffer, equals + 1, tagEnd));
+
+                tagStart = skipWhitespace(buffer, tagEnd, end);
+            }
+
+            series = getSeriesCache().put(buffer, metricStart, metricEnd, tagsStart, end, pathSeries(string(buffer, metricStart, metricEnd), tags));
+        }
+
+        samples.add(sample(timestamp, series, value));
+    }
+
+}
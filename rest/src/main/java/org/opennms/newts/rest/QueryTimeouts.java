@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.opennms.newts.api.Deadline;
+import org.opennms.newts.api.Duration;
+
+import com.google.common.base.Optional;
+
+
+/**
+ * Deadlines for queries. Requests may ask for a timeout of their own (the {@code timeout} query
+ * argument), up to the configured maximum; Those that do not get the default.
+ */
+class QueryTimeouts {
+
+    private final long m_defaultMillis;
+    private final long m_maxMillis;
+
+    /**
+     * @param defaultMillis
+     *            timeout of requests that do not name one (zero for none)
+     * @param maxMillis
+     *            the longest timeout a request may ask for (zero for unlimited)
+     */
+    QueryTimeouts(long defaultMillis, long maxMillis) {
+        checkArgument(defaultMillis >= 0, "negative default timeout");
+        checkArgument(maxMillis >= 0, "negative maximum timeout");
+
+        m_defaultMillis = (maxMillis > 0 && (defaultMillis == 0 || defaultMillis > maxMillis)) ? maxMillis : defaultMillis;
+        m_maxMillis = maxMillis;
+    }
+
+    /** @return timeouts that never expire */
+    static QueryTimeouts none() {
+        return new QueryTimeouts(0, 0);
+    }
+
+    /**
+     * @return the deadline of a request, given its (optional) {@code timeout} argument
+     * @throws WebApplicationException
+     *             (400) if the timeout is malformed, or not positive
+     */
+    Deadline deadline(Optional<String> timeoutParam) {
+        long millis = m_defaultMillis;
+
+        if (timeoutParam.isPresent()) {
+            Duration timeout = new DurationParam(timeoutParam.get()).get();
+
+            // A zero timeout would otherwise mean none at all, (escaping the maximum).
+            if (timeout.asMillis() <= 0) {
+                throw new WebApplicationException(
+                        Response.status(Response.Status.BAD_REQUEST)
+                                .type(MediaType.TEXT_PLAIN)
+                                .entity(String.format("timeout must be positive: %s", timeoutParam.get()))
+                                .build());
+            }
+
+            millis = (m_maxMillis > 0) ? Math.min(timeout.asMillis(), m_maxMillis) : timeout.asMillis();
+        }
+
+        return (millis > 0) ? Deadline.after(millis, TimeUnit.MILLISECONDS) : Deadline.none();
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/**
+ * Limits applied to a single context; Zero means unlimited.
+ */
+public class QuotaConfig {
+
+    @Min(value = 0)
+    @JsonProperty("maxSamplesPerSecond")
+    private double m_maxSamplesPerSecond = 0;
+
+    @Min(value = 0)
+    @JsonProperty("maxConcurrentQueries")
+    private int m_maxConcurrentQueries = 0;
+
+    public QuotaConfig() {
+    }
+
+    QuotaConfig(double maxSamplesPerSecond, int maxConcurrentQueries) {
+        m_maxSamplesPerSecond = maxSamplesPerSecond;
+        m_maxConcurrentQueries = maxConcurrentQueries;
+    }
+
+    public double getMaxSamplesPerSecond() {
+        return m_maxSamplesPerSecond;
+    }
+
+    public int getMaxConcurrentQueries() {
+        return m_maxConcurrentQueries;
+    }
+
+}
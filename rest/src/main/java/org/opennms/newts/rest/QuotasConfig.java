@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/**
+ * Per-context quotas; Contexts not listed share a single quota of the default limits.
+ */
+public class QuotasConfig {
+
+    @Valid
+    @NotNull
+    @JsonProperty("default")
+    private QuotaConfig m_default = new QuotaConfig();
+
+    @Valid
+    @NotNull
+    @JsonProperty("contexts")
+    private Map<String, QuotaConfig> m_contexts = Collections.emptyMap();
+
+    public QuotasConfig() {
+    }
+
+    QuotasConfig(QuotaConfig defaults, Map<String, QuotaConfig> contexts) {
+        m_default = defaults;
+        m_contexts = contexts;
+    }
+
+    public QuotaConfig getDefault() {
+        return m_default;
+    }
+
+    public Map<String, QuotaConfig> getContexts() {
+        return m_contexts;
+    }
+
+}
@@ -59,8 +59,9 @@ public class ResultDescriptorDTO {
             return m_function;
         }
 
+        /** @return the heartbeat, or null if none was given */
         public Duration getHeartbeat() {
-            return Duration.parse(m_heartbeat);
+            return (m_heartbeat != null) ? Duration.parse(m_heartbeat) : null;
         }
 
         @Override
@@ -135,6 +136,33 @@ public class ResultDescriptorDTO {
         return m_exports;
     }
 
+    /**
+     * Returns a canonical form of this descriptor; Descriptors with the same canonical form are
+     * equivalent. Exports are unordered, and so sorted.
+     */
+    String canonicalForm() {
+        StringBuilder buf = new StringBuilder();
+
+        buf.append("interval=").append(m_interval);
+
+        for (Datasource ds : m_datasources) {
+            buf.append("\nds=").append(ds.m_label).append('\0').append(ds.m_source).append('\0').append(ds.m_function).append('\0').append(ds.m_heartbeat);
+        }
+
+        for (Expression expr : m_expressions) {
+            buf.append("\nexpr=").append(expr.m_label).append('\0').append(expr.m_expression);
+        }
+
+        String[] exports = (m_exports != null) ? m_exports.clone() : new String[0];
+        Arrays.sort(exports);
+
+        for (String export : exports) {
+            buf.append("\nexport=").append(export);
+        }
+
+        return buf.toString();
+    }
+
     @Override
     public String toString() {
         return String.format(
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.opennms.newts.api.query.ResultDescriptor;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+
+/**
+ * Compiled {@link ResultDescriptor}s. Named reports are compiled once, up front (so that a bad
+ * report fails at startup rather than per request); Ad hoc descriptors are compiled on first use,
+ * and cached (keyed by their canonical form) for as long as they stay in a bounded LRU. Compiled
+ * descriptors are immutable, and shared between concurrent queries.
+ */
+class ResultDescriptors {
+
+    static final long DEFAULT_CACHE_SIZE = 1000;
+
+    private final Map<String, ResultDescriptor> m_reports;
+    private final Cache<String, ResultDescriptor> m_cache;
+
+    ResultDescriptors(Map<String, ResultDescriptorDTO> reports, long cacheSize) {
+        checkNotNull(reports, "reports argument");
+        checkArgument(cacheSize >= 0, "negative cache size");
+
+        ImmutableMap.Builder<String, ResultDescriptor> compiled = ImmutableMap.builder();
+
+        for (Map.Entry<String, ResultDescriptorDTO> entry : reports.entrySet()) {
+            try {
+                compiled.put(entry.getKey(), compile(entry.getValue()));
+            }
+            catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("invalid report %s: %s", entry.getKey(), e.getMessage()), e);
+            }
+        }
+
+        m_reports = compiled.build();
+        m_cache = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    /** @return the named report, or null if there is no such report */
+    ResultDescriptor getReport(String name) {
+        return m_reports.get(name);
+    }
+
+    /**
+     * Returns the compiled form of an ad hoc descriptor.
+     *
+     * @throws IllegalArgumentException
+     *             if the descriptor is invalid
+     */
+    ResultDescriptor get(final ResultDescriptorDTO descriptorDTO) {
+        checkNotNull(descriptorDTO, "descriptor argument");
+
+        try {
+            return m_cache.get(descriptorDTO.canonicalForm(), new Callable<ResultDescriptor>() {
+
+                @Override
+                public ResultDescriptor call() {
+                    return compile(descriptorDTO);
+                }
+            });
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    long cacheSize() {
+        return m_cache.size();
+    }
+
+    private static ResultDescriptor compile(ResultDescriptorDTO descriptorDTO) {
+        return Transform.resultDescriptor(descriptorDTO).immutableCopy();
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import org.opennms.newts.api.Results.Row;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.SampleBatch;
+
+import com.google.common.collect.Lists;
+
+
+/**
+ * Writes {@link SampleResults} encoded as a {@link SampleBatch}, (the format accepted by
+ * {@link SamplesResource#writeSampleBatch}).
+ * <p>
+ * A batch's dictionaries precede its samples, so the response is encoded in full before any of
+ * it is written, (it is not streamed as {@link BinaryMeasurementsWriter} is); Its size is bounded
+ * only by that of the query's results.
+ * </p>
+ */
+@Provider
+@Produces(SampleBatch.MEDIA_TYPE)
+public class SampleBatchWriter implements MessageBodyWriter<SampleResults> {
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return SampleResults.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(SampleResults t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(SampleResults t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+        List<Sample> samples = Lists.newArrayList();
+
+        for (Row<Sample> row : t.getResults()) {
+            for (Sample sample : row) {
+                samples.add(sample);
+            }
+        }
+
+        entityStream.write(SampleBatch.encode(samples));
+    }
+
+}
@@ -42,15 +42,21 @@ public class SampleDTO {
     private final MetricType m_type;
     private final Number m_value;
     private final Map<String, String> m_attributes;
+    private final String m_context;
+
+    public SampleDTO(long timestamp, ResourceDTO resource, String name, MetricType type, Number value, Map<String, String> attributes) {
+        this(timestamp, resource, name, type, value, attributes, null);
+    }
 
     @JsonCreator
-    public SampleDTO(@JsonProperty("timestamp") long timestamp, @JsonProperty("resource") ResourceDTO resource, @JsonProperty("name") String name, @JsonProperty("type") MetricType type, @JsonProperty("value") Number value, @JsonProperty("attributes") Map<String, String> attributes) {
+    public SampleDTO(@JsonProperty("timestamp") long timestamp, @JsonProperty("resource") ResourceDTO resource, @JsonProperty("name") String name, @JsonProperty("type") MetricType type, @JsonProperty("value") Number value, @JsonProperty("attributes") Map<String, String> attributes, @JsonProperty("context") String context) {
         m_timestamp = checkNotNull(timestamp, "m_timestamp argument");
         m_resource = checkNotNull(resource, "m_resource argument");
         m_name = checkNotNull(name, "m_name argument");
         m_type = checkNotNull(type, "m_type argument");
         m_value = checkNotNull(value, "m_value argument");
         m_attributes = attributes;
+        m_context = context;
     }
 
     public long getTimestamp() {
@@ -77,4 +83,9 @@ public class SampleDTO {
         return m_attributes;
     }
 
+    /** @return the sample's context ID, or null if unspecified */
+    public String getContext() {
+        return m_context;
+    }
+
 }
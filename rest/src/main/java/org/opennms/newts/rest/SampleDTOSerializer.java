@@ -17,6 +17,8 @@ package org.opennms.newts.rest;
 
 import java.io.IOException;
 
+import org.opennms.newts.api.Context;
+
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonSerializer;
@@ -37,6 +39,11 @@ public class SampleDTOSerializer extends JsonSerializer<SampleDTO> {
             jgen.writeObjectField("attributes", value.getAttributes());
         }
 
+        // Likewise, the context is omitted unless other than the default.
+        if (value.getContext() != null && !Context.DEFAULT_CONTEXT.getId().equals(value.getContext())) {
+            jgen.writeStringField("context", value.getContext());
+        }
+
         jgen.writeEndObject();
     }
 
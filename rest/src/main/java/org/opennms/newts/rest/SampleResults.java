@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.opennms.newts.api.Results;
+import org.opennms.newts.api.Sample;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+
+/**
+ * {@link Results} of samples, for serialization directly to JSON (without intermediate DTOs), in
+ * the same shape as that of {@link SampleDTO}s.
+ */
+@JsonSerialize(using = SampleResultsSerializer.class)
+public class SampleResults {
+
+    private final Results<Sample> m_results;
+
+    public SampleResults(Results<Sample> results) {
+        m_results = checkNotNull(results, "results argument");
+    }
+
+    public Results<Sample> getResults() {
+        return m_results;
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Results.Row;
+import org.opennms.newts.api.Sample;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+
+/**
+ * Writes {@link SampleResults} straight from the underlying results.
+ */
+public class SampleResultsSerializer extends JsonSerializer<SampleResults> {
+
+    @Override
+    public void serialize(SampleResults value, JsonGenerator jgen, SerializerProvider provider) throws IOException, JsonProcessingException {
+        jgen.writeStartArray();
+
+        for (Row<Sample> row : value.getResults()) {
+            jgen.writeStartArray();
+
+            for (Sample sample : row) {
+                jgen.writeStartObject();
+                jgen.writeStringField("name", sample.getName());
+                jgen.writeNumberField("timestamp", sample.getTimestamp().asMillis());
+                jgen.writeStringField("type", sample.getType().toString());
+                provider.defaultSerializeField("value", sample.getValue(), jgen);
+
+                Map<String, String> attributes = sample.getAttributes();
+
+                if (attributes != null && !attributes.isEmpty()) {
+                    jgen.writeObjectFieldStart("attributes");
+                    for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                        jgen.writeStringField(entry.getKey(), entry.getValue());
+                    }
+                    jgen.writeEndObject();
+                }
+
+                if (!sample.getContext().equals(Context.DEFAULT_CONTEXT)) {
+                    jgen.writeStringField("context", sample.getContext().getId());
+                }
+
+                jgen.writeEndObject();
+            }
+
+            jgen.writeEndArray();
+        }
+
+        jgen.writeEndArray();
+    }
+
+}
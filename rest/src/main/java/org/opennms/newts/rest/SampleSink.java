@@ -0,0 +1,32 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import java.util.List;
+
+import org.opennms.newts.api.Sample;
+
+
+/**
+ * Destination of samples written by the service; Samples are subject to the quotas of their
+ * context, stored, and handed to the sample processors.
+ */
+interface SampleSink {
+
+    void insert(List<Sample> samples);
+
+}
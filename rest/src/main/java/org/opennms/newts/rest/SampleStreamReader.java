@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.MetricType;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.SampleDictionary;
+import org.opennms.newts.api.Timestamp;
+import org.opennms.newts.api.ValueType;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+
+/**
+ * Reads a JSON array of samples incrementally, (using the Jackson streaming API), so that a
+ * request body need never be resident in its entirety. Each element is converted directly to a
+ * {@link Sample}, and samples are returned in chunks of (up to) a fixed size.
+ * <p>
+ * The format is that of {@link SampleDTO}. Malformed input results in an
+ * {@link IllegalArgumentException}; Any chunks read prior will have already been returned.
+ * </p>
+ */
+class SampleStreamReader implements Closeable {
+
+    private static final JsonFactory s_jsonFactory = new JsonFactory();
+
+    private final JsonParser m_parser;
+    private final Context m_context;
+    private final int m_chunkSize;
+    private boolean m_started = false;
+    private boolean m_finished = false;
+
+    /**
+     * @param input
+     *            JSON array of samples
+     * @param context
+     *            context of samples that do not specify one
+     * @param chunkSize
+     *            maximum number of samples returned by {@link #next()}
+     */
+    SampleStreamReader(InputStream input, Context context, int chunkSize) throws IOException {
+        checkNotNull(input, "input argument");
+        checkArgument(chunkSize > 0, "chunk size must be greater than zero");
+
+        m_parser = s_jsonFactory.createParser(input);
+        m_context = checkNotNull(context, "context argument");
+        m_chunkSize = chunkSize;
+    }
+
+    /**
+     * @return the next chunk of samples, or an empty list once the array has been exhausted
+     * @throws IOException
+     *             on error reading the underlying input
+     */
+    List<Sample> next() throws IOException {
+        List<Sample> chunk = Lists.newArrayListWithCapacity(m_chunkSize);
+
+        try {
+            if (!m_started) {
+                expect(m_parser, m_parser.nextToken(), JsonToken.START_ARRAY);
+                m_started = true;
+            }
+
+            while (!m_finished && chunk.size() < m_chunkSize) {
+                JsonToken token = m_parser.nextToken();
+
+                if (token == JsonToken.END_ARRAY) {
+                    m_finished = true;
+                }
+                else {
+                    expect(m_parser, token, JsonToken.START_OBJECT);
+                    chunk.add(readSample(m_parser, m_context));
+                }
+            }
+        }
+        catch (JsonParseException e) {
+            throw new IllegalArgumentException(String.format("Invalid sample JSON: %s", e.getOriginalMessage()), e);
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Reads a sample object, (the parser positioned at its start).
+     *
+     * @param parser
+     *            the parser
+     * @param defaultContext
+     *            context of the sample, if it does not name one
+     * @return the sample
+     * @throws IllegalArgumentException
+     *             if the sample is malformed
+     */
+    static Sample readSample(JsonParser parser, Context defaultContext) throws IOException {
+        Long timestamp = null;
+        Resource resource = null;
+        String name = null;
+        MetricType type = null;
+        Number value = null;
+        Map<String, String> attributes = null;
+        Context context = defaultContext;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+
+            switch (field) {
+                case "timestamp":
+                    checkArgument(token.isNumeric(), "sample timestamp must be numeric");
+                    timestamp = parser.getLongValue();
+                    break;
+                case "resource":
+                    resource = readResource(parser, token);
+                    break;
+                case "name":
+                    expect(parser, token, JsonToken.VALUE_STRING);
+                    name = SampleDictionary.metricName(parser.getText());
+                    break;
+                case "type":
+                    type = readType(parser, token);
+                    break;
+                case "value":
+                    checkArgument(token.isNumeric(), "sample value must be numeric");
+                    value = parser.getNumberValue();
+                    break;
+                case "attributes":
+                    attributes = readAttributes(parser, token);
+                    break;
+                case "context":
+                    expect(parser, token, JsonToken.VALUE_STRING);
+                    context = SampleDictionary.context(parser.getText());
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        checkArgument(timestamp != null, "sample is missing a timestamp");
+        checkArgument(resource != null, "sample is missing a resource");
+        checkArgument(name != null, "sample is missing a name");
+        checkArgument(type != null, "sample is missing a type");
+        checkArgument(value != null, "sample is missing a value");
+
+        return new Sample(
+                Timestamp.fromEpochMillis(timestamp),
+                context,
+                resource,
+                name,
+                type,
+                ValueType.compose(value, type),
+                SampleDictionary.attributes(attributes));
+    }
+
+    private static Resource readResource(JsonParser parser, JsonToken token) throws IOException {
+        expect(parser, token, JsonToken.START_OBJECT);
+
+        String id = null;
+        Map<String, String> attributes = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+
+            if ("id".equals(field)) {
+                expect(parser, value, JsonToken.VALUE_STRING);
+                id = parser.getText();
+            }
+            else if ("attributes".equals(field)) {
+                attributes = readAttributes(parser, value);
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
+
+        checkArgument(id != null, "resource is missing an id");
+
+        return SampleDictionary.resource(id, attributes);
+    }
+
+    private static MetricType readType(JsonParser parser, JsonToken token) throws IOException {
+        expect(parser, token, JsonToken.VALUE_STRING);
+
+        try {
+            return MetricType.valueOf(parser.getText());
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unknown metric type: %s", parser.getText()));
+        }
+    }
+
+    private static Map<String, String> readAttributes(JsonParser parser, JsonToken token) throws IOException {
+        expect(parser, token, JsonToken.START_OBJECT);
+
+        if (parser.nextToken() == JsonToken.END_OBJECT) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> attributes = Maps.newHashMap();
+
+        do {
+            String key = parser.getCurrentName();
+            checkArgument(parser.nextToken().isScalarValue(), "attribute values must be scalar");
+            attributes.put(key, parser.getText());
+        } while (parser.nextToken() == JsonToken.FIELD_NAME);
+
+        return attributes;
+    }
+
+    static void expect(JsonParser parser, JsonToken actual, JsonToken expected) {
+        checkArgument(
+                actual == expected,
+                "Invalid sample JSON: expected %s at %s, found %s",
+                expected,
+                parser.getCurrentLocation(),
+                actual);
+    }
+
+    @Override
+    public void close() throws IOException {
+        m_parser.close();
+    }
+
+}
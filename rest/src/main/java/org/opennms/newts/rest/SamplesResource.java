@@ -18,24 +18,37 @@ package org.opennms.newts.rest;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
+import java.util.List;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Deadline;
+import org.opennms.newts.api.Duration;
 import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.SampleBatch;
 import org.opennms.newts.api.SampleRepository;
 import org.opennms.newts.api.Timestamp;
 
 import com.codahale.metrics.annotation.Timed;
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.MoreExecutors;
 
 
 @Path("/samples")
@@ -43,24 +56,122 @@ import com.google.common.base.Optional;
 @Consumes(MediaType.APPLICATION_JSON)
 public class SamplesResource {
 
+    static final int DEFAULT_CHUNK_SIZE = 1000;
+    private static final Duration SAMPLE_INTERVAL = Duration.seconds(300);
+
     private final SampleRepository m_sampleRepository;
+    private final ContextQuotas m_quotas;
+    private final int m_chunkSize;
+    private final ConditionalRequests m_conditional;
+    private final AdmissionControl m_admission;
+    private final QueryTimeouts m_timeouts;
+    private final BulkIngest m_bulk;
 
     public SamplesResource(SampleRepository sampleRepository) {
+        this(sampleRepository, ContextQuotas.unlimited(), DEFAULT_CHUNK_SIZE, ConditionalRequests.disabled(), AdmissionControl.unlimited(), QueryTimeouts.none(), new BulkIngest(MoreExecutors.sameThreadExecutor(), 1));
+    }
+
+    SamplesResource(SampleRepository sampleRepository, ContextQuotas quotas, int chunkSize, ConditionalRequests conditional, AdmissionControl admission, QueryTimeouts timeouts, BulkIngest bulk) {
         m_sampleRepository = checkNotNull(sampleRepository, "sample repository");
+        m_quotas = checkNotNull(quotas, "quotas argument");
+        m_chunkSize = chunkSize;
+        m_conditional = checkNotNull(conditional, "conditional argument");
+        m_admission = checkNotNull(admission, "admission argument");
+        m_timeouts = checkNotNull(timeouts, "timeouts argument");
+        m_bulk = checkNotNull(bulk, "bulk argument");
     }
 
+    /**
+     * Write a JSON array of samples. Samples that do not name a context are written to the one
+     * given by the {@code context} query argument, (or the default context).
+     * <p>
+     * The body is parsed incrementally, and samples written in chunks as they are read; If the
+     * body turns out to be malformed, chunks preceding the error will have already been written.
+     * </p>
+     */
     @POST
     @Timed
-    public Response writeSamples(Collection<SampleDTO> samples) {
-        m_sampleRepository.insert(Transform.samples(samples));
+    public Response writeSamples(InputStream body, @QueryParam("context") Optional<String> context) throws IOException {
+        try (SampleStreamReader reader = new SampleStreamReader(body, Transform.context(context), m_chunkSize)) {
+            for (List<Sample> chunk = reader.next(); !chunk.isEmpty(); chunk = reader.next()) {
+                insert(chunk);
+            }
+        }
+
         return Response.status(Response.Status.CREATED).build();
     }
 
+    /**
+     * Write samples encoded as a {@link SampleBatch}. Samples of the default context are written to
+     * the one given by the {@code context} query argument, (if any).
+     */
+    @POST
+    @Timed
+    @Consumes(SampleBatch.MEDIA_TYPE)
+    public Response writeSampleBatch(byte[] batch, @QueryParam("context") Optional<String> context) {
+        insert(Transform.inContext(SampleBatch.decode(batch).getSamples(), Transform.context(context)));
+
+        return Response.status(Response.Status.CREATED).build();
+    }
+
+    /**
+     * Bulk write newline-delimited JSON samples, one per line. The body is read, and written, in
+     * chunks of lines (each written in its entirety, or not at all); Chunks are acknowledged, in
+     * order, by a streamed response, which must be read while the body is sent (see
+     * {@link BulkIngest}).
+     */
+    @POST
+    @Timed
+    @Path("/bulk")
+    @Consumes(BulkIngest.NDJSON)
+    @Produces(BulkIngest.NDJSON)
+    public Response writeBulk(InputStream body, @QueryParam("context") Optional<String> context) {
+        return bulk(new BulkIngest.LineSource(body, Transform.context(context), m_chunkSize, m_bulk.getMaxLineLength()));
+    }
+
+    /**
+     * Bulk write a stream of {@link SampleBatch}es, each preceded by its length (a 32 bit,
+     * big-endian integer). Each batch is a chunk, acknowledged as for {@link #writeBulk}.
+     */
+    @POST
+    @Timed
+    @Path("/bulk")
+    @Consumes(SampleBatch.MEDIA_TYPE)
+    @Produces(BulkIngest.NDJSON)
+    public Response writeBulkBatches(InputStream body, @QueryParam("context") Optional<String> context) {
+        return bulk(new BulkIngest.FrameSource(body, Transform.context(context)));
+    }
+
+    private Response bulk(BulkIngest.Source source) {
+        return Response.ok(m_bulk.ingest(source, getSink())).type(BulkIngest.NDJSON).build();
+    }
+
+    /** @return a sink that writes samples as this resource does, (for use by other ingest paths) */
+    SampleSink getSink() {
+        return new SampleSink() {
+
+            @Override
+            public void insert(List<Sample> samples) {
+                SamplesResource.this.insert(samples);
+            }
+        };
+    }
+
+    private void insert(Collection<Sample> samples) {
+        try (ContextQuotas.Admission admission = m_quotas.admitInsert(samples)) {
+            m_sampleRepository.insert(samples);
+        }
+
+        m_conditional.written(samples);
+    }
+
     @GET
     @Timed
     @Path("/{resource}")
-    public Collection<Collection<SampleDTO>> getSamples(@PathParam("resource") Resource resource,
-            @QueryParam("start") Optional<String> start, @QueryParam("end") Optional<String> end) {
+    @Produces({ MediaType.APPLICATION_JSON, SampleBatch.MEDIA_TYPE })
+    public Response getSamples(@PathParam("resource") Resource resource,
+            @QueryParam("start") Optional<String> start, @QueryParam("end") Optional<String> end, @QueryParam("context") Optional<String> contextParam,
+            @QueryParam("timeout") Optional<String> timeoutParam, @HeaderParam(HttpHeaders.ACCEPT) String accept, @javax.ws.rs.core.Context Request request) {
 
         /*
          * XXX: This resource method should use TimestampParam as the type for the start and end
@@ -72,8 +183,24 @@ public class SamplesResource {
          */
         Optional<Timestamp> lower = Transform.timestampFromString(start);
         Optional<Timestamp> upper = Transform.timestampFromString(end);
+        Context context = Transform.context(contextParam);
+        Deadline deadline = m_timeouts.deadline(timeoutParam);
+
+        // Answer unchanged windows without querying
+        ConditionalRequests.Validators validators = m_conditional.validators(context, resource, lower, upper, accept);
+        ResponseBuilder notModified = validators.evaluate(request);
+
+        if (notModified != null) {
+            return notModified.build();
+        }
+
+        // Neither the sample interval, nor the number of metrics are known; Cost is by partitions read.
+        long cost = m_admission.cost(lower, upper, SAMPLE_INTERVAL, 0);
 
-        return Transform.sampleDTOs(m_sampleRepository.select(resource, lower, upper));
+        try (ContextQuotas.Admission admission = m_quotas.admitQuery(context);
+                AdmissionControl.Permit permit = m_admission.admit(cost)) {
+            return validators.ok(new SampleResults(m_sampleRepository.select(context, resource, lower, upper, deadline)));
+        }
 
     }
 
@@ -10,6 +10,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 
+import org.opennms.newts.api.Context;
 import org.opennms.newts.api.search.SearchResults;
 import org.opennms.newts.api.search.Searcher;
 
@@ -22,16 +23,27 @@ import com.google.common.base.Optional;
 public class SearchResource {
 
     private final Searcher m_searcher;
+    private final ContextQuotas m_quotas;
 
     public SearchResource(Searcher searcher) {
+        this(searcher, ContextQuotas.unlimited());
+    }
+
+    SearchResource(Searcher searcher, ContextQuotas quotas) {
         m_searcher = checkNotNull(searcher, "searcher argument");
+        m_quotas = checkNotNull(quotas, "quotas argument");
     }
 
     @GET
     @Timed
-    public SearchResults search(@QueryParam("q") Optional<String> query) {
+    public SearchResults search(@QueryParam("q") Optional<String> query, @QueryParam("context") Optional<String> contextParam) {
         checkArgument(query.isPresent(), "missing required query parameter (q=<argument>)");
-        return m_searcher.search(query.get());
+
+        Context context = Transform.context(contextParam);
+
+        try (ContextQuotas.Admission admission = m_quotas.admitQuery(context)) {
+            return m_searcher.search(context, query.get());
+        }
     }
 
 }
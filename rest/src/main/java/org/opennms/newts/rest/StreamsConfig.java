@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/**
+ * Limits on live-tail measurement streams; See {@link MeasurementsStream}.
+ */
+public class StreamsConfig {
+
+    @Min(value = 1)
+    @JsonProperty("maxStreams")
+    private int m_maxStreams = 64;
+
+    @Min(value = 1)
+    @JsonProperty("maxDurationSeconds")
+    private long m_maxDurationSeconds = 3600;
+
+    public StreamsConfig() {
+    }
+
+    StreamsConfig(int maxStreams, long maxDurationSeconds) {
+        m_maxStreams = maxStreams;
+        m_maxDurationSeconds = maxDurationSeconds;
+    }
+
+    /** @return the maximum number of streams open at once */
+    public int getMaxStreams() {
+        return m_maxStreams;
+    }
+
+    /** @return the longest a stream is kept open, (after which clients must reconnect) */
+    public long getMaxDurationSeconds() {
+        return m_maxDurationSeconds;
+    }
+
+}
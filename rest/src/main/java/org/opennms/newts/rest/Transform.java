@@ -22,13 +22,13 @@ import java.util.Map;
 
 import javax.ws.rs.WebApplicationException;
 
+import org.opennms.newts.api.Context;
 import org.opennms.newts.api.Measurement;
-import org.opennms.newts.api.Resource;
 import org.opennms.newts.api.Results;
 import org.opennms.newts.api.Results.Row;
 import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.SampleDictionary;
 import org.opennms.newts.api.Timestamp;
-import org.opennms.newts.api.ValueType;
 import org.opennms.newts.api.query.ResultDescriptor;
 
 import com.google.common.base.Function;
@@ -40,29 +40,6 @@ import com.google.common.collect.Lists;
 
 class Transform {
 
-    private static final Function<SampleDTO, Sample> DTO_TO_SAMPLE;
-
-    static {
-        DTO_TO_SAMPLE = new Function<SampleDTO, Sample>() {
-
-            @Override
-            public Sample apply(SampleDTO input) {
-                return new Sample(
-                        Timestamp.fromEpochMillis(input.getTimestamp()),
-                        new Resource(input.getResource().getId(), wrapMap(input.getResource().getAttributes())),
-                        input.getName(),
-                        input.getType(),
-                        ValueType.compose(input.getValue(), input.getType()),
-                        input.getAttributes());
-            }
-        };
-    }
-
-    private static Optional<Map<String, String>> wrapMap(Map<String, String> map) {
-        if (map == null) return Optional.<Map<String, String>> absent();
-        return Optional.of(map);
-    }
-
     /**
      * Convert a {@link ResultDescriptorDTO} to {@link ResultDescriptor}.
      *
@@ -93,14 +70,36 @@ class Transform {
     }
 
     /**
-     * Convert {@link SampleDTO}s to {@link Sample}s.
+     * Assigns samples of the default context to another.
      *
      * @param samples
-     *            samples to convert
-     * @return converted samples
+     *            samples to assign
+     * @param context
+     *            context to assign them to
+     * @return the samples, in context
      */
-    static Collection<Sample> samples(Collection<SampleDTO> samples) {
-        return Collections2.transform(samples, DTO_TO_SAMPLE);
+    static Collection<Sample> inContext(Collection<Sample> samples, final Context context) {
+        if (context.equals(Context.DEFAULT_CONTEXT)) {
+            return samples;
+        }
+
+        return Lists.newArrayList(Collections2.transform(samples, new Function<Sample, Sample>() {
+
+            @Override
+            public Sample apply(Sample input) {
+                if (!input.getContext().equals(Context.DEFAULT_CONTEXT)) {
+                    return input;
+                }
+                return new Sample(input.getTimestamp(), context, input.getResource(), input.getName(), input.getType(), input.getValue(), input.getAttributes());
+            }
+        }));
+    }
+
+    /**
+     * @return the context named by a query argument, or the default context if absent
+     */
+    static Context context(Optional<String> context) {
+        return context.isPresent() ? SampleDictionary.context(context.get()) : Context.DEFAULT_CONTEXT;
     }
 
     /**
@@ -125,7 +124,8 @@ class Transform {
                                 input.getName(),
                                 input.getType(),
                                 input.getValue(),
-                                input.getAttributes());
+                                input.getAttributes(),
+                                input.getContext().getId());
                     }
                 });
             }
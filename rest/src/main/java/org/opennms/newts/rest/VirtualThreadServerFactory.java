@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import io.dropwizard.server.DefaultServerFactory;
+
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.opennms.newts.api.VirtualThreads;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+
+/**
+ * A {@link DefaultServerFactory} that handles each request on a virtual thread (where the runtime
+ * supports them), rather than on a bounded pool; Selected with a server {@code type} of
+ * {@code virtual}. Concurrency toward Cassandra is bounded by {@code cassandra.maxConcurrentRequests}
+ * instead.
+ */
+@JsonTypeName("virtual")
+public class VirtualThreadServerFactory extends DefaultServerFactory {
+
+    @Override
+    protected ThreadPool createThreadPool(MetricRegistry metricRegistry) {
+        if (!VirtualThreads.isAvailable()) {
+            // Logs a warning, and falls back to the default (instrumented) pool.
+            VirtualThreads.factory("dw", true);
+            return super.createThreadPool(metricRegistry);
+        }
+
+        return new ExecutorThreadPool(VirtualThreads.newThreadPerTaskExecutor("dw", true));
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.WebApplicationException;
+
+import org.junit.Test;
+import org.opennms.newts.api.Duration;
+import org.opennms.newts.api.Timestamp;
+import org.opennms.newts.persistence.cassandra.CassandraSampleRepository;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+
+
+public class AdmissionControlTest {
+
+    private final MetricRegistry m_registry = new MetricRegistry();
+
+    @Test
+    public void testCost() {
+        AdmissionControl admission = new AdmissionControl("test", new AdmissionConfig(), m_registry);
+        Timestamp start = Timestamp.fromEpochSeconds(0);
+        Duration shard = CassandraSampleRepository.DEFAULT_RESOURCE_SHARD;
+
+        // One partition, 100 rows of 2 datasources
+        assertEquals(
+                AdmissionControl.PARTITION_COST + 200,
+                admission.cost(Optional.of(start), Optional.of(start.plus(Duration.seconds(30000))), Duration.seconds(300), 2));
+
+        // Spanning three partitions
+        assertEquals(
+                (3 * AdmissionControl.PARTITION_COST) + 2,
+                admission.cost(Optional.of(start), Optional.of(start.plus(shard.times(2))), shard, 1));
+
+        // Unknown datasources
+        assertEquals(
+                AdmissionControl.PARTITION_COST,
+                admission.cost(Optional.of(start), Optional.of(start.plus(Duration.seconds(300))), Duration.seconds(300), 0));
+    }
+
+    @Test
+    public void testShedding() {
+        AdmissionControl admission = new AdmissionControl("test", new AdmissionConfig(1, 0, 0, 0), m_registry);
+
+        try (AdmissionControl.Permit permit = admission.admit(1)) {
+            try {
+                admission.admit(1);
+                fail("query admitted over limit");
+            }
+            catch (WebApplicationException e) {
+                assertEquals(503, e.getResponse().getStatus());
+                assertEquals(1, e.getResponse().getMetadata().getFirst(AdmissionControl.RETRY_AFTER));
+            }
+        }
+
+        // Capacity is returned on close
+        admission.admit(1).close();
+
+        assertEquals(1, m_registry.meter("admission.test.rejected").getCount());
+        assertEquals(0, m_registry.meter("admission.test.queued").getCount());
+    }
+
+    @Test
+    public void testCostBudget() {
+        AdmissionControl admission = new AdmissionControl("test", new AdmissionConfig(10, 100, 1, 10), m_registry);
+
+        // Over budget, but otherwise idle
+        try (AdmissionControl.Permit permit = admission.admit(1000)) {
+            try {
+                admission.admit(1);
+                fail("query admitted over budget");
+            }
+            catch (WebApplicationException e) {
+                assertEquals(503, e.getResponse().getStatus());
+            }
+        }
+
+        try (AdmissionControl.Permit permit = admission.admit(60)) {
+            admission.admit(40).close();
+        }
+
+        assertEquals(1, m_registry.meter("admission.test.queued").getCount());
+        assertEquals(1, m_registry.meter("admission.test.rejected").getCount());
+    }
+
+    @Test
+    public void testQueued() throws InterruptedException {
+        final AdmissionControl admission = new AdmissionControl("test", new AdmissionConfig(1, 0, 1, 10000), m_registry);
+        final CountDownLatch admitted = new CountDownLatch(1);
+
+        AdmissionControl.Permit permit = admission.admit(1);
+
+        Thread waiter = new Thread() {
+
+            @Override
+            public void run() {
+                admission.admit(1).close();
+                admitted.countDown();
+            }
+        };
+
+        waiter.start();
+
+        while (m_registry.meter("admission.test.queued").getCount() < 1) {
+            Thread.sleep(1);
+        }
+
+        // Queue is full
+        try {
+            admission.admit(1);
+            fail("query admitted over limit");
+        }
+        catch (WebApplicationException e) {
+            assertEquals(503, e.getResponse().getStatus());
+        }
+
+        permit.close();
+
+        assertEquals(true, admitted.await(10, TimeUnit.SECONDS));
+        assertEquals(1, m_registry.meter("admission.test.rejected").getCount());
+
+        waiter.join();
+    }
+
+    @Test
+    public void testDisabled() {
+        AdmissionControl admission = AdmissionControl.unlimited();
+
+        try (AdmissionControl.Permit a = admission.admit(Long.MAX_VALUE); AdmissionControl.Permit b = admission.admit(Long.MAX_VALUE)) {
+            // Both admitted
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.Test;
+import org.opennms.newts.api.Measurement;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Results;
+import org.opennms.newts.api.Results.Row;
+import org.opennms.newts.api.Timestamp;
+
+
+public class BinaryMeasurementsWriterTest {
+
+    private final Resource m_resource = new Resource("localhost");
+
+    @Test
+    public void testRoundTrip() throws IOException {
+
+        // Enough rows to span blocks, with a label missing from some rows.
+        int size = (BinaryMeasurementsWriter.BLOCK_ROWS * 2) + 10;
+        Results<Measurement> results = new Results<>();
+
+        for (int i = 0; i < size; i++) {
+            Timestamp timestamp = Timestamp.fromEpochSeconds(900000000 + (i * 300));
+            results.addElement(new Measurement(timestamp, m_resource, "in", i));
+
+            if (i % 3 == 0) {
+                results.addElement(new Measurement(timestamp, m_resource, "out", -i));
+            }
+        }
+
+        Results<Measurement> read = BinaryMeasurementsWriter.read(new ByteArrayInputStream(write(results)), m_resource);
+        Iterator<Row<Measurement>> rows = read.iterator();
+
+        for (int i = 0; i < size; i++) {
+            Row<Measurement> row = rows.next();
+
+            assertEquals(Timestamp.fromEpochSeconds(900000000 + (i * 300)), row.getTimestamp());
+            assertEquals(i, row.getElement("in").getValue(), 0.0d);
+            assertEquals(m_resource, row.getElement("in").getResource());
+
+            if (i % 3 == 0) {
+                assertEquals(-i, row.getElement("out").getValue(), 0.0d);
+            }
+            else {
+                assertNull(row.getElement("out"));
+            }
+        }
+
+        assertEquals(false, rows.hasNext());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        byte[] bytes = write(new Results<Measurement>());
+
+        assertEquals(7, bytes.length);
+        assertEquals(false, BinaryMeasurementsWriter.read(new ByteArrayInputStream(bytes), m_resource).iterator().hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated() throws IOException {
+        Results<Measurement> results = new Results<>();
+        results.addElement(new Measurement(Timestamp.fromEpochSeconds(900000000), m_resource, "in", 1.0d));
+
+        byte[] bytes = write(results);
+
+        BinaryMeasurementsWriter.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 5)), m_resource);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadMagic() throws IOException {
+        BinaryMeasurementsWriter.read(new ByteArrayInputStream(new byte[] { '[', ']', 1, 0, 0, 0, 0 }), m_resource);
+    }
+
+    private static byte[] write(Results<Measurement> results) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BinaryMeasurementsWriter.write(results, output);
+        return output.toByteArray();
+    }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Gauge;
+import org.opennms.newts.api.MetricType;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.SampleBatch;
+import org.opennms.newts.api.Timestamp;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
+
+public class BulkIngestTest {
+
+    private static final String SAMPLE = "{\"timestamp\":%d,\"resource\":{\"id\":\"localhost\"},\"name\":\"load\",\"type\":\"GAUGE\",\"value\":1.5}";
+
+    private final ExecutorService m_executor = Executors.newFixedThreadPool(4);
+    private final BulkIngest m_bulk = new BulkIngest(m_executor, 2);
+    private final List<List<Sample>> m_written = Collections.synchronizedList(Lists.<List<Sample>> newArrayList());
+
+    private final SampleSink m_sink = new SampleSink() {
+
+        @Override
+        public void insert(List<Sample> samples) {
+            m_written.add(samples);
+        }
+    };
+
+    @After
+    public void tearDown() {
+        m_executor.shutdownNow();
+    }
+
+    @Test
+    public void testLines() throws IOException {
+        String body = lines(sample(1), sample(2), "", sample(3), sample(4), sample(5));
+        String acks = ingest(new BulkIngest.LineSource(stream(body), new Context("tenant"), 2), m_sink);
+
+        assertEquals(
+                lines(
+                        "{\"chunk\":0,\"firstLine\":1,\"lastLine\":2,\"samples\":2,\"status\":\"ok\"}",
+                        "{\"chunk\":1,\"firstLine\":3,\"lastLine\":4,\"samples\":1,\"status\":\"ok\"}",
+                        "{\"chunk\":2,\"firstLine\":5,\"lastLine\":6,\"samples\":2,\"status\":\"ok\"}",
+                        "{\"done\":true,\"chunks\":3,\"samples\":5,\"failed\":0}"),
+                acks);
+
+        assertEquals(3, m_written.size());
+        assertEquals(new Context("tenant"), m_written.get(0).get(0).getContext());
+    }
+
+    @Test
+    public void testInvalidLine() throws IOException {
+        String body = lines(sample(1), sample(2), sample(3), "{\"timestamp\":4}", sample(5));
+        String acks = ingest(new BulkIngest.LineSource(stream(body), Context.DEFAULT_CONTEXT, 2), m_sink);
+
+        assertEquals(
+                lines(
+                        "{\"chunk\":0,\"firstLine\":1,\"lastLine\":2,\"samples\":2,\"status\":\"ok\"}",
+                        "{\"chunk\":1,\"firstLine\":3,\"lastLine\":4,\"samples\":0,\"status\":\"invalid\",\"error\":\"line 4: sample is missing a resource\"}",
+                        "{\"chunk\":2,\"firstLine\":5,\"lastLine\":5,\"samples\":1,\"status\":\"ok\"}",
+                        "{\"done\":true,\"chunks\":3,\"samples\":3,\"failed\":1}"),
+                acks);
+
+        // The invalid chunk is not written at all.
+        assertEquals(2, m_written.size());
+    }
+
+    @Test
+    public void testWrongFieldTypes() throws IOException {
+        String body = lines(
+                "{\"timestamp\":\"abc\",\"resource\":{\"id\":\"localhost\"},\"name\":\"load\",\"type\":\"GAUGE\",\"value\":1.5}",
+                "{\"timestamp\":1,\"resource\":{\"id\":\"localhost\"},\"name\":{\"x\":1},\"type\":\"GAUGE\",\"value\":1.5}",
+                "{\"timestamp\":1,\"resource\":{\"id\":[\"localhost\"]},\"name\":\"load\",\"type\":\"GAUGE\",\"value\":1.5}",
+                sample(4));
+        String[] acks = ingest(new BulkIngest.LineSource(stream(body), Context.DEFAULT_CONTEXT, 1), m_sink).split("\n");
+
+        assertEquals(5, acks.length);
+        assertEquals("{\"chunk\":0,\"firstLine\":1,\"lastLine\":1,\"samples\":0,\"status\":\"invalid\",\"error\":\"line 1: sample timestamp must be numeric\"}", acks[0]);
+        assertTrue(acks[1].startsWith("{\"chunk\":1,\"firstLine\":2,\"lastLine\":2,\"samples\":0,\"status\":\"invalid\",\"error\":\"line 2: Invalid sample JSON: expected VALUE_STRING"));
+        assertTrue(acks[2].startsWith("{\"chunk\":2,\"firstLine\":3,\"lastLine\":3,\"samples\":0,\"status\":\"invalid\",\"error\":\"line 3: Invalid sample JSON: expected VALUE_STRING"));
+        assertEquals("{\"chunk\":3,\"firstLine\":4,\"lastLine\":4,\"samples\":1,\"status\":\"ok\"}", acks[3]);
+        assertEquals("{\"done\":true,\"chunks\":4,\"samples\":1,\"failed\":3}", acks[4]);
+
+        assertEquals(1, m_written.size());
+    }
+
+    @Test
+    public void testLongLine() throws IOException {
+        String body = lines(sample(1), sample(2) + Strings.repeat(" ", 200)) + sample(3) + "\r\n" + sample(4);
+        String acks = ingest(new BulkIngest.LineSource(stream(body), Context.DEFAULT_CONTEXT, 2, 150), m_sink);
+
+        assertEquals(
+                lines(
+                        "{\"chunk\":0,\"firstLine\":1,\"lastLine\":2,\"samples\":0,\"status\":\"invalid\",\"error\":\"line 2: longer than 150 characters\"}",
+                        "{\"chunk\":1,\"firstLine\":3,\"lastLine\":4,\"samples\":2,\"status\":\"ok\"}",
+                        "{\"done\":true,\"chunks\":2,\"samples\":2,\"failed\":1}"),
+                acks);
+
+        // Reading resumes at the line following the long one.
+        assertEquals(1, m_written.size());
+        assertEquals(3, m_written.get(0).get(0).getTimestamp().asMillis());
+    }
+
+    @Test
+    public void testFailedChunk() throws IOException {
+        String body = lines(sample(1), sample(2), sample(3));
+        String acks = ingest(new BulkIngest.LineSource(stream(body), Context.DEFAULT_CONTEXT, 1), new SampleSink() {
+
+            @Override
+            public void insert(List<Sample> samples) {
+                if (samples.get(0).getTimestamp().asMillis() == 2) {
+                    throw new WebApplicationException(Response.status(429).entity("over quota").build());
+                }
+            }
+        });
+
+        assertEquals(
+                lines(
+                        "{\"chunk\":0,\"firstLine\":1,\"lastLine\":1,\"samples\":1,\"status\":\"ok\"}",
+                        "{\"chunk\":1,\"firstLine\":2,\"lastLine\":2,\"samples\":0,\"status\":\"failed\",\"error\":\"over quota\"}",
+                        "{\"chunk\":2,\"firstLine\":3,\"lastLine\":3,\"samples\":1,\"status\":\"ok\"}",
+                        "{\"done\":true,\"chunks\":3,\"samples\":2,\"failed\":1}"),
+                acks);
+    }
+
+    @Test
+    public void testOrderedAcks() throws IOException {
+        List<String> body = Lists.newArrayList();
+
+        for (int i = 1; i <= 50; i++) {
+            body.add(sample(i));
+        }
+
+        // Earlier chunks take longer, so complete out of order.
+        String acks = ingest(new BulkIngest.LineSource(stream(lines(body.toArray(new String[0]))), Context.DEFAULT_CONTEXT, 5), new SampleSink() {
+
+            @Override
+            public void insert(List<Sample> samples) {
+                try {
+                    Thread.sleep((samples.get(0).getTimestamp().asMillis() % 10 == 1) ? 20 : 0);
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        String[] lines = acks.split("\n");
+
+        assertEquals(11, lines.length);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(String.format("{\"chunk\":%d,\"firstLine\":%d,\"lastLine\":%d,\"samples\":5,\"status\":\"ok\"}", i, (i * 5) + 1, (i * 5) + 5), lines[i]);
+        }
+    }
+
+    @Test
+    public void testFrames() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream frames = new DataOutputStream(bytes);
+
+        frame(frames, SampleBatch.encode(Lists.newArrayList(gauge(1), gauge(2))));
+        frame(frames, new byte[] { 'N', 'S', 9 });
+        frame(frames, SampleBatch.encode(Lists.newArrayList(gauge(3))));
+
+        String acks = ingest(new BulkIngest.FrameSource(new ByteArrayInputStream(bytes.toByteArray()), new Context("tenant")), m_sink);
+        String[] lines = acks.split("\n");
+
+        assertEquals(4, lines.length);
+        assertEquals("{\"chunk\":0,\"samples\":2,\"status\":\"ok\"}", lines[0]);
+        assertEquals(true, lines[1].startsWith("{\"chunk\":1,\"samples\":0,\"status\":\"invalid\",\"error\":\"invalid sample batch: "));
+        assertEquals("{\"chunk\":2,\"samples\":1,\"status\":\"ok\"}", lines[2]);
+        assertEquals("{\"done\":true,\"chunks\":3,\"samples\":3,\"failed\":1}", lines[3]);
+
+        assertEquals(new Context("tenant"), m_written.get(0).get(0).getContext());
+    }
+
+    @Test
+    public void testBadFrameLength() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream frames = new DataOutputStream(bytes);
+
+        frame(frames, SampleBatch.encode(Lists.newArrayList(gauge(1))));
+        frames.writeInt(-1);
+
+        String acks = ingest(new BulkIngest.FrameSource(new ByteArrayInputStream(bytes.toByteArray()), Context.DEFAULT_CONTEXT), m_sink);
+
+        assertEquals(
+                lines(
+                        "{\"chunk\":0,\"samples\":1,\"status\":\"ok\"}",
+                        "{\"done\":true,\"chunks\":1,\"samples\":1,\"failed\":0,\"error\":\"invalid frame length: -1\"}"),
+                acks);
+    }
+
+    private String ingest(BulkIngest.Source source, SampleSink sink) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        m_bulk.ingest(source, sink).write(output);
+        return new String(output.toByteArray(), Charsets.UTF_8);
+    }
+
+    private static void frame(DataOutputStream output, byte[] frame) throws IOException {
+        output.writeInt(frame.length);
+        output.write(frame);
+    }
+
+    private static Sample gauge(long millis) {
+        return new Sample(Timestamp.fromEpochMillis(millis), new Resource("localhost"), "load", MetricType.GAUGE, new Gauge(1.5d));
+    }
+
+    private static String sample(long millis) {
+        return String.format(SAMPLE, millis);
+    }
+
+    private static String lines(String... lines) {
+        return Joiner.on('\n').join(lines) + "\n";
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(Charsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.Date;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Gauge;
+import org.opennms.newts.api.MetricType;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.Timestamp;
+
+import com.google.common.base.Optional;
+
+
+public class ConditionalRequestsTest {
+
+    private final Resource m_resource = new Resource("localhost");
+    private final Optional<Timestamp> m_start = Optional.of(Timestamp.fromEpochSeconds(900000000));
+    private final Optional<Timestamp> m_end = Optional.of(Timestamp.fromEpochSeconds(900003600));
+
+    @Test
+    public void testTags() throws InterruptedException {
+
+        ConditionalRequests conditional = new ConditionalRequests(true, 10);
+        EntityTag tag = tag(conditional, m_resource, m_end, "temps");
+
+        assertEquals(true, tag.isWeak());
+
+        // Stable until written to
+        assertEquals(tag, tag(conditional, m_resource, m_end, "temps"));
+
+        // ...distinct by window and variant
+        assertNotEquals(tag, tag(conditional, m_resource, Optional.of(Timestamp.fromEpochSeconds(900007200)), "temps"));
+        assertNotEquals(tag, tag(conditional, m_resource, m_end, "other"));
+
+        // ...and unaffected by writes to other resources
+        Thread.sleep(2);
+        conditional.written(Collections.singletonList(sample(new Resource("other"))));
+        assertEquals(tag, tag(conditional, m_resource, m_end, "temps"));
+
+        conditional.written(Collections.singletonList(sample(m_resource)));
+        assertNotEquals(tag, tag(conditional, m_resource, m_end, "temps"));
+    }
+
+    @Test
+    public void testOpenWindow() {
+        ConditionalRequests conditional = new ConditionalRequests(true, 10);
+        Request request = mock(Request.class);
+
+        assertNull(conditional.validators(Context.DEFAULT_CONTEXT, m_resource, m_start, Optional.<Timestamp> absent()).evaluate(request));
+        assertNull(conditional.validators(Context.DEFAULT_CONTEXT, m_resource, Optional.<Timestamp> absent(), m_end).evaluate(request));
+        assertNull(conditional.validators(Context.DEFAULT_CONTEXT, m_resource, m_start, Optional.<Timestamp> absent()).ok("entity").getMetadata().getFirst("ETag"));
+    }
+
+    @Test
+    public void testDisabled() {
+        ConditionalRequests conditional = ConditionalRequests.disabled();
+        Response response = conditional.validators(Context.DEFAULT_CONTEXT, m_resource, m_start, m_end).ok("entity");
+
+        assertNull(response.getMetadata().getFirst("ETag"));
+        assertNull(response.getMetadata().getFirst("Last-Modified"));
+    }
+
+    private EntityTag tag(ConditionalRequests conditional, Resource resource, Optional<Timestamp> end, String variant) {
+        Request request = mock(Request.class);
+        ArgumentCaptor<EntityTag> tag = ArgumentCaptor.forClass(EntityTag.class);
+
+        conditional.validators(Context.DEFAULT_CONTEXT, resource, m_start, end, variant).evaluate(request);
+        verify(request).evaluatePreconditions(any(Date.class), tag.capture());
+
+        Response response = conditional.validators(Context.DEFAULT_CONTEXT, resource, m_start, end, variant).ok("entity");
+        assertEquals(tag.getValue(), response.getMetadata().getFirst("ETag"));
+        assertNotNull(response.getMetadata().getFirst("Last-Modified"));
+
+        return tag.getValue();
+    }
+
+    private static void assertNotEquals(Object a, Object b) {
+        assertEquals(false, a.equals(b));
+    }
+
+    private static Sample sample(Resource resource) {
+        return new Sample(Timestamp.fromEpochSeconds(900000000), resource, "temperature", MetricType.GAUGE, new Gauge(20.0d));
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.ws.rs.WebApplicationException;
+
+import org.junit.Test;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Gauge;
+import org.opennms.newts.api.MetricType;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.Timestamp;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+
+public class ContextQuotasTest {
+
+    private final Context m_limited = new Context("limited");
+    private final MetricRegistry m_registry = new MetricRegistry();
+    private final ContextQuotas m_quotas = new ContextQuotas(
+            new QuotasConfig(new QuotaConfig(0, 0), Collections.singletonMap("limited", new QuotaConfig(1, 1))),
+            m_registry);
+
+    @Test
+    public void testQueryConcurrency() {
+
+        try (ContextQuotas.Admission admission = m_quotas.admitQuery(m_limited)) {
+            // Other contexts are unaffected
+            m_quotas.admitQuery(Context.DEFAULT_CONTEXT).close();
+
+            try {
+                m_quotas.admitQuery(m_limited);
+                fail("query admitted over quota");
+            }
+            catch (WebApplicationException e) {
+                assertEquals(ContextQuotas.TOO_MANY_REQUESTS, e.getResponse().getStatus());
+            }
+        }
+
+        // The permit is returned on close
+        m_quotas.admitQuery(m_limited).close();
+
+        assertEquals(1, m_registry.meter("contexts.limited.rejected").getCount());
+        assertEquals(2, m_registry.timer("contexts.limited.select").getCount());
+    }
+
+    @Test
+    public void testIngestRate() {
+
+        m_quotas.admitInsert(samples(Context.DEFAULT_CONTEXT, 100)).close();
+
+        try {
+            m_quotas.admitInsert(samples(m_limited, 100)).close();
+            m_quotas.admitInsert(samples(m_limited, 100)).close();
+            fail("insert admitted over quota");
+        }
+        catch (WebApplicationException e) {
+            assertEquals(ContextQuotas.TOO_MANY_REQUESTS, e.getResponse().getStatus());
+        }
+
+        assertEquals(100, m_registry.meter("contexts.unlisted.samples").getCount());
+        assertEquals(100, m_registry.meter("contexts.limited.samples").getCount());
+        assertEquals(1, m_registry.meter("contexts.limited.rejected").getCount());
+    }
+
+    @Test
+    public void testUnlistedContextsShareQuota() {
+        ContextQuotas quotas = new ContextQuotas(new QuotasConfig(new QuotaConfig(1, 1), Collections.<String, QuotaConfig> emptyMap()), m_registry);
+
+        try (ContextQuotas.Admission admission = quotas.admitQuery(new Context("a"))) {
+            try {
+                quotas.admitQuery(new Context("b"));
+                fail("query admitted over (shared) quota");
+            }
+            catch (WebApplicationException e) {
+                assertEquals(ContextQuotas.TOO_MANY_REQUESTS, e.getResponse().getStatus());
+            }
+        }
+
+        // No metrics are registered for unlisted contexts
+        for (String name : m_registry.getNames()) {
+            assertTrue(name, name.startsWith("contexts.unlisted.") || name.startsWith("contexts.limited."));
+        }
+    }
+
+    @Test
+    public void testRejectedInsertRefunds() {
+        Map<String, QuotaConfig> contexts = Maps.newHashMap();
+        contexts.put("a", new QuotaConfig(1000, 0));
+        contexts.put("b", new QuotaConfig(1, 0));
+
+        ContextQuotas quotas = new ContextQuotas(new QuotasConfig(new QuotaConfig(0, 0), contexts), m_registry);
+
+        // Exhaust b
+        quotas.admitInsert(samples(new Context("b"), 1)).close();
+
+        Collection<Sample> both = samples(new Context("a"), 500);
+        both.addAll(samples(new Context("b"), 1));
+
+        try {
+            quotas.admitInsert(both);
+            fail("insert admitted over quota");
+        }
+        catch (WebApplicationException e) {
+            assertEquals(ContextQuotas.TOO_MANY_REQUESTS, e.getResponse().getStatus());
+        }
+
+        // Nothing was charged to a, (so all of its quota remains).
+        quotas.admitInsert(samples(new Context("a"), 1000)).close();
+    }
+
+    @Test
+    public void testTokenBucket() {
+        ContextQuotas.TokenBucket bucket = new ContextQuotas.TokenBucket(10);
+
+        assertTrue(bucket.tryAcquire(6));
+        assertFalse(bucket.tryAcquire(6));
+
+        bucket.release(6);
+        assertTrue(bucket.tryAcquire(10));
+
+        // Oversized charges are admitted (only) by a full bucket
+        bucket.release(10);
+        assertTrue(bucket.tryAcquire(25));
+        assertFalse(bucket.tryAcquire(1));
+    }
+
+    private static Collection<Sample> samples(Context context, int count) {
+        Collection<Sample> samples = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            samples.add(new Sample(Timestamp.fromEpochSeconds(i), context, new Resource("localhost"), "load", MetricType.GAUGE, new Gauge(1.0d)));
+        }
+        return samples;
+    }
+
+}
@@ -15,11 +15,15 @@
  */
 package org.opennms.newts.rest;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -34,8 +38,10 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.codec.binary.Base64;
 import org.junit.Before;
 import org.junit.Test;
+import org.mindrot.jbcrypt.BCrypt;
 import org.opennms.newts.rest.HttpBasicAuthenticationFilter.Credentials;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Charsets;
 
 public class HttpBasicAuthenticationFilterTest {
@@ -48,6 +54,7 @@ public class HttpBasicAuthenticationFilterTest {
     private FilterChain m_chain;
     private NewtsConfig m_newtsConfig;
     private AuthenticationConfig m_authConfig;
+    private MetricRegistry m_registry;
     private HttpBasicAuthenticationFilter m_filter;
 
     @Before
@@ -57,13 +64,17 @@ public class HttpBasicAuthenticationFilterTest {
         m_chain = mock(FilterChain.class);
         m_newtsConfig = mock(NewtsConfig.class);
         m_authConfig = mock(AuthenticationConfig.class);
-        m_filter = new HttpBasicAuthenticationFilter(m_newtsConfig);
+        m_registry = new MetricRegistry();
 
         when(m_request.getHeader("Authorization")).thenReturn(basicAuthHeader(m_user, m_pass));
         when(m_request.getMethod()).thenReturn("GET");
         when(m_authConfig.isEnabled()).thenReturn(true);
         when(m_authConfig.getCredentials()).thenReturn(Collections.singletonMap(m_user, m_pass));
+        when(m_authConfig.getCacheMaxEntries()).thenReturn(1000L);
+        when(m_authConfig.getCacheTtlSeconds()).thenReturn(300L);
         when(m_newtsConfig.getAuthenticationConfig()).thenReturn(m_authConfig);
+
+        m_filter = new HttpBasicAuthenticationFilter(m_newtsConfig, m_registry);
     }
 
     @Test
@@ -110,6 +121,91 @@ public class HttpBasicAuthenticationFilterTest {
 
     }
 
+    @Test
+    public void testHashedPassword() throws IOException, ServletException {
+        when(m_authConfig.getCredentials()).thenReturn(Collections.singletonMap(m_user, BCrypt.hashpw(m_pass, BCrypt.gensalt(4))));
+
+        m_filter.doFilter(m_request, m_response, m_chain);
+
+        verify(m_chain).doFilter(m_request, m_response);
+
+        // Correct user, wrong password
+        when(m_request.getHeader("Authorization")).thenReturn(basicAuthHeader(m_user, "sparkles"));
+
+        m_filter.doFilter(m_request, m_response, m_chain);
+
+        verify(m_response).sendError(eq(401), any(String.class));
+        assertThat(m_registry.meter("authentication.failures").getCount(), is(1L));
+
+    }
+
+    @Test
+    public void testCachedVerification() throws IOException, ServletException {
+
+        for (int i = 0; i < 3; i++) {
+            m_filter.doFilter(m_request, m_response, m_chain);
+        }
+
+        verify(m_chain, times(3)).doFilter(m_request, m_response);
+        verify(m_response, never()).sendError(any(Integer.class), any(String.class));
+
+        // Only the first request should have consulted the configured credentials, (besides
+        // their validation at startup).
+        verify(m_authConfig, times(2)).getCredentials();
+        assertThat(m_registry.meter("authentication.cache-misses").getCount(), is(1L));
+        assertThat(m_registry.timer("authentication.latency").getCount(), is(3L));
+
+        // Failures are never cached
+        when(m_request.getHeader("Authorization")).thenReturn(basicAuthHeader("peter", "sparkles"));
+
+        m_filter.doFilter(m_request, m_response, m_chain);
+        m_filter.doFilter(m_request, m_response, m_chain);
+
+        verify(m_response, times(2)).sendError(eq(401), any(String.class));
+        assertThat(m_registry.meter("authentication.cache-misses").getCount(), is(3L));
+        assertThat(m_registry.meter("authentication.failures").getCount(), is(2L));
+
+    }
+
+    @Test
+    public void testIsHashed() {
+        assertThat(HttpBasicAuthenticationFilter.isHashed(BCrypt.hashpw(m_pass, BCrypt.gensalt(4))), is(true));
+        assertThat(HttpBasicAuthenticationFilter.isHashed(m_pass), is(false));
+        assertThat(HttpBasicAuthenticationFilter.isHashed("$2x$10$abc"), is(true));
+    }
+
+    @Test
+    public void testHashVersions() throws IOException, ServletException {
+        String hash = BCrypt.hashpw(m_pass, BCrypt.gensalt(4));
+
+        // $2b$ and $2y$ hashes are verified as the equivalent $2a$.
+        for (String version : new String[] { "$2b$", "$2y$" }) {
+            when(m_authConfig.getCredentials()).thenReturn(Collections.singletonMap(m_user, version + hash.substring(4)));
+
+            new HttpBasicAuthenticationFilter(m_newtsConfig, m_registry).doFilter(m_request, m_response, m_chain);
+        }
+
+        verify(m_chain, times(2)).doFilter(m_request, m_response);
+        verify(m_response, never()).sendError(any(Integer.class), any(String.class));
+    }
+
+    @Test
+    public void testUnsupportedHash() {
+        String hash = BCrypt.hashpw(m_pass, BCrypt.gensalt(4));
+
+        for (String password : new String[] { "$2x$" + hash.substring(4), hash.substring(0, 59), "$2$10$short" }) {
+            when(m_authConfig.getCredentials()).thenReturn(Collections.singletonMap(m_user, password));
+
+            try {
+                new HttpBasicAuthenticationFilter(m_newtsConfig, m_registry);
+                fail(String.format("accepted %s", password));
+            }
+            catch (IllegalArgumentException e) {
+                assertThat(e.getMessage(), containsString(m_user));
+            }
+        }
+    }
+
     @Test
     public void testCredentials() {
         String user = "eevans", pass = "qwerty";
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Sample;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Charsets;
+
+
+public class LineListenerTest {
+
+    private final MetricRegistry m_registry = new MetricRegistry();
+    private final BlockingQueue<Sample> m_written = new LinkedBlockingQueue<>();
+    private LineListener m_listener;
+
+    private final SampleSink m_sink = new SampleSink() {
+
+        @Override
+        public void insert(List<Sample> samples) {
+            m_written.addAll(samples);
+        }
+    };
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_listener != null) {
+            m_listener.stop();
+        }
+    }
+
+    @Test
+    public void testTcp() throws Exception {
+        start(LineParser.Protocol.GRAPHITE, LineListenerConfig.Transport.TCP);
+
+        try (Socket socket = new Socket("127.0.0.1", m_listener.getAddress().getPort())) {
+            OutputStream output = socket.getOutputStream();
+
+            // Lines split across writes, a malformed line, and an unterminated last line.
+            output.write("a.b 1 1420070400\na.".getBytes(Charsets.UTF_8));
+            output.flush();
+            output.write("c 2 1420070400\nbogus\na.d 3 1420070400".getBytes(Charsets.UTF_8));
+            output.flush();
+        }
+
+        assertEquals("b", take().getName());
+        assertEquals("c", take().getName());
+
+        Sample last = take();
+        assertEquals("d", last.getName());
+        assertEquals(new Context("tenant"), last.getContext());
+
+        assertEquals(3, awaitCount("listeners.test.samples", 3));
+        assertEquals(1, m_registry.meter("listeners.test.errors").getCount());
+    }
+
+    @Test
+    public void testLongLines() throws Exception {
+        start(LineParser.Protocol.GRAPHITE, LineListenerConfig.Transport.TCP, 16);
+
+        try (Socket socket = new Socket("127.0.0.1", m_listener.getAddress().getPort())) {
+            OutputStream output = socket.getOutputStream();
+
+            // A complete line too long, (read in one go), between two short ones.
+            output.write("a.b 1 1420070400\na.toolong 2 1420070400\na.c 3 1420070400\n".getBytes(Charsets.UTF_8));
+            output.flush();
+        }
+
+        assertEquals("b", take().getName());
+        assertEquals("c", take().getName());
+
+        assertEquals(2, awaitCount("listeners.test.samples", 2));
+        assertEquals(1, m_registry.meter("listeners.test.errors").getCount());
+    }
+
+    @Test
+    public void testStopClosesConnections() throws Exception {
+        start(LineParser.Protocol.GRAPHITE, LineListenerConfig.Transport.TCP);
+
+        try (Socket socket = new Socket("127.0.0.1", m_listener.getAddress().getPort())) {
+            socket.getOutputStream().write("a.b 1 1420070400\n".getBytes(Charsets.UTF_8));
+            take();
+
+            m_listener.stop();
+            m_listener = null;
+
+            socket.setSoTimeout(5000);
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void testUdp() throws Exception {
+        start(LineParser.Protocol.INFLUX, LineListenerConfig.Transport.UDP);
+
+        byte[] datagram = "cpu,host=web1 user=1.5,system=2 1420070400000000000\ncpu user=\n".getBytes(Charsets.UTF_8);
+
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.send(new DatagramPacket(datagram, datagram.length, m_listener.getAddress()));
+        }
+
+        assertEquals("user", take().getName());
+        assertEquals("system", take().getName());
+
+        assertEquals(2, awaitCount("listeners.test.samples", 2));
+        assertEquals(1, m_registry.meter("listeners.test.errors").getCount());
+    }
+
+    private void start(LineParser.Protocol protocol, LineListenerConfig.Transport transport) throws Exception {
+        start(protocol, transport, 65536);
+    }
+
+    private void start(LineParser.Protocol protocol, LineListenerConfig.Transport transport, int maxLineLength) throws Exception {
+        m_listener = new LineListener("test", new LineListenerConfig(protocol, transport, "127.0.0.1", 0, "tenant", maxLineLength), m_sink, m_registry);
+        m_listener.start();
+    }
+
+    /** Meters are marked once the sink returns; Waits (briefly) for the expected count. */
+    private long awaitCount(String meter, long expected) throws InterruptedException {
+        for (int i = 0; i < 50 && m_registry.meter(meter).getCount() < expected; i++) {
+            Thread.sleep(100);
+        }
+        return m_registry.meter(meter).getCount();
+    }
+
+    private Sample take() throws InterruptedException {
+        Sample sample = m_written.poll(5, TimeUnit.SECONDS);
+
+        if (sample == null) {
+            throw new AssertionError("timed out waiting for sample");
+        }
+
+        return sample;
+    }
+
+}
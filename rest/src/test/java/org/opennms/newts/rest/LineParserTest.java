@@ -0,0 +1,239 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.Timestamp;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+
+public class LineParserTest {
+
+    private static final Context CONTEXT = new Context("tenant");
+    private static final Timestamp NOW = Timestamp.fromEpochSeconds(1420070400);
+
+    @Test
+    public void testGraphite() {
+        LineParser parser = LineParser.create(LineParser.Protocol.GRAPHITE, CONTEXT);
+
+        Sample sample = parseOne(parser, "servers.web1.cpu.user 1.5 1420070460");
+
+        assertEquals("servers.web1.cpu", sample.getResource().getId());
+        assertEquals("user", sample.getName());
+        assertEquals(1.5d, sample.getValue().doubleValue(), 0.0d);
+        assertEquals(Timestamp.fromEpochSeconds(1420070460), sample.getTimestamp());
+        assertEquals(CONTEXT, sample.getContext());
+
+        // No (or a -1) timestamp
+        assertEquals(NOW, parseOne(parser, "servers.web1.cpu.user 1.5").getTimestamp());
+        assertEquals(NOW, parseOne(parser, "servers.web1.cpu.user 1.5 -1\r").getTimestamp());
+
+        // Single segment
+        sample = parseOne(parser, "uptime\t42 1420070460");
+        assertEquals("uptime", sample.getResource().getId());
+        assertEquals(LineParser.DEFAULT_METRIC, sample.getName());
+
+        // Tags
+        sample = parseOne(parser, "disk.used;mount=/var;host=web1 10 1420070460");
+        assertEquals("disk,host=web1,mount=/var", sample.getResource().getId());
+        assertEquals(ImmutableMap.of("host", "web1", "mount", "/var"), sample.getResource().getAttributes().get());
+        assertEquals("used", sample.getName());
+
+        assertEquals(0, parse(parser, "   ").size());
+        assertMalformed(parser, "servers.web1.cpu.user");
+        assertMalformed(parser, "servers.web1.cpu.user one");
+        assertMalformed(parser, "servers.web1.cpu.user 1 1420070460 extra");
+        assertMalformed(parser, "servers.web1.cpu. 1");
+        assertMalformed(parser, "disk.used;mount 10");
+    }
+
+    @Test
+    public void testOpenTsdb() {
+        LineParser parser = LineParser.create(LineParser.Protocol.OPENTSDB, CONTEXT);
+
+        Sample sample = parseOne(parser, "put sys.cpu.user 1420070460 42.5 host=web1 cpu=0");
+
+        assertEquals("sys.cpu,cpu=0,host=web1", sample.getResource().getId());
+        assertEquals(ImmutableMap.of("cpu", "0", "host", "web1"), sample.getResource().getAttributes().get());
+        assertEquals("user", sample.getName());
+        assertEquals(42.5d, sample.getValue().doubleValue(), 0.0d);
+        assertEquals(Timestamp.fromEpochSeconds(1420070460), sample.getTimestamp());
+
+        // Milliseconds
+        assertEquals(Timestamp.fromEpochMillis(1420070460123L), parseOne(parser, "put sys.cpu.user 1420070460123 1 host=web1").getTimestamp());
+
+        assertMalformed(parser, "version");
+        assertMalformed(parser, "put sys.cpu.user 1420070460");
+        assertMalformed(parser, "put sys.cpu.user soon 1 host=web1");
+        assertMalformed(parser, "put sys.cpu.user 1420070460 1 host");
+    }
+
+    @Test
+    public void testInflux() {
+        LineParser parser = LineParser.create(LineParser.Protocol.INFLUX, CONTEXT);
+
+        List<Sample> samples = parse(parser, "cpu,host=web1,cpu=cpu0 user=1.5,system=2i,idle=true,note=\"a, b c\" 1420070460000000000");
+
+        assertEquals(3, samples.size());
+
+        for (Sample sample : samples) {
+            assertEquals("cpu,cpu=cpu0,host=web1", sample.getResource().getId());
+            assertEquals(Timestamp.fromEpochSeconds(1420070460), sample.getTimestamp());
+            assertEquals(CONTEXT, sample.getContext());
+        }
+
+        assertEquals("user", samples.get(0).getName());
+        assertEquals(1.5d, samples.get(0).getValue().doubleValue(), 0.0d);
+        assertEquals("system", samples.get(1).getName());
+        assertEquals(2.0d, samples.get(1).getValue().doubleValue(), 0.0d);
+        assertEquals("idle", samples.get(2).getName());
+        assertEquals(1.0d, samples.get(2).getValue().doubleValue(), 0.0d);
+
+        // Escapes, and no timestamp
+        Sample sample = parseOne(parser, "disk\\ io,path=C:\\,\\ D: read\\ bytes=10u");
+        assertEquals("disk io,path=C:\\, D:", sample.getResource().getId());
+        assertEquals(ImmutableMap.of("path", "C:, D:"), sample.getResource().getAttributes().get());
+        assertEquals("read bytes", sample.getName());
+        assertEquals(NOW, sample.getTimestamp());
+
+        assertEquals(0, parse(parser, "# comment").size());
+        assertEquals(0, parse(parser, "weather,city=x summary=\"sunny\"").size());
+
+        assertMalformed(parser, "cpu");
+        assertMalformed(parser, "cpu,host user=1");
+        assertMalformed(parser, "cpu user=");
+        assertMalformed(parser, "cpu user=maybe");
+        assertMalformed(parser, "cpu user=1 soon");
+        assertMalformed(parser, "cpu note=\"unterminated");
+        assertMalformed(parser, "cpu user=1,system=x");
+        assertMalformed(parser, "cpu user=1 99999999999999999999");
+    }
+
+    @Test
+    public void testEscapedIds() {
+        LineParser parser = LineParser.create(LineParser.Protocol.INFLUX, CONTEXT);
+
+        // Tags that would otherwise join to the same ID.
+        Sample a = parseOne(parser, "cpu,host=a\\,b\\=c value=1");
+        Sample b = parseOne(parser, "cpu,b=c,host=a value=1");
+
+        assertEquals("cpu,host=a\\,b\\=c", a.getResource().getId());
+        assertEquals("cpu,b=c,host=a", b.getResource().getId());
+
+        parser = LineParser.create(LineParser.Protocol.GRAPHITE, CONTEXT);
+
+        assertEquals("x\\,host\\=web1", parseOne(parser, "x,host=web1.used 1").getResource().getId());
+        assertEquals("x,host=web1", parseOne(parser, "x.used;host=web1 1").getResource().getId());
+    }
+
+    @Test
+    public void testCachedSeries() {
+        LineParser parser = LineParser.create(LineParser.Protocol.OPENTSDB, CONTEXT);
+
+        Sample first = parseOne(parser, "put sys.cpu.user 1420070460 1 host=web1 cpu=0");
+        Sample second = parseOne(parser, "put sys.cpu.user 1420070520 2 host=web1 cpu=0");
+        Sample other = parseOne(parser, "put sys.cpu.user 1420070520 2 host=web1 cpu=1");
+
+        // Lines of a series share its resource, and name.
+        assertSame(first.getResource(), second.getResource());
+        assertSame(first.getName(), second.getName());
+        assertEquals(2.0d, second.getValue().doubleValue(), 0.0d);
+        assertEquals("sys.cpu,cpu=1,host=web1", other.getResource().getId());
+
+        // As do those of Influx fields.
+        parser = LineParser.create(LineParser.Protocol.INFLUX, CONTEXT);
+
+        first = parseOne(parser, "cpu,host=web1 user=1");
+        second = parseOne(parser, "cpu,host=web1 user=2");
+
+        assertSame(first.getResource(), second.getResource());
+        assertSame(first.getName(), second.getName());
+    }
+
+    @Test
+    public void testParseDouble() {
+        for (String value : new String[] { "0", "-0", "1.5", "-273.15", "+12", "0.1", ".5", "5.", "123456789.123456", "1e3", "1.7976931348623157E308", "4.9e-324", "NaN", "12345678901234567890" }) {
+            assertEquals(value, Double.parseDouble(value), LineParser.parseDouble(buffer(value), 0, value.length()), 0.0d);
+        }
+
+        for (String value : new String[] { "", "-", ".", "1.2.3", "one", "0x10" }) {
+            try {
+                LineParser.parseDouble(buffer(value), 0, value.length());
+                throw new AssertionError(String.format("parsed %s", value));
+            }
+            catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testParseInPlace() {
+        LineParser parser = LineParser.create(LineParser.Protocol.GRAPHITE, CONTEXT);
+        ChannelBuffer buffer = buffer("a.b 1 1420070460\na.c 2 1420070460\n");
+        List<Sample> samples = Lists.newArrayList();
+
+        parser.parse(buffer, 17, 33, NOW, samples);
+
+        assertEquals("c", samples.get(0).getName());
+        assertEquals(0, buffer.readerIndex());
+    }
+
+    private static Sample parseOne(LineParser parser, String line) {
+        List<Sample> samples = parse(parser, line);
+        assertEquals(1, samples.size());
+        return samples.get(0);
+    }
+
+    private static List<Sample> parse(LineParser parser, String line) {
+        ChannelBuffer buffer = buffer(line);
+        List<Sample> samples = Lists.newArrayList();
+        parser.parse(buffer, buffer.readerIndex(), buffer.writerIndex(), NOW, samples);
+        return samples;
+    }
+
+    private static void assertMalformed(LineParser parser, String line) {
+        List<Sample> samples = Lists.newArrayList();
+
+        try {
+            ChannelBuffer buffer = buffer(line);
+            parser.parse(buffer, buffer.readerIndex(), buffer.writerIndex(), NOW, samples);
+            throw new AssertionError(String.format("parsed %s", line));
+        }
+        catch (IllegalArgumentException e) {
+            assertTrue(samples.isEmpty());
+        }
+    }
+
+    private static ChannelBuffer buffer(String value) {
+        return ChannelBuffers.copiedBuffer(value, CharsetUtil.UTF_8);
+    }
+
+}
@@ -16,26 +16,49 @@
 package org.opennms.newts.rest;
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collection;
+import java.io.StringWriter;
+import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 
 import org.hamcrest.CoreMatchers;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Deadline;
 import org.opennms.newts.api.Duration;
+import org.opennms.newts.api.Gauge;
 import org.opennms.newts.api.Measurement;
+import org.opennms.newts.api.MetricType;
 import org.opennms.newts.api.Resource;
 import org.opennms.newts.api.Results;
+import org.opennms.newts.api.Sample;
 import org.opennms.newts.api.SampleRepository;
 import org.opennms.newts.api.Timestamp;
+import org.opennms.newts.api.query.Downsampling;
 import org.opennms.newts.api.query.ResultDescriptor;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -50,11 +73,13 @@ public class MeasurementsResourceTest {
 
     private final SampleRepository m_repository = mock(SampleRepository.class);
     private final Map<String, ResultDescriptorDTO> m_reports = Maps.newHashMap();
-    private final MeasurementsResource m_resource = new MeasurementsResource(m_repository, m_reports);
+    private final Request m_request = mock(Request.class);
+    private MeasurementsResource m_resource;
 
     @Before
     public void setUp() throws Exception {
         m_reports.put("temps", getResultDescriptorDTO());
+        m_resource = new MeasurementsResource(m_repository, m_reports);
     }
 
     @Test
@@ -64,11 +89,14 @@ public class MeasurementsResourceTest {
 
         when(
                 m_repository.select(
+                        eq(Context.DEFAULT_CONTEXT),
                         eq(new Resource("localhost")),
                         eq(Optional.of(Timestamp.fromEpochSeconds(900000000))),
                         eq(Optional.of(Timestamp.fromEpochSeconds(900003600))),
                         any(ResultDescriptor.class),
-                        eq(Duration.seconds(900)))
+                        eq(Duration.seconds(900)),
+                        eq(Optional.<Downsampling> absent()),
+                        any(Deadline.class))
         ).thenReturn(results);
 
         // Reference the report by name
@@ -78,8 +106,15 @@ public class MeasurementsResourceTest {
                         new Resource("localhost"),
                         Optional.of("1998-07-09T11:00:00-0500"),
                         Optional.of("1998-07-09T12:00:00-0500"),
-                        Optional.of("15m")),
-                CoreMatchers.instanceOf(Collection.class));
+                        Optional.of("15m"),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        null,
+                        m_request).getEntity(),
+                CoreMatchers.instanceOf(MeasurementResults.class));
 
         // Include the report in the request
         assertThat(
@@ -88,8 +123,248 @@ public class MeasurementsResourceTest {
                         new Resource("localhost"),
                         Optional.of("1998-07-09T11:00:00-0500"),
                         Optional.of("1998-07-09T12:00:00-0500"),
-                        Optional.of("15m")),
-                CoreMatchers.instanceOf(Collection.class));
+                        Optional.of("15m"),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        Optional.<String> absent()),
+                CoreMatchers.instanceOf(MeasurementResults.class));
+    }
+
+    @Test
+    public void testDownsampledMeasurements() throws Exception {
+
+        final Results<Measurement> results = new Results<>();
+
+        when(
+                m_repository.select(
+                        eq(Context.DEFAULT_CONTEXT),
+                        eq(new Resource("localhost")),
+                        eq(Optional.of(Timestamp.fromEpochSeconds(900000000))),
+                        eq(Optional.of(Timestamp.fromEpochSeconds(900003600))),
+                        any(ResultDescriptor.class),
+                        eq(Duration.seconds(300)),
+                        eq(Optional.of(Downsampling.m4(100))),
+                        any(Deadline.class))
+        ).thenReturn(results);
+
+        assertThat(
+                m_resource.getMeasurements(
+                        "temps",
+                        new Resource("localhost"),
+                        Optional.of("1998-07-09T11:00:00-0500"),
+                        Optional.of("1998-07-09T12:00:00-0500"),
+                        Optional.of("5m"),
+                        Optional.of("100"),
+                        Optional.of("m4"),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        null,
+                        m_request).getEntity(),
+                CoreMatchers.instanceOf(MeasurementResults.class));
+
+        verify(m_repository).select(
+                eq(Context.DEFAULT_CONTEXT),
+                eq(new Resource("localhost")),
+                eq(Optional.of(Timestamp.fromEpochSeconds(900000000))),
+                eq(Optional.of(Timestamp.fromEpochSeconds(900003600))),
+                any(ResultDescriptor.class),
+                eq(Duration.seconds(300)),
+                eq(Optional.of(Downsampling.m4(100))),
+                any(Deadline.class));
+    }
+
+    @Test(expected = WebApplicationException.class)
+    public void testBadDownsampling() throws Exception {
+        m_resource.getMeasurements(
+                "temps",
+                new Resource("localhost"),
+                Optional.<String> absent(),
+                Optional.<String> absent(),
+                Optional.of("5m"),
+                Optional.of("100"),
+                Optional.of("bogus"),
+                Optional.<String> absent(),
+                Optional.<String> absent(),
+                Optional.<String> absent(),
+                null,
+                m_request);
+    }
+
+    @Test(expected = WebApplicationException.class)
+    public void testBadFormat() throws Exception {
+        m_resource.getMeasurements(
+                "temps",
+                new Resource("localhost"),
+                Optional.<String> absent(),
+                Optional.<String> absent(),
+                Optional.of("5m"),
+                Optional.<String> absent(),
+                Optional.<String> absent(),
+                Optional.<String> absent(),
+                Optional.of("bogus"),
+                Optional.<String> absent(),
+                null,
+                m_request);
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+
+        MeasurementsResource resource = new MeasurementsResource(m_repository, new ResultDescriptors(m_reports, 10), ContextQuotas.unlimited(), new ConditionalRequests(true, 10), AdmissionControl.unlimited(), QueryTimeouts.none(), new StreamsConfig());
+
+        when(m_request.evaluatePreconditions(any(Date.class), any(EntityTag.class))).thenReturn(Response.notModified());
+
+        Response response = resource.getMeasurements(
+                "temps",
+                new Resource("localhost"),
+                Optional.of("1998-07-09T11:00:00-0500"),
+                Optional.of("1998-07-09T12:00:00-0500"),
+                Optional.of("15m"),
+                Optional.<String> absent(),
+                Optional.<String> absent(),
+                Optional.<String> absent(),
+                Optional.<String> absent(),
+                Optional.<String> absent(),
+                null,
+                m_request);
+
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+
+        // Answered without querying
+        verifyZeroInteractions(m_repository);
+    }
+
+    @Test
+    public void testUnknownReport() throws Exception {
+        assertEquals(
+                Response.Status.NOT_FOUND.getStatusCode(),
+                m_resource.getMeasurements(
+                        "bogus",
+                        new Resource("localhost"),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        Optional.of("15m"),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        null,
+                        m_request).getStatus());
+    }
+
+    @Test
+    public void testStreamMeasurements() throws Exception {
+
+        Resource localhost = new Resource("localhost");
+        Results<Sample> samples = new Results<>();
+
+        for (int i = 0; i <= 6; i++) {
+            Timestamp ts = Timestamp.fromEpochSeconds(900000000 + (i * 300));
+            samples.addElement(new Sample(ts, localhost, "temperature", MetricType.GAUGE, new Gauge(20.0d)));
+        }
+
+        when(
+                m_repository.select(
+                        eq(Context.DEFAULT_CONTEXT),
+                        eq(localhost),
+                        eq(Optional.of(Timestamp.fromEpochSeconds(899998200))),
+                        eq(Optional.<Timestamp> absent()),
+                        any(Deadline.class))
+        ).thenReturn(samples);
+
+        Response response = m_resource.streamMeasurements(
+                "temps",
+                localhost,
+                Optional.of("1998-07-09T11:00:00-0500"),
+                Optional.of("15m"),
+                Optional.<String> absent(),
+                Optional.<String> absent());
+
+        assertThat(response.getEntity(), CoreMatchers.instanceOf(MeasurementsStream.class));
+
+        // Rows at 11:00, 11:15, and 11:30 are complete.
+        StringWriter writer = new StringWriter();
+        assertEquals(3, ((MeasurementsStream) response.getEntity()).poll(writer));
+        assertThat(writer.toString(), CoreMatchers.containsString("data: [{\"name\":\"temperature\",\"timestamp\":900000900000,\"value\":20.0}]\n\n"));
+
+        // Unknown report
+        assertEquals(
+                Response.Status.NOT_FOUND.getStatusCode(),
+                m_resource.streamMeasurements("bogus", localhost, Optional.<String> absent(), Optional.of("15m"), Optional.<String> absent(), Optional.<String> absent()).getStatus());
+    }
+
+    @Test
+    public void testStreamLimit() throws Exception {
+
+        final MeasurementsResource resource = new MeasurementsResource(m_repository, new ResultDescriptors(m_reports, 10), ContextQuotas.unlimited(), ConditionalRequests.disabled(), AdmissionControl.unlimited(), QueryTimeouts.none(), new StreamsConfig(1, 1));
+        final CountDownLatch polling = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+
+        when(m_repository.select(any(Context.class), any(Resource.class), any(Optional.class), any(Optional.class), any(Deadline.class))).thenAnswer(new Answer<Results<Sample>>() {
+
+            @Override
+            public Results<Sample> answer(InvocationOnMock invocation) throws Throwable {
+                polling.countDown();
+                proceed.await();
+                return new Results<Sample>();
+            }
+        });
+
+        final MeasurementsStream first = (MeasurementsStream) resource.streamMeasurements("temps", new Resource("localhost"), Optional.<String> absent(), Optional.of("15m"), Optional.<String> absent(), Optional.<String> absent()).getEntity();
+        MeasurementsStream second = (MeasurementsStream) resource.streamMeasurements("temps", new Resource("localhost"), Optional.<String> absent(), Optional.of("15m"), Optional.<String> absent(), Optional.<String> absent()).getEntity();
+
+        // The first stream holds the only slot for as long as it is being written.
+        Thread writing = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    first.write(new ByteArrayOutputStream());
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        writing.start();
+        assertTrue(polling.await(10, TimeUnit.SECONDS));
+
+        try {
+            resource.streamMeasurements("temps", new Resource("localhost"), Optional.<String> absent(), Optional.of("15m"), Optional.<String> absent(), Optional.<String> absent());
+            fail("stream opened over limit");
+        }
+        catch (WebApplicationException e) {
+            assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), e.getResponse().getStatus());
+        }
+
+        // A stream created before the limit was reached ends at once (retrying after one poll
+        // interval), if written while it is.
+        ByteArrayOutputStream refused = new ByteArrayOutputStream();
+        second.write(refused);
+        assertEquals("retry: 300000\n: too many measurement streams\n\n", refused.toString("UTF-8"));
+
+        // The first stream ends (once its maximum duration has passed), and frees its slot.
+        proceed.countDown();
+        writing.join(10000);
+        assertFalse(writing.isAlive());
+
+        resource.streamMeasurements("temps", new Resource("localhost"), Optional.<String> absent(), Optional.of("15m"), Optional.<String> absent(), Optional.<String> absent());
+    }
+
+    @Test
+    public void testStreamNotWritten() throws Exception {
+
+        MeasurementsResource resource = new MeasurementsResource(m_repository, new ResultDescriptors(m_reports, 10), ContextQuotas.unlimited(), ConditionalRequests.disabled(), AdmissionControl.unlimited(), QueryTimeouts.none(), new StreamsConfig(1, 1));
+
+        // Responses whose entity is never written (HEAD requests, for example) hold no slot.
+        for (int i = 0; i < 3; i++) {
+            Response response = resource.streamMeasurements("temps", new Resource("localhost"), Optional.<String> absent(), Optional.of("15m"), Optional.<String> absent(), Optional.<String> absent());
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        }
     }
 
     private static ResultDescriptorDTO getResultDescriptorDTO() throws JsonProcessingException, IOException {
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+
+
+public class QueryTimeoutsTest {
+
+    private final QueryTimeouts m_timeouts = new QueryTimeouts(30000, 60000);
+
+    @Test
+    public void testDefault() {
+        long remaining = m_timeouts.deadline(Optional.<String> absent()).remaining(TimeUnit.MILLISECONDS);
+        assertTrue(remaining > 29000 && remaining <= 30000);
+    }
+
+    @Test
+    public void testRequested() {
+        long remaining = m_timeouts.deadline(Optional.of("5s")).remaining(TimeUnit.MILLISECONDS);
+        assertTrue(remaining > 4000 && remaining <= 5000);
+
+        // Capped at the maximum
+        remaining = m_timeouts.deadline(Optional.of("1h")).remaining(TimeUnit.MILLISECONDS);
+        assertTrue(remaining > 59000 && remaining <= 60000);
+    }
+
+    @Test
+    public void testZeroTimeout() {
+        for (String timeout : new String[] { "0", "0s", "0m" }) {
+            try {
+                m_timeouts.deadline(Optional.of(timeout));
+                fail(String.format("accepted timeout of %s", timeout));
+            }
+            catch (WebApplicationException e) {
+                assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), e.getResponse().getStatus());
+            }
+        }
+    }
+
+}
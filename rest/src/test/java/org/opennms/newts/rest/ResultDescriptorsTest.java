@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.opennms.newts.api.query.ResultDescriptor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+
+public class ResultDescriptorsTest {
+
+    private static final String TEMPERATURE = "{\"interval\":\"300s\",\"datasources\":[{\"label\":\"temperature\",\"source\":\"temperature\",\"function\":\"AVERAGE\",\"heartbeat\":\"600s\"}],\"exports\":[\"temperature\"]}";
+    private static final String IN_OUT = "{\"datasources\":[{\"label\":\"in\",\"source\":\"ifInOctets\",\"function\":\"AVERAGE\"},{\"label\":\"out\",\"source\":\"ifOutOctets\",\"function\":\"AVERAGE\"}],\"expressions\":[{\"label\":\"total\",\"expression\":\"in + out\"}],\"exports\":[%s]}";
+
+    @Test
+    public void testReports() throws IOException {
+        ResultDescriptors descriptors = new ResultDescriptors(Collections.singletonMap("temps", dto(TEMPERATURE)), 10);
+        ResultDescriptor report = descriptors.getReport("temps");
+
+        assertTrue(report.isImmutable());
+        assertEquals(Collections.singleton("temperature"), report.getSourceNames());
+        assertSame(report, descriptors.getReport("temps"));
+        assertNull(descriptors.getReport("bogus"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidReport() throws IOException {
+        new ResultDescriptors(Collections.singletonMap("bad", dto(String.format(IN_OUT, "\"bogus\""))), 10);
+    }
+
+    @Test
+    public void testCached() throws IOException {
+        ResultDescriptors descriptors = new ResultDescriptors(Collections.<String, ResultDescriptorDTO> emptyMap(), 10);
+        ResultDescriptor descriptor = descriptors.get(dto(String.format(IN_OUT, "\"total\", \"in\"")));
+
+        assertTrue(descriptor.isImmutable());
+
+        // Equivalent descriptors (exports are unordered) share one compiled instance
+        assertSame(descriptor, descriptors.get(dto(String.format(IN_OUT, "\"total\", \"in\""))));
+        assertSame(descriptor, descriptors.get(dto(String.format(IN_OUT, "\"in\", \"total\""))));
+        assertNotSame(descriptor, descriptors.get(dto(String.format(IN_OUT, "\"total\""))));
+        assertEquals(2, descriptors.cacheSize());
+    }
+
+    @Test
+    public void testInvalidNotCached() throws IOException {
+        ResultDescriptors descriptors = new ResultDescriptors(Collections.<String, ResultDescriptorDTO> emptyMap(), 10);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                descriptors.get(dto(String.format(IN_OUT, "\"bogus\"")));
+            }
+            catch (IllegalArgumentException e) {
+                continue;
+            }
+            throw new AssertionError("invalid descriptor compiled");
+        }
+
+        assertEquals(0, descriptors.cacheSize());
+    }
+
+    private static ResultDescriptorDTO dto(String json) throws IOException {
+        return new ObjectMapper().reader(ResultDescriptorDTO.class).readValue(json);
+    }
+
+}
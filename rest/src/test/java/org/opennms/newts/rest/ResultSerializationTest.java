@@ -42,34 +42,55 @@ public class ResultSerializationTest {
         String json = "["
                 + "  ["
                 + "    {"
-                + "      \"name\": \"ifOutOctets\","
+                + "      \"name\": \"ifInOctets\","
                 + "      \"timestamp\":900000000000,"
-                + "      \"value\":6000.0"
+                + "      \"value\":5000.0"
                 + "    },"
                 + "    {"
-                + "      \"name\": \"ifInOctets\","
+                + "      \"name\": \"ifOutOctets\","
                 + "      \"timestamp\":900000000000,"
-                + "      \"value\":5000.0"
+                + "      \"value\":6000.0"
                 + "    }"
                 + "  ],"
                 + "  ["
                 + "    {"
-                + "      \"name\": \"ifOutOctets\","
+                + "      \"name\": \"ifInOctets\","
                 + "      \"timestamp\":900000300000,"
-                + "      \"value\":7000.0"
+                + "      \"value\":6000.0"
                 + "    },"
                 + "    {"
-                + "      \"name\": \"ifInOctets\","
+                + "      \"name\": \"ifOutOctets\","
                 + "      \"timestamp\":900000300000,"
-                + "      \"value\":6000.0"
+                + "      \"value\":7000.0"
                 + "    }"
                 + "  ]"
                 + "]";
 
         assertThat(new ObjectMapper().writeValueAsString(Transform.measurementDTOs(data)), is(normalize(json)));
+        assertThat(new ObjectMapper().writeValueAsString(new MeasurementResults(data, MeasurementResults.Format.ROWS)), is(normalize(json)));
         
     }
 
+    @Test
+    public void testMeasurementColumns() throws JsonProcessingException {
+
+        Results<Measurement> data = new Results<>();
+        data.addElement(new Measurement(Timestamp.fromEpochSeconds(900000000), new Resource("localhost"), "ifInOctets", 5000));
+        data.addElement(new Measurement(Timestamp.fromEpochSeconds(900000000), new Resource("localhost"), "ifOutOctets", 6000));
+        data.addElement(new Measurement(Timestamp.fromEpochSeconds(900000300), new Resource("localhost"), "ifInOctets", 6000));
+
+        String json = "{"
+                + "  \"timestamps\": [900000000000, 900000300000],"
+                + "  \"columns\": {"
+                + "    \"ifInOctets\": [5000.0, 6000.0],"
+                + "    \"ifOutOctets\": [6000.0, null]"
+                + "  }"
+                + "}";
+
+        assertThat(new ObjectMapper().writeValueAsString(new MeasurementResults(data, MeasurementResults.Format.COLUMNS)), is(normalize(json)));
+
+    }
+
     @Test
     public void testSamples() throws JsonProcessingException {
 
@@ -107,36 +128,37 @@ public class ResultSerializationTest {
         String json =  "["
                 + "  ["
                 + "    {"
-                + "      \"name\": \"ifOutOctets\","
+                + "      \"name\": \"ifInOctets\","
                 + "      \"timestamp\":900000000000,"
                 + "      \"type\":\"COUNTER\","
-                + "      \"value\":6000,"
-                + "      \"attributes\":{\"units\":\"bytes\"}"
+                + "      \"value\":5000"
                 + "    },"
                 + "    {"
-                + "      \"name\": \"ifInOctets\","
+                + "      \"name\": \"ifOutOctets\","
                 + "      \"timestamp\":900000000000,"
                 + "      \"type\":\"COUNTER\","
-                + "      \"value\":5000"
+                + "      \"value\":6000,"
+                + "      \"attributes\":{\"units\":\"bytes\"}"
                 + "    }"
                 + "  ],"
                 + "  ["
                 + "    {"
-                + "      \"name\": \"ifOutOctets\","
+                + "      \"name\": \"ifInOctets\","
                 + "      \"timestamp\":900000300000,"
                 + "      \"type\":\"COUNTER\","
-                + "      \"value\":7000"
+                + "      \"value\":6000"
                 + "    },"
                 + "    {"
-                + "      \"name\": \"ifInOctets\","
+                + "      \"name\": \"ifOutOctets\","
                 + "      \"timestamp\":900000300000,"
                 + "      \"type\":\"COUNTER\","
-                + "      \"value\":6000"
+                + "      \"value\":7000"
                 + "    }"
                 + "  ]"
                 + "]";
 
         assertThat(new ObjectMapper().writeValueAsString(Transform.sampleDTOs(data)), is(normalize(json)));
+        assertThat(new ObjectMapper().writeValueAsString(new SampleResults(data)), is(normalize(json)));
 
     }
 
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Counter;
+import org.opennms.newts.api.Gauge;
+import org.opennms.newts.api.MetricType;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.Timestamp;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+
+
+public class SampleStreamReaderTest {
+
+    @Test
+    public void testRead() throws IOException {
+
+        String json = "["
+                + "{\"timestamp\":900000000000,\"resource\":{\"id\":\"localhost\",\"attributes\":{\"site\":\"chicago\"}},"
+                + "\"name\":\"load\",\"type\":\"GAUGE\",\"value\":1.5,\"attributes\":{\"units\":\"processes\"},\"unknown\":[1,{\"a\":2}]},"
+                + "{\"name\":\"ifInOctets\",\"type\":\"COUNTER\",\"value\":5000,\"timestamp\":900000300000,\"resource\":{\"id\":\"localhost\"},\"context\":\"other\"},"
+                + "{\"timestamp\":900000600000,\"resource\":{\"id\":\"localhost\"},\"name\":\"load\",\"type\":\"GAUGE\",\"value\":1.6,\"attributes\":null}"
+                + "]";
+
+        try (SampleStreamReader reader = reader(json, 2)) {
+            List<Sample> chunk = reader.next();
+            assertEquals(2, chunk.size());
+
+            Sample sample = chunk.get(0);
+            assertEquals(Timestamp.fromEpochMillis(900000000000L), sample.getTimestamp());
+            assertEquals(new Context("tenant"), sample.getContext());
+            assertEquals("localhost", sample.getResource().getId());
+            assertEquals(ImmutableMap.of("site", "chicago"), sample.getResource().getAttributes().get());
+            assertEquals("load", sample.getName());
+            assertEquals(MetricType.GAUGE, sample.getType());
+            assertEquals(new Gauge(1.5d), sample.getValue());
+            assertEquals(ImmutableMap.of("units", "processes"), sample.getAttributes());
+
+            sample = chunk.get(1);
+            assertEquals(new Context("other"), sample.getContext());
+            assertEquals(MetricType.COUNTER, sample.getType());
+            assertEquals(new Counter(5000), sample.getValue());
+
+            chunk = reader.next();
+            assertEquals(1, chunk.size());
+            assertEquals(null, chunk.get(0).getAttributes());
+
+            assertTrue(reader.next().isEmpty());
+            assertTrue(reader.next().isEmpty());
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        try (SampleStreamReader reader = reader("[]", 10)) {
+            assertTrue(reader.next().isEmpty());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingField() throws IOException {
+        try (SampleStreamReader reader = reader("[{\"timestamp\":0,\"resource\":{\"id\":\"localhost\"},\"type\":\"GAUGE\",\"value\":1}]", 10)) {
+            reader.next();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadType() throws IOException {
+        try (SampleStreamReader reader = reader("[{\"timestamp\":0,\"resource\":{\"id\":\"localhost\"},\"name\":\"x\",\"type\":\"BOGUS\",\"value\":1}]", 10)) {
+            reader.next();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformed() throws IOException {
+        try (SampleStreamReader reader = reader("[{\"timestamp\":0,", 10)) {
+            reader.next();
+        }
+    }
+
+    @Test
+    public void testWrongFieldTypes() throws IOException {
+        String[] samples = {
+                "{\"timestamp\":\"abc\",\"resource\":{\"id\":\"localhost\"},\"name\":\"x\",\"type\":\"GAUGE\",\"value\":1}",
+                "{\"timestamp\":true,\"resource\":{\"id\":\"localhost\"},\"name\":\"x\",\"type\":\"GAUGE\",\"value\":1}",
+                "{\"timestamp\":{\"name\":\"y\"},\"resource\":{\"id\":\"localhost\"},\"name\":\"x\",\"type\":\"GAUGE\",\"value\":1}",
+                "{\"timestamp\":[0],\"resource\":{\"id\":\"localhost\"},\"name\":\"x\",\"type\":\"GAUGE\",\"value\":1}",
+                "{\"timestamp\":0,\"resource\":{\"id\":\"localhost\"},\"name\":{\"x\":1},\"type\":\"GAUGE\",\"value\":1}",
+                "{\"timestamp\":0,\"resource\":{\"id\":\"localhost\"},\"name\":1,\"type\":\"GAUGE\",\"value\":1}",
+                "{\"timestamp\":0,\"resource\":{\"id\":\"localhost\"},\"name\":\"x\",\"type\":[\"GAUGE\"],\"value\":1}",
+                "{\"timestamp\":0,\"resource\":{\"id\":\"localhost\"},\"name\":\"x\",\"type\":\"GAUGE\",\"value\":1,\"context\":{\"id\":\"x\"}}",
+                "{\"timestamp\":0,\"resource\":{\"id\":{\"x\":1}},\"name\":\"x\",\"type\":\"GAUGE\",\"value\":1}",
+                "{\"timestamp\":0,\"resource\":{\"id\":false},\"name\":\"x\",\"type\":\"GAUGE\",\"value\":1}" };
+
+        for (String sample : samples) {
+            try (SampleStreamReader reader = reader("[" + sample + "]", 10)) {
+                reader.next();
+                fail(String.format("accepted %s", sample));
+            }
+            catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    private static SampleStreamReader reader(String json, int chunkSize) throws IOException {
+        return new SampleStreamReader(new ByteArrayInputStream(json.getBytes(Charsets.UTF_8)), new Context("tenant"), chunkSize);
+    }
+
+}
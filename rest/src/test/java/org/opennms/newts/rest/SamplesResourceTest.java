@@ -18,26 +18,40 @@ package org.opennms.newts.rest;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 import org.hamcrest.CoreMatchers;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Deadline;
+import org.opennms.newts.api.Gauge;
+import org.opennms.newts.api.MetricType;
 import org.opennms.newts.api.Resource;
 import org.opennms.newts.api.Results;
 import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.SampleBatch;
 import org.opennms.newts.api.SampleRepository;
 import org.opennms.newts.api.Timestamp;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.MoreExecutors;
 
 
 public class SamplesResourceTest {
@@ -46,9 +60,40 @@ public class SamplesResourceTest {
     private final SamplesResource m_resource = new SamplesResource(m_repository);
 
     @Test
-    public void testWriteSamples() {
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void testWriteSamples() throws IOException {
 
-        Response response = m_resource.writeSamples(Collections.<SampleDTO> emptyList());
+        String json = "[{\"timestamp\":900000000000,\"resource\":{\"id\":\"localhost\"},\"name\":\"load\",\"type\":\"GAUGE\",\"value\":1.5},"
+                + "{\"timestamp\":900000300000,\"resource\":{\"id\":\"localhost\"},\"name\":\"load\",\"type\":\"GAUGE\",\"value\":1.6},"
+                + "{\"timestamp\":900000600000,\"resource\":{\"id\":\"localhost\"},\"name\":\"load\",\"type\":\"GAUGE\",\"value\":1.7}]";
+
+        SamplesResource resource = new SamplesResource(m_repository, ContextQuotas.unlimited(), 2, ConditionalRequests.disabled(), AdmissionControl.unlimited(), QueryTimeouts.none(), new BulkIngest(MoreExecutors.sameThreadExecutor(), 1));
+        Response response = resource.writeSamples(new ByteArrayInputStream(json.getBytes(Charsets.UTF_8)), Optional.of("tenant"));
+
+        assertThat(response.getStatus(), equalTo(Response.Status.CREATED.getStatusCode()));
+
+        // Written in chunks of (up to) two
+        ArgumentCaptor<Collection> chunks = ArgumentCaptor.forClass(Collection.class);
+        verify(m_repository, times(2)).insert(chunks.capture());
+
+        assertThat(chunks.getAllValues().get(0).size(), equalTo(2));
+        assertThat(chunks.getAllValues().get(1).size(), equalTo(1));
+        assertThat(((Sample) chunks.getAllValues().get(1).iterator().next()).getContext(), equalTo(new Context("tenant")));
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWriteBadSamples() throws IOException {
+        m_resource.writeSamples(new ByteArrayInputStream("{}".getBytes(Charsets.UTF_8)), Optional.<String> absent());
+    }
+
+    @Test
+    public void testWriteSampleBatch() {
+
+        List<Sample> samples = Collections.singletonList(
+                new Sample(Timestamp.fromEpochSeconds(900000000), new Resource("localhost"), "load", MetricType.GAUGE, new Gauge(1.5d)));
+
+        Response response = m_resource.writeSampleBatch(SampleBatch.encode(samples), Optional.<String> absent());
 
         assertThat(response.getStatus(), equalTo(Response.Status.CREATED.getStatusCode()));
 
@@ -56,6 +101,11 @@ public class SamplesResourceTest {
 
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testWriteBadSampleBatch() {
+        m_resource.writeSampleBatch(new byte[] { 'N', 'S', 9 }, Optional.<String> absent());
+    }
+
     @Test
     public void testGetSamples() {
 
@@ -63,17 +113,23 @@ public class SamplesResourceTest {
 
         when(
                 m_repository.select(
+                        eq(Context.DEFAULT_CONTEXT),
                         eq(new Resource("localhost")),
                         eq(Optional.of(Timestamp.fromEpochSeconds(900000000))),
-                        eq(Optional.of(Timestamp.fromEpochSeconds(900003600))))
+                        eq(Optional.of(Timestamp.fromEpochSeconds(900003600))),
+                        any(Deadline.class))
         ).thenReturn(results);
 
         assertThat(
                 m_resource.getSamples(
                         new Resource("localhost"),
                         Optional.of("1998-07-09T11:00:00-0500"),
-                        Optional.of("1998-07-09T12:00:00-0500")),
-                CoreMatchers.instanceOf(Collection.class));
+                        Optional.of("1998-07-09T12:00:00-0500"),
+                        Optional.<String> absent(),
+                        Optional.<String> absent(),
+                        null,
+                        mock(Request.class)).getEntity(),
+                CoreMatchers.instanceOf(SampleResults.class));
 
     }
 
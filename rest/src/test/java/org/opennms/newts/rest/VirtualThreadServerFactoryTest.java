@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.newts.rest;
+
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.server.ServerFactory;
+
+import org.junit.Test;
+
+
+public class VirtualThreadServerFactoryTest {
+
+    @Test
+    public void testDeserialize() throws Exception {
+        ServerFactory factory = Jackson.newObjectMapper().readValue("{\"type\": \"virtual\"}", ServerFactory.class);
+        assertThat(factory, instanceOf(VirtualThreadServerFactory.class));
+    }
+
+}